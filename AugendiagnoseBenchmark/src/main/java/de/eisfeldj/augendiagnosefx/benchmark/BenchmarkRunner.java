@@ -0,0 +1,47 @@
+package de.eisfeldj.augendiagnosefx.benchmark;
+
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Entry point for running the benchmarks. Accepts the usual JMH command line options (e.g. a benchmark filter or "-p
+ * mResolution=600"). Unless specified otherwise, results are written as JSON to benchmark-results.json.
+ */
+public final class BenchmarkRunner {
+	/**
+	 * The default file for the results.
+	 */
+	private static final String DEFAULT_RESULT_FILE = "benchmark-results.json";
+
+	/**
+	 * Hide default constructor.
+	 */
+	private BenchmarkRunner() {
+		throw new UnsupportedOperationException();
+	}
+
+	/**
+	 * Run the benchmarks.
+	 *
+	 * @param args The JMH command line options.
+	 * @throws CommandLineOptionException thrown if the options cannot be parsed.
+	 * @throws RunnerException thrown if the benchmarks fail.
+	 */
+	public static void main(final String[] args) throws CommandLineOptionException, RunnerException {
+		CommandLineOptions commandLineOptions = new CommandLineOptions(args);
+		OptionsBuilder builder = new OptionsBuilder();
+		if (!commandLineOptions.getResultFormat().hasValue()) {
+			builder.resultFormat(ResultFormatType.JSON);
+		}
+		if (!commandLineOptions.getResult().hasValue()) {
+			builder.result(DEFAULT_RESULT_FILE);
+		}
+		Options options = builder.parent(commandLineOptions).build();
+		new Runner(options).run();
+	}
+}
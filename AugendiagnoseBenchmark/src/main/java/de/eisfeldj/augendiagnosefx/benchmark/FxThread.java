@@ -0,0 +1,68 @@
+package de.eisfeldj.augendiagnosefx.benchmark;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+
+import javafx.application.Platform;
+
+/**
+ * Helper to run benchmarked code on the JavaFX application thread, as required by Canvas snapshots.
+ */
+public final class FxThread {
+	/**
+	 * Flag indicating if the JavaFX platform has been started.
+	 */
+	private static boolean mIsStarted = false;
+
+	/**
+	 * Hide default constructor.
+	 */
+	private FxThread() {
+		throw new UnsupportedOperationException();
+	}
+
+	/**
+	 * Start the JavaFX platform, if not yet done.
+	 */
+	public static synchronized void startup() {
+		if (mIsStarted) {
+			return;
+		}
+		try {
+			Platform.startup(() -> {
+				// nothing to initialize.
+			});
+		}
+		catch (IllegalStateException e) {
+			// Platform has already been started by other code.
+		}
+		Platform.setImplicitExit(false);
+		mIsStarted = true;
+	}
+
+	/**
+	 * Run a callable on the JavaFX application thread and wait for its result.
+	 *
+	 * @param callable The callable.
+	 * @param <T> The result type.
+	 * @return The result of the callable.
+	 * @throws Exception thrown by the callable.
+	 */
+	public static <T> T call(final Callable<T> callable) throws Exception {
+		if (Platform.isFxApplicationThread()) {
+			return callable.call();
+		}
+		FutureTask<T> task = new FutureTask<>(callable);
+		Platform.runLater(task);
+		try {
+			return task.get();
+		}
+		catch (ExecutionException e) {
+			if (e.getCause() instanceof Exception) {
+				throw (Exception) e.getCause();
+			}
+			throw e;
+		}
+	}
+}
@@ -0,0 +1,149 @@
+package de.eisfeldj.augendiagnosefx.benchmark;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Date;
+import java.util.concurrent.TimeUnit;
+
+import javax.imageio.ImageIO;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import de.eisfeldj.augendiagnosefx.util.imagefile.EyePhoto.RightLeft;
+import de.eisfeldj.augendiagnosefx.util.imagefile.JpegMetadata;
+import de.eisfeldj.augendiagnosefx.util.imagefile.JpegMetadataUtil;
+
+/**
+ * Benchmark of reading and writing the metadata of JPEG files.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 3, time = 2)
+@Fork(1)
+public class JpegMetadataBenchmark {
+	/**
+	 * The comments alternately stored, so that each write really changes the file.
+	 */
+	private static final String[] COMMENTS = {"Benchmark comment A", "Benchmark comment B - a bit longer"};
+
+	// PUBLIC_FIELDS:START
+	// JMH injects the parameters into public fields.
+
+	/**
+	 * The resolution (width) of the sample JPEG.
+	 */
+	@Param({"1200", "3600"})
+	public int mResolution;
+
+	// PUBLIC_FIELDS:END
+
+	/**
+	 * The temporary folder holding the sample JPEG.
+	 */
+	private File mFolder;
+
+	/**
+	 * The sample JPEG.
+	 */
+	private String mFileName;
+
+	/**
+	 * The metadata to be written.
+	 */
+	private JpegMetadata mMetadata;
+
+	/**
+	 * Counter used to alternate the comment.
+	 */
+	private int mInvocationCount = 0;
+
+	/**
+	 * Create the sample JPEG, carrying XMP metadata.
+	 *
+	 * @throws Exception thrown in case of errors.
+	 */
+	@Setup
+	public void setUp() throws Exception {
+		mFolder = Files.createTempDirectory("augendiagnose-benchmark").toFile();
+		File file = new File(mFolder, "Benchmark Person 2015-01-01 rechts.jpg");
+		mFileName = file.getAbsolutePath();
+		if (!ImageIO.write(new SyntheticEyeImage(mResolution, SyntheticEyeImage.SEED).toBufferedImage(), "jpg", file)) {
+			throw new IOException("Failed to write sample JPEG " + mFileName);
+		}
+		if (!JpegMetadataUtil.changeJpegAllowed()) {
+			throw new IllegalStateException("Storage of metadata is disabled in the preferences");
+		}
+
+		mMetadata = new JpegMetadata();
+		mMetadata.setTitle("Benchmark Person - rechts");
+		mMetadata.setDescription("Synthetic eye photo");
+		mMetadata.setSubject("Benchmark");
+		mMetadata.setComment(COMMENTS[0]);
+		mMetadata.setPerson("Benchmark Person");
+		mMetadata.setRightLeft(RightLeft.RIGHT);
+		mMetadata.setOrganizeDate(new Date(0));
+		mMetadata.setXCenter(0.5f); // MAGIC_NUMBER
+		mMetadata.setYCenter(0.5f); // MAGIC_NUMBER
+		mMetadata.setOverlayScaleFactor(0.6f); // MAGIC_NUMBER
+		mMetadata.setPupilSize(0.25f); // MAGIC_NUMBER
+		mMetadata.setPupilXOffset(0f);
+		mMetadata.setPupilYOffset(0f);
+		JpegMetadataUtil.changeMetadata(mFileName, mMetadata);
+	}
+
+	/**
+	 * Remove the sample JPEG.
+	 */
+	@TearDown
+	public void tearDown() {
+		File[] files = mFolder.listFiles();
+		if (files != null) {
+			for (File file : files) {
+				if (!file.delete()) {
+					file.deleteOnExit();
+				}
+			}
+		}
+		if (!mFolder.delete()) {
+			mFolder.deleteOnExit();
+		}
+	}
+
+	/**
+	 * Read the metadata.
+	 *
+	 * @return The metadata.
+	 * @throws Exception thrown in case of errors.
+	 */
+	@Benchmark
+	public JpegMetadata getMetadata() throws Exception {
+		return JpegMetadataUtil.getMetadata(mFileName);
+	}
+
+	/**
+	 * Write the metadata (XMP and EXIF).
+	 *
+	 * @return The written metadata.
+	 * @throws Exception thrown in case of errors.
+	 */
+	@Benchmark
+	public JpegMetadata changeMetadata() throws Exception {
+		mMetadata.setComment(COMMENTS[mInvocationCount++ % COMMENTS.length]);
+		JpegMetadataUtil.changeMetadata(mFileName, mMetadata);
+		return mMetadata;
+	}
+}
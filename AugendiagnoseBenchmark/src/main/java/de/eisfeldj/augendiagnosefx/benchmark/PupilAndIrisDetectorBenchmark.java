@@ -0,0 +1,83 @@
+package de.eisfeldj.augendiagnosefx.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import de.eisfeldj.augendiagnosefx.util.imagefile.PupilAndIrisDetector;
+import de.eisfeldj.augendiagnosefx.util.imagefile.PupilAndIrisDetector.StatisticsBackend;
+import javafx.scene.image.Image;
+
+/**
+ * Benchmark of the automatic detection of pupil and iris.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 3, time = 2)
+@Fork(1)
+public class PupilAndIrisDetectorBenchmark {
+	// PUBLIC_FIELDS:START
+	// JMH injects the parameters into public fields.
+
+	/**
+	 * The resolution (width) of the synthetic eye photo.
+	 */
+	@Param({"600", "1200", "2400"})
+	public int mResolution;
+
+	/**
+	 * The parallelism of the detection.
+	 */
+	@Param({"1", "4"})
+	public int mParallelism;
+
+	/**
+	 * The number of candidates passed from the coarse search to the exact search. 0 means exhaustive search.
+	 */
+	@Param({"0", "200"})
+	public int mCoarseCandidateCount;
+
+	/**
+	 * The backend used for the circle statistics.
+	 */
+	@Param({"EXACT", "HISTOGRAM"})
+	public StatisticsBackend mStatisticsBackend;
+
+	// PUBLIC_FIELDS:END
+
+	/**
+	 * The synthetic eye photo.
+	 */
+	private Image mImage;
+
+	/**
+	 * Create the eye photo.
+	 */
+	@Setup
+	public void setUp() {
+		FxThread.startup();
+		mImage = new SyntheticEyeImage(mResolution, SyntheticEyeImage.SEED).toFxImage();
+	}
+
+	/**
+	 * Detect pupil and iris.
+	 *
+	 * @return The detector, holding the results.
+	 */
+	@Benchmark
+	public PupilAndIrisDetector detect() {
+		return new PupilAndIrisDetector(mImage, mParallelism, mCoarseCandidateCount, mStatisticsBackend);
+	}
+}
@@ -0,0 +1,183 @@
+package de.eisfeldj.augendiagnosefx.benchmark;
+
+import java.awt.image.BufferedImage;
+import java.util.Random;
+
+import javafx.scene.image.PixelFormat;
+import javafx.scene.image.WritableImage;
+
+/**
+ * Generator of reproducible synthetic eye photos, used as input for the benchmarks.
+ *
+ * <p>The image shows skin, sclera, a textured iris, a dark pupil and a light reflex, with some noise. The same size and
+ * seed always give the same image.
+ */
+public final class SyntheticEyeImage {
+	/**
+	 * The seed used by all benchmarks, so that all resolutions show the same eye.
+	 */
+	public static final long SEED = 42;
+
+	/**
+	 * The ratio between height and width of the generated images.
+	 */
+	private static final float ASPECT_RATIO = 0.75f;
+	/**
+	 * The iris radius, relative to the height.
+	 */
+	private static final float IRIS_RADIUS = 0.3f;
+	/**
+	 * The pupil radius, relative to the iris radius.
+	 */
+	private static final float PUPIL_RADIUS = 0.3f;
+	/**
+	 * The number of radial fibres in the iris texture.
+	 */
+	private static final int IRIS_FIBRES = 60;
+	/**
+	 * The amplitude of the pixel noise.
+	 */
+	private static final int NOISE = 12;
+	/**
+	 * The max value of a color channel.
+	 */
+	private static final int BYTE = 0xFF;
+
+	/**
+	 * The width of the image.
+	 */
+	private final int mWidth;
+
+	public int getWidth() {
+		return mWidth;
+	}
+
+	/**
+	 * The height of the image.
+	 */
+	private final int mHeight;
+
+	public int getHeight() {
+		return mHeight;
+	}
+
+	/**
+	 * The pixels of the image, in ARGB format, row by row.
+	 */
+	private final int[] mPixels;
+
+	public int[] getPixels() {
+		return mPixels;
+	}
+
+	/**
+	 * Create a synthetic eye photo.
+	 *
+	 * @param resolution The resolution of the image (the width - the height is derived from it).
+	 * @param seed The seed for the random variations.
+	 */
+	public SyntheticEyeImage(final int resolution, final long seed) {
+		mWidth = resolution;
+		mHeight = Math.round(resolution * ASPECT_RATIO);
+		mPixels = new int[mWidth * mHeight];
+
+		Random random = new Random(seed);
+		float irisRadius = IRIS_RADIUS * mHeight;
+		float pupilRadius = PUPIL_RADIUS * irisRadius * (0.8f + 0.4f * random.nextFloat()); // MAGIC_NUMBER
+		float xCenter = mWidth * (0.45f + 0.1f * random.nextFloat()); // MAGIC_NUMBER
+		float yCenter = mHeight * (0.45f + 0.1f * random.nextFloat()); // MAGIC_NUMBER
+		float pupilXCenter = xCenter + (random.nextFloat() - 0.5f) * 0.1f * irisRadius; // MAGIC_NUMBER
+		float pupilYCenter = yCenter + (random.nextFloat() - 0.5f) * 0.1f * irisRadius; // MAGIC_NUMBER
+		float fibrePhase = random.nextFloat() * 2 * (float) Math.PI;
+
+		for (int y = 0; y < mHeight; y++) {
+			for (int x = 0; x < mWidth; x++) {
+				float dx = x - xCenter;
+				float dy = y - yCenter;
+				float distance = (float) Math.sqrt(dx * dx + dy * dy);
+				float pupilDistance = (float) Math.hypot(x - pupilXCenter, y - pupilYCenter);
+
+				int red;
+				int green;
+				int blue;
+				if (pupilDistance < pupilRadius) {
+					red = 15; // MAGIC_NUMBER
+					green = 12; // MAGIC_NUMBER
+					blue = 12; // MAGIC_NUMBER
+				}
+				else if (distance < irisRadius) {
+					double angle = Math.atan2(dy, dx);
+					float fibre = (float) (0.5 + 0.5 * Math.sin(IRIS_FIBRES * angle + fibrePhase + distance / irisRadius)); // MAGIC_NUMBER
+					float shade = 0.6f + 0.4f * fibre * (distance / irisRadius); // MAGIC_NUMBER
+					red = (int) (90 * shade); // MAGIC_NUMBER
+					green = (int) (120 * shade); // MAGIC_NUMBER
+					blue = (int) (150 * shade); // MAGIC_NUMBER
+				}
+				else if (dx * dx / 4 + dy * dy < irisRadius * irisRadius * 1.5f) { // MAGIC_NUMBER
+					red = 225; // MAGIC_NUMBER
+					green = 215; // MAGIC_NUMBER
+					blue = 210; // MAGIC_NUMBER
+				}
+				else {
+					red = 200; // MAGIC_NUMBER
+					green = 150; // MAGIC_NUMBER
+					blue = 130; // MAGIC_NUMBER
+				}
+
+				// Light reflex in the upper right part of the pupil.
+				if (Math.hypot(x - pupilXCenter - pupilRadius / 3, y - pupilYCenter + pupilRadius / 3) < pupilRadius / 5) { // MAGIC_NUMBER
+					red = BYTE;
+					green = BYTE;
+					blue = BYTE;
+				}
+
+				mPixels[y * mWidth + x] = toArgb(red + random.nextInt(2 * NOISE + 1) - NOISE,
+						green + random.nextInt(2 * NOISE + 1) - NOISE, blue + random.nextInt(2 * NOISE + 1) - NOISE);
+			}
+		}
+	}
+
+	/**
+	 * Convert color channels into an opaque ARGB value.
+	 *
+	 * @param red The red channel.
+	 * @param green The green channel.
+	 * @param blue The blue channel.
+	 * @return The ARGB value.
+	 */
+	private static int toArgb(final int red, final int green, final int blue) {
+		return BYTE << 24 | clip(red) << 16 | clip(green) << 8 | clip(blue); // MAGIC_NUMBER
+	}
+
+	/**
+	 * Clip a value to the range of a color channel.
+	 *
+	 * @param value The value.
+	 * @return The clipped value.
+	 */
+	private static int clip(final int value) {
+		return Math.max(0, Math.min(BYTE, value));
+	}
+
+	/**
+	 * Get the image as JavaFX image.
+	 *
+	 * @return The JavaFX image.
+	 */
+	public WritableImage toFxImage() {
+		WritableImage image = new WritableImage(mWidth, mHeight);
+		image.getPixelWriter().setPixels(0, 0, mWidth, mHeight, PixelFormat.getIntArgbInstance(), mPixels, 0, mWidth);
+		return image;
+	}
+
+	/**
+	 * Get the image as AWT image.
+	 *
+	 * @return The AWT image.
+	 */
+	public BufferedImage toBufferedImage() {
+		BufferedImage image = new BufferedImage(mWidth, mHeight, BufferedImage.TYPE_INT_RGB);
+		image.setRGB(0, 0, mWidth, mHeight, mPixels, 0, mWidth);
+		return image;
+	}
+}
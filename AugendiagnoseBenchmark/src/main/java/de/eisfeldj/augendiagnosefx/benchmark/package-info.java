@@ -0,0 +1,4 @@
+/**
+ * This package contains the JMH benchmarks of the Augendiagnose imaging code.
+ */
+package de.eisfeldj.augendiagnosefx.benchmark;
@@ -0,0 +1,131 @@
+package de.eisfeldj.augendiagnosefx.util.imagefile;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import de.eisfeldj.augendiagnosefx.benchmark.FxThread;
+import de.eisfeldj.augendiagnosefx.benchmark.SyntheticEyeImage;
+import de.eisfeldj.augendiagnosefx.util.imagefile.EyePhoto.RightLeft;
+import de.eisfeldj.augendiagnosefx.util.imagefile.ImageUtil.Resolution;
+import javafx.scene.image.Image;
+import javafx.scene.paint.Color;
+
+/**
+ * Benchmark of the image manipulations in ImageUtil. Located in the package of ImageUtil in order to access the
+ * package-private methods.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 3, time = 2)
+@Fork(1)
+public class ImageUtilBenchmark {
+	/**
+	 * The overlay type used for the benchmarks (the circle overlay).
+	 */
+	private static final int OVERLAY_TYPE = 0;
+	/**
+	 * The pupil size used for the benchmarks.
+	 */
+	private static final float PUPIL_SIZE = 0.25f;
+	/**
+	 * The target size used for resizing.
+	 */
+	private static final int RESIZE_TARGET_SIZE = 1024;
+
+	// PUBLIC_FIELDS:START
+	// JMH injects the parameters into public fields.
+
+	/**
+	 * The resolution (width) of the synthetic eye photo.
+	 */
+	@Param({"800", "1600", "3200"})
+	public int mResolution;
+
+	// PUBLIC_FIELDS:END
+
+	/**
+	 * The synthetic eye photo.
+	 */
+	private Image mImage;
+
+	/**
+	 * Create the eye photo.
+	 */
+	@Setup
+	public void setUp() {
+		FxThread.startup();
+		mImage = new SyntheticEyeImage(mResolution, SyntheticEyeImage.SEED).toFxImage();
+	}
+
+	/**
+	 * Apply brightness, contrast, saturation and color temperature to the image, without overlay.
+	 *
+	 * @return The resulting image.
+	 * @throws Exception thrown in case of errors.
+	 */
+	@Benchmark
+	public Image colorMapping() throws Exception {
+		return FxThread.call(() -> ImageUtil.getImageWithOverlay(mImage, null, RightLeft.RIGHT, Color.RED,
+				0, 0, 1, 0, 0, PUPIL_SIZE, 0.1f, 1.2f, 1.3f, 0.2f, Resolution.NORMAL)); // MAGIC_NUMBER
+	}
+
+	/**
+	 * Apply color mapping and a warped overlay to the image.
+	 *
+	 * @return The resulting image.
+	 * @throws Exception thrown in case of errors.
+	 */
+	@Benchmark
+	public Image imageWithOverlay() throws Exception {
+		ImageUtil.getOverlayCache().clear();
+		return FxThread.call(() -> ImageUtil.getImageWithOverlay(mImage, OVERLAY_TYPE, RightLeft.RIGHT, Color.RED,
+				0.5f, 0.5f, 0.6f, 0.02f, -0.01f, PUPIL_SIZE, 0.1f, 1.2f, 1.3f, 0.2f, Resolution.NORMAL)); // MAGIC_NUMBER
+	}
+
+	/**
+	 * Create the warped overlay image (displacement of the overlay due to pupil size and position).
+	 *
+	 * @return The overlay image.
+	 * @throws Exception thrown in case of errors.
+	 */
+	@Benchmark
+	public Image overlayDisplacement() throws Exception {
+		ImageUtil.getOverlayCache().clear();
+		return FxThread.call(() -> ImageUtil.getOverlayImage(OVERLAY_TYPE, RightLeft.RIGHT, Color.RED, 0.02f, -0.01f, PUPIL_SIZE)); // MAGIC_NUMBER
+	}
+
+	/**
+	 * Retrieve the warped overlay image from the overlay cache.
+	 *
+	 * @return The overlay image.
+	 * @throws Exception thrown in case of errors.
+	 */
+	@Benchmark
+	public Image overlayDisplacementCached() throws Exception {
+		return FxThread.call(() -> ImageUtil.getOverlayImage(OVERLAY_TYPE, RightLeft.RIGHT, Color.RED, 0.02f, -0.01f, PUPIL_SIZE)); // MAGIC_NUMBER
+	}
+
+	/**
+	 * Resize the image.
+	 *
+	 * @return The resized image.
+	 * @throws Exception thrown in case of errors.
+	 */
+	@Benchmark
+	public Image resizeImage() throws Exception {
+		return FxThread.call(() -> ImageUtil.resizeImage(mImage, RESIZE_TARGET_SIZE, true));
+	}
+}
@@ -13,6 +13,8 @@ import de.eisfeldj.augendiagnosefx.util.ResourceConstants;
 import de.eisfeldj.augendiagnosefx.util.ResourceUtil;
 import de.eisfeldj.augendiagnosefx.util.VersioningUtil;
 import de.eisfeldj.augendiagnosefx.util.imagefile.JpegSynchronizationUtil;
+import de.eisfeldj.augendiagnosefx.util.imagefile.MetadataIndex;
+import de.eisfeldj.augendiagnosefx.util.imagefile.MetadataJournal;
 
 import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
 
@@ -41,6 +43,11 @@ public class Application extends javafx.application.Application {
 	 */
 	public static final String APPLICATION_NAME = "Augendiagnose";
 
+	/**
+	 * The maximum time to wait for pending metadata saves on exit (in milliseconds).
+	 */
+	private static final long SAVE_TIMEOUT = 30000;
+
 	/**
 	 * The primary scene.
 	 */
@@ -100,6 +107,8 @@ public class Application extends javafx.application.Application {
 		primaryStage.getIcons().add(new Image("img/Augendiagnose.png"));
 		primaryStage.show();
 
+		JpegSynchronizationUtil.recoverSaveRequests();
+
 		FxmlUtil.displaySubpage(FxmlConstants.FXML_DISPLAY_PHOTOS, 0, false);
 
 		mHostServices = getHostServices();
@@ -107,6 +116,15 @@ public class Application extends javafx.application.Application {
 		VersioningUtil.checkForNewerVersion(false);
 	}
 
+	@Override
+	public final void stop() throws InterruptedException {
+		if (!JpegSynchronizationUtil.awaitSaveRequests(SAVE_TIMEOUT)) {
+			Logger.warning("Exiting with unsaved metadata.");
+		}
+		MetadataJournal.getInstance().close();
+		MetadataIndex.getInstance().save();
+	}
+
 	/**
 	 * Exit the application after asking for confirmation if there are unsaved data.
 	 */
@@ -1,13 +1,11 @@
 package de.eisfeldj.augendiagnosefx.controller;
 
 import java.io.File;
-import java.io.FileFilter;
-import java.io.FilenameFilter;
 import java.net.URL;
 import java.text.CollationKey;
 import java.text.Collator;
 import java.util.ArrayList;
-import java.util.Arrays;
+import java.util.Collections;
 import java.util.Comparator;
 import java.util.Date;
 import java.util.HashMap;
@@ -16,7 +14,7 @@ import java.util.Map;
 import java.util.ResourceBundle;
 import java.util.TreeMap;
 
-import de.eisfeldj.augendiagnosefx.fxelements.EyePhotoPairNode;
+import de.eisfeldj.augendiagnosefx.fxelements.EyePhotoPairCell;
 import de.eisfeldj.augendiagnosefx.util.DialogUtil;
 import de.eisfeldj.augendiagnosefx.util.DialogUtil.ConfirmDialogListener;
 import de.eisfeldj.augendiagnosefx.util.DialogUtil.ProgressDialog;
@@ -26,10 +24,13 @@ import de.eisfeldj.augendiagnosefx.util.ResourceConstants;
 import de.eisfeldj.augendiagnosefx.util.ResourceUtil;
 import de.eisfeldj.augendiagnosefx.util.imagefile.EyePhoto;
 import de.eisfeldj.augendiagnosefx.util.imagefile.EyePhotoPair;
+import de.eisfeldj.augendiagnosefx.util.imagefile.ImagePrefetcher;
+import de.eisfeldj.augendiagnosefx.util.imagefile.MetadataIndex;
+import de.eisfeldj.augendiagnosefx.util.imagefile.PhotoFolderWatcher;
+import de.eisfeldj.augendiagnosefx.util.imagefile.PhotoFolderWatcher.Change;
+import de.eisfeldj.augendiagnosefx.util.imagefile.PhotoFolderWatcher.ChangeType;
 
 import javafx.application.Platform;
-import javafx.beans.value.ChangeListener;
-import javafx.beans.value.ObservableValue;
 import javafx.collections.FXCollections;
 import javafx.collections.ObservableList;
 import javafx.event.ActionEvent;
@@ -38,14 +39,15 @@ import javafx.fxml.FXML;
 import javafx.fxml.Initializable;
 import javafx.scene.Parent;
 import javafx.scene.control.ContextMenu;
+import javafx.scene.control.ListCell;
 import javafx.scene.control.ListView;
 import javafx.scene.control.MenuItem;
 import javafx.scene.control.TextField;
 import javafx.scene.input.KeyEvent;
 import javafx.scene.input.MouseButton;
 import javafx.scene.input.MouseEvent;
-import javafx.scene.layout.GridPane;
 import javafx.scene.layout.Pane;
+import javafx.util.Callback;
 
 import static de.eisfeldj.augendiagnosefx.util.PreferenceUtil.KEY_FOLDER_PHOTOS;
 import static de.eisfeldj.augendiagnosefx.util.PreferenceUtil.KEY_LAST_NAME;
@@ -54,6 +56,11 @@ import static de.eisfeldj.augendiagnosefx.util.PreferenceUtil.KEY_LAST_NAME;
  * BaseController for the "Display Photos" page.
  */
 public class DisplayPhotosController extends BaseController implements Initializable {
+	/**
+	 * The number of visits before and after a displayed visit which are prefetched.
+	 */
+	private static final int PREFETCH_DISTANCE = 1;
+
 	/**
 	 * The previous selected name.
 	 */
@@ -72,10 +79,10 @@ public class DisplayPhotosController extends BaseController implements Initializ
 	private ListView<String> mListNames;
 
 	/**
-	 * The list of names.
+	 * The list of eye photo pairs.
 	 */
 	@FXML
-	private ListView<GridPane> mListPhotos;
+	private ListView<EyePhotoPair> mListPhotos;
 
 	/**
 	 * The field for searching names.
@@ -83,9 +90,72 @@ public class DisplayPhotosController extends BaseController implements Initializ
 	@FXML
 	private TextField mSearchField;
 
+	/**
+	 * The listener refreshing the displayed lists on changes in the photo folder.
+	 */
+	private static final PhotoFolderWatcher.ChangeListener PHOTO_FOLDER_LISTENER = new PhotoFolderWatcher.ChangeListener() {
+		@Override
+		public void onChanges(final List<Change> changes) {
+			Platform.runLater(new Runnable() {
+				@Override
+				public void run() {
+					for (DisplayPhotosController controller : getControllers(DisplayPhotosController.class)) {
+						controller.handlePhotoFolderChanges(changes);
+					}
+				}
+			});
+		}
+	};
+
 	@Override
 	public final void initialize(final URL location, final ResourceBundle resources) {
+		mListPhotos.setCellFactory(new Callback<ListView<EyePhotoPair>, ListCell<EyePhotoPair>>() {
+			@Override
+			public ListCell<EyePhotoPair> call(final ListView<EyePhotoPair> listView) {
+				return new EyePhotoPairCell(DisplayPhotosController.this);
+			}
+		});
 		initializeNames("", true);
+
+		PhotoFolderWatcher watcher = PhotoFolderWatcher.getInstance();
+		if (watcher != null) {
+			watcher.addListener(PHOTO_FOLDER_LISTENER);
+		}
+	}
+
+	/**
+	 * Refresh the list of names and the list of photos if affected by changes in the photo folder. Modifications of
+	 * photos (e.g. by storing metadata) do not require a refresh.
+	 *
+	 * @param changes
+	 *            The changes in the photo folder.
+	 */
+	private void handlePhotoFolderChanges(final List<Change> changes) {
+		File photoFolder = new File(PreferenceUtil.getPreferenceString(KEY_FOLDER_PHOTOS));
+		File nameFolder = mPreviousName == null ? null : new File(photoFolder, mPreviousName);
+
+		boolean refreshNames = false;
+		boolean refreshPhotos = false;
+		for (Change change : changes) {
+			if (change.getType() == ChangeType.MODIFIED && change.getNewFile().isFile()) {
+				continue;
+			}
+			refreshNames = refreshNames || change.affectsFolder(photoFolder);
+			refreshPhotos = refreshPhotos || nameFolder != null && change.affectsFolder(nameFolder);
+		}
+
+		if (refreshNames) {
+			initializeNames(mSearchField.getText(), false);
+		}
+		if (refreshPhotos) {
+			if (nameFolder.isDirectory()) {
+				showPicturesForName(mPreviousName);
+			}
+			else {
+				mListPhotos.getItems().clear();
+				mPreviousName = null;
+			}
+		}
 	}
 
 	/**
@@ -216,32 +286,11 @@ public class DisplayPhotosController extends BaseController implements Initializ
 		ProgressDialog dialog =
 				DialogUtil.displayProgressDialog(ResourceConstants.MESSAGE_PROGRESS_LOADING_PHOTOS, name);
 
+		ImagePrefetcher.cancel();
 		EyePhotoPair[] eyePhotos = createEyePhotoList(nameFolder);
 
-		ObservableList<GridPane> valuesPhotos = FXCollections.observableList(new ArrayList<GridPane>());
-
-		for (int i = 0; i < eyePhotos.length; i++) {
-			EyePhotoPairNode eyePhotoPairNode = new EyePhotoPairNode(eyePhotos[i], this);
-			valuesPhotos.add(eyePhotoPairNode);
-
-			// Workaround to ensure that the scrollbar is correctly resized after the images are loaded.
-			eyePhotoPairNode.getImagesLoadedProperty().addListener(new ChangeListener<Boolean>() {
-				@Override
-				public void changed(final ObservableValue<? extends Boolean> observable,
-						final Boolean oldValue,
-						final Boolean newValue) {
-					Platform.runLater(new Runnable() {
-						@Override
-						public void run() {
-							GridPane dummy = new GridPane();
-							valuesPhotos.add(dummy);
-							mListPhotos.layout();
-							valuesPhotos.remove(dummy);
-						}
-					});
-				}
-			});
-		}
+		// The thumbnails are loaded by the list cells, only for the visible rows.
+		ObservableList<EyePhotoPair> valuesPhotos = FXCollections.observableArrayList(eyePhotos);
 
 		mPreviousName = name;
 
@@ -254,13 +303,40 @@ public class DisplayPhotosController extends BaseController implements Initializ
 		});
 	}
 
+	/**
+	 * Prefetch the images of the visits neighbouring a displayed eye photo pair, so that they can be displayed without
+	 * delay.
+	 *
+	 * @param pair
+	 *            The displayed eye photo pair.
+	 */
+	public final void prefetchNeighbours(final EyePhotoPair pair) {
+		List<EyePhotoPair> pairs = mListPhotos.getItems();
+		int index = pairs.indexOf(pair);
+		if (index < 0) {
+			return;
+		}
+
+		// The list is sorted newest first, so index + distance is the older visit. At each distance, the older neighbour is prefetched first.
+		List<EyePhotoPair> neighbours = new ArrayList<>();
+		for (int distance = 1; distance <= PREFETCH_DISTANCE; distance++) {
+			if (index + distance < pairs.size()) {
+				neighbours.add(pairs.get(index + distance));
+			}
+			if (index - distance >= 0) {
+				neighbours.add(pairs.get(index - distance));
+			}
+		}
+		ImagePrefetcher.prefetch(neighbours);
+	}
+
 	/**
 	 * Remove the item for one date from the list.
 	 *
-	 * @param node The row to be removed.
+	 * @param pair The eye photo pair to be removed.
 	 */
-	public void removeItem(final EyePhotoPairNode node) {
-		mListPhotos.getItems().remove(node);
+	public void removeItem(final EyePhotoPair pair) {
+		mListPhotos.getItems().remove(pair);
 	}
 
 	// METHODS CLONED FROM ANDROID
@@ -275,25 +351,27 @@ public class DisplayPhotosController extends BaseController implements Initializ
 	 * @return The list of subfolders.
 	 */
 	public static final List<String> getFolderNames(final File parentFolder, final String searchString) {
-		File[] folders = parentFolder.listFiles(new FileFilter() {
-			@Override
-			public boolean accept(final File pathname) {
-				return pathname.isDirectory() && nameStartsWith(pathname.getName(), searchString);
-			}
-		});
+		File[] subfolders = MetadataIndex.getInstance().getSubfolders(parentFolder);
 
 		List<String> folderNames = new ArrayList<>();
-		if (folders == null) {
+		if (subfolders == null) {
 			return folderNames;
 		}
 
+		List<File> folders = new ArrayList<>();
+		for (File folder : subfolders) {
+			if (nameStartsWith(folder.getName(), searchString)) {
+				folders.add(folder);
+			}
+		}
+
 		Collator collator = Collator.getInstance();
 		final Map<File, CollationKey> collationMap = new HashMap<>();
 		for (File folder : folders) {
 			collationMap.put(folder, collator.getCollationKey(getFilenameForSorting(folder)));
 		}
 
-		Arrays.sort(folders, new Comparator<File>() {
+		Collections.sort(folders, new Comparator<File>() {
 			@Override
 			public int compare(final File f1, final File f2) {
 				return collationMap.get(f1).compareTo(collationMap.get(f2));
@@ -363,12 +441,7 @@ public class DisplayPhotosController extends BaseController implements Initializ
 			}
 		});
 
-		File[] files = folder.listFiles(new FilenameFilter() {
-			@Override
-			public boolean accept(final File dir, final String name) {
-				return name.toUpperCase().endsWith(".JPG");
-			}
-		});
+		File[] files = MetadataIndex.getInstance().getJpegFiles(folder);
 
 		if (files == null) {
 			return new EyePhotoPair[0];
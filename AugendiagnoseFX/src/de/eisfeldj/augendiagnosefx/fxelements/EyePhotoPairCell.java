@@ -0,0 +1,41 @@
+package de.eisfeldj.augendiagnosefx.fxelements;
+
+import de.eisfeldj.augendiagnosefx.controller.DisplayPhotosController;
+import de.eisfeldj.augendiagnosefx.util.imagefile.EyePhotoPair;
+
+import javafx.scene.control.ListCell;
+
+/**
+ * List cell for displaying a pair of eye photos. The ListView creates cells only for the visible rows and reuses them
+ * while scrolling, so that thumbnails are loaded only for the visible pairs.
+ */
+public class EyePhotoPairCell extends ListCell<EyePhotoPair> {
+	/**
+	 * The node displaying the eye photo pair, which is reused for all pairs displayed in this cell.
+	 */
+	private EyePhotoPairNode mNode;
+
+	/**
+	 * Constructor.
+	 *
+	 * @param parentController
+	 *            The parent controller.
+	 */
+	public EyePhotoPairCell(final DisplayPhotosController parentController) {
+		mNode = new EyePhotoPairNode(parentController);
+	}
+
+	@Override
+	protected final void updateItem(final EyePhotoPair pair, final boolean empty) {
+		super.updateItem(pair, empty);
+
+		if (empty || pair == null) {
+			mNode.setPair(null);
+			setGraphic(null);
+		}
+		else {
+			mNode.setPair(pair);
+			setGraphic(mNode);
+		}
+	}
+}
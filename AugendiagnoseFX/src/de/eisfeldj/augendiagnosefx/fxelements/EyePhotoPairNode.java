@@ -1,5 +1,7 @@
 package de.eisfeldj.augendiagnosefx.fxelements;
 
+import java.util.concurrent.Future;
+
 import de.eisfeldj.augendiagnosefx.controller.Controller;
 import de.eisfeldj.augendiagnosefx.controller.DisplayImageHolderController;
 import de.eisfeldj.augendiagnosefx.controller.DisplayImagePairController;
@@ -13,14 +15,13 @@ import de.eisfeldj.augendiagnosefx.util.PreferenceUtil;
 import de.eisfeldj.augendiagnosefx.util.ResourceConstants;
 import de.eisfeldj.augendiagnosefx.util.ResourceUtil;
 import de.eisfeldj.augendiagnosefx.util.imagefile.EyePhoto;
+import de.eisfeldj.augendiagnosefx.util.imagefile.EyePhoto.RightLeft;
 import de.eisfeldj.augendiagnosefx.util.imagefile.EyePhotoPair;
-import de.eisfeldj.augendiagnosefx.util.imagefile.ImageUtil.Resolution;
+import de.eisfeldj.augendiagnosefx.util.imagefile.ThumbnailLoader;
 
 import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
 
 import javafx.application.Platform;
-import javafx.beans.property.BooleanProperty;
-import javafx.beans.property.SimpleBooleanProperty;
 import javafx.beans.value.ChangeListener;
 import javafx.beans.value.ObservableValue;
 import javafx.event.ActionEvent;
@@ -30,7 +31,6 @@ import javafx.scene.Parent;
 import javafx.scene.control.ContextMenu;
 import javafx.scene.control.Label;
 import javafx.scene.control.MenuItem;
-import javafx.scene.image.Image;
 import javafx.scene.image.ImageView;
 import javafx.scene.input.MouseButton;
 import javafx.scene.input.MouseEvent;
@@ -59,6 +59,26 @@ public class EyePhotoPairNode extends GridPane implements Controller {
 	 */
 	private EyePhotoPair mPair;
 
+	/**
+	 * The pending loading of the right thumbnail.
+	 */
+	private Future<?> mLoadingRight = null;
+
+	/**
+	 * The pending loading of the left thumbnail.
+	 */
+	private Future<?> mLoadingLeft = null;
+
+	/**
+	 * The number of the current thumbnail request of the right image view. Thumbnails of older requests are discarded.
+	 */
+	private long mRequestRight = 0;
+
+	/**
+	 * The number of the current thumbnail request of the left image view.
+	 */
+	private long mRequestLeft = 0;
+
 	/**
 	 * The label for the date.
 	 */
@@ -83,52 +103,36 @@ public class EyePhotoPairNode extends GridPane implements Controller {
 	}
 
 	/**
-	 * A boolean property indicating if images are loaded.
-	 */
-	private BooleanProperty mImagesLoadedProperty = new SimpleBooleanProperty(false);
-
-	public final BooleanProperty getImagesLoadedProperty() {
-		return mImagesLoadedProperty;
-	}
-
-	/**
-	 * Constructor given a pair of eye photos.
+	 * Constructor without eye photos. The eye photos are set later via setPair, so that the node can be reused for
+	 * different pairs.
 	 *
-	 * @param pair
-	 *            The eye photo pair.
 	 * @param initialParentController
 	 *            The parent controller.
 	 */
 	@SuppressFBWarnings(value = "UR_UNINIT_READ", justification = "Is initialized via fxml")
-	public EyePhotoPairNode(final EyePhotoPair pair, final DisplayPhotosController initialParentController) {
+	public EyePhotoPairNode(final DisplayPhotosController initialParentController) {
 		mParentController = initialParentController;
-		mPair = pair;
 
 		FxmlUtil.loadFromFxml(this, FxmlConstants.FXML_EYE_PHOTO_PAIR_NODE);
 
-		mLabelDate.setText(pair.getDateDisplayString());
-
-		if (pair.getRightEye() != null) {
-			mImageViewRight.setImageView(getImageView(pair.getRightEye()));
-		}
-		if (pair.getLeftEye() != null) {
-			mImageViewLeft.setImageView(getImageView(pair.getLeftEye()));
-		}
+		mImageViewRight.setImageView(createImageView(RightLeft.RIGHT));
+		mImageViewLeft.setImageView(createImageView(RightLeft.LEFT));
 
 		mLabelDate.setOnMouseClicked(new EventHandler<MouseEvent>() {
 			@Override
 			public void handle(final MouseEvent event) {
-				if (event.getButton() != MouseButton.PRIMARY) {
+				if (event.getButton() != MouseButton.PRIMARY || mPair == null) {
 					return;
 				}
 				if (MainController.getInstance().isSplitPane()) {
 					return;
 				}
 
-				if (pair.isComplete()) {
+				if (mPair.isComplete()) {
 					DisplayImagePairController controller =
 							(DisplayImagePairController) FxmlUtil.displaySubpage(FxmlConstants.FXML_DISPLAY_IMAGE_PAIR, -1, true);
-					controller.setEyePhotos(pair);
+					controller.setEyePhotos(mPair);
+					mParentController.prefetchNeighbours(mPair);
 				}
 			}
 		});
@@ -136,6 +140,67 @@ public class EyePhotoPairNode extends GridPane implements Controller {
 		mLabelDate.setContextMenu(createDateContextMenu());
 	}
 
+	/**
+	 * Display a pair of eye photos. The thumbnails are loaded in the background, and placeholders are displayed until
+	 * they are available. Loading of thumbnails of the previously displayed pair is cancelled, and thumbnails of the
+	 * previously displayed pair which are loaded nevertheless are not displayed.
+	 *
+	 * @param pair
+	 *            The eye photo pair, or null for displaying nothing.
+	 */
+	public final void setPair(final EyePhotoPair pair) {
+		cancelLoading();
+		mPair = pair;
+		final long requestRight = ++mRequestRight;
+		final long requestLeft = ++mRequestLeft;
+
+		mLabelDate.setText(pair == null ? null : pair.getDateDisplayString());
+
+		EyePhoto rightEye = pair == null ? null : pair.getRightEye();
+		ImageView imageViewRight = mImageViewRight.getImageView();
+		if (rightEye == null) {
+			imageViewRight.setImage(null);
+			imageViewRight.setFitHeight(0);
+		}
+		else {
+			imageViewRight.setImage(ThumbnailLoader.getPlaceholder());
+			mLoadingRight = ThumbnailLoader.load(rightEye, image -> {
+				if (requestRight == mRequestRight) {
+					imageViewRight.setImage(image);
+				}
+			});
+		}
+
+		EyePhoto leftEye = pair == null ? null : pair.getLeftEye();
+		ImageView imageViewLeft = mImageViewLeft.getImageView();
+		if (leftEye == null) {
+			imageViewLeft.setImage(null);
+			imageViewLeft.setFitHeight(0);
+		}
+		else {
+			imageViewLeft.setImage(ThumbnailLoader.getPlaceholder());
+			mLoadingLeft = ThumbnailLoader.load(leftEye, image -> {
+				if (requestLeft == mRequestLeft) {
+					imageViewLeft.setImage(image);
+				}
+			});
+		}
+	}
+
+	/**
+	 * Cancel pending loading of thumbnails.
+	 */
+	private void cancelLoading() {
+		if (mLoadingRight != null) {
+			mLoadingRight.cancel(false);
+			mLoadingRight = null;
+		}
+		if (mLoadingLeft != null) {
+			mLoadingLeft.cancel(false);
+			mLoadingLeft = null;
+		}
+	}
+
 	/**
 	 * Create the context menu for the date.
 	 *
@@ -150,12 +215,16 @@ public class EyePhotoPairNode extends GridPane implements Controller {
 		menuItemRemove.setOnAction(new EventHandler<ActionEvent>() {
 			@Override
 			public void handle(final ActionEvent event) {
+				final EyePhotoPair pair = mPair;
+				if (pair == null) {
+					return;
+				}
 				DialogUtil.displayConfirmationMessage(new ConfirmDialogListener() {
 
 					@Override
 					public void onDialogPositiveClick() {
-						mParentController.removeItem(EyePhotoPairNode.this);
-						mPair.delete();
+						mParentController.removeItem(pair);
+						pair.delete();
 					}
 
 					@Override
@@ -163,7 +232,7 @@ public class EyePhotoPairNode extends GridPane implements Controller {
 						// do nothing
 					}
 				}, ResourceConstants.BUTTON_DELETE,
-						ResourceConstants.MESSAGE_DIALOG_CONFIRM_DELETE_DATE, mPair.getPersonName(), mLabelDate.getText());
+						ResourceConstants.MESSAGE_DIALOG_CONFIRM_DELETE_DATE, pair.getPersonName(), pair.getDateDisplayString());
 			}
 		});
 		menu.getItems().add(menuItemRemove);
@@ -172,29 +241,22 @@ public class EyePhotoPairNode extends GridPane implements Controller {
 	}
 
 	/**
-	 * Get the image view for a thumbnail.
+	 * Create the image view for a thumbnail.
 	 *
-	 * @param eyePhoto
-	 *            The eye photo to be displayed.
+	 * @param rightLeft
+	 *            The side of the eye photos displayed in this image view.
 	 * @return The image view.
 	 */
-	private ImageView getImageView(final EyePhoto eyePhoto) {
-		Image image = eyePhoto.getImage(Resolution.THUMB);
-		image.progressProperty().addListener(new ChangeListener<Number>() {
-			@Override
-			public void changed(final ObservableValue<? extends Number> observable, final Number oldValue,
-					final Number newValue) {
-				if (newValue.doubleValue() == 1) {
-					checkIfImagesLoaded();
-				}
-			}
-		});
-
-		ImageView imageView = new ImageView(image);
+	private ImageView createImageView(final RightLeft rightLeft) {
+		ImageView imageView = new ImageView();
 		imageView.setPreserveRatio(true);
 		imageView.setOnMouseClicked(new EventHandler<MouseEvent>() {
 			@Override
 			public void handle(final MouseEvent event) {
+				EyePhoto eyePhoto = mPair == null ? null : rightLeft == RightLeft.RIGHT ? mPair.getRightEye() : mPair.getLeftEye();
+				if (eyePhoto == null) {
+					return;
+				}
 				if (PreferenceUtil.getPreferenceBoolean(PreferenceUtil.KEY_SHOW_SPLIT_WINDOW)
 						&& !MainController.getInstance().isSplitPane()) {
 					MainController.getInstance().setSplitPane(FxmlConstants.FXML_DISPLAY_PHOTOS);
@@ -203,6 +265,7 @@ public class EyePhotoPairNode extends GridPane implements Controller {
 				DisplayImageHolderController controller = (DisplayImageHolderController) FxmlUtil
 						.displaySubpage(FxmlConstants.FXML_DISPLAY_IMAGE_HOLDER, mParentController.getPaneIndex(), true);
 				controller.setEyePhoto(eyePhoto);
+				mParentController.prefetchNeighbours(mPair);
 			}
 		});
 
@@ -211,7 +274,7 @@ public class EyePhotoPairNode extends GridPane implements Controller {
 			@Override
 			public void changed(final ObservableValue<? extends Number> observable, final Number oldValue,
 					final Number newValue) {
-				switch (eyePhoto.getRightLeft()) {
+				switch (rightLeft) {
 				case RIGHT:
 					mHeightRight = newValue.doubleValue();
 					break;
@@ -232,24 +295,4 @@ public class EyePhotoPairNode extends GridPane implements Controller {
 		return imageView;
 	}
 
-	/**
-	 * Check if the images are loaded.
-	 *
-	 * @return true if the images are loaded.
-	 */
-	private boolean checkIfImagesLoaded() {
-		if (mImagesLoadedProperty.get()) {
-			return true;
-		}
-
-		Image imageRight = mImageViewRight.getImageView().getImage();
-		Image imageLeft = mImageViewRight.getImageView().getImage();
-
-		boolean loaded = imageRight.getProgress() == 1 && imageLeft.getProgress() == 1;
-		if (loaded) {
-			mImagesLoadedProperty.set(true);
-		}
-		return loaded;
-	}
-
 }
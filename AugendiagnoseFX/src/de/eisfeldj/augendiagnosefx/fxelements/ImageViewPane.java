@@ -68,7 +68,7 @@ public class ImageViewPane extends Region {
 	@Override
 	protected final void layoutChildren() {
 		ImageView imageView = mImageViewProperty.get();
-		if (imageView != null) {
+		if (imageView != null && imageView.getImage() != null && imageView.getImage().getWidth() > 0) {
 			imageView.setFitWidth(getWidth());
 			double newHeight = getWidth() * imageView.getImage().getHeight() / imageView.getImage().getWidth();
 			imageView.setFitHeight(newHeight);
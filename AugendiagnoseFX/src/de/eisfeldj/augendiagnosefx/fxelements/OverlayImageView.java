@@ -1,9 +1,14 @@
 package de.eisfeldj.augendiagnosefx.fxelements;
 
+import java.util.Collections;
+
+import de.eisfeldj.augendiagnosefx.util.imagefile.ColorMappingRenderer;
+import de.eisfeldj.augendiagnosefx.util.imagefile.ImageTileRenderer;
 import de.eisfeldj.augendiagnosefx.util.imagefile.ImageUtil;
 import de.eisfeldj.augendiagnosefx.util.imagefile.ImageUtil.Resolution;
 import de.eisfeldj.augendiagnosefx.util.imagefile.JpegMetadata;
 
+import javafx.geometry.Rectangle2D;
 import javafx.scene.image.Image;
 import javafx.scene.paint.Color;
 
@@ -56,6 +61,16 @@ public class OverlayImageView extends SizableImageView {
 	 */
 	private double mCurrentImageWidth;
 
+	/**
+	 * The renderer for brightness, contrast, saturation and color temperature - used to keep slider movements fluent.
+	 */
+	private final ColorMappingRenderer mColorMappingRenderer = new ColorMappingRenderer();
+
+	/**
+	 * The renderer of the tiles displayed in higher resolution when zooming into the image.
+	 */
+	private final ImageTileRenderer mTileRenderer = new ImageTileRenderer();
+
 	/**
 	 * Display the overlay.
 	 *
@@ -128,19 +143,49 @@ public class OverlayImageView extends SizableImageView {
 	/**
 	 * Redisplay. (Can be used to switch between non-thumbnail and thumbnail view.
 	 *
+	 * <p>Full resolution is displayed as tiles on top of the image in normal resolution, so that the full image is
+	 * never loaded into memory.
+	 *
 	 * @param resolution
 	 *            Indicator of the resolution of the image.
 	 */
 	public final void redisplay(final Resolution resolution) {
-		Image newImage = ImageUtil.getImageForDisplay(getEyePhoto(), mOverlayType, mOverlayColor,
-				mBrightness, mContrast, mSaturation, mColorTemperature, resolution);
-		if (resolution != mCurrentResolution) {
-			multiplyZoomProperty(mCurrentImageWidth / newImage.getWidth());
-			mCurrentImageWidth = newImage.getWidth();
-			mCurrentResolution = resolution;
+		Resolution baseResolution = resolution == Resolution.FULL ? Resolution.NORMAL : resolution;
+		ImageUtil.renderImageForDisplay(mColorMappingRenderer, getEyePhoto(), mOverlayType, mOverlayColor,
+				mBrightness, mContrast, mSaturation, mColorTemperature, baseResolution, newImage -> {
+					if (resolution != mCurrentResolution) {
+						multiplyZoomProperty(mCurrentImageWidth / newImage.getWidth());
+						mCurrentImageWidth = newImage.getWidth();
+						mCurrentResolution = resolution;
+					}
+
+					getImageView().setImage(newImage);
+					updateTiles();
+				});
+	}
+
+	/*
+	 * Override in order to display the visible part of the image in higher resolution when zooming in beyond the
+	 * resolution of the displayed image. Tiles are not displayed for thumbnails, which are used while changing the
+	 * settings.
+	 *
+	 * (non-Javadoc)
+	 *
+	 * @see de.eisfeldj.augendiagnosefx.fxelements.SizableImageView#updateTiles()
+	 */
+	@Override
+	protected final void updateTiles() {
+		Image image = getImageView().getImage();
+		Rectangle2D visibleArea = getVisibleArea();
+		if (getEyePhoto() == null || image == null || visibleArea == null || mCurrentResolution == Resolution.THUMB
+				|| getDisplayWidth() <= image.getWidth()) {
+			mTileRenderer.cancel();
+			displayTiles(Collections.emptyList());
+			return;
 		}
 
-		getImageView().setImage(newImage);
+		mTileRenderer.render(getEyePhoto(), visibleArea, getDisplayWidth(), image.getWidth(), mOverlayType, mOverlayColor,
+				mBrightness, mContrast, mSaturation, mColorTemperature, this::displayTiles);
 	}
 
 	/*
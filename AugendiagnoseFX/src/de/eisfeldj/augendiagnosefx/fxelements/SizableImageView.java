@@ -1,5 +1,7 @@
 package de.eisfeldj.augendiagnosefx.fxelements;
 
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 
 import com.sun.javafx.scene.NodeEventDispatcher;
@@ -8,6 +10,7 @@ import de.eisfeldj.augendiagnosefx.util.DialogUtil;
 import de.eisfeldj.augendiagnosefx.util.DialogUtil.ProgressDialog;
 import de.eisfeldj.augendiagnosefx.util.ResourceConstants;
 import de.eisfeldj.augendiagnosefx.util.imagefile.EyePhoto;
+import de.eisfeldj.augendiagnosefx.util.imagefile.ImageTileRenderer.Tile;
 import de.eisfeldj.augendiagnosefx.util.imagefile.ImageUtil.Resolution;
 import de.eisfeldj.augendiagnosefx.util.imagefile.JpegMetadata;
 
@@ -20,6 +23,8 @@ import javafx.event.Event;
 import javafx.event.EventDispatchChain;
 import javafx.event.EventDispatcher;
 import javafx.event.EventHandler;
+import javafx.geometry.Bounds;
+import javafx.geometry.Rectangle2D;
 import javafx.scene.control.ScrollPane;
 import javafx.scene.image.Image;
 import javafx.scene.image.ImageView;
@@ -29,6 +34,7 @@ import javafx.scene.input.TouchEvent;
 import javafx.scene.input.TouchPoint;
 import javafx.scene.input.ZoomEvent;
 import javafx.scene.layout.BorderPane;
+import javafx.scene.layout.Pane;
 
 /**
  * Pane containing an image that can be resized.
@@ -94,6 +100,16 @@ public class SizableImageView extends ScrollPane {
 		return mImageView;
 	}
 
+	/**
+	 * The layer displaying tiles in higher resolution on top of the image.
+	 */
+	private Pane mTileLayer;
+
+	/**
+	 * The tiles displayed in the tile layer.
+	 */
+	private List<Tile> mTiles = Collections.emptyList();
+
 	/**
 	 * The displayed eye photo.
 	 */
@@ -119,7 +135,12 @@ public class SizableImageView extends ScrollPane {
 	public SizableImageView() {
 		mImageView = new ImageView();
 		mImageView.setPreserveRatio(true);
-		setContent(new BorderPane(mImageView));
+		mTileLayer = new Pane();
+		mTileLayer.setManaged(false);
+		mTileLayer.setMouseTransparent(true);
+		BorderPane content = new BorderPane(mImageView);
+		content.getChildren().add(mTileLayer);
+		setContent(content);
 
 		setPannable(true);
 		setFitToHeight(true);
@@ -160,6 +181,18 @@ public class SizableImageView extends ScrollPane {
 				mMouseYProperty.set(event.getY());
 			}
 		});
+
+		ChangeListener<Object> visibleAreaListener = new ChangeListener<Object>() {
+			@Override
+			public void changed(final ObservableValue<? extends Object> observable, final Object oldValue, final Object newValue) {
+				positionTiles();
+				updateTiles();
+			}
+		};
+		hvalueProperty().addListener(visibleAreaListener);
+		vvalueProperty().addListener(visibleAreaListener);
+		viewportBoundsProperty().addListener(visibleAreaListener);
+		mImageView.boundsInParentProperty().addListener(visibleAreaListener);
 	}
 
 	/**
@@ -432,6 +465,87 @@ public class SizableImageView extends ScrollPane {
 		mIsInitialized = true;
 	}
 
+	/**
+	 * Update the tiles displayed in higher resolution on top of the image. Called whenever the visible part of the
+	 * image changes. By default, no tiles are displayed.
+	 */
+	// OVERRIDABLE
+	protected void updateTiles() {
+		// do nothing
+	}
+
+	/**
+	 * Display tiles in higher resolution on top of the image, replacing the previously displayed tiles.
+	 *
+	 * @param tiles
+	 *            The tiles, in the order in which they are drawn.
+	 */
+	protected final void displayTiles(final List<Tile> tiles) {
+		if (tiles.isEmpty() && mTiles.isEmpty()) {
+			return;
+		}
+		mTiles = tiles;
+		List<ImageView> tileViews = new ArrayList<>();
+		for (Tile tile : tiles) {
+			tileViews.add(new ImageView(tile.getImage()));
+		}
+		mTileLayer.getChildren().setAll(tileViews);
+		positionTiles();
+	}
+
+	/**
+	 * Position the displayed tiles according to the current position and size of the image.
+	 */
+	private void positionTiles() {
+		Bounds imageBounds = mImageView.getBoundsInParent();
+		mTileLayer.relocate(imageBounds.getMinX(), imageBounds.getMinY());
+
+		double width = mImageView.getLayoutBounds().getWidth();
+		double height = mImageView.getLayoutBounds().getHeight();
+		for (int i = 0; i < mTiles.size(); i++) {
+			Tile tile = mTiles.get(i);
+			ImageView tileView = (ImageView) mTileLayer.getChildren().get(i);
+			// Round to full pixels, so that there are no gaps between the tiles.
+			double left = Math.round(tile.getX() * width);
+			double top = Math.round(tile.getY() * height);
+			tileView.relocate(left, top);
+			tileView.setFitWidth(Math.round((tile.getX() + tile.getWidth()) * width) - left);
+			tileView.setFitHeight(Math.round((tile.getY() + tile.getHeight()) * height) - top);
+		}
+	}
+
+	/**
+	 * Get the visible part of the image.
+	 *
+	 * @return The visible part, in coordinates relative to the size of the image (from 0 to 1), or null if the image
+	 *         is not visible.
+	 */
+	protected final Rectangle2D getVisibleArea() {
+		Bounds imageBounds = mImageView.getLayoutBounds();
+		if (getScene() == null || imageBounds.getWidth() <= 0 || imageBounds.getHeight() <= 0) {
+			return null;
+		}
+		Bounds visibleBounds = mImageView.sceneToLocal(localToScene(getLayoutBounds()));
+
+		double minX = Math.max(0, visibleBounds.getMinX() / imageBounds.getWidth());
+		double minY = Math.max(0, visibleBounds.getMinY() / imageBounds.getHeight());
+		double maxX = Math.min(1, visibleBounds.getMaxX() / imageBounds.getWidth());
+		double maxY = Math.min(1, visibleBounds.getMaxY() / imageBounds.getHeight());
+		if (maxX <= minX || maxY <= minY) {
+			return null;
+		}
+		return new Rectangle2D(minX, minY, maxX - minX, maxY - minY);
+	}
+
+	/**
+	 * Get the width in which the image is displayed.
+	 *
+	 * @return The display width.
+	 */
+	protected final double getDisplayWidth() {
+		return mImageView.getLayoutBounds().getWidth();
+	}
+
 	/**
 	 * Store image position for later retrieval. Can be used to keep view center if the view size changes.
 	 */
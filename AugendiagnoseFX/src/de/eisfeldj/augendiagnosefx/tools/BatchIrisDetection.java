@@ -0,0 +1,366 @@
+package de.eisfeldj.augendiagnosefx.tools;
+
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
+
+import de.eisfeldj.augendiagnosefx.util.Logger;
+import de.eisfeldj.augendiagnosefx.util.PreferenceUtil;
+import de.eisfeldj.augendiagnosefx.util.imagefile.JpegMetadata;
+import de.eisfeldj.augendiagnosefx.util.imagefile.JpegMetadataUtil;
+import de.eisfeldj.augendiagnosefx.util.imagefile.PupilAndIrisDetector;
+
+/**
+ * Command line tool for detecting iris and pupil position in all photos of a folder tree which do not yet have an
+ * overlay position. Runs without JavaFX, so that it can be used for backfilling archived photos.
+ *
+ * <p>Usage: BatchIrisDetection [-threads n] [folder]. Default folder is the photo folder from the preferences.
+ */
+public final class BatchIrisDetection {
+	/**
+	 * The file name pattern of JPEG files.
+	 */
+	private static final String JPEG_FILE_PATTERN = "(?i).*\\.jpe?g";
+
+	/**
+	 * The maximum size of decoded images. Bigger images are subsampled while decoding.
+	 */
+	private static final int MAX_DECODE_SIZE = PreferenceUtil.getPreferenceInt(PreferenceUtil.KEY_MAX_BITMAP_SIZE);
+
+	/**
+	 * Number of nanoseconds per millisecond.
+	 */
+	private static final double NANOS_PER_MILLI = 1_000_000.0;
+
+	/**
+	 * Number of nanoseconds per second.
+	 */
+	private static final double NANOS_PER_SECOND = 1_000_000_000.0;
+
+	/**
+	 * The folder to be processed.
+	 */
+	private final File mFolder;
+
+	/**
+	 * The number of photos processed in parallel.
+	 */
+	private final int mThreadCount;
+
+	/**
+	 * The accumulated duration of each stage, in nanoseconds.
+	 */
+	private final AtomicLong[] mStageDurations = new AtomicLong[Stage.values().length];
+
+	/**
+	 * The number of executions of each stage.
+	 */
+	private final AtomicInteger[] mStageCounts = new AtomicInteger[Stage.values().length];
+
+	/**
+	 * The number of photos skipped as they already have an overlay position.
+	 */
+	private final AtomicInteger mSkippedCount = new AtomicInteger();
+
+	/**
+	 * The number of photos where iris and pupil have been found.
+	 */
+	private final AtomicInteger mDetectedCount = new AtomicInteger();
+
+	/**
+	 * The number of photos where iris and pupil have not been found.
+	 */
+	private final AtomicInteger mNotFoundCount = new AtomicInteger();
+
+	/**
+	 * The number of photos which could not be processed due to errors.
+	 */
+	private final AtomicInteger mFailedCount = new AtomicInteger();
+
+	/**
+	 * Create the batch processor.
+	 *
+	 * @param folder The folder to be processed.
+	 * @param threadCount The number of photos processed in parallel.
+	 */
+	private BatchIrisDetection(final File folder, final int threadCount) {
+		mFolder = folder;
+		mThreadCount = threadCount;
+		for (int i = 0; i < mStageDurations.length; i++) {
+			mStageDurations[i] = new AtomicLong();
+			mStageCounts[i] = new AtomicInteger();
+		}
+	}
+
+	/**
+	 * Main method.
+	 *
+	 * @param args
+	 *            The command line arguments.
+	 * @throws IOException thrown if the folder cannot be read.
+	 * @throws InterruptedException thrown if interrupted while waiting for the processing.
+	 */
+	public static void main(final String[] args) throws IOException, InterruptedException {
+		String folderName = PreferenceUtil.getPreferenceString(PreferenceUtil.KEY_FOLDER_PHOTOS);
+		int threadCount = Runtime.getRuntime().availableProcessors();
+		for (int i = 0; i < args.length; i++) {
+			if ("-threads".equals(args[i]) && i + 1 < args.length) {
+				threadCount = Integer.parseInt(args[++i]);
+			}
+			else {
+				folderName = args[i];
+			}
+		}
+
+		// SYSTEMOUT:OFF
+		if (!JpegMetadataUtil.changeJpegAllowed()) {
+			System.err.println("Storage of metadata in JPEG files is disabled in the preferences.");
+			return;
+		}
+		File folder = new File(folderName);
+		if (!folder.isDirectory()) {
+			System.err.println("Folder " + folder.getAbsolutePath() + " does not exist.");
+			return;
+		}
+		// SYSTEMOUT:ON
+
+		new BatchIrisDetection(folder, Math.max(1, threadCount)).process();
+	}
+
+	/**
+	 * Process all photos in the folder tree.
+	 *
+	 * @throws IOException thrown if the folder cannot be read.
+	 * @throws InterruptedException thrown if interrupted while waiting for the processing.
+	 */
+	private void process() throws IOException, InterruptedException {
+		List<Path> files;
+		try (Stream<Path> paths = Files.walk(Paths.get(mFolder.getAbsolutePath()))) {
+			files = paths.filter(path -> Files.isRegularFile(path) && path.getFileName().toString().matches(JPEG_FILE_PATTERN))
+					.sorted().collect(Collectors.toCollection(ArrayList::new));
+		}
+
+		long startTime = System.nanoTime();
+		ExecutorService executor = Executors.newFixedThreadPool(mThreadCount);
+		for (Path file : files) {
+			executor.execute(() -> processFile(file.toFile()));
+		}
+		executor.shutdown();
+		executor.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+		long duration = System.nanoTime() - startTime;
+
+		printReport(files.size(), duration);
+	}
+
+	/**
+	 * Detect iris and pupil in a single photo and store the result in its metadata.
+	 *
+	 * @param file The photo.
+	 */
+	private void processFile(final File file) {
+		try {
+			long timestamp = System.nanoTime();
+			JpegMetadata metadata = JpegMetadataUtil.getMetadata(file.getAbsolutePath());
+			timestamp = addStageDuration(Stage.READ_METADATA, timestamp);
+			if (metadata.hasOverlayPosition() && !metadata.hasFlag(JpegMetadata.FLAG_OVERLAY_SET_BY_CAMERA_ACTIVITY)) {
+				// Do not overwrite manually set overlay position.
+				mSkippedCount.incrementAndGet();
+				return;
+			}
+
+			DecodedImage image = decode(file);
+			timestamp = addStageDuration(Stage.DECODE, timestamp);
+
+			// Photos are processed in parallel, therefore each detection runs sequentially.
+			PupilAndIrisDetector detector = new PupilAndIrisDetector(image.mPixels, image.mWidth, image.mHeight, 1,
+					PupilAndIrisDetector.DEFAULT_COARSE_CANDIDATE_COUNT, PupilAndIrisDetector.DEFAULT_STATISTICS_BACKEND);
+			timestamp = addStageDuration(Stage.DETECT, timestamp);
+			if (!detector.isSuccessful()) {
+				mNotFoundCount.incrementAndGet();
+				return;
+			}
+
+			detector.updateMetadata(metadata);
+			JpegMetadataUtil.changeMetadata(file.getAbsolutePath(), metadata);
+			addStageDuration(Stage.WRITE_METADATA, timestamp);
+			mDetectedCount.incrementAndGet();
+		}
+		catch (Exception e) {
+			mFailedCount.incrementAndGet();
+			Logger.error("Failed to detect iris and pupil position for file " + file.getAbsolutePath(), e);
+			// SYSTEMOUT:OFF
+			System.err.println("Failed to process " + file.getAbsolutePath() + ": " + e);
+			// SYSTEMOUT:ON
+		}
+	}
+
+	/**
+	 * Add the duration of a stage to the statistics.
+	 *
+	 * @param stage The stage.
+	 * @param startTime The start time of the stage, in nanoseconds.
+	 * @return The end time of the stage, in nanoseconds.
+	 */
+	private long addStageDuration(final Stage stage, final long startTime) {
+		long endTime = System.nanoTime();
+		mStageDurations[stage.ordinal()].addAndGet(endTime - startTime);
+		mStageCounts[stage.ordinal()].incrementAndGet();
+		return endTime;
+	}
+
+	/**
+	 * Print the statistics of the processing.
+	 *
+	 * @param fileCount The number of files found.
+	 * @param duration The total duration, in nanoseconds.
+	 */
+	private void printReport(final int fileCount, final long duration) {
+		int analyzedCount = mDetectedCount.get() + mNotFoundCount.get();
+		double seconds = duration / NANOS_PER_SECOND;
+
+		// SYSTEMOUT:OFF
+		System.out.println("Folder:          " + mFolder.getAbsolutePath());
+		System.out.println("Threads:         " + mThreadCount);
+		System.out.println("Photos found:    " + fileCount);
+		System.out.println("Skipped:         " + mSkippedCount.get());
+		System.out.println("Detected:        " + mDetectedCount.get());
+		System.out.println("Not found:       " + mNotFoundCount.get());
+		System.out.println("Failed:          " + mFailedCount.get());
+		System.out.println(String.format(Locale.ENGLISH, "Total time:      %.1f s", seconds));
+		System.out.println(String.format(Locale.ENGLISH, "Throughput:      %.2f photos/s", seconds > 0 ? analyzedCount / seconds : 0));
+		for (Stage stage : Stage.values()) {
+			int count = mStageCounts[stage.ordinal()].get();
+			double totalMillis = mStageDurations[stage.ordinal()].get() / NANOS_PER_MILLI;
+			System.out.println(String.format(Locale.ENGLISH, "%-16s %6d x %10.1f ms avg, %12.1f ms total",
+					stage.toString().toLowerCase(Locale.ENGLISH) + ":", count, count > 0 ? totalMillis / count : 0, totalMillis));
+		}
+		// SYSTEMOUT:ON
+	}
+
+	/**
+	 * Decode a photo, applying EXIF rotation and subsampling big photos.
+	 *
+	 * @param file The photo.
+	 * @return The decoded image.
+	 * @throws IOException thrown if the photo cannot be decoded.
+	 */
+	private static DecodedImage decode(final File file) throws IOException {
+		BufferedImage image;
+		try (ImageInputStream input = ImageIO.createImageInputStream(file)) {
+			Iterator<ImageReader> readers = input == null ? null : ImageIO.getImageReaders(input);
+			if (readers == null || !readers.hasNext()) {
+				throw new IOException("No image reader for " + file.getAbsolutePath());
+			}
+			ImageReader reader = readers.next();
+			try {
+				reader.setInput(input, true, true);
+				int subsampling = Math.max(1, (Math.max(reader.getWidth(0), reader.getHeight(0)) - 1) / MAX_DECODE_SIZE + 1);
+				ImageReadParam param = reader.getDefaultReadParam();
+				param.setSourceSubsampling(subsampling, subsampling, 0, 0);
+				image = reader.read(0, param);
+			}
+			finally {
+				reader.dispose();
+			}
+		}
+
+		int width = image.getWidth();
+		int height = image.getHeight();
+		int[] pixels = image.getRGB(0, 0, width, height, null, 0, width);
+		return rotate(new DecodedImage(pixels, width, height), JpegMetadataUtil.getExifOrientationAngle(file));
+	}
+
+	/**
+	 * Rotate an image clockwise.
+	 *
+	 * @param image The image.
+	 * @param angle The rotation angle (0, 90, 180 or 270).
+	 * @return The rotated image.
+	 */
+	private static DecodedImage rotate(final DecodedImage image, final int angle) {
+		if (angle != 90 && angle != 180 && angle != 270) { // MAGIC_NUMBER
+			return image;
+		}
+		int width = image.mWidth;
+		int height = image.mHeight;
+		boolean isSwapped = angle != 180; // MAGIC_NUMBER
+		int targetWidth = isSwapped ? height : width;
+		int[] pixels = new int[width * height];
+		for (int y = 0; y < height; y++) {
+			for (int x = 0; x < width; x++) {
+				int targetIndex;
+				if (angle == 90) { // MAGIC_NUMBER
+					targetIndex = x * targetWidth + height - 1 - y;
+				}
+				else if (angle == 180) { // MAGIC_NUMBER
+					targetIndex = (height - 1 - y) * targetWidth + width - 1 - x;
+				}
+				else {
+					targetIndex = (width - 1 - x) * targetWidth + y;
+				}
+				pixels[targetIndex] = image.mPixels[y * width + x];
+			}
+		}
+		return new DecodedImage(pixels, targetWidth, isSwapped ? width : height);
+	}
+
+	/**
+	 * The stages of processing a photo.
+	 */
+	private enum Stage {
+		/**
+		 * The stage values.
+		 */
+		READ_METADATA, DECODE, DETECT, WRITE_METADATA
+	}
+
+	/**
+	 * A decoded photo.
+	 */
+	private static final class DecodedImage {
+		/**
+		 * The pixels of the image, as ARGB integer values, row by row.
+		 */
+		private final int[] mPixels;
+		/**
+		 * The width of the image.
+		 */
+		private final int mWidth;
+		/**
+		 * The height of the image.
+		 */
+		private final int mHeight;
+
+		/**
+		 * Create a decoded image.
+		 *
+		 * @param pixels The pixels of the image, as ARGB integer values, row by row.
+		 * @param width The width of the image.
+		 * @param height The height of the image.
+		 */
+		private DecodedImage(final int[] pixels, final int width, final int height) {
+			mPixels = pixels;
+			mWidth = width;
+			mHeight = height;
+		}
+	}
+}
@@ -68,6 +68,11 @@ public final class PreferenceUtil {
 	 */
 	public static final String KEY_THUMBNAIL_SIZE = "thumbnail_size";
 
+	/**
+	 * Preference key for the memory budget of the overlay cache (in MB).
+	 */
+	public static final String KEY_OVERLAY_CACHE_SIZE = "key_overlay_cache_size";
+
 	/**
 	 * Preference key for default overlay color.
 	 */
@@ -120,6 +125,7 @@ public final class PreferenceUtil {
 		DEFAULT_MAP.put(KEY_FOLDER_PHOTOS, "D:\\");
 		DEFAULT_MAP.put(KEY_MAX_BITMAP_SIZE, 2048); // MAGIC_NUMBER
 		DEFAULT_MAP.put(KEY_THUMBNAIL_SIZE, 1024); // MAGIC_NUMBER
+		DEFAULT_MAP.put(KEY_OVERLAY_CACHE_SIZE, 64); // MAGIC_NUMBER
 		DEFAULT_MAP.put(KEY_OVERLAY_COLOR, "#FF0000FF"); // RED
 		DEFAULT_MAP.put(KEY_SORT_BY_LAST_NAME, false);
 		DEFAULT_MAP.put(KEY_UPDATE_AUTOMATICALLY, false);
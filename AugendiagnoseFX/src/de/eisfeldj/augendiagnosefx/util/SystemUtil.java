@@ -60,6 +60,21 @@ public final class SystemUtil {
 		return new File(new File(System.getProperty("java.io.tmpdir")), Application.APPLICATION_NAME);
 	}
 
+	/**
+	 * Get the directory for persistent application data.
+	 *
+	 * @return The application data directory.
+	 */
+	public static File getApplicationDataDir() {
+		String appData = System.getenv("APPDATA");
+		if (appData != null) {
+			return new File(new File(appData), Application.APPLICATION_NAME);
+		}
+		else {
+			return new File(new File(System.getProperty("user.home")), "." + Application.APPLICATION_NAME);
+		}
+	}
+
 	/**
 	 * Get the path of the JVM.
 	 *
@@ -0,0 +1,162 @@
+package de.eisfeldj.augendiagnosefx.util.imagefile;
+
+import static de.eisfeldj.augendiagnosefx.util.imagefile.PupilSearchEngine.ASSUMED_PUPIL_BRIGHTNESS;
+import static de.eisfeldj.augendiagnosefx.util.imagefile.PupilSearchEngine.MAX_LEAP_WIDTH;
+import static de.eisfeldj.augendiagnosefx.util.imagefile.PupilSearchEngine.MIN_PUPIL_RADIUS;
+
+import java.util.Arrays;
+
+/**
+ * Coarse localisation of the pupil, based on a summed-area table of the brightness plane.
+ *
+ * <p>Disks are approximated by squares, so that the average brightness inside a candidate pupil and in the ring around
+ * it can be determined by a constant number of table lookups. This allows to rank all candidate centers quickly, so that
+ * only the most promising ones need to be analyzed by the exact quantile based statistics.
+ */
+final class CoarsePupilLocator {
+	/**
+	 * The summed-area table. Entry (x, y) contains the sum of brightnesses of all pixels left and above of (x, y).
+	 */
+	private final double[] mAreaSums;
+	/**
+	 * The width of the image.
+	 */
+	private final int mWidth;
+	/**
+	 * The height of the image.
+	 */
+	private final int mHeight;
+	/**
+	 * The resolution of the image (the maximum of width and height).
+	 */
+	private final int mResolution;
+
+	/**
+	 * Create the summed-area table for a brightness plane.
+	 *
+	 * @param brightnesses The brightness values of the image, row by row.
+	 * @param width The width of the image.
+	 * @param height The height of the image.
+	 */
+	protected CoarsePupilLocator(final float[] brightnesses, final int width, final int height) {
+		mWidth = width;
+		mHeight = height;
+		mResolution = Math.max(width, height);
+
+		int tableWidth = width + 1;
+		mAreaSums = new double[tableWidth * (height + 1)];
+		for (int y = 0; y < height; y++) {
+			double rowSum = 0;
+			for (int x = 0; x < width; x++) {
+				rowSum += brightnesses[y * width + x];
+				mAreaSums[(y + 1) * tableWidth + x + 1] = mAreaSums[y * tableWidth + x + 1] + rowSum;
+			}
+		}
+	}
+
+	/**
+	 * Find the most promising candidate centers within a rectangle.
+	 *
+	 * @param xStart The start x coordinate (inclusive).
+	 * @param xEnd The end x coordinate (exclusive).
+	 * @param yStart The start y coordinate (inclusive).
+	 * @param yEnd The end y coordinate (exclusive).
+	 * @param candidateCount The number of candidates to be returned. On equal scores, more candidates may be returned.
+	 * @return The selected candidates, as array of x coordinates and array of y coordinates, in the order of the rectangle
+	 *         (x in outer loop, y in inner loop).
+	 */
+	protected int[][] findCandidates(final int xStart, final int xEnd, final int yStart, final int yEnd, final int candidateCount) {
+		int columns = Math.max(0, xEnd - xStart);
+		int rows = Math.max(0, yEnd - yStart);
+		float[] scores = new float[columns * rows];
+		for (int x = xStart; x < xEnd; x++) {
+			for (int y = yStart; y < yEnd; y++) {
+				scores[(x - xStart) * rows + y - yStart] = getScore(x, y);
+			}
+		}
+
+		// Determine the score threshold. NaN values are sorted to the end and therefore never selected.
+		float[] sortedScores = Arrays.copyOf(scores, scores.length);
+		Arrays.sort(sortedScores);
+		int validCount = 0;
+		while (validCount < sortedScores.length && !Float.isNaN(sortedScores[validCount])) {
+			validCount++;
+		}
+		int selectedCount = Math.min(candidateCount, validCount);
+		if (selectedCount <= 0) {
+			return new int[2][0];
+		}
+		float threshold = sortedScores[validCount - selectedCount];
+
+		int resultCount = 0;
+		for (float score : scores) {
+			if (score >= threshold) {
+				resultCount++;
+			}
+		}
+		int[][] result = new int[2][resultCount];
+		int index = 0;
+		for (int i = 0; i < scores.length; i++) {
+			if (scores[i] >= threshold) {
+				result[0][index] = xStart + i / rows;
+				result[1][index] = yStart + i % rows;
+				index++;
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Get the coarse score of a candidate center. This is the maximum over all radii of a pupil leap value, where the
+	 * pupil and the surrounding ring are approximated by squares.
+	 *
+	 * @param xCenter The x coordinate of the center.
+	 * @param yCenter The y coordinate of the center.
+	 * @return The score.
+	 */
+	private float getScore(final int xCenter, final int yCenter) {
+		int maxPossibleRadius = Math.min(
+				Math.min(mWidth - 1 - xCenter, xCenter),
+				Math.min(mHeight - 1 - yCenter, yCenter));
+		int ringWidth = Math.max(1, Math.round(MAX_LEAP_WIDTH * mResolution));
+		int minRadius = Math.max(1, (int) (mResolution * MIN_PUPIL_RADIUS));
+
+		float score = 0;
+		double innerSum = getSquareSum(xCenter, yCenter, minRadius);
+		for (int radius = minRadius; radius + ringWidth <= maxPossibleRadius; radius++) {
+			double outerSum = getSquareSum(xCenter, yCenter, radius + ringWidth);
+			int innerSize = 2 * radius + 1;
+			int outerSize = 2 * (radius + ringWidth) + 1;
+			double innerBrightness = innerSum / (innerSize * innerSize);
+			double ringBrightness = (outerSum - innerSum) / (outerSize * outerSize - innerSize * innerSize);
+
+			double diff = (ASSUMED_PUPIL_BRIGHTNESS + ringBrightness) / (ASSUMED_PUPIL_BRIGHTNESS + innerBrightness) - 1;
+			if (diff > 0) {
+				// prefer big, dark circles - analogous to the exact statistics.
+				float newScore = (float) (Math.sqrt(radius) * diff / innerBrightness);
+				if (newScore > score) {
+					score = newScore;
+				}
+			}
+			innerSum = getSquareSum(xCenter, yCenter, radius + 1);
+		}
+		return score;
+	}
+
+	/**
+	 * Get the sum of brightnesses in a square around a center. The square must lie within the image.
+	 *
+	 * @param xCenter The x coordinate of the center.
+	 * @param yCenter The y coordinate of the center.
+	 * @param radius The half side length of the square (excluding the center).
+	 * @return The sum of brightnesses.
+	 */
+	private double getSquareSum(final int xCenter, final int yCenter, final int radius) {
+		int tableWidth = mWidth + 1;
+		int left = xCenter - radius;
+		int right = xCenter + radius + 1;
+		int top = (yCenter - radius) * tableWidth;
+		int bottom = (yCenter + radius + 1) * tableWidth;
+		return mAreaSums[bottom + right] - mAreaSums[bottom + left] - mAreaSums[top + right] + mAreaSums[top + left];
+	}
+}
@@ -0,0 +1,456 @@
+package de.eisfeldj.augendiagnosefx.util.imagefile;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.function.Consumer;
+
+import de.eisfeldj.augendiagnosefx.util.Logger;
+
+import javafx.application.Platform;
+import javafx.beans.value.ChangeListener;
+import javafx.beans.value.ObservableValue;
+import javafx.scene.image.Image;
+import javafx.scene.image.PixelFormat;
+import javafx.scene.image.WritableImage;
+import javafx.scene.image.WritablePixelFormat;
+import javafx.scene.paint.Color;
+
+/**
+ * Renderer applying brightness, contrast, saturation and color temperature to an image outside the JavaFX application
+ * thread.
+ *
+ * <p>Brightness, contrast and color temperature are applied via lookup tables per channel, and the image is processed
+ * in tiles of rows in parallel. The pixel buffers are reused as long as the base image does not change. If requests
+ * come in faster than they can be rendered (e.g. while dragging a slider), only the latest request is rendered. The
+ * result is published as WritableImage on the JavaFX application thread.
+ */
+public final class ColorMappingRenderer {
+	/**
+	 * The number four.
+	 */
+	private static final int FOUR = 4;
+	/**
+	 * The size of a byte.
+	 */
+	private static final int BYTE = 0xFF;
+	/**
+	 * The number of rows processed in one tile.
+	 */
+	private static final int TILE_ROWS = 64;
+
+	/**
+	 * The ForkJoinPool used for processing the tiles.
+	 */
+	private static final ForkJoinPool TILE_POOL = new ForkJoinPool(Runtime.getRuntime().availableProcessors());
+
+	/**
+	 * The thread running the rendering requests of all renderers.
+	 */
+	private static final ExecutorService RENDER_EXECUTOR = Executors.newSingleThreadExecutor(runnable -> {
+		Thread thread = new Thread(runnable, "ColorMappingRenderer");
+		thread.setDaemon(true);
+		return thread;
+	});
+
+	/**
+	 * The pixel format of the buffers.
+	 */
+	private static final WritablePixelFormat<ByteBuffer> PIXEL_FORMAT = PixelFormat.getByteBgraInstance();
+
+	/**
+	 * The request waiting to be rendered.
+	 */
+	private RenderRequest mPendingRequest = null;
+
+	/**
+	 * Flag indicating if the render thread is currently processing requests of this renderer.
+	 */
+	private boolean mIsRendering = false;
+
+	/**
+	 * The image whose pixels are stored in the source buffer.
+	 */
+	private Image mSourceImage = null;
+
+	/**
+	 * The pixels of the base image.
+	 */
+	private byte[] mSourcePixels = null;
+
+	/**
+	 * The buffer for the rendered pixels.
+	 */
+	private byte[] mTargetPixels = null;
+
+	/**
+	 * Render an image with changed colors. The callback is called on the JavaFX application thread, unless the request
+	 * is superseded by a later one.
+	 *
+	 * @param baseImage
+	 *            The base image.
+	 * @param brightness
+	 *            The brightness of the image.
+	 * @param contrast
+	 *            The contrast of the image.
+	 * @param saturation
+	 *            The saturation of the image.
+	 * @param colorTemperature
+	 *            The color temperature of the image.
+	 * @param callback
+	 *            The callback receiving the rendered image.
+	 */
+	public void render(final Image baseImage, final float brightness, final float contrast, final float saturation,
+			final float colorTemperature, final Consumer<Image> callback) {
+		synchronized (this) {
+			mPendingRequest = new RenderRequest(baseImage, brightness, contrast, saturation, colorTemperature, callback);
+		}
+
+		if (baseImage.getProgress() < 1) {
+			baseImage.progressProperty().addListener(new ChangeListener<Number>() {
+				@Override
+				public void changed(final ObservableValue<? extends Number> observable, final Number oldValue,
+						final Number newValue) {
+					if (newValue.doubleValue() == 1) {
+						baseImage.progressProperty().removeListener(this);
+						startRendering();
+					}
+				}
+			});
+		}
+		else {
+			startRendering();
+		}
+	}
+
+	/**
+	 * Start processing the pending requests, if not yet running.
+	 */
+	private synchronized void startRendering() {
+		if (!mIsRendering && mPendingRequest != null) {
+			mIsRendering = true;
+			RENDER_EXECUTOR.execute(this::processRequests);
+		}
+	}
+
+	/**
+	 * Render pending requests until there is no more request that is ready for rendering.
+	 */
+	private void processRequests() {
+		while (true) {
+			RenderRequest request;
+			synchronized (this) {
+				request = mPendingRequest;
+				if (request == null || request.mBaseImage.getProgress() < 1) {
+					// A request for an image still loading is started by the progress listener.
+					mIsRendering = false;
+					return;
+				}
+				mPendingRequest = null;
+			}
+
+			try {
+				processRequest(request);
+			}
+			catch (RuntimeException e) {
+				Logger.error("Failed to render image", e);
+			}
+			catch (InterruptedException e) {
+				Logger.error("Interrupted while rendering image", e);
+				synchronized (this) {
+					mIsRendering = false;
+				}
+				return;
+			}
+		}
+	}
+
+	/**
+	 * Render one request and publish the result.
+	 *
+	 * @param request
+	 *            The request.
+	 * @throws InterruptedException
+	 *             thrown if interrupted while waiting for the publication.
+	 */
+	private void processRequest(final RenderRequest request) throws InterruptedException {
+		Image baseImage = request.mBaseImage;
+		if (request.hasOriginalColors()) {
+			Platform.runLater(() -> request.mCallback.accept(baseImage));
+			return;
+		}
+
+		int width = (int) baseImage.getWidth();
+		int height = (int) baseImage.getHeight();
+		if (baseImage != mSourceImage) {
+			if (mSourcePixels == null || mSourcePixels.length != FOUR * width * height) {
+				mSourcePixels = new byte[FOUR * width * height];
+				mTargetPixels = new byte[FOUR * width * height];
+			}
+			baseImage.getPixelReader().getPixels(0, 0, width, height, PIXEL_FORMAT, mSourcePixels, 0, FOUR * width);
+			mSourceImage = baseImage;
+		}
+
+		applyColorMapping(mSourcePixels, mTargetPixels, width, height,
+				request.mBrightness, request.mContrast, request.mSaturation, request.mColorTemperature);
+
+		// Wait until the target buffer is copied into the image, so that it can be reused for the next request.
+		CountDownLatch published = new CountDownLatch(1);
+		Platform.runLater(() -> {
+			WritableImage image = new WritableImage(width, height);
+			try {
+				image.getPixelWriter().setPixels(0, 0, width, height, PIXEL_FORMAT, mTargetPixels, 0, FOUR * width);
+			}
+			finally {
+				published.countDown();
+			}
+			request.mCallback.accept(image);
+		});
+		published.await();
+	}
+
+	/**
+	 * Apply brightness, contrast, saturation and color temperature to pixels in BGRA format. Source and target may be
+	 * the same array.
+	 *
+	 * @param source
+	 *            The source pixels.
+	 * @param target
+	 *            The array where the target pixels are stored.
+	 * @param width
+	 *            The width of the image.
+	 * @param height
+	 *            The height of the image.
+	 * @param brightness
+	 *            The brightness of the image.
+	 * @param contrast
+	 *            The contrast of the image.
+	 * @param saturation
+	 *            The saturation of the image.
+	 * @param colorTemperature
+	 *            The color temperature of the image.
+	 */
+	static void applyColorMapping(final byte[] source, final byte[] target, final int width, final int height, // SUPPRESS_CHECKSTYLE
+			final float brightness, final float contrast, final float saturation, final float colorTemperature) {
+		ColorMapping colorMapping = new ColorMapping(brightness, contrast, saturation, colorTemperature);
+		TILE_POOL.invoke(new TileTask(colorMapping, source, target, width, 0, height));
+	}
+
+	/**
+	 * Convert a number into a byte (ensuring the appropriate range).
+	 *
+	 * @param number The number.
+	 * @return The resulting byte.
+	 */
+	private static byte toColorByte(final float number) {
+		return (byte) Math.min(BYTE, Math.max(0, number));
+	}
+
+	/**
+	 * Convert a temperature into a color value representing the color of this temperature.
+	 *
+	 * @param temperature The temperature value (in the range -1..1).
+	 * @return The color value.
+	 */
+	private static Color convertTemperatureToColor(final double temperature) {
+		if (temperature >= 0) {
+			return Color.rgb((int) (BYTE - 150 * temperature), (int) (BYTE - 105 * temperature), BYTE); // MAGIC_NUMBER
+		}
+		else {
+			return Color.rgb(BYTE, (int) (BYTE + 80 * temperature), (int) (BYTE + 145 * temperature)); // MAGIC_NUMBER
+		}
+	}
+
+	/**
+	 * The parameters of a render request.
+	 */
+	private static final class RenderRequest {
+		// JAVADOC:OFF
+		private final Image mBaseImage;
+		private final float mBrightness;
+		private final float mContrast;
+		private final float mSaturation;
+		private final float mColorTemperature;
+		private final Consumer<Image> mCallback;
+
+		// JAVADOC:ON
+
+		/**
+		 * Create a render request.
+		 *
+		 * @param baseImage The base image.
+		 * @param brightness The brightness.
+		 * @param contrast The contrast.
+		 * @param saturation The saturation.
+		 * @param colorTemperature The color temperature.
+		 * @param callback The callback receiving the rendered image.
+		 */
+		private RenderRequest(final Image baseImage, final float brightness, final float contrast, final float saturation,
+				final float colorTemperature, final Consumer<Image> callback) {
+			mBaseImage = baseImage;
+			mBrightness = brightness;
+			mContrast = contrast;
+			mSaturation = saturation;
+			mColorTemperature = colorTemperature;
+			mCallback = callback;
+		}
+
+		/**
+		 * Check if the request leaves the colors unchanged.
+		 *
+		 * @return true if the colors are unchanged.
+		 */
+		private boolean hasOriginalColors() {
+			return mBrightness == 0 && mContrast == 1 && mSaturation == 1 && mColorTemperature == 0;
+		}
+	}
+
+	/**
+	 * Lookup tables for the color mapping.
+	 *
+	 * <p>The logic simulates OverlayPinchImageView.changeBitmapContrastBrightness from Android. Each output channel is
+	 * saturation * own channel + oppositeSaturation * other channels + offset, where each input channel is multiplied
+	 * by a factor depending on contrast and color temperature. Both products are tabulated per channel and input value,
+	 * so that the result is identical to the direct calculation.
+	 */
+	private static final class ColorMapping {
+		/**
+		 * The contribution of each channel to itself, by channel (B, G, R) and input value.
+		 */
+		private final float[][] mOwnContribution = new float[3][BYTE + 1];
+		/**
+		 * The contribution of each channel to the other channels, by channel (B, G, R) and input value.
+		 */
+		private final float[][] mOtherContribution = new float[3][BYTE + 1];
+		/**
+		 * The offset added to each channel.
+		 */
+		private final float mOffset;
+
+		/**
+		 * Create the lookup tables.
+		 *
+		 * @param brightness The brightness.
+		 * @param contrast The contrast.
+		 * @param saturation The saturation.
+		 * @param colorTemperature The color temperature.
+		 */
+		private ColorMapping(final float brightness, final float contrast, final float saturation, final float colorTemperature) {
+			Color temperatureColor = convertTemperatureToColor(colorTemperature);
+			float factorBlue = 1 / (float) temperatureColor.getBlue();
+			float factorGreen = 1 / (float) temperatureColor.getGreen();
+			float factorRed = 1 / (float) temperatureColor.getRed();
+			float correctionFactor = (float) Math.pow(factorRed * factorGreen * factorBlue, -1f / 3); // MAGIC_NUMBER
+			float contrastFactor = correctionFactor * contrast;
+			float[] factors = {factorBlue * contrastFactor, factorGreen * contrastFactor, factorRed * contrastFactor};
+			mOffset = BYTE / 2f * (1 - contrast + brightness * contrast + brightness);
+			float oppositeSaturation = (1 - saturation) / 2;
+
+			for (int channel = 0; channel < factors.length; channel++) {
+				for (int value = 0; value <= BYTE; value++) {
+					float input = value * factors[channel];
+					mOwnContribution[channel][value] = saturation * input;
+					mOtherContribution[channel][value] = oppositeSaturation * input;
+				}
+			}
+		}
+
+		/**
+		 * Map the pixels of a range of rows.
+		 *
+		 * @param source The source pixels.
+		 * @param target The target pixels.
+		 * @param start The start index in the arrays (inclusive).
+		 * @param end The end index in the arrays (exclusive).
+		 */
+		private void map(final byte[] source, final byte[] target, final int start, final int end) {
+			float[] ownBlue = mOwnContribution[0];
+			float[] ownGreen = mOwnContribution[1];
+			float[] ownRed = mOwnContribution[2];
+			float[] otherBlue = mOtherContribution[0];
+			float[] otherGreen = mOtherContribution[1];
+			float[] otherRed = mOtherContribution[2];
+
+			for (int i = start; i < end; i += FOUR) {
+				int blue = source[i] & BYTE;
+				int green = source[i + 1] & BYTE;
+				int red = source[i + 2] & BYTE;
+
+				target[i] = toColorByte(ownBlue[blue] + otherGreen[green] + otherRed[red] + mOffset);
+				target[i + 1] = toColorByte(otherBlue[blue] + ownGreen[green] + otherRed[red] + mOffset);
+				target[i + 2] = toColorByte(otherBlue[blue] + otherGreen[green] + ownRed[red] + mOffset);
+				target[i + 3] = source[i + 3];
+			}
+		}
+	}
+
+	/**
+	 * Task for mapping a range of rows, split into tiles of TILE_ROWS rows.
+	 */
+	private static final class TileTask extends RecursiveAction {
+		/**
+		 * The default serial version UID.
+		 */
+		private static final long serialVersionUID = 1L;
+
+		/**
+		 * The color mapping.
+		 */
+		private final transient ColorMapping mColorMapping;
+		/**
+		 * The source pixels.
+		 */
+		private final byte[] mSource;
+		/**
+		 * The target pixels.
+		 */
+		private final byte[] mTarget;
+		/**
+		 * The width of the image.
+		 */
+		private final int mWidth;
+		/**
+		 * The start row (inclusive).
+		 */
+		private final int mStartRow;
+		/**
+		 * The end row (exclusive).
+		 */
+		private final int mEndRow;
+
+		/**
+		 * Create a tile task.
+		 *
+		 * @param colorMapping The color mapping.
+		 * @param source The source pixels.
+		 * @param target The target pixels.
+		 * @param width The width of the image.
+		 * @param startRow The start row (inclusive).
+		 * @param endRow The end row (exclusive).
+		 */
+		private TileTask(final ColorMapping colorMapping, final byte[] source, final byte[] target, final int width,
+				final int startRow, final int endRow) {
+			mColorMapping = colorMapping;
+			mSource = source;
+			mTarget = target;
+			mWidth = width;
+			mStartRow = startRow;
+			mEndRow = endRow;
+		}
+
+		@Override
+		protected void compute() {
+			if (mEndRow - mStartRow <= TILE_ROWS) {
+				mColorMapping.map(mSource, mTarget, FOUR * mWidth * mStartRow, FOUR * mWidth * mEndRow);
+			}
+			else {
+				int middle = (mStartRow + mEndRow) / 2;
+				invokeAll(new TileTask(mColorMapping, mSource, mTarget, mWidth, mStartRow, middle),
+						new TileTask(mColorMapping, mSource, mTarget, mWidth, middle, mEndRow));
+			}
+		}
+	}
+}
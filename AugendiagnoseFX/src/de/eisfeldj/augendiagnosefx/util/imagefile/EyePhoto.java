@@ -10,6 +10,7 @@ import java.util.Locale;
 
 import de.eisfeldj.augendiagnosefx.util.DateUtil;
 import de.eisfeldj.augendiagnosefx.util.Logger;
+import de.eisfeldj.augendiagnosefx.util.PreferenceUtil;
 import de.eisfeldj.augendiagnosefx.util.ResourceConstants;
 import de.eisfeldj.augendiagnosefx.util.ResourceUtil;
 import de.eisfeldj.augendiagnosefx.util.imagefile.ImageUtil.Resolution;
@@ -25,9 +26,13 @@ public class EyePhoto {
 	 */
 	private static final String DATE_FORMAT = "yyyy-MM-dd";
 	/**
-	 * The maximum size of the image cache.
+	 * The maximum memory size of the images in the image cache (in bytes).
 	 */
-	private static final int MAX_IMAGE_CACHE = 4;
+	private static final long MAX_IMAGE_CACHE_SIZE = 128L * 1024 * 1024; // MAGIC_NUMBER
+	/**
+	 * The number of bytes per pixel of a loaded image.
+	 */
+	private static final int BYTES_PER_PIXEL = 4;
 
 	/**
 	 * Indicator if the file has already a formatted name.
@@ -72,7 +77,11 @@ public class EyePhoto {
 	/**
 	 * A cache of the thumbnail.
 	 */
-	private Image mCachedThumbnail;
+	private volatile Image mCachedThumbnail;
+
+	public final Image getCachedThumbnail() {
+		return mCachedThumbnail;
+	}
 
 	/**
 	 * The list of eye photos having a cached image.
@@ -316,7 +325,11 @@ public class EyePhoto {
 	 * @return true if the deletion was successful.
 	 */
 	public final boolean delete() {
-		return getFile().delete();
+		boolean success = getFile().delete();
+		if (success) {
+			ThumbnailCache.invalidate(getFile());
+		}
+		return success;
 	}
 
 	/**
@@ -332,7 +345,11 @@ public class EyePhoto {
 			return false;
 		}
 
-		return getFile().renameTo(target.getFile());
+		boolean success = getFile().renameTo(target.getFile());
+		if (success) {
+			ThumbnailCache.invalidate(getFile());
+		}
+		return success;
 	}
 
 	/**
@@ -355,7 +372,11 @@ public class EyePhoto {
 			return false;
 		}
 
-		return getFile().renameTo(targetFile);
+		boolean success = getFile().renameTo(targetFile);
+		if (success) {
+			ThumbnailCache.invalidate(getFile());
+		}
+		return success;
 	}
 
 	/**
@@ -385,42 +406,11 @@ public class EyePhoto {
 		switch (resolution) {
 		case THUMB:
 			if (mCachedThumbnail == null) {
-				mCachedThumbnail = ImageUtil.getImage(getFile(), Resolution.THUMB);
+				mCachedThumbnail = ImageUtil.getImage(getFile(), Resolution.THUMB, false);
 			}
 			return mCachedThumbnail;
 		case NORMAL:
-			Image result = mCachedImage;
-			if (result == null) {
-				result = ImageUtil.getImage(getFile(), Resolution.NORMAL);
-				synchronized (CACHED_EYE_PHOTOS) {
-					mCachedImage = result;
-					CACHED_EYE_PHOTOS.add(new WeakReference<>(this));
-					// Ensure that not too many images are cached
-					if (CACHED_EYE_PHOTOS.size() > MAX_IMAGE_CACHE) {
-						EyePhoto firstInList = CACHED_EYE_PHOTOS.get(0).get();
-						if (firstInList != null) {
-							firstInList.mCachedImage = null;
-						}
-						CACHED_EYE_PHOTOS.remove(0);
-					}
-				}
-			}
-			else {
-				synchronized (CACHED_EYE_PHOTOS) {
-					int index = -1;
-					for (int i = 0; i < CACHED_EYE_PHOTOS.size(); i++) {
-						if (CACHED_EYE_PHOTOS.get(i).get() == this) {
-							index = i;
-							break;
-						}
-					}
-					if (index >= 0) {
-						CACHED_EYE_PHOTOS.remove(index);
-						CACHED_EYE_PHOTOS.add(new WeakReference<>(this));
-					}
-				}
-			}
-			return result;
+			return getNormalImage(true);
 		case FULL:
 			// Full size image is not cached.
 			return ImageUtil.getImage(getFile(), Resolution.FULL);
@@ -429,6 +419,87 @@ public class EyePhoto {
 		}
 	}
 
+	/**
+	 * Calculate the image in normal resolution and store it in the cache, if not yet cached. The image is completely
+	 * loaded when this method returns.
+	 */
+	public final void precalculateImage() {
+		getNormalImage(false);
+	}
+
+	/**
+	 * Get the image in normal resolution, either from the cache or from the file.
+	 *
+	 * @param backgroundLoading
+	 *            Flag indicating if the image may be loaded in the background.
+	 * @return The image.
+	 */
+	private Image getNormalImage(final boolean backgroundLoading) {
+		synchronized (CACHED_EYE_PHOTOS) {
+			if (mCachedImage != null) {
+				// Mark as most recently used.
+				for (int i = 0; i < CACHED_EYE_PHOTOS.size(); i++) {
+					if (CACHED_EYE_PHOTOS.get(i).get() == this) {
+						CACHED_EYE_PHOTOS.remove(i);
+						CACHED_EYE_PHOTOS.add(new WeakReference<>(this));
+						break;
+					}
+				}
+				return mCachedImage;
+			}
+		}
+
+		Image result = ImageUtil.getImage(getFile(), Resolution.NORMAL, backgroundLoading);
+		synchronized (CACHED_EYE_PHOTOS) {
+			if (mCachedImage != null) {
+				// loaded in parallel by another thread
+				return mCachedImage;
+			}
+			mCachedImage = result;
+			CACHED_EYE_PHOTOS.add(new WeakReference<>(this));
+			trimImageCache();
+		}
+		return result;
+	}
+
+	/**
+	 * Remove the least recently used images from the cache until the cached images fit into the maximum cache size.
+	 * The most recently used image is always kept.
+	 */
+	private static void trimImageCache() {
+		long totalSize = 0;
+		for (WeakReference<EyePhoto> reference : CACHED_EYE_PHOTOS) {
+			EyePhoto eyePhoto = reference.get();
+			if (eyePhoto != null && eyePhoto.mCachedImage != null) {
+				totalSize += getMemorySize(eyePhoto.mCachedImage);
+			}
+		}
+
+		while (CACHED_EYE_PHOTOS.size() > 1 && totalSize > MAX_IMAGE_CACHE_SIZE) {
+			EyePhoto eyePhoto = CACHED_EYE_PHOTOS.remove(0).get();
+			if (eyePhoto != null && eyePhoto.mCachedImage != null) {
+				totalSize -= getMemorySize(eyePhoto.mCachedImage);
+				eyePhoto.mCachedImage = null;
+			}
+		}
+	}
+
+	/**
+	 * Get the memory used by an image in normal resolution. For images which are still loading, the maximum size is
+	 * assumed.
+	 *
+	 * @param image
+	 *            The image.
+	 * @return The memory size in bytes.
+	 */
+	private static long getMemorySize(final Image image) {
+		if (image.getWidth() > 0 && image.getHeight() > 0) {
+			return (long) (image.getWidth() * image.getHeight()) * BYTES_PER_PIXEL;
+		}
+		long maxSize = PreferenceUtil.getPreferenceInt(PreferenceUtil.KEY_MAX_BITMAP_SIZE);
+		return maxSize * maxSize * BYTES_PER_PIXEL;
+	}
+
 	/**
 	 * Change the personName renaming the file (keeping the path).
 	 *
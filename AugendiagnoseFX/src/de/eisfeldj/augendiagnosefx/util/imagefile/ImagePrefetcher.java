@@ -0,0 +1,85 @@
+package de.eisfeldj.augendiagnosefx.util.imagefile;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import de.eisfeldj.augendiagnosefx.util.Logger;
+
+/**
+ * Prefetcher of eye photos which are likely to be displayed next, e.g. the neighbouring visits of the displayed visit.
+ *
+ * <p>Metadata and images in normal resolution are loaded on a single low priority thread into the image cache of the
+ * eye photos, so that they are available without delay when displayed. Each prefetch request supersedes the previous
+ * one: photos of the previous request which are not yet loaded are skipped.
+ */
+public final class ImagePrefetcher {
+	/**
+	 * The thread loading the eye photos.
+	 */
+	private static final ExecutorService PREFETCH_EXECUTOR = Executors.newSingleThreadExecutor(runnable -> {
+		Thread thread = new Thread(runnable, "ImagePrefetcher");
+		thread.setDaemon(true);
+		thread.setPriority(Thread.MIN_PRIORITY);
+		return thread;
+	});
+
+	/**
+	 * The number of the current prefetch request. Requests with lower number are stale.
+	 */
+	private static volatile long mCurrentRequest = 0;
+
+	/**
+	 * Hide default constructor.
+	 */
+	private ImagePrefetcher() {
+		throw new UnsupportedOperationException();
+	}
+
+	/**
+	 * Prefetch the eye photos of some eye photo pairs, in the given order. Prefetching of previously requested photos is
+	 * cancelled.
+	 *
+	 * @param pairs
+	 *            The eye photo pairs.
+	 */
+	public static void prefetch(final List<EyePhotoPair> pairs) {
+		final List<EyePhoto> eyePhotos = new ArrayList<>();
+		for (EyePhotoPair pair : pairs) {
+			if (pair.getRightEye() != null) {
+				eyePhotos.add(pair.getRightEye());
+			}
+			if (pair.getLeftEye() != null) {
+				eyePhotos.add(pair.getLeftEye());
+			}
+		}
+
+		final long request;
+		synchronized (ImagePrefetcher.class) {
+			request = ++mCurrentRequest;
+		}
+
+		PREFETCH_EXECUTOR.execute(() -> {
+			for (EyePhoto eyePhoto : eyePhotos) {
+				if (request != mCurrentRequest) {
+					return;
+				}
+				try {
+					eyePhoto.getImageMetadata();
+					eyePhoto.precalculateImage();
+				}
+				catch (RuntimeException e) {
+					Logger.warning("Failed to prefetch " + eyePhoto.getFilename() + ": " + e.getMessage());
+				}
+			}
+		});
+	}
+
+	/**
+	 * Cancel all pending prefetching.
+	 */
+	public static synchronized void cancel() {
+		mCurrentRequest++;
+	}
+}
@@ -0,0 +1,294 @@
+package de.eisfeldj.augendiagnosefx.util.imagefile;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.TreeMap;
+
+import javafx.scene.image.Image;
+import javafx.scene.image.PixelFormat;
+
+/**
+ * Brightness planes of an image in several resolutions, as used by the detection of pupil and iris.
+ *
+ * <p>The image is converted only once into brightness levels. Lower resolutions are created by box filter downsampling,
+ * each one from the next bigger resolution. All operations are independent of the JavaFX application thread.
+ */
+public final class ImagePyramid {
+	/**
+	 * The max brightness value of a level.
+	 */
+	private static final double BRIGHTNESS_LEVEL_SCALE = 255.0;
+
+	/**
+	 * The width of the original image.
+	 */
+	private final int mWidth;
+
+	public int getWidth() {
+		return mWidth;
+	}
+
+	/**
+	 * The height of the original image.
+	 */
+	private final int mHeight;
+
+	public int getHeight() {
+		return mHeight;
+	}
+
+	/**
+	 * The brightness levels used for the iris boundary search, in the original resolution.
+	 */
+	private final short[] mIrisBrightnessLevels;
+
+	protected short[] getIrisBrightnessLevels() {
+		return mIrisBrightnessLevels;
+	}
+
+	/**
+	 * The pupil brightness levels in the original resolution.
+	 */
+	private final Level mOriginalLevel;
+
+	/**
+	 * The downsampled levels, by resolution.
+	 */
+	private final Map<Integer, Level> mLevels = new TreeMap<>();
+
+	/**
+	 * Create an image pyramid from a JavaFX image. The image is read only once.
+	 *
+	 * @param image The image.
+	 * @param resolutions The resolutions to be prepared.
+	 */
+	public ImagePyramid(final Image image, final int... resolutions) {
+		this(getPixels(image), (int) image.getWidth(), (int) image.getHeight(), resolutions);
+	}
+
+	/**
+	 * Create an image pyramid from the pixels of an image.
+	 *
+	 * @param pixels The pixels of the image as ARGB integer values, row by row.
+	 * @param width The width of the image.
+	 * @param height The height of the image.
+	 * @param resolutions The resolutions to be prepared.
+	 */
+	public ImagePyramid(final int[] pixels, final int width, final int height, final int... resolutions) {
+		mWidth = width;
+		mHeight = height;
+
+		float[] brightnessLevels = new float[pixels.length];
+		mIrisBrightnessLevels = new short[pixels.length];
+		for (int i = 0; i < pixels.length; i++) {
+			brightnessLevels[i] = PupilSearchEngine.getBrightnessLevel(pixels[i]);
+			mIrisBrightnessLevels[i] = PupilSearchEngine.getIrisBrightnessLevel(pixels[i]);
+		}
+		mOriginalLevel = new Level(brightnessLevels, width, height);
+
+		// Prepare the levels from big to small, so that each level is created from the next bigger one.
+		int[] sortedResolutions = resolutions.clone();
+		Arrays.sort(sortedResolutions);
+		for (int i = sortedResolutions.length - 1; i >= 0; i--) {
+			getLevel(sortedResolutions[i]);
+		}
+	}
+
+	/**
+	 * Get the pupil brightness levels of the image, scaled down to a certain resolution (if bigger).
+	 *
+	 * @param resolution The resolution (the maximum of width and height).
+	 * @return The level.
+	 */
+	protected synchronized Level getLevel(final int resolution) {
+		if (mWidth <= resolution && mHeight <= resolution) {
+			return mOriginalLevel;
+		}
+		Level level = mLevels.get(resolution);
+		if (level == null) {
+			Level source = mOriginalLevel;
+			for (Map.Entry<Integer, Level> entry : mLevels.entrySet()) {
+				if (entry.getKey() > resolution) {
+					source = entry.getValue();
+					break;
+				}
+			}
+			level = source.downscale(resolution * mWidth / Math.max(mWidth, mHeight),
+					resolution * mHeight / Math.max(mWidth, mHeight));
+			mLevels.put(resolution, level);
+		}
+		return level;
+	}
+
+	/**
+	 * Get the pixels of an image.
+	 *
+	 * @param image The image.
+	 * @return The pixels of the image as ARGB integer values, row by row.
+	 */
+	private static int[] getPixels(final Image image) {
+		int width = (int) image.getWidth();
+		int height = (int) image.getHeight();
+		int[] pixels = new int[width * height];
+		image.getPixelReader().getPixels(0, 0, width, height, PixelFormat.getIntArgbInstance(), pixels, 0, width);
+		return pixels;
+	}
+
+	/**
+	 * One resolution of the pyramid, containing pupil brightness levels (averaged, hence not necessarily integral).
+	 */
+	protected static final class Level {
+		/**
+		 * The brightness levels, row by row.
+		 */
+		private final float[] mBrightnessLevels;
+
+		/**
+		 * The brightness values, as used for the pupil search with exact statistics. Created on first use.
+		 */
+		private float[] mBrightnesses = null;
+
+		/**
+		 * The brightness levels rounded to integers, as used for the pupil search with histograms. Created on first use.
+		 */
+		private short[] mRoundedBrightnessLevels = null;
+
+		/**
+		 * The width of the level.
+		 */
+		private final int mWidth;
+
+		protected int getWidth() {
+			return mWidth;
+		}
+
+		/**
+		 * The height of the level.
+		 */
+		private final int mHeight;
+
+		protected int getHeight() {
+			return mHeight;
+		}
+
+		/**
+		 * Create a level.
+		 *
+		 * @param brightnessLevels The brightness levels, row by row.
+		 * @param width The width of the level.
+		 * @param height The height of the level.
+		 */
+		private Level(final float[] brightnessLevels, final int width, final int height) {
+			mBrightnessLevels = brightnessLevels;
+			mWidth = width;
+			mHeight = height;
+		}
+
+		/**
+		 * Get the brightness values, as used for the pupil search with exact statistics. The array is shared by all
+		 * callers and must not be modified.
+		 *
+		 * @return The brightness values, row by row.
+		 */
+		protected synchronized float[] getBrightnesses() {
+			if (mBrightnesses == null) {
+				float[] brightnesses = new float[mBrightnessLevels.length];
+				for (int i = 0; i < brightnesses.length; i++) {
+					brightnesses[i] = (float) (mBrightnessLevels[i] / BRIGHTNESS_LEVEL_SCALE);
+				}
+				mBrightnesses = brightnesses;
+			}
+			return mBrightnesses;
+		}
+
+		/**
+		 * Get the brightness levels rounded to integers, as used for the pupil search with histograms. The array is shared
+		 * by all callers and must not be modified.
+		 *
+		 * @return The brightness levels, row by row.
+		 */
+		protected synchronized short[] getBrightnessLevels() {
+			if (mRoundedBrightnessLevels == null) {
+				short[] brightnessLevels = new short[mBrightnessLevels.length];
+				for (int i = 0; i < brightnessLevels.length; i++) {
+					brightnessLevels[i] = (short) Math.round(mBrightnessLevels[i]);
+				}
+				mRoundedBrightnessLevels = brightnessLevels;
+			}
+			return mRoundedBrightnessLevels;
+		}
+
+		/**
+		 * Create a smaller level by box filter downsampling. Each target pixel is the average of the source pixels
+		 * covered by it.
+		 *
+		 * @param targetWidth The target width.
+		 * @param targetHeight The target height.
+		 * @return The downsampled level.
+		 */
+		private Level downscale(final int targetWidth, final int targetHeight) {
+			// First sum up horizontally, then vertically.
+			double[] rowSums = new double[targetWidth * mHeight];
+			for (int y = 0; y < mHeight; y++) {
+				sumRow(y, targetWidth, rowSums);
+			}
+
+			float[] brightnessLevels = new float[targetWidth * targetHeight];
+			for (int x = 0; x < targetWidth; x++) {
+				int boxWidth = getBoxEnd(x, mWidth, targetWidth) - getBoxStart(x, mWidth, targetWidth);
+				for (int y = 0; y < targetHeight; y++) {
+					int top = getBoxStart(y, mHeight, targetHeight);
+					int bottom = getBoxEnd(y, mHeight, targetHeight);
+					double sum = 0;
+					for (int sourceY = top; sourceY < bottom; sourceY++) {
+						sum += rowSums[sourceY * targetWidth + x];
+					}
+					brightnessLevels[y * targetWidth + x] = (float) (sum / (boxWidth * (bottom - top)));
+				}
+			}
+			return new Level(brightnessLevels, targetWidth, targetHeight);
+		}
+
+		/**
+		 * Sum up the brightness levels of one row in boxes.
+		 *
+		 * @param y The row.
+		 * @param targetWidth The target width, i.e. the number of boxes.
+		 * @param rowSums The array where the sums are stored.
+		 */
+		private void sumRow(final int y, final int targetWidth, final double[] rowSums) {
+			for (int x = 0; x < targetWidth; x++) {
+				double sum = 0;
+				int end = getBoxEnd(x, mWidth, targetWidth);
+				for (int sourceX = getBoxStart(x, mWidth, targetWidth); sourceX < end; sourceX++) {
+					sum += mBrightnessLevels[y * mWidth + sourceX];
+				}
+				rowSums[y * targetWidth + x] = sum;
+			}
+		}
+
+		/**
+		 * Get the start of the source range covered by a target coordinate.
+		 *
+		 * @param target The target coordinate.
+		 * @param sourceSize The source size.
+		 * @param targetSize The target size.
+		 * @return The start of the source range (inclusive).
+		 */
+		private static int getBoxStart(final int target, final int sourceSize, final int targetSize) {
+			return (int) ((long) target * sourceSize / targetSize);
+		}
+
+		/**
+		 * Get the end of the source range covered by a target coordinate. The range contains at least one pixel.
+		 *
+		 * @param target The target coordinate.
+		 * @param sourceSize The source size.
+		 * @param targetSize The target size.
+		 * @return The end of the source range (exclusive).
+		 */
+		private static int getBoxEnd(final int target, final int sourceSize, final int targetSize) {
+			return Math.max(getBoxStart(target, sourceSize, targetSize) + 1, getBoxStart(target + 1, sourceSize, targetSize));
+		}
+	}
+}
@@ -0,0 +1,746 @@
+package de.eisfeldj.augendiagnosefx.util.imagefile;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Consumer;
+
+import de.eisfeldj.augendiagnosefx.util.Logger;
+
+import javafx.application.Platform;
+import javafx.geometry.Rectangle2D;
+import javafx.scene.image.Image;
+import javafx.scene.image.PixelFormat;
+import javafx.scene.image.WritableImage;
+import javafx.scene.image.WritablePixelFormat;
+import javafx.scene.paint.Color;
+
+import static de.eisfeldj.augendiagnosefx.util.imagefile.JpegTileDecoder.TILE_SIZE;
+
+/**
+ * Renderer of the visible part of an eye photo in tiles with higher resolution than the displayed image. Brightness,
+ * contrast, saturation, color temperature and overlay are applied to each tile outside the JavaFX application thread.
+ *
+ * <p>The tiles are taken from the level of the resolution pyramid with the lowest resolution that is not below the
+ * display resolution. Only the tiles in the visible area are decoded (via {@link JpegTileDecoder}) and rendered, so
+ * that the memory usage is bounded by the size of the view rather than by the size of the image. Rendered tiles are
+ * reused as long as level and display settings do not change. If requests come in faster than they can be rendered
+ * (e.g. while zooming or scrolling), only the latest request is rendered.
+ */
+public final class ImageTileRenderer {
+	/**
+	 * The number four.
+	 */
+	private static final int FOUR = 4;
+	/**
+	 * The size of a byte.
+	 */
+	private static final int BYTE = 0xFF;
+
+	/**
+	 * The thread running the rendering requests of all renderers.
+	 */
+	private static final ExecutorService RENDER_EXECUTOR = Executors.newSingleThreadExecutor(runnable -> {
+		Thread thread = new Thread(runnable, "ImageTileRenderer");
+		thread.setDaemon(true);
+		return thread;
+	});
+
+	/**
+	 * The pixel format of the tiles.
+	 */
+	private static final WritablePixelFormat<ByteBuffer> PIXEL_FORMAT = PixelFormat.getByteBgraInstance();
+
+	/**
+	 * The request waiting to be rendered.
+	 */
+	private RenderRequest mPendingRequest = null;
+
+	/**
+	 * Flag indicating if the render thread is currently processing requests of this renderer.
+	 */
+	private boolean mIsRendering = false;
+
+	/**
+	 * Flag indicating if tiles have been requested since the last cancellation.
+	 */
+	private boolean mIsActive = false;
+
+	/**
+	 * The number of the latest request. Results of requests with lower number are not published.
+	 */
+	private volatile long mCurrentRequest = 0;
+
+	/**
+	 * The file for which the decoder was created.
+	 */
+	private File mDecoderFile = null;
+
+	/**
+	 * The decoder of the tiles, or null if the file cannot be decoded.
+	 */
+	private JpegTileDecoder mDecoder = null;
+
+	/**
+	 * The level of the rendered tiles.
+	 */
+	private int mRenderedLevel = -1;
+
+	/**
+	 * The settings of the rendered tiles.
+	 */
+	private RenderSettings mRenderedSettings = null;
+
+	/**
+	 * The rendered tiles of the current level and settings, by position.
+	 */
+	private final Map<String, Tile> mRenderedTiles = new HashMap<>();
+
+	/**
+	 * Tiles of a previous level or settings, which remain displayed until the current request is rendered.
+	 */
+	private List<Tile> mObsoleteTiles = new ArrayList<>();
+
+	/**
+	 * The overlay image whose pixels are stored in the overlay buffer.
+	 */
+	private Image mOverlayImage = null;
+
+	/**
+	 * The pixels of the overlay image in premultiplied ARGB format.
+	 */
+	private int[] mOverlayPixels = null;
+
+	/**
+	 * Render the tiles of the visible area of an eye photo. Must be called on the JavaFX application thread. The
+	 * callback is called on the JavaFX application thread, unless the request is superseded by a later one or
+	 * cancelled. It may be called repeatedly with the tiles rendered so far, in the order in which they are to be
+	 * displayed. It receives an empty list if the display does not require a resolution higher than the base image.
+	 *
+	 * @param eyePhoto
+	 *            The eye photo.
+	 * @param visibleArea
+	 *            The visible area, in coordinates relative to the size of the image (from 0 to 1).
+	 * @param displayWidth
+	 *            The width of the displayed image in pixels.
+	 * @param baseWidth
+	 *            The width of the base image, which is displayed below the tiles.
+	 * @param overlayType
+	 *            The overlay type.
+	 * @param overlayColor
+	 *            The overlay color.
+	 * @param brightness
+	 *            The brightness of the image.
+	 * @param contrast
+	 *            The contrast of the image.
+	 * @param saturation
+	 *            The saturation of the image.
+	 * @param colorTemperature
+	 *            The color temperature of the image.
+	 * @param callback
+	 *            The callback receiving the rendered tiles.
+	 */
+	public void render(final EyePhoto eyePhoto, final Rectangle2D visibleArea, // SUPPRESS_CHECKSTYLE Too many parameters
+			final double displayWidth, final double baseWidth, final Integer overlayType, final Color overlayColor,
+			final float brightness, final float contrast, final float saturation, final float colorTemperature,
+			final Consumer<List<Tile>> callback) {
+		// The overlay image is created on the JavaFX application thread.
+		Image overlayImage = ImageUtil.getOverlayImage(eyePhoto, overlayType, overlayColor);
+		JpegMetadata metadata = eyePhoto.getImageMetadata();
+		RenderSettings settings = overlayImage == null
+				? new RenderSettings(brightness, contrast, saturation, colorTemperature, null, 0, 0, 0)
+				: new RenderSettings(brightness, contrast, saturation, colorTemperature, overlayImage,
+						metadata.getXCenter(), metadata.getYCenter(), metadata.getOverlayScaleFactor());
+
+		synchronized (this) {
+			mIsActive = true;
+			mPendingRequest = new RenderRequest(++mCurrentRequest, eyePhoto.getFile(), visibleArea, displayWidth, baseWidth,
+					settings, callback);
+			if (!mIsRendering) {
+				mIsRendering = true;
+				RENDER_EXECUTOR.execute(this::processRequests);
+			}
+		}
+	}
+
+	/**
+	 * Cancel all pending requests and release the rendered tiles.
+	 */
+	public void cancel() {
+		synchronized (this) {
+			if (!mIsActive) {
+				return;
+			}
+			mIsActive = false;
+			mPendingRequest = null;
+			mCurrentRequest++;
+		}
+		RENDER_EXECUTOR.execute(() -> {
+			synchronized (this) {
+				if (mIsActive) {
+					return;
+				}
+			}
+			mRenderedTiles.clear();
+			mObsoleteTiles.clear();
+			mRenderedLevel = -1;
+			mRenderedSettings = null;
+			mOverlayImage = null;
+			mOverlayPixels = null;
+		});
+	}
+
+	/**
+	 * Render pending requests until there is no more request.
+	 */
+	private void processRequests() {
+		while (true) {
+			RenderRequest request;
+			synchronized (this) {
+				request = mPendingRequest;
+				if (request == null) {
+					mIsRendering = false;
+					return;
+				}
+				mPendingRequest = null;
+			}
+
+			try {
+				processRequest(request);
+			}
+			catch (RuntimeException e) {
+				Logger.error("Failed to render image tiles", e);
+			}
+		}
+	}
+
+	/**
+	 * Render one request, publishing the tiles after each rendered row.
+	 *
+	 * @param request
+	 *            The request.
+	 */
+	private void processRequest(final RenderRequest request) {
+		if (!request.mFile.equals(mDecoderFile) || mDecoder != null && !mDecoder.isFor(request.mFile)) {
+			mDecoderFile = request.mFile;
+			mRenderedTiles.clear();
+			mObsoleteTiles.clear();
+			mRenderedLevel = -1;
+			try {
+				mDecoder = new JpegTileDecoder(request.mFile);
+			}
+			catch (IOException e) {
+				Logger.warning("Cannot display " + request.mFile.getName() + " in tiles: " + e.getMessage());
+				mDecoder = null;
+			}
+		}
+
+		// Use the level with lowest resolution not below the display resolution.
+		int level = 0;
+		while (mDecoder != null && mDecoder.getLevelWidth(level) > 1 && mDecoder.getLevelWidth(level + 1) >= request.mDisplayWidth) {
+			level++;
+		}
+		if (mDecoder == null || mDecoder.getLevelWidth(level) <= request.mBaseWidth) {
+			mRenderedTiles.clear();
+			mObsoleteTiles.clear();
+			mRenderedLevel = -1;
+			publish(request, Collections.emptyList());
+			return;
+		}
+
+		if (level != mRenderedLevel || !request.mSettings.equals(mRenderedSettings)) {
+			if (!mRenderedTiles.isEmpty()) {
+				mObsoleteTiles = new ArrayList<>(mRenderedTiles.values());
+				mRenderedTiles.clear();
+			}
+			mRenderedLevel = level;
+			mRenderedSettings = request.mSettings;
+		}
+		removeInvisibleTiles(mObsoleteTiles.iterator(), request.mVisibleArea);
+		removeInvisibleTiles(mRenderedTiles.values().iterator(), request.mVisibleArea);
+
+		int levelWidth = mDecoder.getLevelWidth(level);
+		int levelHeight = mDecoder.getLevelHeight(level);
+		int firstColumn = getTileIndex(request.mVisibleArea.getMinX() * levelWidth, mDecoder.getColumnCount(level));
+		int lastColumn = getTileIndex(request.mVisibleArea.getMaxX() * levelWidth, mDecoder.getColumnCount(level));
+		int firstRow = getTileIndex(request.mVisibleArea.getMinY() * levelHeight, mDecoder.getRowCount(level));
+		int lastRow = getTileIndex(request.mVisibleArea.getMaxY() * levelHeight, mDecoder.getRowCount(level));
+
+		publishTiles(request);
+		for (int row = firstRow; row <= lastRow; row++) {
+			// Get the pixels of the tiles not yet rendered, decoding the tiles not cached in one band.
+			byte[][] rowPixels = new byte[lastColumn - firstColumn + 1][];
+			int firstMissingColumn = -1;
+			int lastMissingColumn = -1;
+			for (int column = firstColumn; column <= lastColumn; column++) {
+				if (!mRenderedTiles.containsKey(getTileKey(column, row))) {
+					rowPixels[column - firstColumn] = mDecoder.getCachedTile(level, column, row);
+					if (rowPixels[column - firstColumn] == null) {
+						if (firstMissingColumn < 0) {
+							firstMissingColumn = column;
+						}
+						lastMissingColumn = column;
+					}
+				}
+			}
+			if (firstMissingColumn >= 0) {
+				byte[][] decodedTiles;
+				try {
+					decodedTiles = mDecoder.decodeTiles(level, row, firstMissingColumn, lastMissingColumn);
+				}
+				catch (IOException e) {
+					Logger.warning("Cannot display " + request.mFile.getName() + " in tiles: " + e.getMessage());
+					mDecoder = null;
+					return;
+				}
+				for (int column = firstMissingColumn; column <= lastMissingColumn; column++) {
+					if (rowPixels[column - firstColumn] == null) {
+						rowPixels[column - firstColumn] = decodedTiles[column - firstMissingColumn];
+					}
+				}
+			}
+
+			boolean isRowChanged = false;
+			for (int column = firstColumn; column <= lastColumn; column++) {
+				byte[] pixels = rowPixels[column - firstColumn];
+				if (pixels != null && !mRenderedTiles.containsKey(getTileKey(column, row))) {
+					mRenderedTiles.put(getTileKey(column, row), renderTile(request.mSettings, level, column, row, pixels));
+					isRowChanged = true;
+				}
+			}
+
+			if (request.mNumber != mCurrentRequest) {
+				// Superseded by a later request, which continues with the tiles rendered so far.
+				return;
+			}
+			if (isRowChanged) {
+				publishTiles(request);
+			}
+		}
+
+		mObsoleteTiles.clear();
+		publishTiles(request);
+	}
+
+	/**
+	 * Publish the obsolete and rendered tiles.
+	 *
+	 * @param request
+	 *            The request.
+	 */
+	private void publishTiles(final RenderRequest request) {
+		List<Tile> tiles = new ArrayList<>(mObsoleteTiles);
+		tiles.addAll(mRenderedTiles.values());
+		publish(request, tiles);
+	}
+
+	/**
+	 * Pass tiles to the callback of a request on the JavaFX application thread, unless the request is superseded.
+	 *
+	 * @param request
+	 *            The request.
+	 * @param tiles
+	 *            The tiles.
+	 */
+	private void publish(final RenderRequest request, final List<Tile> tiles) {
+		Platform.runLater(() -> {
+			if (request.mNumber == mCurrentRequest) {
+				request.mCallback.accept(tiles);
+			}
+		});
+	}
+
+	/**
+	 * Render a tile with the given settings.
+	 *
+	 * @param settings
+	 *            The settings.
+	 * @param level
+	 *            The level.
+	 * @param column
+	 *            The column.
+	 * @param row
+	 *            The row.
+	 * @param pixels
+	 *            The decoded pixels of the tile, which are not modified.
+	 * @return The rendered tile.
+	 */
+	private Tile renderTile(final RenderSettings settings, final int level, final int column, final int row, final byte[] pixels) {
+		int width = mDecoder.getTileWidth(level, column);
+		int height = mDecoder.getTileHeight(level, row);
+		int levelWidth = mDecoder.getLevelWidth(level);
+		int levelHeight = mDecoder.getLevelHeight(level);
+
+		byte[] target = pixels;
+		if (!settings.hasOriginalColors()) {
+			target = new byte[pixels.length];
+			ColorMappingRenderer.applyColorMapping(pixels, target, width, height,
+					settings.mBrightness, settings.mContrast, settings.mSaturation, settings.mColorTemperature);
+		}
+		if (settings.mOverlayImage != null) {
+			if (target == pixels) {
+				target = pixels.clone();
+			}
+			drawOverlay(settings, target, column * TILE_SIZE, row * TILE_SIZE, width, height, levelWidth, levelHeight);
+		}
+
+		// The image is not yet displayed, so it may be written outside the JavaFX application thread.
+		WritableImage image = new WritableImage(width, height);
+		image.getPixelWriter().setPixels(0, 0, width, height, PIXEL_FORMAT, target, 0, FOUR * width);
+
+		return new Tile(image, (double) column * TILE_SIZE / levelWidth, (double) row * TILE_SIZE / levelHeight,
+				(double) width / levelWidth, (double) height / levelHeight);
+	}
+
+	/**
+	 * Draw the overlay on the pixels of a tile, in the same way as the overlay is drawn on the base image.
+	 *
+	 * @param settings
+	 *            The settings containing the overlay.
+	 * @param pixels
+	 *            The pixels of the tile in BGRA format.
+	 * @param tileX
+	 *            The x position of the tile in the level.
+	 * @param tileY
+	 *            The y position of the tile in the level.
+	 * @param width
+	 *            The width of the tile.
+	 * @param height
+	 *            The height of the tile.
+	 * @param levelWidth
+	 *            The width of the level.
+	 * @param levelHeight
+	 *            The height of the level.
+	 */
+	private void drawOverlay(final RenderSettings settings, final byte[] pixels, // SUPPRESS_CHECKSTYLE Too many parameters
+			final int tileX, final int tileY, final int width, final int height, final int levelWidth, final int levelHeight) {
+		if (settings.mOverlayImage != mOverlayImage) {
+			int overlayWidth = (int) settings.mOverlayImage.getWidth();
+			int overlayHeight = (int) settings.mOverlayImage.getHeight();
+			WritablePixelFormat<IntBuffer> pixelFormat = PixelFormat.getIntArgbPreInstance();
+			mOverlayPixels = new int[overlayWidth * overlayHeight];
+			settings.mOverlayImage.getPixelReader().getPixels(0, 0, overlayWidth, overlayHeight, pixelFormat,
+					mOverlayPixels, 0, overlayWidth);
+			mOverlayImage = settings.mOverlayImage;
+		}
+		int overlayWidth = (int) mOverlayImage.getWidth();
+		int overlayHeight = (int) mOverlayImage.getHeight();
+
+		// Position of the overlay in the level, as in ImageUtil.getImageWithOverlay.
+		double overlaySize = Math.max(levelWidth, levelHeight) * settings.mOverlayScaleFactor;
+		double overlayLeft = settings.mOverlayXCenter * levelWidth - overlaySize / 2;
+		double overlayTop = settings.mOverlayYCenter * levelHeight - overlaySize / 2;
+		double xFactor = overlayWidth / overlaySize;
+		double yFactor = overlayHeight / overlaySize;
+
+		for (int y = 0; y < height; y++) {
+			// Position of the pixel center in the overlay, relative to the overlay pixel centers.
+			double overlayY = (tileY + y + 0.5 - overlayTop) * yFactor - 0.5; // MAGIC_NUMBER
+			if (overlayY <= -1 || overlayY >= overlayHeight) {
+				continue;
+			}
+			int y0 = (int) Math.floor(overlayY);
+			double yWeight = overlayY - y0;
+
+			for (int x = 0; x < width; x++) {
+				double overlayX = (tileX + x + 0.5 - overlayLeft) * xFactor - 0.5; // MAGIC_NUMBER
+				if (overlayX <= -1 || overlayX >= overlayWidth) {
+					continue;
+				}
+				int x0 = (int) Math.floor(overlayX);
+				double xWeight = overlayX - x0;
+
+				int index = FOUR * (y * width + x);
+				int topLeft = getOverlayPixel(x0, y0, overlayWidth, overlayHeight);
+				int topRight = getOverlayPixel(x0 + 1, y0, overlayWidth, overlayHeight);
+				int bottomLeft = getOverlayPixel(x0, y0 + 1, overlayWidth, overlayHeight);
+				int bottomRight = getOverlayPixel(x0 + 1, y0 + 1, overlayWidth, overlayHeight);
+				if ((topLeft | topRight | bottomLeft | bottomRight) == 0) {
+					continue;
+				}
+
+				// Blend the premultiplied overlay color over the pixel (SRC_OVER).
+				double alpha = interpolate(topLeft, topRight, bottomLeft, bottomRight, 24, xWeight, yWeight) / BYTE; // MAGIC_NUMBER
+				for (int channel = 0; channel < 3; channel++) {
+					double overlayValue = interpolate(topLeft, topRight, bottomLeft, bottomRight, 8 * channel, xWeight, yWeight);
+					double value = overlayValue + (pixels[index + channel] & BYTE) * (1 - alpha);
+					pixels[index + channel] = (byte) Math.min(BYTE, Math.round(value));
+				}
+			}
+		}
+	}
+
+	/**
+	 * Get a pixel of the overlay, being transparent outside the overlay.
+	 *
+	 * @param x
+	 *            The x position.
+	 * @param y
+	 *            The y position.
+	 * @param overlayWidth
+	 *            The width of the overlay.
+	 * @param overlayHeight
+	 *            The height of the overlay.
+	 * @return The pixel in premultiplied ARGB format.
+	 */
+	private int getOverlayPixel(final int x, final int y, final int overlayWidth, final int overlayHeight) {
+		if (x < 0 || y < 0 || x >= overlayWidth || y >= overlayHeight) {
+			return 0;
+		}
+		return mOverlayPixels[y * overlayWidth + x];
+	}
+
+	/**
+	 * Interpolate a channel of four pixels bilinearly.
+	 *
+	 * @param topLeft
+	 *            The top left pixel.
+	 * @param topRight
+	 *            The top right pixel.
+	 * @param bottomLeft
+	 *            The bottom left pixel.
+	 * @param bottomRight
+	 *            The bottom right pixel.
+	 * @param shift
+	 *            The bit shift of the channel.
+	 * @param xWeight
+	 *            The weight of the right pixels.
+	 * @param yWeight
+	 *            The weight of the bottom pixels.
+	 * @return The interpolated channel value.
+	 */
+	private static double interpolate(final int topLeft, final int topRight, final int bottomLeft, // SUPPRESS_CHECKSTYLE
+			final int bottomRight, final int shift, final double xWeight, final double yWeight) {
+		double top = (topLeft >> shift & BYTE) * (1 - xWeight) + (topRight >> shift & BYTE) * xWeight;
+		double bottom = (bottomLeft >> shift & BYTE) * (1 - xWeight) + (bottomRight >> shift & BYTE) * xWeight;
+		return top * (1 - yWeight) + bottom * yWeight;
+	}
+
+	/**
+	 * Remove the tiles outside the visible area.
+	 *
+	 * @param tiles
+	 *            An iterator over the tiles.
+	 * @param visibleArea
+	 *            The visible area.
+	 */
+	private static void removeInvisibleTiles(final Iterator<Tile> tiles, final Rectangle2D visibleArea) {
+		while (tiles.hasNext()) {
+			Tile tile = tiles.next();
+			if (!visibleArea.intersects(tile.mX, tile.mY, tile.mWidth, tile.mHeight)) {
+				tiles.remove();
+			}
+		}
+	}
+
+	/**
+	 * Get the index of the tile containing a position.
+	 *
+	 * @param position
+	 *            The position in pixels of the level.
+	 * @param count
+	 *            The number of tiles.
+	 * @return The tile index.
+	 */
+	private static int getTileIndex(final double position, final int count) {
+		return Math.min(count - 1, Math.max(0, (int) position / TILE_SIZE));
+	}
+
+	/**
+	 * Get the key of a tile within the rendered tiles.
+	 *
+	 * @param column
+	 *            The column.
+	 * @param row
+	 *            The row.
+	 * @return The key.
+	 */
+	private static String getTileKey(final int column, final int row) {
+		return column + "/" + row;
+	}
+
+	/**
+	 * A rendered tile.
+	 */
+	public static final class Tile {
+		/**
+		 * The rendered image of the tile.
+		 */
+		private final Image mImage;
+
+		public Image getImage() {
+			return mImage;
+		}
+
+		/**
+		 * The x position of the tile, relative to the image width.
+		 */
+		private final double mX;
+
+		public double getX() {
+			return mX;
+		}
+
+		/**
+		 * The y position of the tile, relative to the image height.
+		 */
+		private final double mY;
+
+		public double getY() {
+			return mY;
+		}
+
+		/**
+		 * The width of the tile, relative to the image width.
+		 */
+		private final double mWidth;
+
+		public double getWidth() {
+			return mWidth;
+		}
+
+		/**
+		 * The height of the tile, relative to the image height.
+		 */
+		private final double mHeight;
+
+		public double getHeight() {
+			return mHeight;
+		}
+
+		/**
+		 * Create a tile.
+		 *
+		 * @param image The rendered image.
+		 * @param x The relative x position.
+		 * @param y The relative y position.
+		 * @param width The relative width.
+		 * @param height The relative height.
+		 */
+		private Tile(final Image image, final double x, final double y, final double width, final double height) {
+			mImage = image;
+			mX = x;
+			mY = y;
+			mWidth = width;
+			mHeight = height;
+		}
+	}
+
+	/**
+	 * The display settings of rendered tiles.
+	 */
+	private static final class RenderSettings {
+		// JAVADOC:OFF
+		private final float mBrightness;
+		private final float mContrast;
+		private final float mSaturation;
+		private final float mColorTemperature;
+		private final Image mOverlayImage;
+		private final float mOverlayXCenter;
+		private final float mOverlayYCenter;
+		private final float mOverlayScaleFactor;
+
+		// JAVADOC:ON
+
+		/**
+		 * Create render settings.
+		 *
+		 * @param brightness The brightness.
+		 * @param contrast The contrast.
+		 * @param saturation The saturation.
+		 * @param colorTemperature The color temperature.
+		 * @param overlayImage The overlay image, or null if no overlay is displayed.
+		 * @param overlayXCenter The relative x position of the overlay center.
+		 * @param overlayYCenter The relative y position of the overlay center.
+		 * @param overlayScaleFactor The size of the overlay relative to the larger side of the image.
+		 */
+		private RenderSettings(final float brightness, final float contrast, final float saturation, // SUPPRESS_CHECKSTYLE
+				final float colorTemperature, final Image overlayImage, final float overlayXCenter, final float overlayYCenter,
+				final float overlayScaleFactor) {
+			mBrightness = brightness;
+			mContrast = contrast;
+			mSaturation = saturation;
+			mColorTemperature = colorTemperature;
+			mOverlayImage = overlayImage;
+			mOverlayXCenter = overlayXCenter;
+			mOverlayYCenter = overlayYCenter;
+			mOverlayScaleFactor = overlayScaleFactor;
+		}
+
+		/**
+		 * Check if the settings leave the colors unchanged.
+		 *
+		 * @return true if the colors are unchanged.
+		 */
+		private boolean hasOriginalColors() {
+			return mBrightness == 0 && mContrast == 1 && mSaturation == 1 && mColorTemperature == 0;
+		}
+
+		@Override
+		public boolean equals(final Object other) {
+			if (!(other instanceof RenderSettings)) {
+				return false;
+			}
+			RenderSettings settings = (RenderSettings) other;
+			return mBrightness == settings.mBrightness && mContrast == settings.mContrast
+					&& mSaturation == settings.mSaturation && mColorTemperature == settings.mColorTemperature
+					&& mOverlayImage == settings.mOverlayImage && mOverlayXCenter == settings.mOverlayXCenter
+					&& mOverlayYCenter == settings.mOverlayYCenter && mOverlayScaleFactor == settings.mOverlayScaleFactor;
+		}
+
+		@Override
+		public int hashCode() {
+			return Objects.hash(mBrightness, mContrast, mSaturation, mColorTemperature, mOverlayXCenter, mOverlayYCenter,
+					mOverlayScaleFactor);
+		}
+	}
+
+	/**
+	 * The parameters of a render request.
+	 */
+	private static final class RenderRequest {
+		// JAVADOC:OFF
+		private final long mNumber;
+		private final File mFile;
+		private final Rectangle2D mVisibleArea;
+		private final double mDisplayWidth;
+		private final double mBaseWidth;
+		private final RenderSettings mSettings;
+		private final Consumer<List<Tile>> mCallback;
+
+		// JAVADOC:ON
+
+		/**
+		 * Create a render request.
+		 *
+		 * @param number The number of the request.
+		 * @param file The image file.
+		 * @param visibleArea The visible area.
+		 * @param displayWidth The display width.
+		 * @param baseWidth The width of the base image.
+		 * @param settings The display settings.
+		 * @param callback The callback receiving the rendered tiles.
+		 */
+		private RenderRequest(final long number, final File file, final Rectangle2D visibleArea, // SUPPRESS_CHECKSTYLE
+				final double displayWidth, final double baseWidth, final RenderSettings settings,
+				final Consumer<List<Tile>> callback) {
+			mNumber = number;
+			mFile = file;
+			mVisibleArea = visibleArea;
+			mDisplayWidth = displayWidth;
+			mBaseWidth = baseWidth;
+			mSettings = settings;
+			mCallback = callback;
+		}
+	}
+}
@@ -1,9 +1,13 @@
 package de.eisfeldj.augendiagnosefx.util.imagefile;
 
+import java.io.ByteArrayInputStream;
 import java.io.File;
+import java.io.IOException;
 import java.net.MalformedURLException;
 import java.net.URL;
 import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.util.function.Consumer;
 
 import de.eisfeldj.augendiagnosefx.util.Logger;
 import de.eisfeldj.augendiagnosefx.util.PreferenceUtil;
@@ -20,6 +24,7 @@ import javafx.scene.effect.DisplacementMap;
 import javafx.scene.effect.FloatMap;
 import javafx.scene.image.Image;
 import javafx.scene.image.PixelFormat;
+import javafx.scene.image.WritableImage;
 import javafx.scene.image.WritablePixelFormat;
 import javafx.scene.paint.Color;
 
@@ -57,24 +62,32 @@ public final class ImageUtil {
 	 * The number four.
 	 */
 	private static final int FOUR = 4;
+
 	/**
-	 * The size of a byte.
+	 * The maximum difference of the aspect ratios of EXIF thumbnail and image for using the thumbnail.
 	 */
-	private static final int BYTE = 0xFF;
+	private static final double THUMBNAIL_ASPECT_RATIO_TOLERANCE = 0.02;
 
 	/**
-	 * A cache of one overlay - to prevent frequent recalculation while sliding brightness and contrast.
+	 * The number of bytes in a megabyte.
 	 */
-	// JAVADOC:OFF
-	private static Image mCachedOverlay;
-	private static Integer mCachedOverlayType = null;
-	private static RightLeft mCachedOverlaySide;
-	private static Color mCachedOverlayColor;
-	private static float mCachedPupilSize;
-	private static float mCachedPupilXOffset;
-	private static float mCachedPupilYOffset;
+	private static final long MEGABYTE = 1024 * 1024;
 
-	// JAVADOC:ON
+	/**
+	 * A cache of warped overlays - to prevent frequent recalculation while sliding brightness and contrast or switching
+	 * between eyes and overlays.
+	 */
+	private static final OverlayCache OVERLAY_CACHE =
+			new OverlayCache(PreferenceUtil.getPreferenceInt(PreferenceUtil.KEY_OVERLAY_CACHE_SIZE) * MEGABYTE);
+
+	public static OverlayCache getOverlayCache() {
+		return OVERLAY_CACHE;
+	}
+
+	/**
+	 * The FloatMap used for the displacement of overlays. Reused, as overlays are created only in the FX thread.
+	 */
+	private static FloatMap mOverlayFloatMap = null;
 
 	/**
 	 * Do not allow instantiation.
@@ -86,6 +99,9 @@ public final class ImageUtil {
 	/**
 	 * Get an image from a file.
 	 *
+	 * <p>Thumbnails are taken from the thumbnail cache or from the EXIF thumbnail if it is big enough. Otherwise, the
+	 * image is decoded in reduced size. The EXIF orientation is applied to the reduced image.
+	 *
 	 * @param file
 	 *            The image file.
 	 * @param resolution
@@ -93,6 +109,22 @@ public final class ImageUtil {
 	 * @return the image.
 	 */
 	public static Image getImage(final File file, final Resolution resolution) {
+		return getImage(file, resolution, true);
+	}
+
+	/**
+	 * Get an image from a file.
+	 *
+	 * @param file
+	 *            The image file.
+	 * @param resolution
+	 *            Indicator of the resolution in which the image should be returned.
+	 * @param backgroundLoading
+	 *            Flag indicating if unrotated images in reduced resolution may be loaded in the background. If false,
+	 *            the image is completely loaded when returned.
+	 * @return the image.
+	 */
+	public static Image getImage(final File file, final Resolution resolution, final boolean backgroundLoading) {
 		URL url = null;
 		try {
 			url = file.toURI().toURL();
@@ -106,14 +138,59 @@ public final class ImageUtil {
 				? PreferenceUtil.getPreferenceInt(PreferenceUtil.KEY_THUMBNAIL_SIZE)
 				: PreferenceUtil.getPreferenceInt(PreferenceUtil.KEY_MAX_BITMAP_SIZE);
 
-		int rotation = JpegMetadataUtil.getExifOrientationAngle(file);
+		if (resolution != Resolution.THUMB) {
+			return decodeImage(file, url, resolution, maxSize, backgroundLoading);
+		}
+
+		long lastModified = file.lastModified();
+		long length = file.length();
+		Image thumbnail = ThumbnailCache.get(file, lastModified, length, maxSize);
+		if (thumbnail == null) {
+			thumbnail = decodeImage(file, url, resolution, maxSize, backgroundLoading);
+			ThumbnailCache.put(file, lastModified, length, maxSize, thumbnail);
+		}
+		return thumbnail;
+	}
+
+	/**
+	 * Decode an image from a file.
+	 *
+	 * @param file
+	 *            The image file.
+	 * @param url
+	 *            The URL of the image file.
+	 * @param resolution
+	 *            Indicator of the resolution in which the image should be returned.
+	 * @param maxSize
+	 *            The maximum size of the image, if not in full resolution.
+	 * @param backgroundLoading
+	 *            Flag indicating if unrotated images in reduced resolution may be loaded in the background.
+	 * @return the image.
+	 */
+	private static Image decodeImage(final File file, final URL url, final Resolution resolution, final int maxSize,
+			final boolean backgroundLoading) {
+		JpegHeader header = null;
+		try {
+			header = JpegHeader.read(file);
+		}
+		catch (IOException e) {
+			// no JPEG file - no EXIF data
+		}
+		int rotation = header == null ? 0 : JpegMetadataUtil.getOrientationAngle(header.getOrientation());
+
+		if (resolution == Resolution.THUMB && header != null && header.getThumbnail() != null) {
+			Image thumbnail = getExifThumbnail(header, maxSize);
+			if (thumbnail != null) {
+				return rotateImage(thumbnail, rotation);
+			}
+		}
 
 		if (rotation == 0) {
 			if (resolution == Resolution.FULL) {
 				return new Image(url.toExternalForm());
 			}
 			else {
-				return new Image(url.toExternalForm(), maxSize, maxSize, true, true, true);
+				return new Image(url.toExternalForm(), maxSize, maxSize, true, true, backgroundLoading);
 			}
 		}
 		else {
@@ -125,38 +202,88 @@ public final class ImageUtil {
 			else {
 				image = new Image(url.toExternalForm(), maxSize, maxSize, true, true);
 			}
+			return rotateImage(image, rotation);
+		}
+	}
 
-			double width = image.getWidth();
-			double height = image.getHeight();
+	/**
+	 * Get the EXIF thumbnail of a JPEG file in the given size.
+	 *
+	 * @param header
+	 *            The header of the file.
+	 * @param maxSize
+	 *            The maximum size of the thumbnail.
+	 * @return The thumbnail, or null if there is no thumbnail of at least this size and of the same aspect ratio as the
+	 *         image.
+	 */
+	private static Image getExifThumbnail(final JpegHeader header, final int maxSize) {
+		Image thumbnail = new Image(new ByteArrayInputStream(header.getThumbnail()));
+		double width = thumbnail.getWidth();
+		double height = thumbnail.getHeight();
+		if (thumbnail.isError() || Math.max(width, height) < maxSize) {
+			return null;
+		}
+		// Thumbnails of a different aspect ratio contain black bars.
+		if (header.getWidth() > 0 && header.getHeight() > 0
+				&& Math.abs(width / height - (double) header.getWidth() / header.getHeight()) > THUMBNAIL_ASPECT_RATIO_TOLERANCE) {
+			return null;
+		}
+		if (Math.max(width, height) == maxSize) {
+			return thumbnail;
+		}
+		return new Image(new ByteArrayInputStream(header.getThumbnail()), maxSize, maxSize, true, true);
+	}
 
-			Canvas canvas;
-			GraphicsContext gc;
+	/**
+	 * Rotate an image by copying its pixels. In contrast to a canvas snapshot, this is possible outside the JavaFX
+	 * application thread.
+	 *
+	 * @param image
+	 *            The image, which must be completely loaded.
+	 * @param rotation
+	 *            The clockwise rotation angle (0, 90, 180 or 270).
+	 * @return the rotated image.
+	 */
+	private static Image rotateImage(final Image image, final int rotation) {
+		if (rotation == 0 || image.getPixelReader() == null) {
+			return image;
+		}
 
-			switch (rotation) {
-			case 90: // MAGIC_NUMBER
-				canvas = new Canvas(height, width);
-				gc = canvas.getGraphicsContext2D();
-				gc.setTransform(0, 1, -1, 0, height, 0);
-				break;
-			case 180: // MAGIC_NUMBER
-				canvas = new Canvas(width, height);
-				gc = canvas.getGraphicsContext2D();
-				gc.setTransform(-1, 0, 0, -1, width, height);
-				break;
-			case 270: // MAGIC_NUMBER
-				canvas = new Canvas(height, width);
-				gc = canvas.getGraphicsContext2D();
-				gc.setTransform(0, -1, 1, 0, 0, width);
-				break;
-			default:
-				canvas = new Canvas(width, height);
-				gc = canvas.getGraphicsContext2D();
+		int width = (int) image.getWidth();
+		int height = (int) image.getHeight();
+		int[] source = new int[width * height];
+		int[] target = new int[width * height];
+		WritablePixelFormat<IntBuffer> pixelFormat = PixelFormat.getIntArgbInstance();
+		image.getPixelReader().getPixels(0, 0, width, height, pixelFormat, source, 0, width);
+
+		boolean isSwapped = rotation == 90 || rotation == 270; // MAGIC_NUMBER
+		int targetWidth = isSwapped ? height : width;
+		int targetHeight = isSwapped ? width : height;
+
+		for (int y = 0; y < height; y++) {
+			for (int x = 0; x < width; x++) {
+				int targetIndex;
+				switch (rotation) {
+				case 90: // MAGIC_NUMBER
+					targetIndex = x * targetWidth + height - 1 - y;
+					break;
+				case 180: // MAGIC_NUMBER
+					targetIndex = (height - 1 - y) * targetWidth + width - 1 - x;
+					break;
+				case 270: // MAGIC_NUMBER
+					targetIndex = (width - 1 - x) * targetWidth + y;
+					break;
+				default:
+					targetIndex = y * targetWidth + x;
+					break;
+				}
+				target[targetIndex] = source[y * width + x];
 			}
-
-			gc.drawImage(image, 0, 0);
-
-			return canvas.snapshot(null, null);
 		}
+
+		WritableImage result = new WritableImage(targetWidth, targetHeight);
+		result.getPixelWriter().setPixels(0, 0, targetWidth, targetHeight, pixelFormat, target, 0, targetWidth);
+		return result;
 	}
 
 	/**
@@ -284,86 +411,53 @@ public final class ImageUtil {
 	 *            The relative size of the pupil.
 	 * @return The overlay image.
 	 */
-	private static Image getOverlayImage(final int overlayType, final RightLeft side, final Color color,
+	static Image getOverlayImage(final int overlayType, final RightLeft side, final Color color,
 			final float pupilXOffset, final float pupilYOffset, final float pupilSize) {
-		if (mCachedOverlayType != null && overlayType == mCachedOverlayType // BOOLEAN_EXPRESSION_COMPLEXITY
-				&& side == mCachedOverlaySide && color.equals(mCachedOverlayColor)
-				&& pupilXOffset == mCachedPupilXOffset && pupilYOffset == mCachedPupilYOffset && pupilSize == mCachedPupilSize) {
-			return mCachedOverlay;
+		Image cachedOverlay = OVERLAY_CACHE.get(overlayType, side, color, pupilXOffset, pupilYOffset, pupilSize);
+		if (cachedOverlay != null) {
+			return cachedOverlay;
 		}
+		return createOverlayImage(overlayType, side, color,
+				OverlayCache.quantize(pupilXOffset), OverlayCache.quantize(pupilYOffset), OverlayCache.quantize(pupilSize));
+	}
 
+	/**
+	 * Create an overlay image, warped due to pupil size and position, and store it in the overlay cache.
+	 *
+	 * @param overlayType
+	 *            The overlay type.
+	 * @param side
+	 *            The side of the eye.
+	 * @param color
+	 *            The overlay color.
+	 * @param pupilXOffset
+	 *            The horizontal offset of the pupil.
+	 * @param pupilYOffset
+	 *            The vertical offset of the pupil.
+	 * @param pupilSize
+	 *            The relative size of the pupil.
+	 * @return The overlay image.
+	 */
+	private static Image createOverlayImage(final int overlayType, final RightLeft side, final Color color,
+			final float pupilXOffset, final float pupilYOffset, final float pupilSize) {
 		Image originalImage = getOverlayImage(overlayType, side, color);
 		Canvas canvas = new Canvas(OVERLAY_SIZE, OVERLAY_SIZE);
 
-		int overlayHalfSize = OVERLAY_SIZE / 2;
-		int irisRadius = (int) (OVERLAY_CIRCLE_RATIO * overlayHalfSize);
-		long irisRadiusSquare = irisRadius * irisRadius;
-		float pupilXCenter = OVERLAY_SIZE * OVERLAY_CIRCLE_RATIO * pupilXOffset / (1 - pupilSize);
-		float pupilYCenter = OVERLAY_SIZE * OVERLAY_CIRCLE_RATIO * pupilYOffset / (1 - pupilSize);
-		float origPupilSize = ORIG_PUPIL_SIZES[overlayType];
-		float linTransM = pupilSize == 1 ? 0 : (1 - origPupilSize) / (1 - pupilSize);
-		float linTransB = 1 - linTransM;
-
-		FloatMap floatMap = new FloatMap(OVERLAY_SIZE, OVERLAY_SIZE);
-		for (int x = 0; x < OVERLAY_SIZE; x++) {
-			int xPos = x - overlayHalfSize;
-			float xPosP = xPos - pupilXCenter;
-
-			for (int y = 0; y < OVERLAY_SIZE; y++) {
-				int yPos = y - overlayHalfSize;
-				float yPosP = yPos - pupilYCenter;
-
-				long centerDistSquare = xPos * xPos + yPos * yPos;
-				float pupilCenterDistSquare = xPosP * xPosP + yPosP * yPosP;
-
-				if (centerDistSquare >= irisRadiusSquare) {
-					floatMap.setSamples(x, y, 0, 0);
-				}
-				else if (pupilCenterDistSquare == 0) {
-					floatMap.setSamples(x, y, -xPos / OVERLAY_SIZE, -yPos / OVERLAY_SIZE);
-				}
-				else {
-					// Determine corresponding iris boundary point via quadratic equation
-					float plusMinusTerm = (float) Math.sqrt(2 * xPosP * yPosP * pupilXCenter * pupilYCenter
-							+ irisRadius * irisRadius * pupilCenterDistSquare
-							- (pupilXCenter * pupilXCenter * yPosP * yPosP)
-							- (pupilYCenter * pupilYCenter * xPosP * xPosP));
-
-					float xBound = (yPosP * yPosP * pupilXCenter - yPosP * xPosP * pupilYCenter + xPosP * plusMinusTerm) / pupilCenterDistSquare;
-					float yBound = (xPosP * xPosP * pupilYCenter - xPosP * yPosP * pupilXCenter + yPosP * plusMinusTerm) / pupilCenterDistSquare;
-
-					// distance of the current point from the center - 1 corresponds to iris boundary
-					float relativeDistance = (float) Math.sqrt(pupilCenterDistSquare
-							/ ((xBound - pupilXCenter) * (xBound - pupilXCenter) + (yBound - pupilYCenter) * (yBound - pupilYCenter)));
-
-					float sourceRelativeDistance = linTransM * relativeDistance + linTransB;
-					if (relativeDistance < pupilSize) {
-						sourceRelativeDistance -= linTransB * Math.pow(1 - relativeDistance / pupilSize, 1.1f); // MAGIC_NUMBER
-					}
-
-					float sourceX = xBound * sourceRelativeDistance;
-					float sourceY = yBound * sourceRelativeDistance;
-
-					floatMap.setSamples(x, y, (sourceX - xPos) / OVERLAY_SIZE, (sourceY - yPos) / OVERLAY_SIZE);
-				}
-
-			}
+		if (mOverlayFloatMap == null) {
+			mOverlayFloatMap = new FloatMap(OVERLAY_SIZE, OVERLAY_SIZE);
 		}
-		DisplacementMap displacementMap = new DisplacementMap(floatMap);
+		new OverlayDisplacement(OVERLAY_SIZE, OVERLAY_CIRCLE_RATIO, ORIG_PUPIL_SIZES[overlayType], pupilXOffset, pupilYOffset, pupilSize)
+				.fillFloatMap(mOverlayFloatMap);
+		DisplacementMap displacementMap = new DisplacementMap(mOverlayFloatMap);
 		canvas.getGraphicsContext2D().setEffect(displacementMap);
 		canvas.getGraphicsContext2D().drawImage(originalImage, 0, 0, OVERLAY_SIZE, OVERLAY_SIZE);
 
 		SnapshotParameters parameters = new SnapshotParameters();
 		parameters.setFill(Color.TRANSPARENT);
 
-		mCachedOverlay = canvas.snapshot(parameters, null);
-		mCachedOverlayType = overlayType;
-		mCachedOverlaySide = side;
-		mCachedOverlayColor = color;
-		mCachedPupilSize = pupilSize;
-		mCachedPupilXOffset = pupilXOffset;
-		mCachedPupilYOffset = pupilYOffset;
-		return mCachedOverlay;
+		Image overlay = canvas.snapshot(parameters, null);
+		OVERLAY_CACHE.put(overlayType, side, color, pupilXOffset, pupilYOffset, pupilSize, overlay);
+		return overlay;
 	}
 
 	/**
@@ -401,14 +495,45 @@ public final class ImageUtil {
 	 *            Indicator of the resolution of the image.
 	 * @return The image with overlay.
 	 */
-	private static Image getImageWithOverlay( // SUPPRESS_CHECKSTYLE Too many parameters
+	static Image getImageWithOverlay( // SUPPRESS_CHECKSTYLE Too many parameters
 			final Image baseImage, final Integer overlayType, final RightLeft side,
 			final Color color, final float xPosition, final float yPosition, final float scaleFactor,
 			final float pupilXOffset, final float pupilYOffset, final float pupilSize,
 			final float brightness, final float contrast,
 			final float saturation, final float colorTemperature, final Resolution resolution) {
+		Image overlayImage = overlayType == null ? null : getOverlayImage(overlayType, side, color, pupilXOffset, pupilYOffset, pupilSize);
+		return getImageWithOverlay(baseImage, overlayImage, xPosition, yPosition, scaleFactor,
+				brightness, contrast, saturation, colorTemperature);
+	}
+
+	/**
+	 * Get an image with a displayed overlay image.
+	 *
+	 * @param baseImage
+	 *            the base image.
+	 * @param overlayImage
+	 *            The overlay image, or null if no overlay is displayed.
+	 * @param xPosition
+	 *            The x position of the overlay.
+	 * @param yPosition
+	 *            The y position of the overlay.
+	 * @param scaleFactor
+	 *            The scale factor of the overlay.
+	 * @param brightness
+	 *            The brightness of the image.
+	 * @param contrast
+	 *            The contrast of the image.
+	 * @param saturation
+	 *            The saturation of the image.
+	 * @param colorTemperature
+	 *            The color temperature of the image.
+	 * @return The image with overlay.
+	 */
+	private static Image getImageWithOverlay( // SUPPRESS_CHECKSTYLE Too many parameters
+			final Image baseImage, final Image overlayImage, final float xPosition, final float yPosition, final float scaleFactor,
+			final float brightness, final float contrast, final float saturation, final float colorTemperature) {
 		boolean hasOriginalColors = brightness == 0 && contrast == 1 && saturation == 1 && colorTemperature == 0;
-		if (hasOriginalColors && overlayType == null) {
+		if (hasOriginalColors && overlayImage == null) {
 			return baseImage;
 		}
 
@@ -425,37 +550,16 @@ public final class ImageUtil {
 			gc.drawImage(baseImage, 0, 0, width, height);
 		}
 		else {
-			Color temperatureColor = convertTemperatureToColor(colorTemperature);
-			float factorBlue = 1 / (float) temperatureColor.getBlue();
-			float factorGreen = 1 / (float) temperatureColor.getGreen();
-			float factorRed = 1 / (float) temperatureColor.getRed();
-			float correctionFactor = (float) Math.pow(factorRed * factorGreen * factorBlue, -1f / 3); // MAGIC_NUMBER
-			factorBlue *= correctionFactor * contrast;
-			factorGreen *= correctionFactor * contrast;
-			factorRed *= correctionFactor * contrast;
-			float offset = BYTE / 2f * (1 - contrast + brightness * contrast + brightness);
-			float oppositeSaturation = (1 - saturation) / 2;
-
 			WritablePixelFormat<ByteBuffer> pixelFormat = PixelFormat.getByteBgraInstance();
 			byte[] buffer = new byte[FOUR * width * height];
 
 			baseImage.getPixelReader().getPixels(0, 0, width, height, pixelFormat, buffer, 0, FOUR * width);
-
-			for (int i = 0; i < buffer.length; i += FOUR) {
-				float blueIn = (buffer[i] & BYTE) * factorBlue;
-				float greenIn = (buffer[i + 1] & BYTE) * factorGreen;
-				float redIn = (buffer[i + 2] & BYTE) * factorRed;
-
-				buffer[i] = toColorByte(saturation * blueIn + oppositeSaturation * greenIn + oppositeSaturation * redIn + offset);
-				buffer[i + 1] = toColorByte(oppositeSaturation * blueIn + saturation * greenIn + oppositeSaturation * redIn + offset);
-				buffer[i + 2] = toColorByte(oppositeSaturation * blueIn + oppositeSaturation * greenIn + saturation * redIn + offset);
-			}
+			ColorMappingRenderer.applyColorMapping(buffer, buffer, width, height, brightness, contrast, saturation, colorTemperature);
 
 			gc.getPixelWriter().setPixels(0, 0, width, height, pixelFormat, buffer, 0, FOUR * width);
 		}
 
-		if (overlayType != null) {
-			Image overlayImage = getOverlayImage(overlayType, side, color, pupilXOffset, pupilYOffset, pupilSize);
+		if (overlayImage != null) {
 			gc.setEffect(null);
 			gc.setGlobalBlendMode(BlendMode.SRC_OVER);
 			gc.drawImage(overlayImage, xPosition * width - overlaySize / 2,
@@ -478,33 +582,79 @@ public final class ImageUtil {
 	}
 
 	/**
-	 * Convert a number into a byte (ensuring the appropriate range).
+	 * Get an eye photo image with a displayed overlay, positioned via the metadata.
 	 *
-	 * @param number The number.
-	 * @return The resulting byte.
+	 * @param eyePhoto
+	 *            The eye photo image.
+	 * @param overlayType
+	 *            The overlay type.
+	 * @param color
+	 *            The overlay color.
+	 * @param brightness
+	 *            The brightness of the image.
+	 * @param contrast
+	 *            The contrast of the image.
+	 * @param saturation
+	 *            The saturation of the image.
+	 * @param colorTemperature
+	 *            The color temperature of the image.
+	 * @param resolution
+	 *            Indicator of the resolution of the image.
+	 * @return The image with overlay.
 	 */
-	private static byte toColorByte(final float number) {
-		return (byte) Math.min(BYTE, Math.max(0, number));
+	public static Image getImageForDisplay(final EyePhoto eyePhoto, // SUPPRESS_CHECKSTYLE Too many parameters
+			final Integer overlayType, final Color color, final float brightness, final float contrast,
+			final float saturation, final float colorTemperature, final Resolution resolution) {
+		return getImageForDisplay(eyePhoto.getImage(resolution), eyePhoto, overlayType, color,
+				brightness, contrast, saturation, colorTemperature, resolution);
 	}
 
 	/**
-	 * Convert a temperature into a color value representing the color of this temperature.
+	 * Render an eye photo image with a displayed overlay, positioned via the metadata. Brightness, contrast, saturation
+	 * and color temperature are applied outside the JavaFX application thread; only the overlay is drawn on the JavaFX
+	 * application thread.
 	 *
-	 * @param temperature The temperature value (in the range -1..1).
-	 * @return The color value.
+	 * @param renderer
+	 *            The renderer used for the color mapping. If called repeatedly with the same renderer, only the latest
+	 *            request is guaranteed to be rendered.
+	 * @param eyePhoto
+	 *            The eye photo image.
+	 * @param overlayType
+	 *            The overlay type.
+	 * @param color
+	 *            The overlay color.
+	 * @param brightness
+	 *            The brightness of the image.
+	 * @param contrast
+	 *            The contrast of the image.
+	 * @param saturation
+	 *            The saturation of the image.
+	 * @param colorTemperature
+	 *            The color temperature of the image.
+	 * @param resolution
+	 *            Indicator of the resolution of the image.
+	 * @param callback
+	 *            The callback receiving the image with overlay on the JavaFX application thread.
 	 */
-	private static Color convertTemperatureToColor(final double temperature) {
-		if (temperature >= 0) {
-			return Color.rgb((int) (BYTE - 150 * temperature), (int) (BYTE - 105 * temperature), BYTE); // MAGIC_NUMBER
+	public static void renderImageForDisplay(final ColorMappingRenderer renderer, // SUPPRESS_CHECKSTYLE Too many parameters
+			final EyePhoto eyePhoto, final Integer overlayType, final Color color, final float brightness, final float contrast,
+			final float saturation, final float colorTemperature, final Resolution resolution, final Consumer<Image> callback) {
+		Image image = eyePhoto.getImage(resolution);
+		if (resolution == Resolution.FULL) {
+			// Pass through the renderer anyway, so that the image is not overwritten by an earlier request.
+			renderer.render(image, 0, 1, 1, 0, callback);
 		}
 		else {
-			return Color.rgb(BYTE, (int) (BYTE + 80 * temperature), (int) (BYTE + 145 * temperature)); // MAGIC_NUMBER
+			renderer.render(image, brightness, contrast, saturation, colorTemperature,
+					mappedImage -> callback.accept(getImageForDisplay(mappedImage, eyePhoto, overlayType, color, 0, 1, 1, 0, resolution)));
 		}
 	}
 
 	/**
-	 * Get an eye photo image with a displayed overlay, positioned via the metadata.
+	 * Get an image of an eye photo with a displayed overlay, positioned via the metadata of the eye photo.
 	 *
+	 * @param image
+	 *            The image of the eye photo in the given resolution.
 	 * @param eyePhoto
 	 *            The eye photo image.
 	 * @param overlayType
@@ -523,31 +673,65 @@ public final class ImageUtil {
 	 *            Indicator of the resolution of the image.
 	 * @return The image with overlay.
 	 */
-	public static Image getImageForDisplay(final EyePhoto eyePhoto, // SUPPRESS_CHECKSTYLE Too many parameters
+	private static Image getImageForDisplay(final Image image, final EyePhoto eyePhoto, // SUPPRESS_CHECKSTYLE Too many parameters
 			final Integer overlayType, final Color color, final float brightness, final float contrast,
 			final float saturation, final float colorTemperature, final Resolution resolution) {
-		Image image = eyePhoto.getImage(resolution);
-		JpegMetadata metadata = eyePhoto.getImageMetadata();
 		if (resolution == Resolution.FULL) {
 			// Full resolution does not allow use of Canvas to set brightness, contrast and overlay.
 			return image;
 		}
-		else if (metadata != null && metadata.hasOverlayPosition() && overlayType != null) {
-			if (metadata.getPupilSize() == null) {
-				return ImageUtil.getImageWithOverlay(image, overlayType, eyePhoto.getRightLeft(), color,
-						metadata.getXCenter(), metadata.getYCenter(), metadata.getOverlayScaleFactor(),
-						0, 0, 0.25f, brightness, contrast, saturation, colorTemperature, resolution); // MAGIC_NUMBER
-			}
-			else {
-				return ImageUtil.getImageWithOverlay(image, overlayType, eyePhoto.getRightLeft(), color,
-						metadata.getXCenter(), metadata.getYCenter(), metadata.getOverlayScaleFactor(),
-						metadata.getPupilXOffset(), metadata.getPupilYOffset(), metadata.getPupilSize(),
-						brightness, contrast, saturation, colorTemperature, resolution);
-			}
+
+		JpegMetadata metadata = eyePhoto.getImageMetadata();
+		Image overlayImage = getOverlayImage(metadata, eyePhoto.getRightLeft(), overlayType, color);
+		if (overlayImage == null) {
+			return getImageWithOverlay(image, null, 0, 0, 1, brightness, contrast, saturation, colorTemperature);
+		}
+		else {
+			return getImageWithOverlay(image, overlayImage, metadata.getXCenter(), metadata.getYCenter(),
+					metadata.getOverlayScaleFactor(), brightness, contrast, saturation, colorTemperature);
+		}
+	}
+
+	/**
+	 * Get the overlay of an eye photo, warped due to pupil size and position as stored in the metadata. The overlay is
+	 * to be displayed at the overlay position stored in the metadata.
+	 *
+	 * @param eyePhoto
+	 *            The eye photo image.
+	 * @param overlayType
+	 *            The overlay type.
+	 * @param color
+	 *            The overlay color.
+	 * @return The overlay image, or null if no overlay is displayed.
+	 */
+	static Image getOverlayImage(final EyePhoto eyePhoto, final Integer overlayType, final Color color) {
+		return getOverlayImage(eyePhoto.getImageMetadata(), eyePhoto.getRightLeft(), overlayType, color);
+	}
+
+	/**
+	 * Get the overlay of an eye photo, warped due to pupil size and position as stored in its metadata.
+	 *
+	 * @param metadata
+	 *            The metadata of the eye photo.
+	 * @param side
+	 *            The side of the eye.
+	 * @param overlayType
+	 *            The overlay type.
+	 * @param color
+	 *            The overlay color.
+	 * @return The overlay image, or null if no overlay is displayed.
+	 */
+	private static Image getOverlayImage(final JpegMetadata metadata, final RightLeft side, final Integer overlayType,
+			final Color color) {
+		if (metadata == null || !metadata.hasOverlayPosition() || overlayType == null) {
+			return null;
+		}
+		else if (metadata.getPupilSize() == null) {
+			return getOverlayImage(overlayType, side, color, 0, 0, 0.25f); // MAGIC_NUMBER
 		}
 		else {
-			return ImageUtil.getImageWithOverlay(image, null, eyePhoto.getRightLeft(), color,
-					0, 0, 1, 0, 0, 0.25f, brightness, contrast, saturation, colorTemperature, resolution); // MAGIC_NUMBER
+			return getOverlayImage(overlayType, side, color,
+					metadata.getPupilXOffset(), metadata.getPupilYOffset(), metadata.getPupilSize());
 		}
 	}
 
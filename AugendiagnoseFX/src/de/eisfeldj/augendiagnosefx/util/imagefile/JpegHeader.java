@@ -0,0 +1,667 @@
+package de.eisfeldj.augendiagnosefx.util.imagefile;
+
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+
+import de.eisfeldj.augendiagnosefx.util.Logger;
+
+/**
+ * The metadata found in the header of a JPEG file, i.e. in the APP1 segments and the SOF segment before the image data.
+ *
+ * <p>The file is scanned only once, segment by segment, up to the first SOS marker. Only the APP1 segments and the
+ * image size from the SOF segment are read; all other segments are skipped. From the EXIF data, only the fields
+ * used by the application are extracted.
+ */
+public final class JpegHeader {
+	// JAVADOC:OFF
+	// JPEG markers
+	private static final int MARKER_PREFIX = 0xFF;
+	private static final int MARKER_SOI = 0xD8;
+	private static final int MARKER_EOI = 0xD9;
+	private static final int MARKER_SOS = 0xDA;
+	private static final int MARKER_APP1 = 0xE1;
+	private static final int MARKER_SOF0 = 0xC0;
+	private static final int MARKER_SOF15 = 0xCF;
+	private static final int MARKER_DHT = 0xC4;
+	private static final int MARKER_JPG = 0xC8;
+	private static final int MARKER_DAC = 0xCC;
+	private static final int MARKER_TEM = 0x01;
+	private static final int MARKER_RST0 = 0xD0;
+	private static final int MARKER_RST7 = 0xD7;
+
+	// TIFF tags and types
+	private static final int TAG_IMAGE_DESCRIPTION = 0x010E;
+	private static final int TAG_ORIENTATION = 0x0112;
+	private static final int TAG_EXIF_OFFSET = 0x8769;
+	private static final int TAG_THUMBNAIL_OFFSET = 0x0201;
+	private static final int TAG_THUMBNAIL_LENGTH = 0x0202;
+	private static final int TAG_USER_COMMENT = 0x9286;
+	private static final int TAG_XP_TITLE = 0x9C9B;
+	private static final int TAG_XP_COMMENT = 0x9C9C;
+	private static final int TAG_XP_SUBJECT = 0x9C9F;
+	private static final int TYPE_SHORT = 3;
+	private static final int TYPE_LONG = 4;
+	private static final int[] TYPE_SIZES = {0, 1, 1, 2, 4, 8, 1, 1, 2, 4, 8, 4, 8};
+
+	// JAVADOC:ON
+
+	/**
+	 * The identifier of an EXIF APP1 segment.
+	 */
+	private static final byte[] EXIF_IDENTIFIER = "Exif\0\0".getBytes(StandardCharsets.US_ASCII);
+
+	/**
+	 * The identifier of an XMP APP1 segment.
+	 */
+	private static final byte[] XMP_IDENTIFIER = "http://ns.adobe.com/xap/1.0/\0".getBytes(StandardCharsets.US_ASCII);
+
+	/**
+	 * The size of the character code prefix of the user comment.
+	 */
+	private static final int CHARACTER_CODE_SIZE = 8;
+
+	/**
+	 * The size of an IFD entry.
+	 */
+	private static final int IFD_ENTRY_SIZE = 12;
+
+	/**
+	 * The max number of bytes of a value stored within an IFD entry.
+	 */
+	private static final int INLINE_VALUE_SIZE = 4;
+
+	/**
+	 * The default orientation (horizontal, normal).
+	 */
+	public static final int ORIENTATION_NORMAL = 1;
+
+	/**
+	 * The XMP data as String.
+	 */
+	private String mXmpString = null;
+
+	public String getXmpString() {
+		return mXmpString;
+	}
+
+	/**
+	 * Flag indicating if the file contains EXIF data.
+	 */
+	private boolean mHasExif = false;
+
+	public boolean hasExif() {
+		return mHasExif;
+	}
+
+	/**
+	 * The EXIF orientation.
+	 */
+	private int mOrientation = ORIENTATION_NORMAL;
+
+	public int getOrientation() {
+		return mOrientation;
+	}
+
+	/**
+	 * The EXIF image description (used as title).
+	 */
+	private String mImageDescription = null;
+
+	public String getImageDescription() {
+		return mImageDescription;
+	}
+
+	/**
+	 * The EXIF user comment.
+	 */
+	private String mUserComment = null;
+
+	public String getUserComment() {
+		return mUserComment;
+	}
+
+	/**
+	 * The EXIF XP title (Microsoft).
+	 */
+	private String mXpTitle = null;
+
+	public String getXpTitle() {
+		return mXpTitle;
+	}
+
+	/**
+	 * The EXIF XP comment (Microsoft).
+	 */
+	private String mXpComment = null;
+
+	public String getXpComment() {
+		return mXpComment;
+	}
+
+	/**
+	 * The EXIF XP subject (Microsoft).
+	 */
+	private String mXpSubject = null;
+
+	public String getXpSubject() {
+		return mXpSubject;
+	}
+
+	/**
+	 * The EXIF thumbnail (JPEG data).
+	 */
+	private byte[] mThumbnail = null;
+
+	public byte[] getThumbnail() {
+		return mThumbnail;
+	}
+
+	/**
+	 * The image width (without considering the orientation).
+	 */
+	private int mWidth = 0;
+
+	public int getWidth() {
+		return mWidth;
+	}
+
+	/**
+	 * The image height (without considering the orientation).
+	 */
+	private int mHeight = 0;
+
+	public int getHeight() {
+		return mHeight;
+	}
+
+	/**
+	 * Create an empty header. Use {@link #read(File)} to create the header of a file.
+	 */
+	private JpegHeader() {
+	}
+
+	/**
+	 * Read the header of a JPEG file.
+	 *
+	 * @param file
+	 *            The JPEG file.
+	 * @return The header.
+	 * @throws IOException
+	 *             thrown if the file is no JPEG file or cannot be read.
+	 */
+	public static JpegHeader read(final File file) throws IOException {
+		JpegHeader header = new JpegHeader();
+
+		try (SegmentReader reader = new SegmentReader(file)) {
+			if (reader.readByte() != MARKER_PREFIX || reader.readByte() != MARKER_SOI) {
+				throw new IOException("File " + file.getName() + " is no JPEG file.");
+			}
+
+			while (true) {
+				int marker = reader.readMarker();
+				if (marker == MARKER_SOS || marker == MARKER_EOI) {
+					break;
+				}
+				if (marker == MARKER_TEM || (marker >= MARKER_RST0 && marker <= MARKER_RST7)) {
+					// Markers without segment.
+					continue;
+				}
+
+				int segmentLength = reader.readByte() << 8 | reader.readByte(); // MAGIC_NUMBER
+				if (segmentLength < 2) {
+					throw new IOException("Invalid segment length in file " + file.getName());
+				}
+
+				if (marker == MARKER_APP1 && (!header.mHasExif || header.mXmpString == null)) {
+					header.parseApp1Segment(reader.readBytes(segmentLength - 2));
+				}
+				else if (isStartOfFrame(marker) && header.mWidth == 0) {
+					byte[] segment = reader.readBytes(segmentLength - 2);
+					if (segment.length >= 5) { // MAGIC_NUMBER
+						// precision (1 byte), height (2 bytes), width (2 bytes)
+						header.mHeight = (segment[1] & 0xFF) << 8 | segment[2] & 0xFF; // MAGIC_NUMBER
+						header.mWidth = (segment[3] & 0xFF) << 8 | segment[4] & 0xFF; // MAGIC_NUMBER
+					}
+				}
+				else {
+					reader.skip(segmentLength - 2);
+				}
+			}
+		}
+		return header;
+	}
+
+	/**
+	 * Read the fields of EXIF data which is given in TIFF format, as stored in the EXIF segment after the identifier.
+	 *
+	 * @param exifTiff
+	 *            The EXIF data in TIFF format, or null if there is no EXIF data.
+	 * @return A header containing only the EXIF fields.
+	 */
+	protected static JpegHeader readExif(final byte[] exifTiff) {
+		JpegHeader header = new JpegHeader();
+		if (exifTiff != null) {
+			header.mHasExif = true;
+			header.parseExif(ByteBuffer.wrap(exifTiff));
+		}
+		return header;
+	}
+
+	/**
+	 * Check if a file is a JPEG file, i.e. starts with the SOI marker.
+	 *
+	 * @param file
+	 *            The file.
+	 * @return true if the file is a JPEG file.
+	 */
+	public static boolean isJpeg(final File file) {
+		try (SegmentReader reader = new SegmentReader(file)) {
+			return reader.readByte() == MARKER_PREFIX && reader.readByte() == MARKER_SOI;
+		}
+		catch (IOException e) {
+			return false;
+		}
+	}
+
+	/**
+	 * Check if a marker is a start of frame marker, containing the image size.
+	 *
+	 * @param marker
+	 *            The marker.
+	 * @return true if the marker is a SOF marker.
+	 */
+	private static boolean isStartOfFrame(final int marker) {
+		return marker >= MARKER_SOF0 && marker <= MARKER_SOF15 // BOOLEAN_EXPRESSION_COMPLEXITY
+				&& marker != MARKER_DHT && marker != MARKER_JPG && marker != MARKER_DAC;
+	}
+
+	/**
+	 * Parse an APP1 segment. Only the first EXIF segment and the first XMP segment are considered.
+	 *
+	 * @param segment
+	 *            The segment data (without marker and length).
+	 */
+	private void parseApp1Segment(final byte[] segment) {
+		if (!mHasExif && startsWith(segment, EXIF_IDENTIFIER)) {
+			mHasExif = true;
+			parseExif(ByteBuffer.wrap(segment, EXIF_IDENTIFIER.length, segment.length - EXIF_IDENTIFIER.length).slice());
+		}
+		else if (mXmpString == null && startsWith(segment, XMP_IDENTIFIER)) {
+			mXmpString = new String(segment, XMP_IDENTIFIER.length, segment.length - XMP_IDENTIFIER.length, StandardCharsets.UTF_8);
+		}
+	}
+
+	/**
+	 * Parse EXIF data, keeping the fields which could be read if the data is corrupt.
+	 *
+	 * @param tiff
+	 *            The TIFF data.
+	 */
+	private void parseExif(final ByteBuffer tiff) {
+		try {
+			parseTiff(tiff);
+		}
+		catch (RuntimeException e) {
+			// Corrupt EXIF data - keep what could be read.
+			Logger.warning("Error when parsing Exif data: " + e.toString());
+		}
+	}
+
+	/**
+	 * Parse the TIFF structure of EXIF data (IFD0, EXIF IFD and the thumbnail IFD1).
+	 *
+	 * @param tiff
+	 *            The TIFF data.
+	 */
+	private void parseTiff(final ByteBuffer tiff) {
+		tiff.order(tiff.get(0) == 'M' ? ByteOrder.BIG_ENDIAN : ByteOrder.LITTLE_ENDIAN);
+		int ifd0Offset = tiff.getInt(4); // MAGIC_NUMBER
+		int exifOffset = parseIfd(tiff, ifd0Offset);
+		if (exifOffset > 0) {
+			parseIfd(tiff, exifOffset);
+		}
+		int ifd1Offset = tiff.getInt(ifd0Offset + 2 + (tiff.getShort(ifd0Offset) & 0xFFFF) * IFD_ENTRY_SIZE); // MAGIC_NUMBER
+		if (ifd1Offset > 0) {
+			parseThumbnailIfd(tiff, ifd1Offset);
+		}
+	}
+
+	/**
+	 * Parse the IFD of the thumbnail, storing the thumbnail if it is in JPEG format.
+	 *
+	 * @param tiff
+	 *            The TIFF data.
+	 * @param offset
+	 *            The offset of the IFD.
+	 */
+	private void parseThumbnailIfd(final ByteBuffer tiff, final int offset) {
+		int thumbnailOffset = 0;
+		int thumbnailLength = 0;
+		int entryCount = tiff.getShort(offset) & 0xFFFF; // MAGIC_NUMBER
+		for (int i = 0; i < entryCount; i++) {
+			int entryOffset = offset + 2 + i * IFD_ENTRY_SIZE;
+			int tag = tiff.getShort(entryOffset) & 0xFFFF; // MAGIC_NUMBER
+			if (tag == TAG_THUMBNAIL_OFFSET) {
+				thumbnailOffset = getIntValue(tiff, entryOffset);
+			}
+			else if (tag == TAG_THUMBNAIL_LENGTH) {
+				thumbnailLength = getIntValue(tiff, entryOffset);
+			}
+		}
+
+		if (thumbnailOffset > 0 && thumbnailLength > 0 && thumbnailLength <= tiff.limit() - thumbnailOffset) {
+			mThumbnail = new byte[thumbnailLength];
+			ByteBuffer duplicate = tiff.duplicate();
+			duplicate.position(thumbnailOffset);
+			duplicate.get(mThumbnail);
+		}
+	}
+
+	/**
+	 * Parse an IFD, storing the relevant fields.
+	 *
+	 * @param tiff
+	 *            The TIFF data.
+	 * @param offset
+	 *            The offset of the IFD.
+	 * @return The offset of the EXIF IFD, if contained in this IFD. Otherwise 0.
+	 */
+	private int parseIfd(final ByteBuffer tiff, final int offset) {
+		int exifOffset = 0;
+		int entryCount = tiff.getShort(offset) & 0xFFFF; // MAGIC_NUMBER
+		for (int i = 0; i < entryCount; i++) {
+			int entryOffset = offset + 2 + i * IFD_ENTRY_SIZE;
+			int tag = tiff.getShort(entryOffset) & 0xFFFF; // MAGIC_NUMBER
+			int type = tiff.getShort(entryOffset + 2) & 0xFFFF; // MAGIC_NUMBER
+
+			switch (tag) {
+			case TAG_ORIENTATION:
+				if (type == TYPE_SHORT || type == TYPE_LONG) {
+					mOrientation = getIntValue(tiff, entryOffset);
+				}
+				break;
+			case TAG_EXIF_OFFSET:
+				exifOffset = tiff.getInt(entryOffset + 8); // MAGIC_NUMBER
+				break;
+			case TAG_IMAGE_DESCRIPTION:
+				mImageDescription = toAsciiString(getValue(tiff, entryOffset));
+				break;
+			case TAG_USER_COMMENT:
+				mUserComment = toUserCommentString(getValue(tiff, entryOffset), tiff.order());
+				break;
+			case TAG_XP_TITLE:
+				mXpTitle = toXpString(getValue(tiff, entryOffset));
+				break;
+			case TAG_XP_COMMENT:
+				mXpComment = toXpString(getValue(tiff, entryOffset));
+				break;
+			case TAG_XP_SUBJECT:
+				mXpSubject = toXpString(getValue(tiff, entryOffset));
+				break;
+			default:
+				break;
+			}
+		}
+		return exifOffset;
+	}
+
+	/**
+	 * Get the value of an IFD entry of type SHORT or LONG.
+	 *
+	 * @param tiff
+	 *            The TIFF data.
+	 * @param entryOffset
+	 *            The offset of the IFD entry.
+	 * @return The value, or 0 for other types.
+	 */
+	private static int getIntValue(final ByteBuffer tiff, final int entryOffset) {
+		int type = tiff.getShort(entryOffset + 2) & 0xFFFF; // MAGIC_NUMBER
+		if (type == TYPE_SHORT) {
+			return tiff.getShort(entryOffset + 8) & 0xFFFF; // MAGIC_NUMBER
+		}
+		else if (type == TYPE_LONG) {
+			return tiff.getInt(entryOffset + 8); // MAGIC_NUMBER
+		}
+		else {
+			return 0;
+		}
+	}
+
+	/**
+	 * Get the value bytes of an IFD entry.
+	 *
+	 * @param tiff
+	 *            The TIFF data.
+	 * @param entryOffset
+	 *            The offset of the IFD entry.
+	 * @return The value bytes, or null if the value does not fit into the TIFF data.
+	 */
+	private static byte[] getValue(final ByteBuffer tiff, final int entryOffset) {
+		int type = tiff.getShort(entryOffset + 2) & 0xFFFF; // MAGIC_NUMBER
+		long count = tiff.getInt(entryOffset + 4) & 0xFFFFFFFFL; // MAGIC_NUMBER
+		long size = count * (type < TYPE_SIZES.length ? TYPE_SIZES[type] : 1);
+		int valueOffset = size <= INLINE_VALUE_SIZE ? entryOffset + 8 : tiff.getInt(entryOffset + 8); // MAGIC_NUMBER
+
+		// Check the size before allocating, as a corrupt count could require huge memory.
+		if (valueOffset < 0 || size > tiff.limit() - valueOffset) {
+			Logger.warning("Skipping EXIF entry exceeding the EXIF data");
+			return null;
+		}
+
+		byte[] value = new byte[(int) size];
+		ByteBuffer duplicate = tiff.duplicate();
+		duplicate.position(valueOffset);
+		duplicate.get(value);
+		return value;
+	}
+
+	/**
+	 * Convert an ASCII value into a String (up to the first null character).
+	 *
+	 * @param value
+	 *            The value bytes.
+	 * @return The String, or null if there are no value bytes.
+	 */
+	private static String toAsciiString(final byte[] value) {
+		if (value == null) {
+			return null;
+		}
+		int length = 0;
+		while (length < value.length && value[length] != 0) {
+			length++;
+		}
+		return new String(value, 0, length, StandardCharsets.UTF_8);
+	}
+
+	/**
+	 * Convert a Microsoft XP value (UTF-16LE) into a String.
+	 *
+	 * @param value
+	 *            The value bytes.
+	 * @return The String, or null if there are no value bytes.
+	 */
+	private static String toXpString(final byte[] value) {
+		if (value == null) {
+			return null;
+		}
+		String result = new String(value, StandardCharsets.UTF_16LE);
+		int length = result.length();
+		while (length > 0 && result.charAt(length - 1) == 0) {
+			length--;
+		}
+		return result.substring(0, length);
+	}
+
+	/**
+	 * Convert a user comment value into a String, considering its character code prefix.
+	 *
+	 * @param value
+	 *            The value bytes.
+	 * @param byteOrder
+	 *            The byte order of the TIFF data (used for Unicode).
+	 * @return The String, or null if there are no value bytes.
+	 */
+	private static String toUserCommentString(final byte[] value, final ByteOrder byteOrder) {
+		if (value == null) {
+			return null;
+		}
+		if (value.length < CHARACTER_CODE_SIZE) {
+			return new String(value, StandardCharsets.US_ASCII);
+		}
+		String characterCode = new String(value, 0, CHARACTER_CODE_SIZE, StandardCharsets.US_ASCII);
+		Charset charset;
+		if (characterCode.startsWith("ASCII")) {
+			charset = StandardCharsets.US_ASCII;
+		}
+		else if (characterCode.startsWith("UNICODE")) {
+			charset = byteOrder == ByteOrder.BIG_ENDIAN ? StandardCharsets.UTF_16BE : StandardCharsets.UTF_16LE;
+		}
+		else {
+			charset = StandardCharsets.ISO_8859_1;
+		}
+		return new String(value, CHARACTER_CODE_SIZE, value.length - CHARACTER_CODE_SIZE, charset);
+	}
+
+	/**
+	 * Check if a byte array starts with a certain prefix.
+	 *
+	 * @param bytes
+	 *            The byte array.
+	 * @param prefix
+	 *            The prefix.
+	 * @return true if the array starts with the prefix.
+	 */
+	private static boolean startsWith(final byte[] bytes, final byte[] prefix) {
+		if (bytes.length < prefix.length) {
+			return false;
+		}
+		for (int i = 0; i < prefix.length; i++) {
+			if (bytes[i] != prefix[i]) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Buffered sequential reader of a file, allowing to skip segments without reading them.
+	 */
+	private static final class SegmentReader implements AutoCloseable {
+		/**
+		 * The size of the read buffer.
+		 */
+		private static final int BUFFER_SIZE = 8192;
+
+		/**
+		 * The file channel.
+		 */
+		private final FileChannel mChannel;
+
+		/**
+		 * The read buffer.
+		 */
+		private final ByteBuffer mBuffer = ByteBuffer.allocate(BUFFER_SIZE);
+
+		/**
+		 * Open a file for reading.
+		 *
+		 * @param file
+		 *            The file.
+		 * @throws IOException
+		 *             thrown if the file cannot be opened.
+		 */
+		private SegmentReader(final File file) throws IOException {
+			mChannel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+			mBuffer.limit(0);
+		}
+
+		/**
+		 * Read one byte.
+		 *
+		 * @return The byte as unsigned value.
+		 * @throws IOException
+		 *             thrown if the end of the file is reached or if the file cannot be read.
+		 */
+		private int readByte() throws IOException {
+			if (!mBuffer.hasRemaining()) {
+				mBuffer.clear();
+				if (mChannel.read(mBuffer) <= 0) {
+					throw new EOFException("Unexpected end of JPEG file");
+				}
+				mBuffer.flip();
+			}
+			return mBuffer.get() & MARKER_PREFIX;
+		}
+
+		/**
+		 * Read the next marker, skipping fill bytes.
+		 *
+		 * @return The marker (without the prefix 0xFF).
+		 * @throws IOException
+		 *             thrown if the end of the file is reached or if the file cannot be read.
+		 */
+		private int readMarker() throws IOException {
+			int value = readByte();
+			while (value != MARKER_PREFIX) {
+				value = readByte();
+			}
+			while (value == MARKER_PREFIX) {
+				value = readByte();
+			}
+			return value;
+		}
+
+		/**
+		 * Read a number of bytes.
+		 *
+		 * @param length
+		 *            The number of bytes.
+		 * @return The bytes.
+		 * @throws IOException
+		 *             thrown if the end of the file is reached or if the file cannot be read.
+		 */
+		private byte[] readBytes(final int length) throws IOException {
+			byte[] result = new byte[length];
+			int fromBuffer = Math.min(length, mBuffer.remaining());
+			mBuffer.get(result, 0, fromBuffer);
+
+			ByteBuffer remainder = ByteBuffer.wrap(result, fromBuffer, length - fromBuffer);
+			while (remainder.hasRemaining()) {
+				if (mChannel.read(remainder) < 0) {
+					throw new EOFException("Unexpected end of JPEG file");
+				}
+			}
+			return result;
+		}
+
+		/**
+		 * Skip a number of bytes.
+		 *
+		 * @param length
+		 *            The number of bytes.
+		 * @throws IOException
+		 *             thrown if the file cannot be read.
+		 */
+		private void skip(final int length) throws IOException {
+			if (length <= mBuffer.remaining()) {
+				mBuffer.position(mBuffer.position() + length);
+			}
+			else {
+				mChannel.position(mChannel.position() + length - mBuffer.remaining());
+				mBuffer.limit(0);
+			}
+		}
+
+		@Override
+		public void close() throws IOException {
+			mChannel.close();
+		}
+	}
+}
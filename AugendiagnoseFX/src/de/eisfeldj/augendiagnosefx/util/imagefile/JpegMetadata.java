@@ -12,6 +12,10 @@ public final class JpegMetadata {
 	 * Flag indicating that the overlay size has been set automatically by camera activity ant not by user.
 	 */
 	public static final int FLAG_OVERLAY_SET_BY_CAMERA_ACTIVITY = 0b10;
+	/**
+	 * Flag indicating that the overlay size has been determined automatically by PupilAndIrisDetector.
+	 */
+	public static final int FLAG_OVERLAY_POSITION_DETERMINED_AUTOMATICALLY = 0b100;
 
 	// JAVADOC:OFF
 	private static final String LINE_BREAK = "\n";
@@ -401,6 +405,38 @@ public final class JpegMetadata {
 		return (mFlags & flag) != 0;
 	}
 
+	/**
+	 * Create a copy of the metadata, which can be modified independently of this metadata.
+	 *
+	 * @return The copy.
+	 */
+	public JpegMetadata copy() {
+		JpegMetadata copy = new JpegMetadata();
+		copy.mTitle = mTitle;
+		copy.mDescription = mDescription;
+		copy.mSubject = mSubject;
+		copy.mComment = mComment;
+		copy.mPerson = mPerson;
+		copy.mXCenter = mXCenter;
+		copy.mYCenter = mYCenter;
+		copy.mOverlayScaleFactor = mOverlayScaleFactor;
+		copy.mXPosition = mXPosition;
+		copy.mYPosition = mYPosition;
+		copy.mZoomFactor = mZoomFactor;
+		copy.mOrganizeDate = mOrganizeDate == null ? null : new Date(mOrganizeDate.getTime());
+		copy.mRightLeft = mRightLeft;
+		copy.mBrightness = mBrightness;
+		copy.mContrast = mContrast;
+		copy.mSaturation = mSaturation;
+		copy.mColorTemperature = mColorTemperature;
+		copy.mPupilSize = mPupilSize;
+		copy.mPupilXOffset = mPupilXOffset;
+		copy.mPupilYOffset = mPupilYOffset;
+		copy.mOverlayColor = mOverlayColor;
+		copy.mFlags = mFlags;
+		return copy;
+	}
+
 	@Override
 	public String toString() {
 		StringBuffer str = new StringBuffer();
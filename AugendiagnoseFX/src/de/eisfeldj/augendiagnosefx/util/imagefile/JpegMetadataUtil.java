@@ -1,10 +1,8 @@
 package de.eisfeldj.augendiagnosefx.util.imagefile;
 
-import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
-import java.io.FileOutputStream;
 import java.io.IOException;
-import java.io.OutputStream;
 import java.util.List;
 
 import com.adobe.xmp.XMPException;
@@ -17,19 +15,14 @@ import org.apache.commons.imaging.ImageWriteException;
 import org.apache.commons.imaging.Imaging;
 import org.apache.commons.imaging.common.IImageMetadata;
 import org.apache.commons.imaging.formats.jpeg.JpegImageMetadata;
-import org.apache.commons.imaging.formats.jpeg.exif.ExifRewriter;
-import org.apache.commons.imaging.formats.jpeg.xmp.JpegXmpRewriter;
-import org.apache.commons.imaging.formats.tiff.TiffField;
 import org.apache.commons.imaging.formats.tiff.TiffImageMetadata;
 import org.apache.commons.imaging.formats.tiff.constants.ExifTagConstants;
 import org.apache.commons.imaging.formats.tiff.constants.MicrosoftTagConstants;
-import org.apache.commons.imaging.formats.tiff.constants.TiffDirectoryType;
 import org.apache.commons.imaging.formats.tiff.constants.TiffTagConstants;
-import org.apache.commons.imaging.formats.tiff.taginfos.TagInfo;
-import org.apache.commons.imaging.formats.tiff.taginfos.TagInfoShort;
+import org.apache.commons.imaging.formats.tiff.write.TiffImageWriterLossless;
+import org.apache.commons.imaging.formats.tiff.write.TiffImageWriterLossy;
 import org.apache.commons.imaging.formats.tiff.write.TiffOutputDirectory;
 import org.apache.commons.imaging.formats.tiff.write.TiffOutputSet;
-import org.apache.commons.imaging.util.IoUtils;
 
 /**
  * Helper clase to retrieve and save metadata in a JPEG file.
@@ -85,33 +78,7 @@ public final class JpegMetadataUtil {
 	 */
 	protected static int getExifOrientation(final File imageFile) {
 		try {
-			final IImageMetadata metadata = Imaging.getMetadata(imageFile);
-			TiffImageMetadata tiffImageMetadata = null;
-
-			if (metadata instanceof JpegImageMetadata) {
-				tiffImageMetadata = ((JpegImageMetadata) metadata).getExif();
-			}
-			else if (metadata instanceof TiffImageMetadata) {
-				tiffImageMetadata = (TiffImageMetadata) metadata;
-			}
-			else {
-				return TiffTagConstants.ORIENTATION_VALUE_HORIZONTAL_NORMAL;
-			}
-
-			TiffField field = tiffImageMetadata.findField(TiffTagConstants.TIFF_TAG_ORIENTATION);
-			if (field != null) {
-				return field.getIntValue();
-			}
-			else {
-				TagInfo tagInfo = new TagInfoShort("Orientation", 274, 1, TiffDirectoryType.TIFF_DIRECTORY_IFD0); // MAGIC_NUMBER
-				field = tiffImageMetadata.findField(tagInfo);
-				if (field != null) {
-					return field.getIntValue();
-				}
-				else {
-					return TiffTagConstants.ORIENTATION_VALUE_HORIZONTAL_NORMAL;
-				}
-			}
+			return JpegHeader.read(imageFile).getOrientation();
 		}
 		catch (Exception e) {
 			return TiffTagConstants.ORIENTATION_VALUE_HORIZONTAL_NORMAL;
@@ -126,8 +93,17 @@ public final class JpegMetadataUtil {
 	 * @return the orientation angle.
 	 */
 	public static int getExifOrientationAngle(final File imageFile) {
-		final int exifValue = getExifOrientation(imageFile);
+		return getOrientationAngle(getExifOrientation(imageFile));
+	}
 
+	/**
+	 * Convert an EXIF orientation into the orientation angle.
+	 *
+	 * @param exifValue
+	 *            the EXIF orientation.
+	 * @return the orientation angle.
+	 */
+	protected static int getOrientationAngle(final int exifValue) {
 		switch (exifValue) {
 		case TiffTagConstants.ORIENTATION_VALUE_HORIZONTAL_NORMAL:
 			return 0;
@@ -156,7 +132,7 @@ public final class JpegMetadataUtil {
 	 *             thrown in case of issues with XML handling.
 	 */
 	public static void printAllXmpData(final File imageFile) throws ImageReadException, IOException, XMPException {
-		final String xmpString = Imaging.getXmpXml(imageFile);
+		final String xmpString = JpegHeader.read(imageFile).getXmpString();
 		Logger.info(new XmpHandler(xmpString).getXmpString());
 	}
 
@@ -171,10 +147,8 @@ public final class JpegMetadataUtil {
 	 *             thrown if the metadata cannot be read.
 	 */
 	protected static void checkJpeg(final String jpegImageFileName) throws IOException, ImageReadException {
-		File file = new File(jpegImageFileName);
-		String mimeType = Imaging.getImageInfo(file).getMimeType();
-		if (!"image/jpeg".equals(mimeType)) {
-			throw new IOException("Bad MIME type " + mimeType + " - can handle metadata only for image/jpeg.");
+		if (!JpegHeader.isJpeg(new File(jpegImageFileName))) {
+			throw new IOException("File " + jpegImageFileName + " is no JPEG file - can handle metadata only for image/jpeg.");
 		}
 	}
 
@@ -190,13 +164,37 @@ public final class JpegMetadataUtil {
 	 *             thrown in case of other errors while reading metadata.
 	 */
 	public static JpegMetadata getMetadata(final String jpegImageFileName) throws ImageReadException, IOException {
-		checkJpeg(jpegImageFileName);
+		// Read XMP and EXIF data in one pass. This fails if the file is no JPEG file.
+		return getMetadata(JpegHeader.read(new File(jpegImageFileName)));
+	}
+
+	/**
+	 * Retrieve the relevant metadata from the header of an image file, parsing the XMP data into the full XMP object
+	 * model.
+	 *
+	 * @param header
+	 *            the header of the file.
+	 * @return the metadata of the file.
+	 */
+	protected static JpegMetadata getMetadata(final JpegHeader header) {
+		return getMetadata(header, false);
+	}
+
+	/**
+	 * Retrieve the relevant metadata from the header of an image file.
+	 *
+	 * @param header
+	 *            the header of the file.
+	 * @param streamXmp
+	 *            if true, the XMP data is read by streaming over the XML, which is faster than building the full XMP
+	 *            object model.
+	 * @return the metadata of the file.
+	 */
+	protected static JpegMetadata getMetadata(final JpegHeader header, final boolean streamXmp) {
 		JpegMetadata result = new JpegMetadata();
-		final File imageFile = new File(jpegImageFileName);
 
 		// Retrieve XMP data
-		String xmpString = Imaging.getXmpXml(imageFile);
-		XmpHandler parser = new XmpHandler(xmpString);
+		XmpReader parser = streamXmp ? new XmpStreamReader(header.getXmpString()) : new XmpHandler(header.getXmpString());
 
 		// Standard fields are pre-filled with custom data
 		result.setTitle(parser.getJeItem(XmpHandler.ITEM_TITLE));
@@ -241,45 +239,31 @@ public final class JpegMetadataUtil {
 		}
 
 		// Retrieve EXIF data
-		try {
-			final IImageMetadata metadata = Imaging.getMetadata(imageFile);
-
-			TiffImageMetadata tiffImageMetadata = null;
-			if (metadata instanceof JpegImageMetadata) {
-				tiffImageMetadata = ((JpegImageMetadata) metadata).getExif();
-			}
-			else if (metadata instanceof TiffImageMetadata) {
-				tiffImageMetadata = (TiffImageMetadata) metadata;
-			}
-			else {
-				return result;
-			}
+		if (!header.hasExif()) {
+			return result;
+		}
 
-			// EXIF data have precedence only if saving EXIF is allowed
-			TiffField title = tiffImageMetadata.findField(TiffTagConstants.TIFF_TAG_IMAGE_DESCRIPTION);
-			if (title != null && (changeExifAllowed() || result.getTitle() == null)) {
-				result.setTitle(title.getStringValue().trim());
-			}
-			String exifComment = null;
-			TiffField comment = tiffImageMetadata.findField(ExifTagConstants.EXIF_TAG_USER_COMMENT);
-			if (comment != null && comment.getStringValue().trim().length() > 0) {
-				exifComment = comment.getStringValue().trim();
-			}
-			TiffField comment2 = tiffImageMetadata.findField(MicrosoftTagConstants.EXIF_TAG_XPCOMMENT);
-			if (comment2 != null && comment2.getStringValue().trim().length() > 0) {
-				// XPComment takes precedence if existing
-				exifComment = comment2.getStringValue().trim();
-			}
-			if (exifComment != null && (changeExifAllowed() || result.getComment() == null)) {
-				result.setComment(exifComment);
-			}
-			TiffField subject = tiffImageMetadata.findField(MicrosoftTagConstants.EXIF_TAG_XPSUBJECT);
-			if (subject != null && (changeExifAllowed() || result.getSubject() == null)) {
-				result.setSubject(subject.getStringValue().trim());
-			}
+		// EXIF data have precedence only if saving EXIF is allowed
+		String title = header.getImageDescription();
+		if (title != null && (changeExifAllowed() || result.getTitle() == null)) {
+			result.setTitle(title.trim());
 		}
-		catch (Exception e) {
-			Logger.warning("Error when retrieving Exif data: " + e.toString());
+		String exifComment = null;
+		String comment = header.getUserComment();
+		if (comment != null && comment.trim().length() > 0) {
+			exifComment = comment.trim();
+		}
+		String comment2 = header.getXpComment();
+		if (comment2 != null && comment2.trim().length() > 0) {
+			// XPComment takes precedence if existing
+			exifComment = comment2.trim();
+		}
+		if (exifComment != null && (changeExifAllowed() || result.getComment() == null)) {
+			result.setComment(exifComment);
+		}
+		String subject = header.getXpSubject();
+		if (subject != null && (changeExifAllowed() || result.getSubject() == null)) {
+			result.setSubject(subject.trim());
 		}
 
 		// If fields are still null, try to get them from custom XMP
@@ -305,6 +289,11 @@ public final class JpegMetadataUtil {
 	/**
 	 * Change metadata of the image (EXIF and XMP as far as applicable).
 	 *
+	 * <p>If none of the EXIF fields changes and the new XMP packet fits into the padding of the existing one, then the packet
+	 * is overwritten in place. Otherwise, the EXIF and XMP segments are replaced in a single pass over the file, so that only
+	 * one temporary copy of the image is written. If the EXIF data cannot be created, then the XMP data is stored
+	 * nevertheless before the failure is thrown.
+	 *
 	 * @param jpegImageFileName
 	 *            the file for which metadata should be changed.
 	 * @param metadata
@@ -322,21 +311,116 @@ public final class JpegMetadataUtil {
 			ImageReadException, ImageWriteException, XMPException {
 		if (changeJpegAllowed()) {
 			checkJpeg(jpegImageFileName);
-			changeXmpMetadata(jpegImageFileName, metadata);
 
-			if (changeExifAllowed()) {
-				changeExifMetadata(jpegImageFileName, metadata);
+			File jpegImageFile = new File(jpegImageFileName);
+			String tempFileName = jpegImageFileName + ".temp";
+			File tempFile = new File(tempFileName);
+
+			verifyTempFile(tempFile);
+
+			Exception exifException = null;
+			boolean isWrittenInPlace = false;
+			try (JpegSegmentRewriter rewriter = new JpegSegmentRewriter(jpegImageFile)) {
+				XmpHandler parser = createXmpHandler(rewriter.getXmpString(), metadata);
+
+				byte[] exifTiff = null;
+				if (changeExifAllowed() && isExifChanged(rewriter.getExifTiff(), metadata)) {
+					try {
+						exifTiff = createExifTiff(rewriter.getExifTiff(), metadata);
+					}
+					catch (Exception e) {
+						exifException = e;
+					}
+				}
+
+				if (exifTiff == null && rewriter.getXmpPacketLength() > 0) {
+					byte[] xmpPacket = parser.getXmpPacket(rewriter.getXmpPacketLength());
+					if (xmpPacket != null) {
+						try {
+							rewriter.writeXmpPacketInPlace(xmpPacket);
+							isWrittenInPlace = true;
+						}
+						catch (IOException e) {
+							Logger.warning("Failed to write XMP data in place - rewriting file " + jpegImageFileName + ": "
+									+ e.getMessage());
+						}
+					}
+				}
+
+				if (!isWrittenInPlace) {
+					rewriter.write(tempFile, exifTiff, parser.getXmpString());
+				}
+			}
+
+			if (!isWrittenInPlace && !FileUtil.moveFile(tempFile, jpegImageFile)) {
+				throw new IOException("Failed to rename file " + tempFileName + " to " + jpegImageFileName);
+			}
+
+			if (exifException != null) {
+				rethrowExifException(exifException);
 			}
 		}
 	}
 
 	/**
-	 * Change the EXIF metadata.
+	 * Check if the EXIF fields written by {@link #createExifTiff(byte[], JpegMetadata)} would change. The field values
+	 * are compared, as the EXIF data written for unchanged fields is not identical byte by byte.
 	 *
-	 * @param jpegImageFileName
-	 *            the file for which metadata should be changed.
+	 * @param exifTiff
+	 *            the existing EXIF data in TIFF format, or null if there is no EXIF data.
+	 * @param metadata
+	 *            the new metadata.
+	 * @return true if any of the EXIF fields changes.
+	 */
+	private static boolean isExifChanged(final byte[] exifTiff, final JpegMetadata metadata) {
+		JpegHeader header = JpegHeader.readExif(exifTiff);
+		String title = metadata.getTitle();
+		if (title != null && !(title.equals(header.getImageDescription()) && title.equals(header.getXpTitle()))) {
+			return true;
+		}
+		String comment = metadata.getComment();
+		if (comment != null && !(comment.equals(header.getUserComment()) && comment.equals(header.getXpComment()))) {
+			return true;
+		}
+		String subject = metadata.getSubject();
+		return subject != null && !subject.equals(header.getXpSubject());
+	}
+
+	/**
+	 * Throw an exception which occurred when creating the EXIF data.
+	 *
+	 * @param e
+	 *            the exception.
+	 * @throws ImageReadException
+	 *             thrown if the metadata could not be read.
+	 * @throws ImageWriteException
+	 *             thrown if the metadata could not be written.
+	 * @throws IOException
+	 *             thrown in case of other errors while reading metadata.
+	 */
+	private static void rethrowExifException(final Exception e) throws IOException, ImageReadException, ImageWriteException {
+		if (e instanceof IOException) {
+			throw (IOException) e;
+		}
+		else if (e instanceof ImageReadException) {
+			throw (ImageReadException) e;
+		}
+		else if (e instanceof ImageWriteException) {
+			throw (ImageWriteException) e;
+		}
+		else {
+			throw (RuntimeException) e;
+		}
+	}
+
+	/**
+	 * Create the new EXIF data.
+	 *
+	 * @param exifTiff
+	 *            the existing EXIF data in TIFF format, or null if there is no EXIF data.
 	 * @param metadata
 	 *            the new metadata
+	 * @return the new EXIF data in TIFF format.
 	 * @throws ImageReadException
 	 *             thrown if the metadata cannot be read.
 	 * @throws ImageWriteException
@@ -344,161 +428,109 @@ public final class JpegMetadataUtil {
 	 * @throws IOException
 	 *             thrown in case of other errors while reading metadata.
 	 */
-	@SuppressWarnings("resource")
-	private static void changeExifMetadata(final String jpegImageFileName, final JpegMetadata metadata)
+	private static byte[] createExifTiff(final byte[] exifTiff, final JpegMetadata metadata)
 			throws IOException, ImageReadException, ImageWriteException {
-		File jpegImageFile = new File(jpegImageFileName);
-		String tempFileName = jpegImageFileName + ".temp";
-		File tempFile = new File(tempFileName);
-
-		verifyTempFile(tempFile);
-
-		OutputStream os = null;
-		try {
-			TiffOutputSet outputSet = null;
+		TiffOutputSet outputSet = null;
 
-			// note that metadata might be null if no metadata is found.
-			final IImageMetadata imageMetadata = Imaging.getMetadata(jpegImageFile);
-			final JpegImageMetadata jpegMetadata = (JpegImageMetadata) imageMetadata;
-			if (jpegMetadata != null) {
-				// note that exif might be null if no Exif metadata is found.
-				final TiffImageMetadata exif = jpegMetadata.getExif();
+		if (exifTiff != null) {
+			// note that exif might be null if the EXIF data cannot be interpreted.
+			final TiffImageMetadata exif = (TiffImageMetadata) Imaging.getMetadata(exifTiff);
 
-				if (exif != null) {
-					outputSet = exif.getOutputSet();
-				}
+			if (exif != null) {
+				outputSet = exif.getOutputSet();
 			}
+		}
 
-			if (outputSet == null) {
-				outputSet = new TiffOutputSet();
-			}
+		if (outputSet == null) {
+			outputSet = new TiffOutputSet();
+		}
 
-			final TiffOutputDirectory rootDirectory = outputSet.getOrCreateRootDirectory();
-			final TiffOutputDirectory exifDirectory = outputSet.getOrCreateExifDirectory();
+		final TiffOutputDirectory rootDirectory = outputSet.getOrCreateRootDirectory();
+		final TiffOutputDirectory exifDirectory = outputSet.getOrCreateExifDirectory();
 
-			if (metadata.getTitle() != null) {
-				rootDirectory.removeField(MicrosoftTagConstants.EXIF_TAG_XPTITLE);
-				rootDirectory.add(MicrosoftTagConstants.EXIF_TAG_XPTITLE, metadata.getTitle());
+		if (metadata.getTitle() != null) {
+			rootDirectory.removeField(MicrosoftTagConstants.EXIF_TAG_XPTITLE);
+			rootDirectory.add(MicrosoftTagConstants.EXIF_TAG_XPTITLE, metadata.getTitle());
 
-				rootDirectory.removeField(TiffTagConstants.TIFF_TAG_IMAGE_DESCRIPTION);
-				rootDirectory.add(TiffTagConstants.TIFF_TAG_IMAGE_DESCRIPTION, metadata.getTitle());
-			}
+			rootDirectory.removeField(TiffTagConstants.TIFF_TAG_IMAGE_DESCRIPTION);
+			rootDirectory.add(TiffTagConstants.TIFF_TAG_IMAGE_DESCRIPTION, metadata.getTitle());
+		}
 
-			if (metadata.getComment() != null) {
-				rootDirectory.removeField(MicrosoftTagConstants.EXIF_TAG_XPCOMMENT);
-				rootDirectory.add(MicrosoftTagConstants.EXIF_TAG_XPCOMMENT, metadata.getComment());
-				exifDirectory.removeField(ExifTagConstants.EXIF_TAG_USER_COMMENT);
-				exifDirectory.add(ExifTagConstants.EXIF_TAG_USER_COMMENT, metadata.getComment());
-			}
+		if (metadata.getComment() != null) {
+			rootDirectory.removeField(MicrosoftTagConstants.EXIF_TAG_XPCOMMENT);
+			rootDirectory.add(MicrosoftTagConstants.EXIF_TAG_XPCOMMENT, metadata.getComment());
+			exifDirectory.removeField(ExifTagConstants.EXIF_TAG_USER_COMMENT);
+			exifDirectory.add(ExifTagConstants.EXIF_TAG_USER_COMMENT, metadata.getComment());
+		}
 
-			if (metadata.getSubject() != null) {
-				rootDirectory.removeField(MicrosoftTagConstants.EXIF_TAG_XPSUBJECT);
-				rootDirectory.add(MicrosoftTagConstants.EXIF_TAG_XPSUBJECT, metadata.getSubject());
-			}
+		if (metadata.getSubject() != null) {
+			rootDirectory.removeField(MicrosoftTagConstants.EXIF_TAG_XPSUBJECT);
+			rootDirectory.add(MicrosoftTagConstants.EXIF_TAG_XPSUBJECT, metadata.getSubject());
+		}
 
+		ByteArrayOutputStream os = new ByteArrayOutputStream();
+		if (exifTiff != null) {
 			try {
-				os = new FileOutputStream(tempFile);
-				os = new BufferedOutputStream(os);
-				new ExifRewriter().updateExifMetadataLossless(jpegImageFile, os, outputSet);
+				new TiffImageWriterLossless(outputSet.byteOrder, exifTiff).write(os, outputSet);
+				return os.toByteArray();
 			}
 			catch (Exception e) {
 				Logger.warning("Error storing EXIF data lossless - try lossy approach");
-				os = new FileOutputStream(tempFile);
-				os = new BufferedOutputStream(os);
-				new ExifRewriter().updateExifMetadataLossy(jpegImageFile, os, outputSet);
-			}
-
-			IoUtils.closeQuietly(true, os);
-
-			if (!FileUtil.moveFile(tempFile, jpegImageFile)) {
-				throw new IOException("Failed to rename file " + tempFileName + " to " + jpegImageFileName);
+				os.reset();
 			}
 		}
-		finally {
-			IoUtils.closeQuietly(false, os);
-		}
-
+		new TiffImageWriterLossy(outputSet.byteOrder).write(os, outputSet);
+		return os.toByteArray();
 	}
 
 	/**
-	 * Change the XMP metadata.
+	 * Create a handler for the new XMP data.
 	 *
-	 * @param jpegImageFileName
-	 *            the file for which metadata should be changed.
+	 * @param xmpString
+	 *            the existing XMP data, or null if there is no XMP data.
 	 * @param metadata
 	 *            the new metadata.
-	 *
-	 * @throws ImageReadException
-	 *             thrown if the metadata cannot be read.
-	 * @throws ImageWriteException
-	 *             thrown if the metadata cannot be written.
-	 * @throws IOException
-	 *             thrown in case of other errors while reading metadata.
+	 * @return the handler containing the new XMP data.
 	 * @throws XMPException
 	 *             thrown in case of issues with XML handling.
 	 */
-	@SuppressWarnings("resource")
-	private static void changeXmpMetadata(final String jpegImageFileName, final JpegMetadata metadata)
-			throws IOException, ImageReadException, ImageWriteException, XMPException {
-		File jpegImageFile = new File(jpegImageFileName);
-		String tempFileName = jpegImageFileName + ".temp";
-		File tempFile = new File(tempFileName);
-
-		verifyTempFile(tempFile);
-
-		OutputStream os = null;
-		try {
-			final String xmpString = Imaging.getXmpXml(jpegImageFile);
-
-			XmpHandler parser = new XmpHandler(xmpString);
-
-			if (changeExifAllowed()) {
-				// Change standard fields only if EXIF allowed
-				parser.setDcTitle(metadata.getTitle());
-				parser.setDcDescription(metadata.getDescription());
-				parser.setDcSubject(metadata.getSubject());
-				parser.setUserComment(metadata.getComment());
-				parser.setMicrosoftPerson(metadata.getPerson());
-			}
+	private static XmpHandler createXmpHandler(final String xmpString, final JpegMetadata metadata) throws XMPException {
+		XmpHandler parser = new XmpHandler(xmpString);
 
-			parser.setJeItem(XmpHandler.ITEM_TITLE, metadata.getTitle());
-			parser.setJeItem(XmpHandler.ITEM_DESCRIPTION, metadata.getDescription());
-			parser.setJeItem(XmpHandler.ITEM_SUBJECT, metadata.getSubject());
-			parser.setJeItem(XmpHandler.ITEM_COMMENT, metadata.getComment());
-			parser.setJeItem(XmpHandler.ITEM_PERSON, metadata.getPerson());
-
-			parser.setJeItem(XmpHandler.ITEM_X_CENTER, metadata.getXCenterString());
-			parser.setJeItem(XmpHandler.ITEM_Y_CENTER, metadata.getYCenterString());
-			parser.setJeItem(XmpHandler.ITEM_OVERLAY_SCALE_FACTOR, metadata.getOverlayScaleFactorString());
-			parser.setJeItem(XmpHandler.ITEM_X_POSITION, metadata.getXPositionString());
-			parser.setJeItem(XmpHandler.ITEM_Y_POSITION, metadata.getYPositionString());
-			parser.setJeItem(XmpHandler.ITEM_ZOOM_FACTOR, metadata.getZoomFactorString());
-			parser.setJeDate(XmpHandler.ITEM_ORGANIZE_DATE, metadata.getOrganizeDate());
-			parser.setJeItem(XmpHandler.ITEM_RIGHT_LEFT, metadata.getRightLeftString());
-			parser.setJeItem(XmpHandler.ITEM_BRIGHTNESS, metadata.getBrightnessString());
-			parser.setJeItem(XmpHandler.ITEM_CONTRAST, metadata.getContrastString());
-			parser.setJeItem(XmpHandler.ITEM_SATURATION, metadata.getSaturationString());
-			parser.setJeItem(XmpHandler.ITEM_COLOR_TEMPERATURE, metadata.getColorTemperatureString());
-			parser.setJeItem(XmpHandler.ITEM_OVERLAY_COLOR, metadata.getOverlayColorString());
-			parser.setJeItem(XmpHandler.ITEM_PUPIL_SIZE, metadata.getPupilSizeString());
-			parser.setJeItem(XmpHandler.ITEM_PUPIL_X_OFFSET, metadata.getPupilXOffsetString());
-			parser.setJeItem(XmpHandler.ITEM_PUPIL_Y_OFFSET, metadata.getPupilYOffsetString());
-			parser.setJeInt(XmpHandler.ITEM_FLAGS, metadata.getFlags());
-
-			os = new FileOutputStream(tempFile);
-			os = new BufferedOutputStream(os);
-
-			new JpegXmpRewriter().updateXmpXml(jpegImageFile, os, parser.getXmpString());
-
-			IoUtils.closeQuietly(true, os);
-
-			if (!FileUtil.moveFile(tempFile, jpegImageFile)) {
-				throw new IOException("Failed to rename file " + tempFileName + " to " + jpegImageFileName);
-			}
-		}
-		finally {
-			IoUtils.closeQuietly(false, os);
+		if (changeExifAllowed()) {
+			// Change standard fields only if EXIF allowed
+			parser.setDcTitle(metadata.getTitle());
+			parser.setDcDescription(metadata.getDescription());
+			parser.setDcSubject(metadata.getSubject());
+			parser.setUserComment(metadata.getComment());
+			parser.setMicrosoftPerson(metadata.getPerson());
 		}
+
+		parser.setJeItem(XmpHandler.ITEM_TITLE, metadata.getTitle());
+		parser.setJeItem(XmpHandler.ITEM_DESCRIPTION, metadata.getDescription());
+		parser.setJeItem(XmpHandler.ITEM_SUBJECT, metadata.getSubject());
+		parser.setJeItem(XmpHandler.ITEM_COMMENT, metadata.getComment());
+		parser.setJeItem(XmpHandler.ITEM_PERSON, metadata.getPerson());
+
+		parser.setJeItem(XmpHandler.ITEM_X_CENTER, metadata.getXCenterString());
+		parser.setJeItem(XmpHandler.ITEM_Y_CENTER, metadata.getYCenterString());
+		parser.setJeItem(XmpHandler.ITEM_OVERLAY_SCALE_FACTOR, metadata.getOverlayScaleFactorString());
+		parser.setJeItem(XmpHandler.ITEM_X_POSITION, metadata.getXPositionString());
+		parser.setJeItem(XmpHandler.ITEM_Y_POSITION, metadata.getYPositionString());
+		parser.setJeItem(XmpHandler.ITEM_ZOOM_FACTOR, metadata.getZoomFactorString());
+		parser.setJeDate(XmpHandler.ITEM_ORGANIZE_DATE, metadata.getOrganizeDate());
+		parser.setJeItem(XmpHandler.ITEM_RIGHT_LEFT, metadata.getRightLeftString());
+		parser.setJeItem(XmpHandler.ITEM_BRIGHTNESS, metadata.getBrightnessString());
+		parser.setJeItem(XmpHandler.ITEM_CONTRAST, metadata.getContrastString());
+		parser.setJeItem(XmpHandler.ITEM_SATURATION, metadata.getSaturationString());
+		parser.setJeItem(XmpHandler.ITEM_COLOR_TEMPERATURE, metadata.getColorTemperatureString());
+		parser.setJeItem(XmpHandler.ITEM_OVERLAY_COLOR, metadata.getOverlayColorString());
+		parser.setJeItem(XmpHandler.ITEM_PUPIL_SIZE, metadata.getPupilSizeString());
+		parser.setJeItem(XmpHandler.ITEM_PUPIL_X_OFFSET, metadata.getPupilXOffsetString());
+		parser.setJeItem(XmpHandler.ITEM_PUPIL_Y_OFFSET, metadata.getPupilYOffsetString());
+		parser.setJeInt(XmpHandler.ITEM_FLAGS, metadata.getFlags());
+
+		return parser;
 	}
 
 	/**
@@ -532,7 +564,7 @@ public final class JpegMetadataUtil {
 	 *
 	 * @return true if it is allowed to change EXIF data.
 	 */
-	private static boolean changeExifAllowed() {
+	protected static boolean changeExifAllowed() {
 		int storeOption = PreferenceUtil.getPreferenceInt(PreferenceUtil.KEY_STORE_OPTION);
 		return storeOption == 2;
 	}
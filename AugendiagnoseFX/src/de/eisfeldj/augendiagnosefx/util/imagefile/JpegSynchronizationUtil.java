@@ -1,6 +1,13 @@
 package de.eisfeldj.augendiagnosefx.util.imagefile;
 
+import java.io.File;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import de.eisfeldj.augendiagnosefx.controller.MainController;
 import de.eisfeldj.augendiagnosefx.util.DialogUtil;
@@ -12,8 +19,41 @@ import javafx.application.Platform;
 /**
  * Utility class to help storing metadata in jpg files in a synchronized way, preventing to store the same file twice in
  * parallel.
+ *
+ * <p>Save requests are executed by a fixed number of worker threads. Requests for a file which is already waiting to be
+ * saved replace the waiting request, so that only the latest metadata is written. If too many files are waiting, new
+ * requests from background threads block until some files have been saved.
+ *
+ * <p>Save requests are recorded in the metadata journal before they are executed, so that requests which are not yet
+ * applied when the application ends are recovered on the next startup.
  */
 public final class JpegSynchronizationUtil {
+	/**
+	 * The number of worker threads saving files.
+	 */
+	private static final int WORKER_COUNT = 2;
+
+	/**
+	 * The maximum number of files waiting to be saved. Requests for further files from background threads block.
+	 */
+	private static final int MAX_QUEUED_SAVE_REQUESTS = 100;
+
+	/**
+	 * The time after which idle worker threads are stopped (in seconds).
+	 */
+	private static final long WORKER_KEEP_ALIVE_TIME = 10;
+
+	/**
+	 * The executor saving the files.
+	 */
+	private static final ThreadPoolExecutor SAVE_EXECUTOR;
+
+	static {
+		final AtomicInteger threadCounter = new AtomicInteger();
+		SAVE_EXECUTOR = new ThreadPoolExecutor(WORKER_COUNT, WORKER_COUNT, WORKER_KEEP_ALIVE_TIME, TimeUnit.SECONDS,
+				new LinkedBlockingQueue<Runnable>(), runnable -> new Thread(runnable, "JpegSaver-" + threadCounter.incrementAndGet()));
+		SAVE_EXECUTOR.allowCoreThreadTimeOut(true);
+	}
 
 	/**
 	 * Hide default constructor.
@@ -27,14 +67,31 @@ public final class JpegSynchronizationUtil {
 	 */
 	private static HashMap<String, JpegMetadata> mRunningSaveRequests = new HashMap<>();
 	/**
-	 * Storage for queued save tasks.
+	 * Storage for queued save tasks, in order of arrival.
 	 */
-	private static HashMap<String, JpegMetadata> mQueuedSaveRequests = new HashMap<>();
+	private static LinkedHashMap<String, JpegMetadata> mQueuedSaveRequests = new LinkedHashMap<>();
+
+	/**
+	 * The number of files saved (successfully or not).
+	 */
+	private static long mSaveCount = 0;
+
+	/**
+	 * The total time used for saving files (in nanoseconds).
+	 */
+	private static long mTotalSaveTime = 0;
+
+	/**
+	 * The maximum time used for saving a file (in nanoseconds).
+	 */
+	private static long mMaxSaveTime = 0;
 
 	/**
 	 * This method handles a request to retrieve metadata for a file. If there is no running async task to update
-	 * metadata for this file, then the data is taken directly from the file. Otherwise, it is taken from the last
-	 * metadata to be stored for this file.
+	 * metadata for this file, then the data is taken from the metadata index, which reads the file only if it has
+	 * changed. Otherwise, it is taken from the last metadata to be stored for this file.
+	 *
+	 * <p>The returned metadata is a copy which may be modified by the caller without affecting the cached data.
 	 *
 	 * @param pathname
 	 *            the path of the jpg file.
@@ -43,14 +100,6 @@ public final class JpegSynchronizationUtil {
 	public static JpegMetadata getJpegMetadata(final String pathname) {
 		JpegMetadata cachedMetadata = null;
 
-		try {
-			JpegMetadataUtil.checkJpeg(pathname);
-		}
-		catch (Exception e) {
-			Logger.warning(e.getMessage());
-			return null;
-		}
-
 		synchronized (JpegSynchronizationUtil.class) {
 			if (mQueuedSaveRequests.containsKey(pathname)) {
 				cachedMetadata = mQueuedSaveRequests.get(pathname);
@@ -62,22 +111,30 @@ public final class JpegSynchronizationUtil {
 
 		if (cachedMetadata != null) {
 			Logger.info("Retrieve cached metadata for file " + pathname);
-			return cachedMetadata;
+			return cachedMetadata.copy();
+		}
+
+		File file = new File(pathname);
+		MetadataIndex.Entry entry = MetadataIndex.getInstance().getEntry(file);
+		if (entry != null) {
+			return entry.getMetadataCopy();
+		}
+		else if (JpegHeader.isJpeg(file)) {
+			Logger.error("Failed to retrieve metadata for file " + pathname);
+			return new JpegMetadata();
 		}
 		else {
-			try {
-				return JpegMetadataUtil.getMetadata(pathname);
-			}
-			catch (Exception e) {
-				Logger.error("Failed to retrieve metadata for file " + pathname, e);
-				return new JpegMetadata();
-			}
+			Logger.warning("File " + pathname + " is no JPEG file - can handle metadata only for image/jpeg.");
+			return null;
 		}
 	}
 
 	/**
-	 * This method handles a request to update metadata on a file. If no such request on the file is in process, then an
-	 * async task is started to update the metadata. Otherwise, it is put on the queue.
+	 * This method handles a request to update metadata on a file. If the file is already waiting to be saved, the
+	 * waiting request is replaced. Otherwise, the file is queued for saving. If too many files are waiting, this
+	 * method blocks until some files have been saved, unless called from the JavaFX application thread.
+	 *
+	 * <p>A snapshot of the metadata is queued, so that later changes of the passed metadata do not affect the save.
 	 *
 	 * @param pathname
 	 *            the path of the jpg file.
@@ -93,14 +150,61 @@ public final class JpegSynchronizationUtil {
 			return;
 		}
 
+		final JpegMetadata snapshot = metadata.copy();
+		boolean isFxApplicationThread = Platform.isFxApplicationThread();
+
 		synchronized (JpegSynchronizationUtil.class) {
 			MainController.setSaveIconVisibility(true);
 
-			if (mRunningSaveRequests.containsKey(pathname)) {
-				mQueuedSaveRequests.put(pathname, metadata);
+			while (!isFxApplicationThread && mQueuedSaveRequests.size() >= MAX_QUEUED_SAVE_REQUESTS
+					&& !mQueuedSaveRequests.containsKey(pathname)) {
+				try {
+					JpegSynchronizationUtil.class.wait();
+				}
+				catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					Logger.warning("Interrupted while waiting to save file " + pathname);
+					return;
+				}
+			}
+
+			boolean isPending = mQueuedSaveRequests.containsKey(pathname) || mRunningSaveRequests.containsKey(pathname);
+			mQueuedSaveRequests.put(pathname, snapshot);
+			if (isPending) {
+				// If the file is already pending, then the request is taken from the queue after the current save.
+				MetadataJournal.getInstance().journalSave(pathname, snapshot, null);
 			}
 			else {
-				triggerJpegSaverTask(pathname, metadata);
+				MetadataJournal.getInstance().journalSave(pathname, snapshot, new Runnable() {
+					@Override
+					public void run() {
+						triggerJpegSaverTask(pathname);
+					}
+				});
+			}
+		}
+	}
+
+	/**
+	 * Queue the save requests recovered from the metadata journal, which were not yet applied to the files when the
+	 * application ended.
+	 */
+	public static void recoverSaveRequests() {
+		Map<String, JpegMetadata> recoveredSaveRequests = MetadataJournal.getInstance().getOpenSaveRequests();
+		if (recoveredSaveRequests.isEmpty()) {
+			return;
+		}
+
+		synchronized (JpegSynchronizationUtil.class) {
+			MainController.setSaveIconVisibility(true);
+
+			for (Map.Entry<String, JpegMetadata> entry : recoveredSaveRequests.entrySet()) {
+				String pathname = entry.getKey();
+				if (!mQueuedSaveRequests.containsKey(pathname) && !mRunningSaveRequests.containsKey(pathname)) {
+					Logger.info("Executing recovered store request for file " + pathname);
+					mQueuedSaveRequests.put(pathname, entry.getValue());
+					triggerJpegSaverTask(pathname);
+				}
 			}
 		}
 	}
@@ -110,12 +214,103 @@ public final class JpegSynchronizationUtil {
 	 *
 	 * @return true if there is a running or pending save request.
 	 */
-	public static boolean hasRunningSaveRequests() {
+	public static synchronized boolean hasRunningSaveRequests() {
 		return mRunningSaveRequests.size() > 0 || mQueuedSaveRequests.size() > 0;
 	}
 
 	/**
-	 * Do cleanup from the last JpegSaverThread and trigger the next task on the same file, if existing.
+	 * Wait until all running and pending save requests are done.
+	 *
+	 * @param timeout
+	 *            The maximum waiting time (in milliseconds).
+	 * @return true if all save requests are done, false in case of timeout.
+	 * @throws InterruptedException
+	 *             thrown if interrupted while waiting.
+	 */
+	public static synchronized boolean awaitSaveRequests(final long timeout) throws InterruptedException {
+		long endTime = System.currentTimeMillis() + timeout;
+		while (hasRunningSaveRequests()) {
+			long remainingTime = endTime - System.currentTimeMillis();
+			if (remainingTime <= 0) {
+				return false;
+			}
+			JpegSynchronizationUtil.class.wait(remainingTime);
+		}
+		return true;
+	}
+
+	public static synchronized int getQueuedSaveRequestCount() {
+		return mQueuedSaveRequests.size();
+	}
+
+	public static synchronized int getRunningSaveRequestCount() {
+		return mRunningSaveRequests.size();
+	}
+
+	public static synchronized long getSaveCount() {
+		return mSaveCount;
+	}
+
+	/**
+	 * Get the average time used for saving a file.
+	 *
+	 * @return The average time (in milliseconds).
+	 */
+	public static synchronized double getAverageSaveTime() {
+		return mSaveCount == 0 ? 0 : mTotalSaveTime / 1000000.0 / mSaveCount; // MAGIC_NUMBER
+	}
+
+	/**
+	 * Get the maximum time used for saving a file.
+	 *
+	 * @return The maximum time (in milliseconds).
+	 */
+	public static synchronized double getMaxSaveTime() {
+		return mMaxSaveTime / 1000000.0; // MAGIC_NUMBER
+	}
+
+	/**
+	 * Save the queued metadata of a file. Executed by the worker threads.
+	 *
+	 * @param pathname
+	 *            The path of the jpg file.
+	 */
+	private static void saveFromQueue(final String pathname) {
+		JpegMetadata metadata;
+		synchronized (JpegSynchronizationUtil.class) {
+			metadata = mQueuedSaveRequests.remove(pathname);
+			if (metadata == null) {
+				return;
+			}
+			mRunningSaveRequests.put(pathname, metadata);
+			// Space in the queue for blocked requests
+			JpegSynchronizationUtil.class.notifyAll();
+		}
+
+		Logger.info("Starting to save file " + pathname);
+		long startTime = System.nanoTime();
+		try {
+			JpegMetadataUtil.changeMetadata(pathname, metadata);
+			Logger.info("Successfully saved file " + pathname);
+		}
+		catch (Exception e) {
+			Logger.error("Failed to save file " + pathname, e);
+			DialogUtil.displayError(ResourceConstants.MESSAGE_ERROR_FAILED_TO_STORE_METADATA, pathname);
+		}
+		long saveTime = System.nanoTime() - startTime;
+		MetadataIndex.getInstance().invalidate(new File(pathname));
+		MetadataJournal.getInstance().journalDone(pathname, metadata);
+
+		synchronized (JpegSynchronizationUtil.class) {
+			mSaveCount++;
+			mTotalSaveTime += saveTime;
+			mMaxSaveTime = Math.max(mMaxSaveTime, saveTime);
+		}
+		triggerNextFromQueue(pathname);
+	}
+
+	/**
+	 * Do cleanup from the last save and trigger the next save of the same file, if existing.
 	 *
 	 * @param pathname
 	 *            The path of the jpg file.
@@ -125,9 +320,7 @@ public final class JpegSynchronizationUtil {
 			mRunningSaveRequests.remove(pathname);
 			if (mQueuedSaveRequests.containsKey(pathname)) {
 				Logger.info("Executing queued store request for file " + pathname);
-				JpegMetadata newMetadata = mQueuedSaveRequests.get(pathname);
-				mQueuedSaveRequests.remove(pathname);
-				triggerJpegSaverTask(pathname, newMetadata);
+				triggerJpegSaverTask(pathname);
 			}
 			if (!hasRunningSaveRequests()) {
 				Platform.runLater(new Runnable() {
@@ -137,63 +330,23 @@ public final class JpegSynchronizationUtil {
 					}
 				});
 			}
+			JpegSynchronizationUtil.class.notifyAll();
 		}
 	}
 
 	/**
-	 * Utility method to start the JpegSaverThread so save a jpg file with metadata.
+	 * Utility method to schedule saving the queued metadata of a jpg file.
 	 *
 	 * @param pathname
 	 *            the path of the jpg file.
-	 * @param metadata
-	 *            the metadata.
 	 */
-	private static void triggerJpegSaverTask(final String pathname, final JpegMetadata metadata) {
-		mRunningSaveRequests.put(pathname, metadata);
-		JpegSaverThread thread = new JpegSaverThread(pathname, metadata);
-		thread.start();
-	}
-
-	/**
-	 * Thread to save a JPEG file asynchronously with changed metadata.
-	 */
-	private static final class JpegSaverThread extends Thread {
-		/**
-		 * The path of the jpg file.
-		 */
-		private String mPathname;
-		/**
-		 * The changed metadata.
-		 */
-		private JpegMetadata mMetadata;
-
-		/**
-		 * Constructor for the task.
-		 *
-		 * @param pathname
-		 *            the path of the jpg file.
-		 * @param metadata
-		 *            the metadata.
-		 */
-		private JpegSaverThread(final String pathname, final JpegMetadata metadata) {
-			this.mPathname = pathname;
-			this.mMetadata = metadata;
-		}
-
-		@Override
-		public void run() {
-			Logger.info("Starting thread to save file " + mPathname);
-
-			try {
-				JpegMetadataUtil.changeMetadata(mPathname, mMetadata);
-				Logger.info("Successfully saved file " + mPathname);
-			}
-			catch (Exception e) {
-				Logger.error("Failed to save file " + mPathname, e);
-				DialogUtil.displayError(ResourceConstants.MESSAGE_ERROR_FAILED_TO_STORE_METADATA, mPathname);
+	private static void triggerJpegSaverTask(final String pathname) {
+		SAVE_EXECUTOR.execute(new Runnable() {
+			@Override
+			public void run() {
+				saveFromQueue(pathname);
 			}
-			triggerNextFromQueue(mPathname);
-		}
+		});
 	}
 
 }
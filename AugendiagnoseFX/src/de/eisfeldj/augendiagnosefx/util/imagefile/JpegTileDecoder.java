@@ -0,0 +1,386 @@
+package de.eisfeldj.augendiagnosefx.util.imagefile;
+
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
+
+/**
+ * Decoder of tiles of a JPEG file in the levels of a resolution pyramid.
+ *
+ * <p>Level 0 is the full resolution, and each further level halves width and height. Tiles are squares of
+ * {@link #TILE_SIZE} pixels in the orientation in which the image is displayed, i.e. after applying the EXIF
+ * orientation. Tiles are decoded in bands of one tile row, reading only the region of the band from the file, so that
+ * memory usage does not depend on the size of the image. Decoded tiles are stored as pixels in BGRA format in an LRU
+ * cache bounded by a memory budget, which is shared by all decoders.
+ */
+public final class JpegTileDecoder {
+	/**
+	 * The width and height of a tile.
+	 */
+	public static final int TILE_SIZE = 512;
+
+	/**
+	 * The number of bytes per pixel of a tile.
+	 */
+	private static final int BYTES_PER_PIXEL = 4;
+
+	/**
+	 * The maximum total size of the cached tiles (in bytes).
+	 */
+	private static final long MAX_TILE_CACHE_SIZE = 64L * 1024 * 1024; // MAGIC_NUMBER
+
+	/**
+	 * The cached tiles, in access order.
+	 */
+	private static final LinkedHashMap<String, byte[]> TILE_CACHE = new LinkedHashMap<>(16, 0.75f, true); // MAGIC_NUMBER
+
+	/**
+	 * The total size of the cached tiles (in bytes).
+	 */
+	private static long mTileCacheSize = 0;
+
+	/**
+	 * The image file.
+	 */
+	private final File mFile;
+
+	/**
+	 * The modification time of the image file when the decoder was created.
+	 */
+	private final long mLastModified;
+
+	/**
+	 * The width of the image as stored in the file.
+	 */
+	private final int mSourceWidth;
+
+	/**
+	 * The height of the image as stored in the file.
+	 */
+	private final int mSourceHeight;
+
+	/**
+	 * The rotation to be applied to the image as stored in the file.
+	 */
+	private final int mRotation;
+
+	/**
+	 * Create a decoder for a JPEG file.
+	 *
+	 * @param file
+	 *            The JPEG file.
+	 * @throws IOException
+	 *             thrown if the file is no JPEG file or cannot be read.
+	 */
+	public JpegTileDecoder(final File file) throws IOException {
+		mFile = file;
+		mLastModified = file.lastModified();
+
+		JpegHeader header = JpegHeader.read(file);
+		if (header.getWidth() <= 0 || header.getHeight() <= 0) {
+			throw new IOException("File " + file.getName() + " has no image size.");
+		}
+		mSourceWidth = header.getWidth();
+		mSourceHeight = header.getHeight();
+		mRotation = JpegMetadataUtil.getOrientationAngle(header.getOrientation());
+	}
+
+	/**
+	 * Check if this decoder decodes the current version of a file.
+	 *
+	 * @param file
+	 *            The file.
+	 * @return true if this decoder can be used for the file.
+	 */
+	public boolean isFor(final File file) {
+		return mFile.equals(file) && mLastModified == file.lastModified();
+	}
+
+	/**
+	 * Check if width and height of the image are swapped by the EXIF orientation.
+	 *
+	 * @return true if width and height are swapped.
+	 */
+	private boolean isSwapped() {
+		return mRotation == 90 || mRotation == 270; // MAGIC_NUMBER
+	}
+
+	/**
+	 * Get the width of the displayed image in a level.
+	 *
+	 * @param level
+	 *            The level.
+	 * @return The width.
+	 */
+	public int getLevelWidth(final int level) {
+		return divideRoundingUp(isSwapped() ? mSourceHeight : mSourceWidth, 1 << level);
+	}
+
+	/**
+	 * Get the height of the displayed image in a level.
+	 *
+	 * @param level
+	 *            The level.
+	 * @return The height.
+	 */
+	public int getLevelHeight(final int level) {
+		return divideRoundingUp(isSwapped() ? mSourceWidth : mSourceHeight, 1 << level);
+	}
+
+	/**
+	 * Get the number of tile columns in a level.
+	 *
+	 * @param level
+	 *            The level.
+	 * @return The number of columns.
+	 */
+	public int getColumnCount(final int level) {
+		return divideRoundingUp(getLevelWidth(level), TILE_SIZE);
+	}
+
+	/**
+	 * Get the number of tile rows in a level.
+	 *
+	 * @param level
+	 *            The level.
+	 * @return The number of rows.
+	 */
+	public int getRowCount(final int level) {
+		return divideRoundingUp(getLevelHeight(level), TILE_SIZE);
+	}
+
+	/**
+	 * Get the width of the tiles in a column. Only the tiles in the last column may be smaller than TILE_SIZE.
+	 *
+	 * @param level
+	 *            The level.
+	 * @param column
+	 *            The column.
+	 * @return The width of the tiles.
+	 */
+	public int getTileWidth(final int level, final int column) {
+		return Math.min(TILE_SIZE, getLevelWidth(level) - column * TILE_SIZE);
+	}
+
+	/**
+	 * Get the height of the tiles in a row. Only the tiles in the last row may be smaller than TILE_SIZE.
+	 *
+	 * @param level
+	 *            The level.
+	 * @param row
+	 *            The row.
+	 * @return The height of the tiles.
+	 */
+	public int getTileHeight(final int level, final int row) {
+		return Math.min(TILE_SIZE, getLevelHeight(level) - row * TILE_SIZE);
+	}
+
+	/**
+	 * Get a tile from the cache.
+	 *
+	 * @param level
+	 *            The level.
+	 * @param column
+	 *            The column.
+	 * @param row
+	 *            The row.
+	 * @return The pixels of the tile in BGRA format, or null if the tile is not cached. The pixels must not be modified.
+	 */
+	public byte[] getCachedTile(final int level, final int column, final int row) {
+		synchronized (TILE_CACHE) {
+			return TILE_CACHE.get(getCacheKey(level, column, row));
+		}
+	}
+
+	/**
+	 * Decode a range of tiles of one row and store them in the cache.
+	 *
+	 * @param level
+	 *            The level.
+	 * @param row
+	 *            The row.
+	 * @param firstColumn
+	 *            The first column (inclusive).
+	 * @param lastColumn
+	 *            The last column (inclusive).
+	 * @return The pixels of the tiles in BGRA format, indexed by column - firstColumn. The pixels must not be modified.
+	 * @throws IOException
+	 *             thrown if the file cannot be decoded.
+	 */
+	public byte[][] decodeTiles(final int level, final int row, final int firstColumn, final int lastColumn) throws IOException {
+		// The band in displayed orientation, in pixels of the level.
+		int bandX = firstColumn * TILE_SIZE;
+		int bandY = row * TILE_SIZE;
+		int bandWidth = Math.min(getLevelWidth(level), (lastColumn + 1) * TILE_SIZE) - bandX;
+		int bandHeight = getTileHeight(level, row);
+
+		// The band in the orientation of the file, in pixels of the level.
+		int sourceLevelWidth = divideRoundingUp(mSourceWidth, 1 << level);
+		int sourceLevelHeight = divideRoundingUp(mSourceHeight, 1 << level);
+		Rectangle region;
+		switch (mRotation) {
+		case 90: // MAGIC_NUMBER
+			region = new Rectangle(bandY, sourceLevelHeight - bandX - bandWidth, bandHeight, bandWidth);
+			break;
+		case 180: // MAGIC_NUMBER
+			region = new Rectangle(sourceLevelWidth - bandX - bandWidth, sourceLevelHeight - bandY - bandHeight, bandWidth, bandHeight);
+			break;
+		case 270: // MAGIC_NUMBER
+			region = new Rectangle(sourceLevelWidth - bandY - bandHeight, bandX, bandHeight, bandWidth);
+			break;
+		default:
+			region = new Rectangle(bandX, bandY, bandWidth, bandHeight);
+			break;
+		}
+
+		BufferedImage image = readRegion(region, 1 << level);
+		if (image.getWidth() != region.width || image.getHeight() != region.height) {
+			throw new IOException("Unexpected size of decoded region of " + mFile.getName());
+		}
+		int[] source = image.getRGB(0, 0, region.width, region.height, null, 0, region.width);
+
+		// Index of the source pixel of band position (0,0), and increments of the source index per band position.
+		int startIndex;
+		int xIncrement;
+		int yIncrement;
+		switch (mRotation) {
+		case 90: // MAGIC_NUMBER
+			startIndex = (bandWidth - 1) * region.width;
+			xIncrement = -region.width;
+			yIncrement = 1;
+			break;
+		case 180: // MAGIC_NUMBER
+			startIndex = (bandHeight - 1) * region.width + bandWidth - 1;
+			xIncrement = -1;
+			yIncrement = -region.width;
+			break;
+		case 270: // MAGIC_NUMBER
+			startIndex = bandHeight - 1;
+			xIncrement = region.width;
+			yIncrement = -1;
+			break;
+		default:
+			startIndex = 0;
+			xIncrement = 1;
+			yIncrement = region.width;
+			break;
+		}
+
+		byte[][] tiles = new byte[lastColumn - firstColumn + 1][];
+		for (int column = firstColumn; column <= lastColumn; column++) {
+			int tileWidth = getTileWidth(level, column);
+			byte[] tile = new byte[BYTES_PER_PIXEL * tileWidth * bandHeight];
+			int tileX = (column - firstColumn) * TILE_SIZE;
+			int targetIndex = 0;
+			for (int y = 0; y < bandHeight; y++) {
+				int sourceIndex = startIndex + tileX * xIncrement + y * yIncrement;
+				for (int x = 0; x < tileWidth; x++) {
+					int argb = source[sourceIndex];
+					tile[targetIndex++] = (byte) argb;
+					tile[targetIndex++] = (byte) (argb >> 8); // MAGIC_NUMBER
+					tile[targetIndex++] = (byte) (argb >> 16); // MAGIC_NUMBER
+					tile[targetIndex++] = (byte) 0xFF; // MAGIC_NUMBER
+					sourceIndex += xIncrement;
+				}
+			}
+			tiles[column - firstColumn] = tile;
+			putCachedTile(getCacheKey(level, column, row), tile);
+		}
+		return tiles;
+	}
+
+	/**
+	 * Read a region of the image from the file.
+	 *
+	 * @param region
+	 *            The region in the orientation of the file, in pixels of the level.
+	 * @param factor
+	 *            The subsampling factor of the level.
+	 * @return The image of the region.
+	 * @throws IOException
+	 *             thrown if the file cannot be decoded.
+	 */
+	private BufferedImage readRegion(final Rectangle region, final int factor) throws IOException {
+		try (ImageInputStream input = ImageIO.createImageInputStream(mFile)) {
+			Iterator<ImageReader> readers = input == null ? null : ImageIO.getImageReaders(input);
+			if (readers == null || !readers.hasNext()) {
+				throw new IOException("Cannot decode " + mFile.getName());
+			}
+			ImageReader reader = readers.next();
+			try {
+				reader.setInput(input, true, true);
+				ImageReadParam param = reader.getDefaultReadParam();
+				int x = region.x * factor;
+				int y = region.y * factor;
+				param.setSourceRegion(new Rectangle(x, y,
+						Math.min(region.width * factor, mSourceWidth - x), Math.min(region.height * factor, mSourceHeight - y)));
+				param.setSourceSubsampling(factor, factor, 0, 0);
+				return reader.read(0, param);
+			}
+			finally {
+				reader.dispose();
+			}
+		}
+	}
+
+	/**
+	 * Get the cache key of a tile.
+	 *
+	 * @param level
+	 *            The level.
+	 * @param column
+	 *            The column.
+	 * @param row
+	 *            The row.
+	 * @return The cache key.
+	 */
+	private String getCacheKey(final int level, final int column, final int row) {
+		return mFile.getAbsolutePath() + "|" + mLastModified + "|" + level + "|" + column + "|" + row;
+	}
+
+	/**
+	 * Store a tile in the cache, and remove the least recently used tiles if the cache exceeds its budget.
+	 *
+	 * @param key
+	 *            The cache key.
+	 * @param tile
+	 *            The pixels of the tile.
+	 */
+	private static void putCachedTile(final String key, final byte[] tile) {
+		synchronized (TILE_CACHE) {
+			byte[] previousTile = TILE_CACHE.put(key, tile);
+			mTileCacheSize += tile.length - (previousTile == null ? 0 : previousTile.length);
+
+			Iterator<Map.Entry<String, byte[]>> iterator = TILE_CACHE.entrySet().iterator();
+			while (mTileCacheSize > MAX_TILE_CACHE_SIZE && iterator.hasNext()) {
+				Map.Entry<String, byte[]> entry = iterator.next();
+				if (entry.getValue() != tile) {
+					mTileCacheSize -= entry.getValue().length;
+					iterator.remove();
+				}
+			}
+		}
+	}
+
+	/**
+	 * Divide two positive numbers, rounding up.
+	 *
+	 * @param dividend
+	 *            The dividend.
+	 * @param divisor
+	 *            The divisor.
+	 * @return The rounded quotient.
+	 */
+	private static int divideRoundingUp(final int dividend, final int divisor) {
+		return (dividend + divisor - 1) / divisor;
+	}
+}
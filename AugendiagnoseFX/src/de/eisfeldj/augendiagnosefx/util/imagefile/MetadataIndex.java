@@ -0,0 +1,816 @@
+package de.eisfeldj.augendiagnosefx.util.imagefile;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Predicate;
+
+import de.eisfeldj.augendiagnosefx.util.Logger;
+import de.eisfeldj.augendiagnosefx.util.PreferenceUtil;
+import de.eisfeldj.augendiagnosefx.util.SystemUtil;
+
+import static de.eisfeldj.augendiagnosefx.util.PreferenceUtil.KEY_FOLDER_PHOTOS;
+
+/**
+ * A persistent index of the photo library.
+ *
+ * <p>For each JPEG file, the index stores modification time and size of the file together with the parsed metadata,
+ * the image size and the EXIF orientation. An entry is used as long as modification time and size of the file are
+ * unchanged, so that lookups need only the file attributes instead of reading the JPEG. In the same way, the index
+ * stores the listings of folders, which are used as long as the modification time of the folder is unchanged.
+ *
+ * <p>Library-wide queries are done on the index only, without accessing the files.
+ *
+ * <p>As the precedence between EXIF and XMP fields in the metadata depends on the store option, the entries are
+ * discarded when the store option changes in this respect.
+ */
+public final class MetadataIndex {
+	/**
+	 * The name of the index file.
+	 */
+	private static final String INDEX_FILE_NAME = "metadataindex.dat";
+
+	/**
+	 * The version of the index file format. Index files of other versions are discarded.
+	 */
+	private static final int FORMAT_VERSION = 2;
+
+	/**
+	 * The resolution of file modification times (in milliseconds). Within this time after a modification, the
+	 * modification time does not reliably indicate further modifications, so that index data created during this time
+	 * is not trusted.
+	 */
+	private static final long MODIFICATION_TIME_RESOLUTION = 2000;
+
+	/**
+	 * The suffix of JPEG files.
+	 */
+	private static final String JPEG_SUFFIX = ".JPG";
+
+	/**
+	 * The instance of the index.
+	 */
+	private static MetadataIndex mInstance = null;
+
+	/**
+	 * The index file.
+	 */
+	private final File mIndexFile;
+
+	/**
+	 * The index entries of the JPEG files, by absolute path.
+	 */
+	private final Map<String, Entry> mEntries = new HashMap<>();
+
+	/**
+	 * The folder listings, by absolute path.
+	 */
+	private final Map<String, FolderListing> mFolderListings = new HashMap<>();
+
+	/**
+	 * Flag indicating if the metadata of the entries has been determined with precedence of EXIF fields over XMP fields.
+	 */
+	private boolean mIsExifPreferred = JpegMetadataUtil.changeExifAllowed();
+
+	/**
+	 * Flag indicating if the index has been changed since it was stored.
+	 */
+	private boolean mIsDirty = false;
+
+	/**
+	 * The number of lookups of JPEG files answered from the index.
+	 */
+	private long mHitCount = 0;
+
+	/**
+	 * The number of lookups of JPEG files which required reading the file.
+	 */
+	private long mMissCount = 0;
+
+	/**
+	 * Create an index.
+	 *
+	 * @param indexFile
+	 *            The index file.
+	 */
+	private MetadataIndex(final File indexFile) {
+		mIndexFile = indexFile;
+	}
+
+	/**
+	 * Get the index. When called the first time, the index is loaded, and the photo folder is refreshed in the
+	 * background.
+	 *
+	 * @return The index.
+	 */
+	public static synchronized MetadataIndex getInstance() {
+		if (mInstance == null) {
+			mInstance = new MetadataIndex(new File(SystemUtil.getApplicationDataDir(), INDEX_FILE_NAME));
+			mInstance.load();
+
+			final File photoFolder = new File(PreferenceUtil.getPreferenceString(KEY_FOLDER_PHOTOS));
+			Thread refreshThread = new Thread(new Runnable() {
+				@Override
+				public void run() {
+					mInstance.refresh(photoFolder);
+				}
+			}, "MetadataIndexRefresh");
+			refreshThread.setDaemon(true);
+			refreshThread.start();
+		}
+		return mInstance;
+	}
+
+	/**
+	 * Get the subfolders of a folder.
+	 *
+	 * @param folder
+	 *            The folder.
+	 * @return The subfolders, or null if the folder does not exist.
+	 */
+	public File[] getSubfolders(final File folder) {
+		FolderListing listing = getFolderListing(folder);
+		return listing == null ? null : toFiles(folder, listing.mSubfolderNames);
+	}
+
+	/**
+	 * Get the JPEG files in a folder.
+	 *
+	 * @param folder
+	 *            The folder.
+	 * @return The JPEG files, or null if the folder does not exist.
+	 */
+	public File[] getJpegFiles(final File folder) {
+		FolderListing listing = getFolderListing(folder);
+		return listing == null ? null : toFiles(folder, listing.mJpegFileNames);
+	}
+
+	/**
+	 * Get the listing of a folder, either from the index or from the file system.
+	 *
+	 * @param folder
+	 *            The folder.
+	 * @return The listing, or null if the folder does not exist.
+	 */
+	private FolderListing getFolderListing(final File folder) {
+		String path = folder.getAbsolutePath();
+		long lastModified = folder.lastModified();
+
+		synchronized (this) {
+			FolderListing listing = mFolderListings.get(path);
+			if (listing != null && listing.isUpToDate(lastModified)) {
+				return listing;
+			}
+		}
+
+		long listingTime = System.currentTimeMillis();
+		File[] files = folder.listFiles();
+		if (files == null) {
+			synchronized (this) {
+				if (mFolderListings.remove(path) != null) {
+					mIsDirty = true;
+				}
+			}
+			return null;
+		}
+
+		List<String> subfolderNames = new ArrayList<>();
+		List<String> jpegFileNames = new ArrayList<>();
+		for (File file : files) {
+			if (file.isDirectory()) {
+				subfolderNames.add(file.getName());
+			}
+			else if (file.getName().toUpperCase().endsWith(JPEG_SUFFIX)) {
+				jpegFileNames.add(file.getName());
+			}
+		}
+
+		FolderListing listing = new FolderListing(lastModified, listingTime,
+				subfolderNames.toArray(new String[subfolderNames.size()]), jpegFileNames.toArray(new String[jpegFileNames.size()]));
+		synchronized (this) {
+			mFolderListings.put(path, listing);
+			mIsDirty = true;
+		}
+		return listing;
+	}
+
+	/**
+	 * Get the index entry of a JPEG file. If the file has changed since indexing, it is indexed again.
+	 *
+	 * @param file
+	 *            The JPEG file.
+	 * @return The index entry, or null if the file does not exist or cannot be read as JPEG file.
+	 */
+	public Entry getEntry(final File file) {
+		String path = file.getAbsolutePath();
+		long indexTime = System.currentTimeMillis();
+		long lastModified = file.lastModified();
+		long length = file.length();
+		boolean isExifPreferred;
+
+		synchronized (this) {
+			isExifPreferred = updateExifPrecedence();
+			Entry entry = mEntries.get(path);
+			if (entry != null && entry.isUpToDate(lastModified, length)) {
+				mHitCount++;
+				return entry;
+			}
+			mMissCount++;
+		}
+
+		JpegHeader header;
+		try {
+			header = JpegHeader.read(file);
+		}
+		catch (IOException e) {
+			synchronized (this) {
+				if (mEntries.remove(path) != null) {
+					mIsDirty = true;
+				}
+			}
+			return null;
+		}
+
+		Entry entry = new Entry(lastModified, length, indexTime, JpegMetadataUtil.getMetadata(header, true),
+				header.getWidth(), header.getHeight(), header.getOrientation());
+		synchronized (this) {
+			// Do not store entries created before a change of the store option.
+			if (isExifPreferred == mIsExifPreferred) {
+				mEntries.put(path, entry);
+				mIsDirty = true;
+			}
+		}
+		return entry;
+	}
+
+	/**
+	 * Discard all entries if the precedence between EXIF and XMP fields has changed since their creation.
+	 *
+	 * @return true if EXIF fields have precedence.
+	 */
+	private synchronized boolean updateExifPrecedence() {
+		boolean isExifPreferred = JpegMetadataUtil.changeExifAllowed();
+		if (isExifPreferred != mIsExifPreferred) {
+			Logger.info("Discarding metadata index entries due to change of store option");
+			mEntries.clear();
+			mIsExifPreferred = isExifPreferred;
+			mIsDirty = true;
+		}
+		return isExifPreferred;
+	}
+
+	/**
+	 * Remove the index entry of a file, so that the file is indexed again on next access.
+	 *
+	 * @param file
+	 *            The file.
+	 */
+	public synchronized void invalidate(final File file) {
+		if (mEntries.remove(file.getAbsolutePath()) != null) {
+			mIsDirty = true;
+		}
+	}
+
+	/**
+	 * Get the index entry of a file as stored in the index, without checking if it is up to date.
+	 *
+	 * @param file
+	 *            The file.
+	 * @return The stored index entry, or null if there is none.
+	 */
+	protected synchronized Entry getStoredEntry(final File file) {
+		return mEntries.get(file.getAbsolutePath());
+	}
+
+	/**
+	 * Move the index data of a renamed file or folder to the new path, so that the renamed files need not be read
+	 * again.
+	 *
+	 * @param oldFile
+	 *            The old file or folder.
+	 * @param newFile
+	 *            The new file or folder.
+	 */
+	public synchronized void rename(final File oldFile, final File newFile) {
+		String oldPath = oldFile.getAbsolutePath();
+		String newPath = newFile.getAbsolutePath();
+
+		Entry entry = mEntries.remove(oldPath);
+		if (entry != null) {
+			mEntries.put(newPath, entry);
+		}
+		FolderListing listing = mFolderListings.remove(oldPath);
+		if (listing != null) {
+			mFolderListings.put(newPath, listing);
+		}
+
+		// Entries of files within a renamed folder.
+		String oldPrefix = oldPath + File.separator;
+		for (String path : new ArrayList<>(mEntries.keySet())) {
+			if (path.startsWith(oldPrefix)) {
+				mEntries.put(newPath + File.separator + path.substring(oldPrefix.length()), mEntries.remove(path));
+			}
+		}
+		mIsDirty = true;
+	}
+
+	/**
+	 * Bring the index up to date for all JPEG files in the subfolders of a folder, and remove the entries of files which
+	 * do not exist any more. Only changed files are read. Afterwards, the index is stored.
+	 *
+	 * @param parentFolder
+	 *            The parent folder of the folders containing the photos.
+	 */
+	public void refresh(final File parentFolder) {
+		File[] folders = getSubfolders(parentFolder);
+		if (folders != null) {
+			for (File folder : folders) {
+				File[] files = getJpegFiles(folder);
+				if (files != null) {
+					for (File file : files) {
+						getEntry(file);
+					}
+				}
+			}
+		}
+
+		List<String> paths;
+		synchronized (this) {
+			paths = new ArrayList<>(mEntries.keySet());
+		}
+		for (String path : paths) {
+			if (!new File(path).isFile()) {
+				synchronized (this) {
+					mEntries.remove(path);
+					mIsDirty = true;
+				}
+			}
+		}
+
+		save();
+	}
+
+	/**
+	 * Get all indexed photos fulfilling a condition.
+	 *
+	 * @param condition
+	 *            The condition. The metadata of the entries must not be modified.
+	 * @return The photos, sorted by path.
+	 */
+	public synchronized List<File> query(final Predicate<Entry> condition) {
+		updateExifPrecedence();
+		List<File> result = new ArrayList<>();
+		for (Map.Entry<String, Entry> entry : mEntries.entrySet()) {
+			if (condition.test(entry.getValue())) {
+				result.add(new File(entry.getKey()));
+			}
+		}
+		Collections.sort(result);
+		return result;
+	}
+
+	/**
+	 * Get all indexed photos having a comment.
+	 *
+	 * @return The photos, sorted by path.
+	 */
+	public List<File> getPhotosWithComment() {
+		return query(new Predicate<Entry>() {
+			@Override
+			public boolean test(final Entry entry) {
+				String comment = entry.getMetadata().getComment();
+				return comment != null && comment.length() > 0;
+			}
+		});
+	}
+
+	/**
+	 * Get all indexed photos without stored overlay position.
+	 *
+	 * @return The photos, sorted by path.
+	 */
+	public List<File> getPhotosWithoutOverlayPosition() {
+		return query(new Predicate<Entry>() {
+			@Override
+			public boolean test(final Entry entry) {
+				return !entry.getMetadata().hasOverlayPosition();
+			}
+		});
+	}
+
+	/**
+	 * Load the index from the index file. If the index file cannot be read, the index starts empty.
+	 */
+	private synchronized void load() {
+		if (!mIndexFile.exists()) {
+			return;
+		}
+
+		try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(mIndexFile)))) {
+			if (in.readInt() != FORMAT_VERSION) {
+				Logger.info("Discarding metadata index of other version");
+				return;
+			}
+			mIsExifPreferred = in.readBoolean();
+
+			int folderCount = in.readInt();
+			for (int i = 0; i < folderCount; i++) {
+				String path = readString(in);
+				mFolderListings.put(path, new FolderListing(in.readLong(), in.readLong(), readStrings(in), readStrings(in)));
+			}
+
+			int entryCount = in.readInt();
+			for (int i = 0; i < entryCount; i++) {
+				String path = readString(in);
+				mEntries.put(path, new Entry(in.readLong(), in.readLong(), in.readLong(), readMetadata(in),
+						in.readInt(), in.readInt(), in.readInt()));
+			}
+		}
+		catch (IOException | RuntimeException e) {
+			Logger.error("Failed to load metadata index " + mIndexFile.getAbsolutePath(), e);
+			mFolderListings.clear();
+			mEntries.clear();
+		}
+	}
+
+	/**
+	 * Store the index in the index file, if it has been changed.
+	 */
+	public synchronized void save() {
+		if (!mIsDirty) {
+			return;
+		}
+
+		File tempFile = new File(mIndexFile.getParentFile(), mIndexFile.getName() + ".tmp");
+		if (!mIndexFile.getParentFile().exists() && !mIndexFile.getParentFile().mkdirs()) {
+			Logger.warning("Failed to create folder " + mIndexFile.getParent());
+			return;
+		}
+
+		try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tempFile)))) {
+			out.writeInt(FORMAT_VERSION);
+			out.writeBoolean(mIsExifPreferred);
+
+			out.writeInt(mFolderListings.size());
+			for (Map.Entry<String, FolderListing> folderEntry : mFolderListings.entrySet()) {
+				FolderListing listing = folderEntry.getValue();
+				writeString(out, folderEntry.getKey());
+				out.writeLong(listing.mLastModified);
+				out.writeLong(listing.mListingTime);
+				writeStrings(out, listing.mSubfolderNames);
+				writeStrings(out, listing.mJpegFileNames);
+			}
+
+			out.writeInt(mEntries.size());
+			for (Map.Entry<String, Entry> mapEntry : mEntries.entrySet()) {
+				Entry entry = mapEntry.getValue();
+				writeString(out, mapEntry.getKey());
+				out.writeLong(entry.mLastModified);
+				out.writeLong(entry.mLength);
+				out.writeLong(entry.mIndexTime);
+				writeMetadata(out, entry.mMetadata);
+				out.writeInt(entry.mWidth);
+				out.writeInt(entry.mHeight);
+				out.writeInt(entry.mOrientation);
+			}
+		}
+		catch (IOException e) {
+			Logger.error("Failed to store metadata index " + mIndexFile.getAbsolutePath(), e);
+			return;
+		}
+
+		try {
+			Files.move(tempFile.toPath(), mIndexFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+			mIsDirty = false;
+		}
+		catch (IOException e) {
+			Logger.error("Failed to store metadata index " + mIndexFile.getAbsolutePath(), e);
+		}
+	}
+
+	public synchronized long getHitCount() {
+		return mHitCount;
+	}
+
+	public synchronized long getMissCount() {
+		return mMissCount;
+	}
+
+	/**
+	 * Get the ratio of lookups of JPEG files which were answered from the index without reading the file.
+	 *
+	 * @return The hit rate (between 0 and 1).
+	 */
+	public synchronized double getHitRate() {
+		long lookupCount = mHitCount + mMissCount;
+		return lookupCount == 0 ? 0 : (double) mHitCount / lookupCount;
+	}
+
+	@Override
+	public synchronized String toString() {
+		return "MetadataIndex[entries=" + mEntries.size() + ", folders=" + mFolderListings.size() + ", hitRate=" + getHitRate() + "]";
+	}
+
+	/**
+	 * Convert file names into files.
+	 *
+	 * @param folder
+	 *            The folder of the files.
+	 * @param names
+	 *            The file names.
+	 * @return The files.
+	 */
+	private static File[] toFiles(final File folder, final String[] names) {
+		File[] files = new File[names.length];
+		for (int i = 0; i < names.length; i++) {
+			files[i] = new File(folder, names[i]);
+		}
+		return files;
+	}
+
+	/**
+	 * Write metadata to a data stream (used for the index file and the metadata journal).
+	 *
+	 * @param out
+	 *            The output stream.
+	 * @param metadata
+	 *            The metadata.
+	 * @throws IOException
+	 *             thrown if writing fails.
+	 */
+	protected static void writeMetadata(final DataOutputStream out, final JpegMetadata metadata) throws IOException {
+		writeString(out, metadata.getTitle());
+		writeString(out, metadata.getDescription());
+		writeString(out, metadata.getSubject());
+		writeString(out, metadata.getComment());
+		writeString(out, metadata.getPerson());
+		writeString(out, metadata.getXCenterString());
+		writeString(out, metadata.getYCenterString());
+		writeString(out, metadata.getOverlayScaleFactorString());
+		writeString(out, metadata.getXPositionString());
+		writeString(out, metadata.getYPositionString());
+		writeString(out, metadata.getZoomFactorString());
+		out.writeLong(metadata.getOrganizeDate() == null ? Long.MIN_VALUE : metadata.getOrganizeDate().getTime());
+		writeString(out, metadata.getRightLeftString());
+		writeString(out, metadata.getBrightnessString());
+		writeString(out, metadata.getContrastString());
+		writeString(out, metadata.getSaturationString());
+		writeString(out, metadata.getColorTemperatureString());
+		writeString(out, metadata.getOverlayColorString());
+		writeString(out, metadata.getPupilSizeString());
+		writeString(out, metadata.getPupilXOffsetString());
+		writeString(out, metadata.getPupilYOffsetString());
+		out.writeInt(metadata.getFlags());
+	}
+
+	/**
+	 * Read metadata from a data stream (used for the index file and the metadata journal).
+	 *
+	 * @param in
+	 *            The input stream.
+	 * @return The metadata.
+	 * @throws IOException
+	 *             thrown if reading fails.
+	 */
+	protected static JpegMetadata readMetadata(final DataInputStream in) throws IOException {
+		JpegMetadata metadata = new JpegMetadata();
+		metadata.setTitle(readString(in));
+		metadata.setDescription(readString(in));
+		metadata.setSubject(readString(in));
+		metadata.setComment(readString(in));
+		metadata.setPerson(readString(in));
+		metadata.setXCenter(readString(in));
+		metadata.setYCenter(readString(in));
+		metadata.setOverlayScaleFactor(readString(in));
+		metadata.setXPosition(readString(in));
+		metadata.setYPosition(readString(in));
+		metadata.setZoomFactor(readString(in));
+		long organizeDate = in.readLong();
+		metadata.setOrganizeDate(organizeDate == Long.MIN_VALUE ? null : new Date(organizeDate));
+		metadata.setRightLeft(readString(in));
+		metadata.setBrightness(readString(in));
+		metadata.setContrast(readString(in));
+		metadata.setSaturation(readString(in));
+		metadata.setColorTemperature(readString(in));
+		metadata.setOverlayColor(readString(in));
+		metadata.setPupilSize(readString(in));
+		metadata.setPupilXOffset(readString(in));
+		metadata.setPupilYOffset(readString(in));
+		metadata.setFlags(in.readInt());
+		return metadata;
+	}
+
+	/**
+	 * Write a String (which may be null) to a data stream.
+	 *
+	 * @param out
+	 *            The output stream.
+	 * @param value
+	 *            The String.
+	 * @throws IOException
+	 *             thrown if writing fails.
+	 */
+	protected static void writeString(final DataOutputStream out, final String value) throws IOException {
+		if (value == null) {
+			out.writeInt(-1);
+		}
+		else {
+			byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+			out.writeInt(bytes.length);
+			out.write(bytes);
+		}
+	}
+
+	/**
+	 * Read a String (which may be null) from a data stream.
+	 *
+	 * @param in
+	 *            The input stream.
+	 * @return The String.
+	 * @throws IOException
+	 *             thrown if reading fails.
+	 */
+	protected static String readString(final DataInputStream in) throws IOException {
+		int length = in.readInt();
+		if (length < 0) {
+			return null;
+		}
+		byte[] bytes = new byte[length];
+		in.readFully(bytes);
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+
+	/**
+	 * Write an array of Strings to the index file.
+	 *
+	 * @param out
+	 *            The output stream.
+	 * @param values
+	 *            The Strings.
+	 * @throws IOException
+	 *             thrown if writing fails.
+	 */
+	private static void writeStrings(final DataOutputStream out, final String[] values) throws IOException {
+		out.writeInt(values.length);
+		for (String value : values) {
+			writeString(out, value);
+		}
+	}
+
+	/**
+	 * Read an array of Strings from the index file.
+	 *
+	 * @param in
+	 *            The input stream.
+	 * @return The Strings.
+	 * @throws IOException
+	 *             thrown if reading fails.
+	 */
+	private static String[] readStrings(final DataInputStream in) throws IOException {
+		String[] values = new String[in.readInt()];
+		for (int i = 0; i < values.length; i++) {
+			values[i] = readString(in);
+		}
+		return values;
+	}
+
+	/**
+	 * The index entry of a JPEG file.
+	 */
+	public static final class Entry {
+		// JAVADOC:OFF
+		private final long mLastModified;
+		private final long mLength;
+		private final long mIndexTime;
+		private final JpegMetadata mMetadata;
+		private final int mWidth;
+		private final int mHeight;
+		private final int mOrientation;
+
+		public long getLastModified() {
+			return mLastModified;
+		}
+
+		public long getLength() {
+			return mLength;
+		}
+
+		public int getWidth() {
+			return mWidth;
+		}
+
+		public int getHeight() {
+			return mHeight;
+		}
+
+		public int getOrientation() {
+			return mOrientation;
+		}
+
+		// JAVADOC:ON
+
+		/**
+		 * Create an index entry.
+		 *
+		 * @param lastModified The modification time of the file.
+		 * @param length The size of the file.
+		 * @param indexTime The time when the file was read.
+		 * @param metadata The metadata of the file.
+		 * @param width The image width.
+		 * @param height The image height.
+		 * @param orientation The EXIF orientation.
+		 */
+		private Entry(final long lastModified, final long length, final long indexTime, final JpegMetadata metadata, // SUPPRESS_CHECKSTYLE
+				final int width, final int height, final int orientation) {
+			mLastModified = lastModified;
+			mLength = length;
+			mIndexTime = indexTime;
+			mMetadata = metadata;
+			mWidth = width;
+			mHeight = height;
+			mOrientation = orientation;
+		}
+
+		/**
+		 * Get the metadata of the file. The metadata must not be modified.
+		 *
+		 * @return The metadata.
+		 */
+		public JpegMetadata getMetadata() {
+			return mMetadata;
+		}
+
+		/**
+		 * Get a copy of the metadata of the file, which may be modified.
+		 *
+		 * @return The metadata.
+		 */
+		public JpegMetadata getMetadataCopy() {
+			return mMetadata.copy();
+		}
+
+		/**
+		 * Check if the entry is up to date.
+		 *
+		 * @param lastModified The current modification time of the file.
+		 * @param length The current size of the file.
+		 * @return true if the entry is up to date.
+		 */
+		private boolean isUpToDate(final long lastModified, final long length) {
+			return lastModified == mLastModified && length == mLength && mIndexTime - mLastModified > MODIFICATION_TIME_RESOLUTION;
+		}
+	}
+
+	/**
+	 * The listing of a folder.
+	 */
+	private static final class FolderListing {
+		// JAVADOC:OFF
+		private final long mLastModified;
+		private final long mListingTime;
+		private final String[] mSubfolderNames;
+		private final String[] mJpegFileNames;
+
+		// JAVADOC:ON
+
+		/**
+		 * Create a folder listing.
+		 *
+		 * @param lastModified The modification time of the folder.
+		 * @param listingTime The time when the folder was listed.
+		 * @param subfolderNames The names of the subfolders.
+		 * @param jpegFileNames The names of the JPEG files.
+		 */
+		private FolderListing(final long lastModified, final long listingTime, final String[] subfolderNames,
+				final String[] jpegFileNames) {
+			mLastModified = lastModified;
+			mListingTime = listingTime;
+			mSubfolderNames = subfolderNames;
+			mJpegFileNames = jpegFileNames;
+		}
+
+		/**
+		 * Check if the listing is up to date.
+		 *
+		 * @param lastModified The current modification time of the folder.
+		 * @return true if the listing is up to date.
+		 */
+		private boolean isUpToDate(final long lastModified) {
+			return lastModified == mLastModified && mListingTime - mLastModified > MODIFICATION_TIME_RESOLUTION;
+		}
+	}
+}
@@ -0,0 +1,469 @@
+package de.eisfeldj.augendiagnosefx.util.imagefile;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+import de.eisfeldj.augendiagnosefx.util.Logger;
+import de.eisfeldj.augendiagnosefx.util.SystemUtil;
+
+/**
+ * An append-only journal of metadata save requests, allowing to recover save requests which were not yet applied to the
+ * JPEG files when the application ended.
+ *
+ * <p>Each save request is journaled before it is executed, and a completion record is appended after it has been
+ * applied to the file. The records are written by a single journal thread, which syncs all records of one batch to disk
+ * together. On startup, save requests without completion record are recovered. The journal is truncated whenever no
+ * save request is outstanding.
+ */
+public final class MetadataJournal {
+	/**
+	 * The name of the journal file.
+	 */
+	private static final String JOURNAL_FILE_NAME = "metadatajournal.dat";
+
+	/**
+	 * The record type of a save request.
+	 */
+	private static final byte RECORD_SAVE = 1;
+
+	/**
+	 * The record type of the completion of a save request.
+	 */
+	private static final byte RECORD_DONE = 2;
+
+	/**
+	 * The size of the record length and the checksum surrounding each record (in bytes).
+	 */
+	private static final int RECORD_OVERHEAD = 12;
+
+	/**
+	 * The maximum time to wait for the journal thread when closing the journal (in milliseconds).
+	 */
+	private static final long CLOSE_TIMEOUT = 5000;
+
+	/**
+	 * The instance of the journal.
+	 */
+	private static MetadataJournal mInstance = null;
+
+	/**
+	 * The journal file.
+	 */
+	private final File mJournalFile;
+
+	/**
+	 * The channel for writing the journal file. Opened when needed.
+	 */
+	private FileChannel mChannel = null;
+
+	/**
+	 * The thread writing the journal. Started when needed.
+	 */
+	private Thread mJournalThread = null;
+
+	/**
+	 * The last sequence number assigned to a save request.
+	 */
+	private long mSequenceNumber = 0;
+
+	/**
+	 * The records waiting to be written by the journal thread.
+	 */
+	private final List<PendingRecord> mPendingRecords = new ArrayList<>();
+
+	/**
+	 * The sequence numbers of the latest save request for each file, for all files with outstanding save requests.
+	 */
+	private final Map<String, Long> mOpenSequenceNumbers = new HashMap<>();
+
+	/**
+	 * The metadata of the latest save request for each file, for all files with outstanding save requests.
+	 */
+	private final Map<String, JpegMetadata> mOpenMetadata = new LinkedHashMap<>();
+
+	/**
+	 * Create a journal.
+	 *
+	 * @param journalFile
+	 *            The journal file.
+	 */
+	private MetadataJournal(final File journalFile) {
+		mJournalFile = journalFile;
+	}
+
+	/**
+	 * Get the journal. When called the first time, the outstanding save requests are recovered from the journal file.
+	 *
+	 * @return The journal.
+	 */
+	public static synchronized MetadataJournal getInstance() {
+		if (mInstance == null) {
+			mInstance = new MetadataJournal(new File(SystemUtil.getApplicationDataDir(), JOURNAL_FILE_NAME));
+			mInstance.recover();
+		}
+		return mInstance;
+	}
+
+	/**
+	 * Get the outstanding save requests. Directly after startup, these are the save requests recovered from the journal
+	 * file.
+	 *
+	 * @return The metadata of the outstanding save requests, by path.
+	 */
+	public synchronized Map<String, JpegMetadata> getOpenSaveRequests() {
+		return new LinkedHashMap<>(mOpenMetadata);
+	}
+
+	/**
+	 * Journal a save request.
+	 *
+	 * @param pathname
+	 *            The path of the jpg file.
+	 * @param metadata
+	 *            The metadata to be saved. It is journaled in its current state.
+	 * @param onJournaled
+	 *            A callback executed after the request has been synced to disk. May be null.
+	 */
+	public synchronized void journalSave(final String pathname, final JpegMetadata metadata, final Runnable onJournaled) {
+		mSequenceNumber++;
+		mOpenSequenceNumbers.put(pathname, mSequenceNumber);
+		mOpenMetadata.put(pathname, metadata);
+		addRecord(RECORD_SAVE, mSequenceNumber, pathname, metadata, onJournaled);
+	}
+
+	/**
+	 * Journal the completion of a save request. Requests for the same file which were journaled later remain
+	 * outstanding.
+	 *
+	 * @param pathname
+	 *            The path of the jpg file.
+	 * @param metadata
+	 *            The metadata which has been saved.
+	 */
+	public synchronized void journalDone(final String pathname, final JpegMetadata metadata) {
+		if (mOpenMetadata.get(pathname) != metadata) {
+			return;
+		}
+		mOpenMetadata.remove(pathname);
+		addRecord(RECORD_DONE, mOpenSequenceNumbers.remove(pathname), pathname, null, null);
+	}
+
+	/**
+	 * Wait until all records are written, and close the journal file.
+	 *
+	 * @throws InterruptedException
+	 *             thrown if interrupted while waiting.
+	 */
+	public synchronized void close() throws InterruptedException {
+		long endTime = System.currentTimeMillis() + CLOSE_TIMEOUT;
+		while (!mPendingRecords.isEmpty()) {
+			long remainingTime = endTime - System.currentTimeMillis();
+			if (remainingTime <= 0) {
+				Logger.warning("Closing metadata journal with unwritten records.");
+				return;
+			}
+			wait(remainingTime);
+		}
+
+		if (mChannel != null) {
+			try {
+				mChannel.close();
+			}
+			catch (IOException e) {
+				Logger.error("Failed to close metadata journal " + mJournalFile.getAbsolutePath(), e);
+			}
+			mChannel = null;
+		}
+	}
+
+	/**
+	 * Add a record to be written by the journal thread.
+	 *
+	 * @param type
+	 *            The record type.
+	 * @param sequenceNumber
+	 *            The sequence number of the save request.
+	 * @param pathname
+	 *            The path of the jpg file.
+	 * @param metadata
+	 *            The metadata (only for save requests).
+	 * @param onJournaled
+	 *            A callback executed after the record has been synced to disk. May be null.
+	 */
+	private void addRecord(final byte type, final long sequenceNumber, final String pathname, final JpegMetadata metadata,
+			final Runnable onJournaled) {
+		byte[] record;
+		try {
+			record = createRecord(type, sequenceNumber, pathname, metadata);
+		}
+		catch (IOException e) {
+			// cannot happen when writing into memory
+			throw new IllegalStateException(e);
+		}
+		mPendingRecords.add(new PendingRecord(record, onJournaled));
+
+		if (mJournalThread == null) {
+			mJournalThread = new Thread(new Runnable() {
+				@Override
+				public void run() {
+					writeRecords();
+				}
+			}, "MetadataJournal");
+			mJournalThread.setDaemon(true);
+			mJournalThread.start();
+		}
+		notifyAll();
+	}
+
+	/**
+	 * Write the pending records, as long as the application is running. Executed by the journal thread.
+	 */
+	private void writeRecords() {
+		while (true) {
+			List<PendingRecord> batch;
+			synchronized (this) {
+				while (mPendingRecords.isEmpty()) {
+					try {
+						wait();
+					}
+					catch (InterruptedException e) {
+						return;
+					}
+				}
+				batch = new ArrayList<>(mPendingRecords);
+			}
+
+			try {
+				FileChannel channel = getChannel();
+				for (PendingRecord record : batch) {
+					ByteBuffer buffer = ByteBuffer.wrap(record.mRecord);
+					while (buffer.hasRemaining()) {
+						channel.write(buffer);
+					}
+				}
+				channel.force(false);
+			}
+			catch (IOException e) {
+				Logger.error("Failed to write metadata journal " + mJournalFile.getAbsolutePath(), e);
+			}
+
+			synchronized (this) {
+				mPendingRecords.subList(0, batch.size()).clear();
+				if (mPendingRecords.isEmpty() && mOpenSequenceNumbers.isEmpty() && mChannel != null) {
+					try {
+						mChannel.truncate(0);
+					}
+					catch (IOException e) {
+						Logger.error("Failed to truncate metadata journal " + mJournalFile.getAbsolutePath(), e);
+					}
+				}
+				notifyAll();
+			}
+
+			for (PendingRecord record : batch) {
+				if (record.mOnJournaled != null) {
+					record.mOnJournaled.run();
+				}
+			}
+		}
+	}
+
+	/**
+	 * Get the channel for writing the journal file, opening it if required.
+	 *
+	 * @return The channel, positioned at the end of the file.
+	 * @throws IOException
+	 *             thrown if the file cannot be opened.
+	 */
+	private synchronized FileChannel getChannel() throws IOException {
+		if (mChannel == null) {
+			if (!mJournalFile.getParentFile().exists() && !mJournalFile.getParentFile().mkdirs()) {
+				throw new IOException("Failed to create folder " + mJournalFile.getParent());
+			}
+			mChannel = FileChannel.open(mJournalFile.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+			mChannel.position(mChannel.size());
+		}
+		return mChannel;
+	}
+
+	/**
+	 * Read the journal file and determine the outstanding save requests. The journal file is then replaced by a
+	 * compacted journal containing only the outstanding save requests. A record which is incomplete due to a crash while
+	 * writing ends the journal.
+	 */
+	private synchronized void recover() {
+		if (!mJournalFile.exists()) {
+			return;
+		}
+
+		Map<String, Long> savedSequenceNumbers = new HashMap<>();
+		Map<String, JpegMetadata> savedMetadata = new LinkedHashMap<>();
+		Map<String, Long> doneSequenceNumbers = new HashMap<>();
+
+		try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(mJournalFile)))) {
+			while (true) {
+				byte[] payload = readRecord(in);
+				if (payload == null) {
+					break;
+				}
+				DataInputStream recordIn = new DataInputStream(new ByteArrayInputStream(payload));
+				byte type = recordIn.readByte();
+				long sequenceNumber = recordIn.readLong();
+				String pathname = MetadataIndex.readString(recordIn);
+				if (type == RECORD_SAVE) {
+					savedSequenceNumbers.put(pathname, sequenceNumber);
+					savedMetadata.remove(pathname);
+					savedMetadata.put(pathname, MetadataIndex.readMetadata(recordIn));
+				}
+				else if (type == RECORD_DONE) {
+					doneSequenceNumbers.put(pathname, sequenceNumber);
+				}
+			}
+		}
+		catch (IOException e) {
+			Logger.error("Failed to read metadata journal " + mJournalFile.getAbsolutePath(), e);
+		}
+
+		File tempFile = new File(mJournalFile.getParentFile(), mJournalFile.getName() + ".tmp");
+		try (FileChannel channel = FileChannel.open(tempFile.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+				StandardOpenOption.TRUNCATE_EXISTING)) {
+			for (Map.Entry<String, JpegMetadata> entry : savedMetadata.entrySet()) {
+				String pathname = entry.getKey();
+				Long doneSequenceNumber = doneSequenceNumbers.get(pathname);
+				if (doneSequenceNumber == null || doneSequenceNumber < savedSequenceNumbers.get(pathname)) {
+					Logger.info("Recovered save request for file " + pathname);
+					mSequenceNumber++;
+					mOpenSequenceNumbers.put(pathname, mSequenceNumber);
+					mOpenMetadata.put(pathname, entry.getValue());
+					channel.write(ByteBuffer.wrap(createRecord(RECORD_SAVE, mSequenceNumber, pathname, entry.getValue())));
+				}
+			}
+			channel.force(false);
+		}
+		catch (IOException e) {
+			Logger.error("Failed to compact metadata journal " + mJournalFile.getAbsolutePath(), e);
+			return;
+		}
+
+		try {
+			Files.move(tempFile.toPath(), mJournalFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+		}
+		catch (IOException e) {
+			Logger.error("Failed to compact metadata journal " + mJournalFile.getAbsolutePath(), e);
+		}
+	}
+
+	/**
+	 * Create a journal record, consisting of length, payload and checksum.
+	 *
+	 * @param type
+	 *            The record type.
+	 * @param sequenceNumber
+	 *            The sequence number of the save request.
+	 * @param pathname
+	 *            The path of the jpg file.
+	 * @param metadata
+	 *            The metadata (only for save requests).
+	 * @return The record.
+	 * @throws IOException
+	 *             thrown if the record cannot be created.
+	 */
+	private static byte[] createRecord(final byte type, final long sequenceNumber, final String pathname,
+			final JpegMetadata metadata) throws IOException {
+		ByteArrayOutputStream payloadStream = new ByteArrayOutputStream();
+		DataOutputStream out = new DataOutputStream(payloadStream);
+		out.writeByte(type);
+		out.writeLong(sequenceNumber);
+		MetadataIndex.writeString(out, pathname);
+		if (metadata != null) {
+			MetadataIndex.writeMetadata(out, metadata);
+		}
+		out.flush();
+		byte[] payload = payloadStream.toByteArray();
+
+		CRC32 checksum = new CRC32();
+		checksum.update(payload);
+
+		ByteBuffer record = ByteBuffer.allocate(payload.length + RECORD_OVERHEAD);
+		record.putInt(payload.length).put(payload).putLong(checksum.getValue());
+		return record.array();
+	}
+
+	/**
+	 * Read the payload of a journal record.
+	 *
+	 * @param in
+	 *            The input stream.
+	 * @return The payload, or null if the end of the journal is reached or the record is incomplete.
+	 * @throws IOException
+	 *             thrown if the journal cannot be read.
+	 */
+	private byte[] readRecord(final DataInputStream in) throws IOException {
+		try {
+			int length = in.readInt();
+			if (length <= 0 || length > mJournalFile.length()) {
+				Logger.warning("Ignoring incomplete record in metadata journal");
+				return null;
+			}
+			byte[] payload = new byte[length];
+			in.readFully(payload);
+
+			CRC32 checksum = new CRC32();
+			checksum.update(payload);
+			if (in.readLong() != checksum.getValue()) {
+				Logger.warning("Ignoring incomplete record in metadata journal");
+				return null;
+			}
+			return payload;
+		}
+		catch (EOFException e) {
+			return null;
+		}
+	}
+
+	/**
+	 * A record waiting to be written.
+	 */
+	private static final class PendingRecord {
+		/**
+		 * The record.
+		 */
+		private final byte[] mRecord;
+
+		/**
+		 * The callback executed after the record has been synced to disk.
+		 */
+		private final Runnable mOnJournaled;
+
+		/**
+		 * Create a pending record.
+		 *
+		 * @param record
+		 *            The record.
+		 * @param onJournaled
+		 *            The callback executed after the record has been synced to disk. May be null.
+		 */
+		private PendingRecord(final byte[] record, final Runnable onJournaled) {
+			mRecord = record;
+			mOnJournaled = onJournaled;
+		}
+	}
+}
@@ -0,0 +1,277 @@
+package de.eisfeldj.augendiagnosefx.util.imagefile;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+
+import de.eisfeldj.augendiagnosefx.util.imagefile.EyePhoto.RightLeft;
+
+import javafx.scene.image.Image;
+import javafx.scene.paint.Color;
+
+/**
+ * A thread-safe LRU cache of overlay images, warped due to pupil size and position, bounded by a memory budget.
+ *
+ * <p>The pupil parameters are quantized, so that minimal changes of the pupil position hit the same entry. Callers
+ * should create the overlay from the quantized values (see {@link #quantize(float)}), so that the cached image matches
+ * the key.
+ */
+public final class OverlayCache {
+	/**
+	 * The number of quantization steps per unit of the pupil parameters.
+	 */
+	private static final int QUANTIZATION_STEPS = 2048;
+
+	/**
+	 * The number of bytes per pixel of a cached image.
+	 */
+	private static final int BYTES_PER_PIXEL = 4;
+
+	/**
+	 * The cached overlays, in access order.
+	 */
+	private final LinkedHashMap<Key, Image> mOverlays = new LinkedHashMap<>(16, 0.75f, true); // MAGIC_NUMBER
+
+	/**
+	 * The memory budget (in bytes).
+	 */
+	private long mMemoryBudget;
+
+	public synchronized long getMemoryBudget() {
+		return mMemoryBudget;
+	}
+
+	/**
+	 * The memory currently used by the cached overlays (in bytes).
+	 */
+	private long mMemoryUsage = 0;
+
+	public synchronized long getMemoryUsage() {
+		return mMemoryUsage;
+	}
+
+	/**
+	 * The number of cache hits.
+	 */
+	private long mHitCount = 0;
+
+	public synchronized long getHitCount() {
+		return mHitCount;
+	}
+
+	/**
+	 * The number of cache misses.
+	 */
+	private long mMissCount = 0;
+
+	public synchronized long getMissCount() {
+		return mMissCount;
+	}
+
+	/**
+	 * The number of overlays evicted from the cache.
+	 */
+	private long mEvictionCount = 0;
+
+	public synchronized long getEvictionCount() {
+		return mEvictionCount;
+	}
+
+	/**
+	 * Create an overlay cache.
+	 *
+	 * @param memoryBudget
+	 *            The memory budget (in bytes). 0 disables caching.
+	 */
+	public OverlayCache(final long memoryBudget) {
+		mMemoryBudget = memoryBudget;
+	}
+
+	/**
+	 * Change the memory budget. Overlays exceeding the new budget are evicted.
+	 *
+	 * @param memoryBudget
+	 *            The memory budget (in bytes). 0 disables caching.
+	 */
+	public synchronized void setMemoryBudget(final long memoryBudget) {
+		mMemoryBudget = memoryBudget;
+		evict();
+	}
+
+	/**
+	 * Get the number of cached overlays.
+	 *
+	 * @return The number of cached overlays.
+	 */
+	public synchronized int size() {
+		return mOverlays.size();
+	}
+
+	/**
+	 * Get a cached overlay.
+	 *
+	 * @param overlayType
+	 *            The overlay type.
+	 * @param side
+	 *            The side of the eye.
+	 * @param color
+	 *            The overlay color.
+	 * @param pupilXOffset
+	 *            The horizontal offset of the pupil.
+	 * @param pupilYOffset
+	 *            The vertical offset of the pupil.
+	 * @param pupilSize
+	 *            The relative size of the pupil.
+	 * @return The cached overlay, or null if not cached.
+	 */
+	public synchronized Image get(final int overlayType, final RightLeft side, final Color color,
+			final float pupilXOffset, final float pupilYOffset, final float pupilSize) {
+		Image overlay = mOverlays.get(new Key(overlayType, side, color, pupilXOffset, pupilYOffset, pupilSize));
+		if (overlay == null) {
+			mMissCount++;
+		}
+		else {
+			mHitCount++;
+		}
+		return overlay;
+	}
+
+	/**
+	 * Store an overlay in the cache. Least recently used overlays are evicted if the memory budget is exceeded.
+	 *
+	 * @param overlayType
+	 *            The overlay type.
+	 * @param side
+	 *            The side of the eye.
+	 * @param color
+	 *            The overlay color.
+	 * @param pupilXOffset
+	 *            The horizontal offset of the pupil.
+	 * @param pupilYOffset
+	 *            The vertical offset of the pupil.
+	 * @param pupilSize
+	 *            The relative size of the pupil.
+	 * @param overlay
+	 *            The overlay image.
+	 */
+	public synchronized void put(final int overlayType, final RightLeft side, final Color color, // SUPPRESS_CHECKSTYLE
+			final float pupilXOffset, final float pupilYOffset, final float pupilSize, final Image overlay) {
+		Image previousOverlay = mOverlays.put(new Key(overlayType, side, color, pupilXOffset, pupilYOffset, pupilSize), overlay);
+		if (previousOverlay != null) {
+			mMemoryUsage -= getMemorySize(previousOverlay);
+		}
+		mMemoryUsage += getMemorySize(overlay);
+		evict();
+	}
+
+	/**
+	 * Remove all overlays from the cache. The statistics are kept.
+	 */
+	public synchronized void clear() {
+		mOverlays.clear();
+		mMemoryUsage = 0;
+	}
+
+	/**
+	 * Evict least recently used overlays until the memory budget is met.
+	 */
+	private void evict() {
+		Iterator<Map.Entry<Key, Image>> iterator = mOverlays.entrySet().iterator();
+		while (mMemoryUsage > mMemoryBudget && iterator.hasNext()) {
+			mMemoryUsage -= getMemorySize(iterator.next().getValue());
+			iterator.remove();
+			mEvictionCount++;
+		}
+	}
+
+	@Override
+	public synchronized String toString() {
+		return "OverlayCache[size=" + mOverlays.size() + ", memoryUsage=" + mMemoryUsage + "/" + mMemoryBudget
+				+ ", hits=" + mHitCount + ", misses=" + mMissCount + ", evictions=" + mEvictionCount + "]";
+	}
+
+	/**
+	 * Quantize a pupil parameter in the same way as done for the cache key.
+	 *
+	 * @param value
+	 *            The pupil parameter.
+	 * @return The quantized value.
+	 */
+	public static float quantize(final float value) {
+		return toQuantizationSteps(value) / (float) QUANTIZATION_STEPS;
+	}
+
+	/**
+	 * Convert a pupil parameter into a number of quantization steps.
+	 *
+	 * @param value
+	 *            The pupil parameter.
+	 * @return The number of quantization steps.
+	 */
+	private static int toQuantizationSteps(final float value) {
+		return Math.round(value * QUANTIZATION_STEPS);
+	}
+
+	/**
+	 * Get the memory used by an image.
+	 *
+	 * @param image
+	 *            The image.
+	 * @return The memory size (in bytes).
+	 */
+	private static long getMemorySize(final Image image) {
+		return (long) image.getWidth() * (long) image.getHeight() * BYTES_PER_PIXEL;
+	}
+
+	/**
+	 * The key of a cached overlay.
+	 */
+	private static final class Key {
+		// JAVADOC:OFF
+		private final int mOverlayType;
+		private final RightLeft mSide;
+		private final Color mColor;
+		private final int mPupilXOffset;
+		private final int mPupilYOffset;
+		private final int mPupilSize;
+
+		// JAVADOC:ON
+
+		/**
+		 * Create a key.
+		 *
+		 * @param overlayType The overlay type.
+		 * @param side The side of the eye.
+		 * @param color The overlay color.
+		 * @param pupilXOffset The horizontal offset of the pupil.
+		 * @param pupilYOffset The vertical offset of the pupil.
+		 * @param pupilSize The relative size of the pupil.
+		 */
+		private Key(final int overlayType, final RightLeft side, final Color color,
+				final float pupilXOffset, final float pupilYOffset, final float pupilSize) {
+			mOverlayType = overlayType;
+			mSide = side;
+			mColor = color;
+			mPupilXOffset = toQuantizationSteps(pupilXOffset);
+			mPupilYOffset = toQuantizationSteps(pupilYOffset);
+			mPupilSize = toQuantizationSteps(pupilSize);
+		}
+
+		@Override
+		public boolean equals(final Object other) {
+			if (!(other instanceof Key)) {
+				return false;
+			}
+			Key otherKey = (Key) other;
+			return mOverlayType == otherKey.mOverlayType && mSide == otherKey.mSide // BOOLEAN_EXPRESSION_COMPLEXITY
+					&& Objects.equals(mColor, otherKey.mColor) && mPupilXOffset == otherKey.mPupilXOffset
+					&& mPupilYOffset == otherKey.mPupilYOffset && mPupilSize == otherKey.mPupilSize;
+		}
+
+		@Override
+		public int hashCode() {
+			return Objects.hash(mOverlayType, mSide, mColor, mPupilXOffset, mPupilYOffset, mPupilSize);
+		}
+	}
+}
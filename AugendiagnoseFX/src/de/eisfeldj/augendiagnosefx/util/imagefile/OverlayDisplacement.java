@@ -0,0 +1,216 @@
+package de.eisfeldj.augendiagnosefx.util.imagefile;
+
+import javafx.scene.effect.FloatMap;
+
+/**
+ * The displacement of an overlay due to pupil size and position.
+ *
+ * <p>As in the Android app, the displacement is calculated exactly only on the vertices of a coarse mesh. The
+ * displacement of the pixels in between is interpolated bilinearly.
+ */
+public final class OverlayDisplacement {
+	/**
+	 * The number of mesh cells in each direction.
+	 */
+	private static final int MESH_SIZE = 128;
+
+	/**
+	 * The exponent used for the compression of the pupil area.
+	 */
+	private static final double PUPIL_COMPRESSION_EXPONENT = 1.1;
+
+	/**
+	 * The size of the overlay (in pixels).
+	 */
+	private final int mOverlaySize;
+
+	/**
+	 * The size of a mesh cell (in pixels).
+	 */
+	private final float mCellSize;
+
+	/**
+	 * The horizontal displacement at the mesh vertices (relative to the overlay size), row by row.
+	 */
+	private final float[] mXDisplacements = new float[(MESH_SIZE + 1) * (MESH_SIZE + 1)];
+
+	/**
+	 * The vertical displacement at the mesh vertices (relative to the overlay size), row by row.
+	 */
+	private final float[] mYDisplacements = new float[(MESH_SIZE + 1) * (MESH_SIZE + 1)];
+
+	// JAVADOC:OFF
+	// Parameters of the displacement
+	private final float mIrisRadius;
+	private final float mPupilXCenter;
+	private final float mPupilYCenter;
+	private final float mPupilSize;
+	private final float mLinTransM;
+	private final float mLinTransB;
+
+	// JAVADOC:ON
+
+	/**
+	 * Calculate the displacement of an overlay.
+	 *
+	 * @param overlaySize
+	 *            The size of the overlay (in pixels).
+	 * @param circleRatio
+	 *            The relative radius of the iris on the overlay.
+	 * @param origPupilSize
+	 *            The pupil size in the original overlay.
+	 * @param pupilXOffset
+	 *            The horizontal offset of the pupil.
+	 * @param pupilYOffset
+	 *            The vertical offset of the pupil.
+	 * @param pupilSize
+	 *            The relative size of the pupil.
+	 */
+	public OverlayDisplacement(final int overlaySize, final float circleRatio, final float origPupilSize,
+			final float pupilXOffset, final float pupilYOffset, final float pupilSize) {
+		mOverlaySize = overlaySize;
+		mCellSize = overlaySize / (float) MESH_SIZE;
+		mIrisRadius = (int) (circleRatio * (overlaySize / 2));
+		mPupilXCenter = overlaySize * circleRatio * pupilXOffset / (1 - pupilSize);
+		mPupilYCenter = overlaySize * circleRatio * pupilYOffset / (1 - pupilSize);
+		mPupilSize = pupilSize;
+		mLinTransM = pupilSize == 1 ? 0 : (1 - origPupilSize) / (1 - pupilSize);
+		mLinTransB = 1 - mLinTransM;
+
+		int index = 0;
+		for (int y = 0; y <= MESH_SIZE; y++) {
+			for (int x = 0; x <= MESH_SIZE; x++) {
+				calculateDisplacement(x * mCellSize - overlaySize / 2, y * mCellSize - overlaySize / 2, index++);
+			}
+		}
+	}
+
+	/**
+	 * Calculate the exact displacement of a mesh vertex.
+	 *
+	 * @param xPos
+	 *            The x position of the vertex relative to the overlay center.
+	 * @param yPos
+	 *            The y position of the vertex relative to the overlay center.
+	 * @param index
+	 *            The index of the vertex.
+	 */
+	private void calculateDisplacement(final float xPos, final float yPos, final int index) {
+		float xPosP = xPos - mPupilXCenter;
+		float yPosP = yPos - mPupilYCenter;
+
+		float centerDistSquare = xPos * xPos + yPos * yPos;
+		float pupilCenterDistSquare = xPosP * xPosP + yPosP * yPosP;
+
+		if (centerDistSquare >= mIrisRadius * mIrisRadius) {
+			mXDisplacements[index] = 0;
+			mYDisplacements[index] = 0;
+		}
+		else if (pupilCenterDistSquare == 0) {
+			mXDisplacements[index] = -xPos / mOverlaySize;
+			mYDisplacements[index] = -yPos / mOverlaySize;
+		}
+		else {
+			// Determine corresponding iris boundary point via quadratic equation
+			float plusMinusTerm = (float) Math.sqrt(2 * xPosP * yPosP * mPupilXCenter * mPupilYCenter
+					+ mIrisRadius * mIrisRadius * pupilCenterDistSquare
+					- (mPupilXCenter * mPupilXCenter * yPosP * yPosP)
+					- (mPupilYCenter * mPupilYCenter * xPosP * xPosP));
+
+			float xBound = (yPosP * yPosP * mPupilXCenter - yPosP * xPosP * mPupilYCenter + xPosP * plusMinusTerm) / pupilCenterDistSquare;
+			float yBound = (xPosP * xPosP * mPupilYCenter - xPosP * yPosP * mPupilXCenter + yPosP * plusMinusTerm) / pupilCenterDistSquare;
+
+			// distance of the current point from the center - 1 corresponds to iris boundary
+			float relativeDistance = (float) Math.sqrt(pupilCenterDistSquare
+					/ ((xBound - mPupilXCenter) * (xBound - mPupilXCenter) + (yBound - mPupilYCenter) * (yBound - mPupilYCenter)));
+
+			float sourceRelativeDistance = mLinTransM * relativeDistance + mLinTransB;
+			if (relativeDistance < mPupilSize) {
+				sourceRelativeDistance -= mLinTransB * Math.pow(1 - relativeDistance / mPupilSize, PUPIL_COMPRESSION_EXPONENT);
+			}
+
+			float sourceX = xBound * sourceRelativeDistance;
+			float sourceY = yBound * sourceRelativeDistance;
+
+			mXDisplacements[index] = (sourceX - xPos) / mOverlaySize;
+			mYDisplacements[index] = (sourceY - yPos) / mOverlaySize;
+		}
+	}
+
+	/**
+	 * Fill a FloatMap (as used for a DisplacementMap) with the displacement, interpolated from the mesh.
+	 *
+	 * @param floatMap
+	 *            The FloatMap, having the size of the overlay. All samples are overwritten, so that the map may be
+	 *            reused.
+	 */
+	public void fillFloatMap(final FloatMap floatMap) {
+		// The mesh cell and the relative position within the cell, by pixel coordinate.
+		int[] cells = new int[mOverlaySize];
+		float[] weights = new float[mOverlaySize];
+		for (int i = 0; i < mOverlaySize; i++) {
+			float meshPosition = i / mCellSize;
+			cells[i] = Math.min((int) meshPosition, MESH_SIZE - 1);
+			weights[i] = meshPosition - cells[i];
+		}
+
+		// Cells without displacement at all vertices are outside the iris, where there is no displacement.
+		boolean[] isZeroCell = new boolean[MESH_SIZE * MESH_SIZE];
+		for (int cellY = 0; cellY < MESH_SIZE; cellY++) {
+			for (int cellX = 0; cellX < MESH_SIZE; cellX++) {
+				int topLeft = cellY * (MESH_SIZE + 1) + cellX;
+				int bottomLeft = topLeft + MESH_SIZE + 1;
+				isZeroCell[cellY * MESH_SIZE + cellX] = isZero(topLeft) && isZero(topLeft + 1) && isZero(bottomLeft) && isZero(bottomLeft + 1);
+			}
+		}
+
+		for (int y = 0; y < mOverlaySize; y++) {
+			int cellY = cells[y];
+			float weightY = weights[y];
+			for (int x = 0; x < mOverlaySize; x++) {
+				int cellX = cells[x];
+				if (isZeroCell[cellY * MESH_SIZE + cellX]) {
+					floatMap.setSamples(x, y, 0, 0);
+					continue;
+				}
+				int topLeft = cellY * (MESH_SIZE + 1) + cellX;
+				int bottomLeft = topLeft + MESH_SIZE + 1;
+				floatMap.setSamples(x, y, interpolate(mXDisplacements, topLeft, bottomLeft, weights[x], weightY),
+						interpolate(mYDisplacements, topLeft, bottomLeft, weights[x], weightY));
+			}
+		}
+	}
+
+	/**
+	 * Check if the displacement of a mesh vertex is zero.
+	 *
+	 * @param index
+	 *            The index of the vertex.
+	 * @return true if there is no displacement.
+	 */
+	private boolean isZero(final int index) {
+		return mXDisplacements[index] == 0 && mYDisplacements[index] == 0;
+	}
+
+	/**
+	 * Interpolate bilinearly within a mesh cell.
+	 *
+	 * @param values
+	 *            The values at the mesh vertices.
+	 * @param topLeft
+	 *            The index of the top left vertex of the cell.
+	 * @param bottomLeft
+	 *            The index of the bottom left vertex of the cell.
+	 * @param weightX
+	 *            The relative horizontal position within the cell.
+	 * @param weightY
+	 *            The relative vertical position within the cell.
+	 * @return The interpolated value.
+	 */
+	private static float interpolate(final float[] values, final int topLeft, final int bottomLeft,
+			final float weightX, final float weightY) {
+		float top = values[topLeft] + weightX * (values[topLeft + 1] - values[topLeft]);
+		float bottom = values[bottomLeft] + weightX * (values[bottomLeft + 1] - values[bottomLeft]);
+		return top + weightY * (bottom - top);
+	}
+}
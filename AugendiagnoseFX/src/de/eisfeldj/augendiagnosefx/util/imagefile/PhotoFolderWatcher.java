@@ -0,0 +1,451 @@
+package de.eisfeldj.augendiagnosefx.util.imagefile;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+
+import de.eisfeldj.augendiagnosefx.util.Logger;
+import de.eisfeldj.augendiagnosefx.util.PreferenceUtil;
+
+import static de.eisfeldj.augendiagnosefx.util.PreferenceUtil.KEY_FOLDER_PHOTOS;
+
+/**
+ * Watcher of the photo folder and its subfolders (one per person), providing a feed of changes.
+ *
+ * <p>File system events are collected until no further event arrives for some time, and then coalesced into
+ * notifications about added, deleted, renamed or modified files and folders. Renamed files are recognized by
+ * modification time and size stored in the {@link MetadataIndex}, which is updated accordingly, so that renamed or
+ * moved photos need not be read again.
+ */
+public final class PhotoFolderWatcher {
+	/**
+	 * The time without further events after which collected events are notified (in milliseconds).
+	 */
+	private static final long DEBOUNCE_TIME = 500;
+
+	/**
+	 * The instance of the watcher.
+	 */
+	private static PhotoFolderWatcher mInstance = null;
+
+	/**
+	 * The watched photo folder.
+	 */
+	private final File mPhotoFolder;
+
+	/**
+	 * The watch service.
+	 */
+	private final WatchService mWatchService;
+
+	/**
+	 * The watched folders, by watch key.
+	 */
+	private final Map<WatchKey, Path> mWatchedFolders = new HashMap<>();
+
+	/**
+	 * The listeners to be notified about changes.
+	 */
+	private final List<ChangeListener> mListeners = new CopyOnWriteArrayList<>();
+
+	/**
+	 * The changes collected since the last notification, by path. Only used in the watcher thread.
+	 */
+	private final Map<Path, Change> mPendingChanges = new LinkedHashMap<>();
+
+	/**
+	 * Create a watcher.
+	 *
+	 * @param photoFolder
+	 *            The photo folder.
+	 * @throws IOException
+	 *             thrown if the watch service cannot be created.
+	 */
+	private PhotoFolderWatcher(final File photoFolder) throws IOException {
+		mPhotoFolder = photoFolder;
+		mWatchService = FileSystems.getDefault().newWatchService();
+
+		register(photoFolder.toPath());
+		File[] folders = MetadataIndex.getInstance().getSubfolders(photoFolder);
+		if (folders != null) {
+			for (File folder : folders) {
+				register(folder.toPath());
+			}
+		}
+
+		Thread watcherThread = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				processEvents();
+			}
+		}, "PhotoFolderWatcher");
+		watcherThread.setDaemon(true);
+		watcherThread.start();
+	}
+
+	/**
+	 * Get the watcher of the current photo folder. If the photo folder has changed, watching of the old folder is
+	 * stopped, and the listeners are transferred.
+	 *
+	 * @return The watcher, or null if the photo folder cannot be watched.
+	 */
+	public static synchronized PhotoFolderWatcher getInstance() {
+		File photoFolder = new File(PreferenceUtil.getPreferenceString(KEY_FOLDER_PHOTOS));
+		if (mInstance != null && mInstance.mPhotoFolder.equals(photoFolder)) {
+			return mInstance;
+		}
+
+		List<ChangeListener> listeners = new ArrayList<>();
+		if (mInstance != null) {
+			listeners.addAll(mInstance.mListeners);
+			mInstance.stop();
+			mInstance = null;
+		}
+
+		if (!photoFolder.isDirectory()) {
+			return null;
+		}
+		try {
+			mInstance = new PhotoFolderWatcher(photoFolder);
+			mInstance.mListeners.addAll(listeners);
+		}
+		catch (IOException e) {
+			Logger.error("Failed to watch photo folder " + photoFolder.getAbsolutePath(), e);
+		}
+		return mInstance;
+	}
+
+	/**
+	 * Add a listener to be notified about changes, if not yet added. Listeners are called in the watcher thread.
+	 *
+	 * @param listener
+	 *            The listener.
+	 */
+	public void addListener(final ChangeListener listener) {
+		if (!mListeners.contains(listener)) {
+			mListeners.add(listener);
+		}
+	}
+
+	/**
+	 * Remove a listener.
+	 *
+	 * @param listener
+	 *            The listener.
+	 */
+	public void removeListener(final ChangeListener listener) {
+		mListeners.remove(listener);
+	}
+
+	/**
+	 * Stop watching.
+	 */
+	public void stop() {
+		try {
+			mWatchService.close();
+		}
+		catch (IOException e) {
+			Logger.error("Failed to stop watching photo folder", e);
+		}
+	}
+
+	/**
+	 * Register a folder at the watch service.
+	 *
+	 * @param folder
+	 *            The folder.
+	 */
+	private void register(final Path folder) {
+		try {
+			WatchKey key = folder.register(mWatchService, StandardWatchEventKinds.ENTRY_CREATE,
+					StandardWatchEventKinds.ENTRY_DELETE, StandardWatchEventKinds.ENTRY_MODIFY);
+			synchronized (mWatchedFolders) {
+				mWatchedFolders.put(key, folder);
+			}
+		}
+		catch (IOException e) {
+			Logger.error("Failed to watch folder " + folder, e);
+		}
+	}
+
+	/**
+	 * Process the events of the watch service until it is closed.
+	 */
+	private void processEvents() {
+		try {
+			while (true) {
+				WatchKey key = mPendingChanges.isEmpty() ? mWatchService.take() : mWatchService.poll(DEBOUNCE_TIME, TimeUnit.MILLISECONDS);
+				if (key == null) {
+					notifyChanges();
+					continue;
+				}
+
+				Path folder;
+				synchronized (mWatchedFolders) {
+					folder = mWatchedFolders.get(key);
+				}
+				if (folder != null) {
+					for (WatchEvent<?> event : key.pollEvents()) {
+						collectEvent(folder, event);
+					}
+				}
+				if (!key.reset()) {
+					synchronized (mWatchedFolders) {
+						mWatchedFolders.remove(key);
+					}
+				}
+			}
+		}
+		catch (InterruptedException | ClosedWatchServiceException e) {
+			// stop watching.
+		}
+	}
+
+	/**
+	 * Add an event to the pending changes, coalescing it with earlier events on the same path.
+	 *
+	 * @param folder
+	 *            The folder of the event.
+	 * @param event
+	 *            The event.
+	 */
+	private void collectEvent(final Path folder, final WatchEvent<?> event) {
+		if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+			// Events have been lost, so the whole folder may have changed.
+			mPendingChanges.put(folder, new Change(ChangeType.MODIFIED, null, folder.toFile()));
+			return;
+		}
+
+		Path path = folder.resolve((Path) event.context());
+		Change previousChange = mPendingChanges.get(path);
+
+		if (event.kind() == StandardWatchEventKinds.ENTRY_CREATE) {
+			if (previousChange != null && previousChange.getType() == ChangeType.DELETED) {
+				mPendingChanges.put(path, new Change(ChangeType.MODIFIED, null, path.toFile()));
+			}
+			else {
+				mPendingChanges.put(path, new Change(ChangeType.ADDED, null, path.toFile()));
+			}
+			if (folder.toFile().equals(mPhotoFolder) && path.toFile().isDirectory()) {
+				register(path);
+				// Files created before the folder was registered do not create events.
+				File[] files = path.toFile().listFiles();
+				if (files != null) {
+					for (File file : files) {
+						if (!mPendingChanges.containsKey(file.toPath())) {
+							mPendingChanges.put(file.toPath(), new Change(ChangeType.ADDED, null, file));
+						}
+					}
+				}
+			}
+		}
+		else if (event.kind() == StandardWatchEventKinds.ENTRY_DELETE) {
+			if (previousChange != null && previousChange.getType() == ChangeType.ADDED) {
+				mPendingChanges.remove(path);
+			}
+			else {
+				mPendingChanges.put(path, new Change(ChangeType.DELETED, path.toFile(), null));
+			}
+		}
+		else if (previousChange == null) {
+			mPendingChanges.put(path, new Change(ChangeType.MODIFIED, null, path.toFile()));
+		}
+	}
+
+	/**
+	 * Coalesce deletions and additions into renames, update the metadata index, and notify the listeners.
+	 */
+	private void notifyChanges() {
+		MetadataIndex index = MetadataIndex.getInstance();
+		List<Change> changes = new ArrayList<>(mPendingChanges.values());
+		mPendingChanges.clear();
+
+		List<Change> deletions = new ArrayList<>();
+		List<Change> additions = new ArrayList<>();
+		for (Change change : changes) {
+			if (change.getType() == ChangeType.DELETED) {
+				deletions.add(change);
+			}
+			else if (change.getType() == ChangeType.ADDED) {
+				additions.add(change);
+			}
+		}
+
+		for (Change deletion : deletions) {
+			Change addition = findRenameTarget(index, deletion.getOldFile(), additions);
+			if (addition != null) {
+				additions.remove(addition);
+				changes.remove(addition);
+				changes.set(changes.indexOf(deletion), new Change(ChangeType.RENAMED, deletion.getOldFile(), addition.getNewFile()));
+				index.rename(deletion.getOldFile(), addition.getNewFile());
+			}
+			else {
+				index.invalidate(deletion.getOldFile());
+			}
+		}
+
+		// Index new photos right away, so that they can be displayed without reading them again.
+		for (Change addition : additions) {
+			if (addition.getNewFile().isFile()) {
+				index.getEntry(addition.getNewFile());
+			}
+		}
+
+		Logger.info("Changes in photo folder: " + changes);
+		for (ChangeListener listener : mListeners) {
+			listener.onChanges(changes);
+		}
+	}
+
+	/**
+	 * Find the addition corresponding to a deletion, if the deleted file or folder has been renamed or moved.
+	 *
+	 * @param index
+	 *            The metadata index.
+	 * @param oldFile
+	 *            The deleted file or folder.
+	 * @param additions
+	 *            The additions.
+	 * @return The corresponding addition, or null if not found.
+	 */
+	private static Change findRenameTarget(final MetadataIndex index, final File oldFile, final List<Change> additions) {
+		MetadataIndex.Entry entry = index.getStoredEntry(oldFile);
+		if (entry != null) {
+			// A file is identified by modification time and size, which are kept when renaming.
+			for (Change addition : additions) {
+				File newFile = addition.getNewFile();
+				if (newFile.isFile() && newFile.lastModified() == entry.getLastModified() && newFile.length() == entry.getLength()) {
+					return addition;
+				}
+			}
+			return null;
+		}
+
+		// A folder is identified if it is the only folder added in the same parent folder.
+		Change result = null;
+		for (Change addition : additions) {
+			File newFile = addition.getNewFile();
+			if (newFile.isDirectory() && newFile.getParentFile().equals(oldFile.getParentFile())) {
+				if (result != null) {
+					return null;
+				}
+				result = addition;
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * The type of a change.
+	 */
+	public enum ChangeType {
+		/**
+		 * A file or folder has been added.
+		 */
+		ADDED,
+		/**
+		 * A file or folder has been deleted.
+		 */
+		DELETED,
+		/**
+		 * A file or folder has been renamed or moved.
+		 */
+		RENAMED,
+		/**
+		 * A file has been modified, or the content of a folder may have changed in an unknown way.
+		 */
+		MODIFIED
+	}
+
+	/**
+	 * A change of a file or folder.
+	 */
+	public static final class Change {
+		/**
+		 * The type of the change.
+		 */
+		private final ChangeType mType;
+
+		public ChangeType getType() {
+			return mType;
+		}
+
+		/**
+		 * The file before the change (null for additions and modifications).
+		 */
+		private final File mOldFile;
+
+		public File getOldFile() {
+			return mOldFile;
+		}
+
+		/**
+		 * The file after the change (null for deletions).
+		 */
+		private final File mNewFile;
+
+		public File getNewFile() {
+			return mNewFile;
+		}
+
+		/**
+		 * Create a change.
+		 *
+		 * @param type
+		 *            The type of the change.
+		 * @param oldFile
+		 *            The file before the change.
+		 * @param newFile
+		 *            The file after the change.
+		 */
+		private Change(final ChangeType type, final File oldFile, final File newFile) {
+			mType = type;
+			mOldFile = oldFile;
+			mNewFile = newFile;
+		}
+
+		/**
+		 * Check if the change affects a file or folder directly within a given folder.
+		 *
+		 * @param folder
+		 *            The folder.
+		 * @return true if the change affects the folder.
+		 */
+		public boolean affectsFolder(final File folder) {
+			return (mOldFile != null && (folder.equals(mOldFile.getParentFile()) || folder.equals(mOldFile))) // BOOLEAN_EXPRESSION_COMPLEXITY
+					|| (mNewFile != null && (folder.equals(mNewFile.getParentFile()) || folder.equals(mNewFile)));
+		}
+
+		@Override
+		public String toString() {
+			return mType + "[" + (mOldFile == null ? "" : mOldFile.getName()) + (mOldFile == null || mNewFile == null ? "" : " -> ")
+					+ (mNewFile == null ? "" : mNewFile.getName()) + "]";
+		}
+	}
+
+	/**
+	 * Listener for changes in the photo folder.
+	 */
+	public interface ChangeListener {
+		/**
+		 * Callback method for changes in the photo folder.
+		 *
+		 * @param changes
+		 *            The changes.
+		 */
+		void onChanges(List<Change> changes);
+	}
+}
@@ -0,0 +1,393 @@
+package de.eisfeldj.augendiagnosefx.util.imagefile;
+
+import java.awt.image.BufferedImage;
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FilenameFilter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Iterator;
+
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.stream.ImageOutputStream;
+
+import de.eisfeldj.augendiagnosefx.util.Logger;
+import de.eisfeldj.augendiagnosefx.util.SystemUtil;
+
+import javafx.scene.image.Image;
+import javafx.scene.image.PixelFormat;
+import javafx.scene.image.PixelReader;
+
+/**
+ * A persistent cache of thumbnails on disk.
+ *
+ * <p>Thumbnails are stored as small JPEG files, already rotated according to the EXIF orientation. The name of a cache
+ * file is derived from path, modification time and size of the image file and from the thumbnail size, so that a
+ * cached thumbnail is used only as long as the image file is unchanged. Cache files of previous versions of an image
+ * file are removed when a new thumbnail of it is stored, and all cache files of an image file are removed when the
+ * image file is moved or deleted. If the total size of the cache exceeds its budget, the least recently used cache
+ * files are removed.
+ */
+public final class ThumbnailCache {
+	/**
+	 * The name of the cache folder.
+	 */
+	private static final String CACHE_FOLDER_NAME = "thumbnails";
+
+	/**
+	 * The suffix of cache files.
+	 */
+	private static final String CACHE_FILE_SUFFIX = ".jpg";
+
+	/**
+	 * The maximum total size of the cache files (in bytes).
+	 */
+	private static final long MAX_CACHE_SIZE = 200L * 1024 * 1024; // MAGIC_NUMBER
+
+	/**
+	 * The fraction of the maximum size to which the cache is reduced when the maximum size is exceeded.
+	 */
+	private static final double EVICTION_TARGET_RATIO = 0.8;
+
+	/**
+	 * The JPEG quality of the cache files.
+	 */
+	private static final float JPEG_QUALITY = 0.9f;
+
+	/**
+	 * The number of hex digits of the path hash in the cache file name.
+	 */
+	private static final int PATH_HASH_LENGTH = 16;
+
+	/**
+	 * The resolution of file modification times (in milliseconds). Thumbnails of files modified within this time are
+	 * not cached, as further modifications may not change the modification time.
+	 */
+	private static final long MODIFICATION_TIME_RESOLUTION = 2000;
+
+	/**
+	 * The cache folder.
+	 */
+	private static final File CACHE_FOLDER = new File(SystemUtil.getApplicationDataDir(), CACHE_FOLDER_NAME);
+
+	/**
+	 * The total size of the cache files, or -1 if not yet determined.
+	 */
+	private static long mTotalSize = -1;
+
+	/**
+	 * The number of thumbnails found in the cache.
+	 */
+	private static long mHitCount = 0;
+
+	/**
+	 * The number of thumbnails not found in the cache.
+	 */
+	private static long mMissCount = 0;
+
+	/**
+	 * Hide default constructor.
+	 */
+	private ThumbnailCache() {
+		throw new UnsupportedOperationException();
+	}
+
+	/**
+	 * Get a thumbnail from the cache.
+	 *
+	 * @param file
+	 *            The image file.
+	 * @param lastModified
+	 *            The modification time of the image file.
+	 * @param length
+	 *            The size of the image file.
+	 * @param size
+	 *            The thumbnail size.
+	 * @return The thumbnail, or null if it is not cached.
+	 */
+	public static Image get(final File file, final long lastModified, final long length, final int size) {
+		File cacheFile = getCacheFile(file, lastModified, length, size);
+		if (!cacheFile.isFile()) {
+			countLookup(false);
+			return null;
+		}
+
+		Image thumbnail;
+		try (InputStream input = new BufferedInputStream(new FileInputStream(cacheFile))) {
+			thumbnail = new Image(input);
+		}
+		catch (IOException e) {
+			thumbnail = null;
+		}
+		if (thumbnail == null || thumbnail.isError()) {
+			Logger.warning("Failed to load cached thumbnail " + cacheFile.getName());
+			deleteCacheFile(cacheFile);
+			countLookup(false);
+			return null;
+		}
+		// The modification time of the cache file marks its last use.
+		if (!cacheFile.setLastModified(System.currentTimeMillis())) {
+			Logger.warning("Failed to mark usage of cached thumbnail " + cacheFile.getName());
+		}
+		countLookup(true);
+		return thumbnail;
+	}
+
+	/**
+	 * Store a thumbnail in the cache.
+	 *
+	 * @param file
+	 *            The image file.
+	 * @param lastModified
+	 *            The modification time of the image file before it was read.
+	 * @param length
+	 *            The size of the image file before it was read.
+	 * @param size
+	 *            The thumbnail size.
+	 * @param thumbnail
+	 *            The thumbnail. It is stored only if it is completely loaded.
+	 */
+	public static void put(final File file, final long lastModified, final long length, final int size, final Image thumbnail) {
+		if (lastModified == 0 || System.currentTimeMillis() - lastModified < MODIFICATION_TIME_RESOLUTION
+				|| thumbnail.getProgress() < 1 || thumbnail.isError() || thumbnail.getPixelReader() == null) {
+			return;
+		}
+		if (!CACHE_FOLDER.isDirectory() && !CACHE_FOLDER.mkdirs()) {
+			Logger.warning("Failed to create thumbnail cache folder");
+			return;
+		}
+
+		// Remove thumbnails of previous versions of the file.
+		final String pathPrefix = getPathHash(file) + "-";
+		final String versionPrefix = getVersionPrefix(file, lastModified, length);
+		deleteCacheFiles((dir, name) -> name.startsWith(pathPrefix) && !name.startsWith(versionPrefix));
+
+		File cacheFile = getCacheFile(file, lastModified, length, size);
+		File tempFile = new File(CACHE_FOLDER, cacheFile.getName() + ".tmp");
+		try {
+			writeJpeg(thumbnail, tempFile);
+			Files.move(tempFile.toPath(), cacheFile.toPath(), StandardCopyOption.REPLACE_EXISTING,
+					StandardCopyOption.ATOMIC_MOVE);
+		}
+		catch (IOException e) {
+			Logger.warning("Failed to store cached thumbnail of " + file.getName() + ": " + e.getMessage());
+			if (tempFile.exists() && !tempFile.delete()) {
+				Logger.warning("Failed to delete " + tempFile.getName());
+			}
+			return;
+		}
+
+		synchronized (ThumbnailCache.class) {
+			if (mTotalSize >= 0) {
+				mTotalSize += cacheFile.length();
+			}
+		}
+		evictIfRequired();
+	}
+
+	/**
+	 * Remove all cached thumbnails of an image file. This frees the cache space of files which are moved or deleted.
+	 *
+	 * @param file
+	 *            The image file.
+	 */
+	public static void invalidate(final File file) {
+		final String pathPrefix = getPathHash(file) + "-";
+		deleteCacheFiles((dir, name) -> name.startsWith(pathPrefix));
+	}
+
+	/**
+	 * Delete the cache files matching a filter.
+	 *
+	 * @param filter
+	 *            The filter.
+	 */
+	private static void deleteCacheFiles(final FilenameFilter filter) {
+		File[] cacheFiles = CACHE_FOLDER.listFiles(filter);
+		if (cacheFiles != null) {
+			for (File cacheFile : cacheFiles) {
+				deleteCacheFile(cacheFile);
+			}
+		}
+	}
+
+	public static synchronized long getHitCount() {
+		return mHitCount;
+	}
+
+	public static synchronized long getMissCount() {
+		return mMissCount;
+	}
+
+	/**
+	 * Count a lookup in the cache.
+	 *
+	 * @param isHit
+	 *            Flag indicating if the thumbnail was found in the cache.
+	 */
+	private static synchronized void countLookup(final boolean isHit) {
+		if (isHit) {
+			mHitCount++;
+		}
+		else {
+			mMissCount++;
+		}
+	}
+
+	/**
+	 * Delete a cache file and update the total size.
+	 *
+	 * @param cacheFile
+	 *            The cache file.
+	 */
+	private static void deleteCacheFile(final File cacheFile) {
+		long length = cacheFile.length();
+		if (cacheFile.delete()) {
+			synchronized (ThumbnailCache.class) {
+				if (mTotalSize >= 0) {
+					mTotalSize -= length;
+				}
+			}
+		}
+	}
+
+	/**
+	 * Remove the least recently used cache files if the total size of the cache exceeds the maximum size.
+	 */
+	private static synchronized void evictIfRequired() {
+		File[] cacheFiles = null;
+		if (mTotalSize < 0) {
+			cacheFiles = CACHE_FOLDER.listFiles();
+			if (cacheFiles == null) {
+				return;
+			}
+			mTotalSize = 0;
+			for (File cacheFile : cacheFiles) {
+				mTotalSize += cacheFile.length();
+			}
+		}
+		if (mTotalSize <= MAX_CACHE_SIZE) {
+			return;
+		}
+
+		if (cacheFiles == null) {
+			cacheFiles = CACHE_FOLDER.listFiles();
+			if (cacheFiles == null) {
+				return;
+			}
+		}
+		final long[] lastUsed = new long[cacheFiles.length];
+		Integer[] indices = new Integer[cacheFiles.length];
+		for (int i = 0; i < cacheFiles.length; i++) {
+			lastUsed[i] = cacheFiles[i].lastModified();
+			indices[i] = i;
+		}
+		Arrays.sort(indices, Comparator.comparingLong(i -> lastUsed[i]));
+
+		long targetSize = (long) (MAX_CACHE_SIZE * EVICTION_TARGET_RATIO);
+		for (int i = 0; i < indices.length && mTotalSize > targetSize; i++) {
+			deleteCacheFile(cacheFiles[indices[i]]);
+		}
+	}
+
+	/**
+	 * Get the cache file of a thumbnail.
+	 *
+	 * @param file
+	 *            The image file.
+	 * @param lastModified
+	 *            The modification time of the image file.
+	 * @param length
+	 *            The size of the image file.
+	 * @param size
+	 *            The thumbnail size.
+	 * @return The cache file.
+	 */
+	private static File getCacheFile(final File file, final long lastModified, final long length, final int size) {
+		return new File(CACHE_FOLDER, getVersionPrefix(file, lastModified, length) + size + CACHE_FILE_SUFFIX);
+	}
+
+	/**
+	 * Get the common prefix of the names of all cache files of a version of an image file.
+	 *
+	 * @param file
+	 *            The image file.
+	 * @param lastModified
+	 *            The modification time of the image file.
+	 * @param length
+	 *            The size of the image file.
+	 * @return The prefix.
+	 */
+	private static String getVersionPrefix(final File file, final long lastModified, final long length) {
+		return getPathHash(file) + "-" + Long.toHexString(lastModified) + "-" + Long.toHexString(length) + "-";
+	}
+
+	/**
+	 * Get a hash of the absolute path of a file.
+	 *
+	 * @param file
+	 *            The file.
+	 * @return The hash, as hex String.
+	 */
+	private static String getPathHash(final File file) {
+		try {
+			byte[] digest = MessageDigest.getInstance("SHA-1").digest(file.getAbsolutePath().getBytes(StandardCharsets.UTF_8));
+			StringBuilder hash = new StringBuilder();
+			for (int i = 0; hash.length() < PATH_HASH_LENGTH; i++) {
+				hash.append(String.format("%02x", digest[i]));
+			}
+			return hash.toString();
+		}
+		catch (NoSuchAlgorithmException e) {
+			// SHA-1 is available on all Java platforms.
+			throw new RuntimeException(e);
+		}
+	}
+
+	/**
+	 * Write an image as JPEG file.
+	 *
+	 * @param image
+	 *            The image.
+	 * @param targetFile
+	 *            The target file.
+	 * @throws IOException
+	 *             thrown if the file cannot be written.
+	 */
+	private static void writeJpeg(final Image image, final File targetFile) throws IOException {
+		int width = (int) image.getWidth();
+		int height = (int) image.getHeight();
+		int[] pixels = new int[width * height];
+		PixelReader pixelReader = image.getPixelReader();
+		pixelReader.getPixels(0, 0, width, height, PixelFormat.getIntArgbInstance(), pixels, 0, width);
+		BufferedImage bufferedImage = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+		bufferedImage.setRGB(0, 0, width, height, pixels, 0, width);
+
+		Iterator<ImageWriter> writers = ImageIO.getImageWritersByFormatName("jpeg");
+		if (!writers.hasNext()) {
+			throw new IOException("No JPEG writer available");
+		}
+		ImageWriter writer = writers.next();
+		try (ImageOutputStream output = ImageIO.createImageOutputStream(targetFile)) {
+			ImageWriteParam param = writer.getDefaultWriteParam();
+			param.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+			param.setCompressionQuality(JPEG_QUALITY);
+			writer.setOutput(output);
+			writer.write(null, new IIOImage(bufferedImage, null, null), param);
+		}
+		finally {
+			writer.dispose();
+		}
+	}
+}
@@ -0,0 +1,129 @@
+package de.eisfeldj.augendiagnosefx.util.imagefile;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Consumer;
+
+import de.eisfeldj.augendiagnosefx.util.Logger;
+import de.eisfeldj.augendiagnosefx.util.imagefile.ImageUtil.Resolution;
+
+import javafx.application.Platform;
+import javafx.scene.image.Image;
+import javafx.scene.image.PixelWriter;
+import javafx.scene.image.WritableImage;
+import javafx.scene.paint.Color;
+
+/**
+ * Loader of thumbnails of eye photos outside the JavaFX application thread.
+ *
+ * <p>Thumbnails are loaded by a small fixed number of threads, so that scrolling through a long list of photos does not
+ * start an unbounded number of image decodings. Loading requests can be cancelled, e.g. if the displaying list cell is
+ * reused for another photo before the thumbnail is loaded.
+ */
+public final class ThumbnailLoader {
+	/**
+	 * The number of threads loading thumbnails.
+	 */
+	private static final int THREAD_COUNT = 2;
+
+	/**
+	 * Width of the placeholder image. Placeholder width and height define the aspect ratio of the placeholder.
+	 */
+	private static final int PLACEHOLDER_WIDTH = 4;
+	/**
+	 * Height of the placeholder image.
+	 */
+	private static final int PLACEHOLDER_HEIGHT = 3;
+
+	/**
+	 * The threads loading the thumbnails.
+	 */
+	private static final ExecutorService LOADER_EXECUTOR = Executors.newFixedThreadPool(THREAD_COUNT, runnable -> {
+		Thread thread = new Thread(runnable, "ThumbnailLoader");
+		thread.setDaemon(true);
+		return thread;
+	});
+
+	/**
+	 * The image displayed while a thumbnail is not yet loaded.
+	 */
+	private static final Image PLACEHOLDER = createPlaceholder();
+
+	public static Image getPlaceholder() {
+		return PLACEHOLDER;
+	}
+
+	/**
+	 * Hide default constructor.
+	 */
+	private ThumbnailLoader() {
+		throw new UnsupportedOperationException();
+	}
+
+	/**
+	 * Load the thumbnail of an eye photo. The callback is called on the JavaFX application thread, unless the request
+	 * is cancelled before the thumbnail is loaded. As the request cannot be cancelled any more once the thumbnail is
+	 * loaded, the callback has to check itself if the thumbnail is still needed. If the thumbnail is already available,
+	 * the callback is called immediately. Must be called on the JavaFX application thread.
+	 *
+	 * @param eyePhoto
+	 *            The eye photo.
+	 * @param callback
+	 *            The callback receiving the thumbnail.
+	 * @return The future of the loading request, which may be used for cancelling it. Null if the thumbnail was
+	 *         available without loading.
+	 */
+	public static Future<?> load(final EyePhoto eyePhoto, final Consumer<Image> callback) {
+		Image cachedThumbnail = eyePhoto.getCachedThumbnail();
+		if (cachedThumbnail != null) {
+			callback.accept(cachedThumbnail);
+			return null;
+		}
+
+		FutureHolder holder = new FutureHolder();
+		holder.mFuture = LOADER_EXECUTOR.submit(() -> {
+			Image thumbnail;
+			try {
+				thumbnail = eyePhoto.getImage(Resolution.THUMB);
+			}
+			catch (RuntimeException e) {
+				Logger.error("Failed to load thumbnail of " + eyePhoto.getFilename(), e);
+				return;
+			}
+			Platform.runLater(() -> {
+				// Skip requests cancelled while loading. Requests cancelled later are not detected here.
+				if (!holder.mFuture.isCancelled()) {
+					callback.accept(thumbnail);
+				}
+			});
+		});
+		return holder.mFuture;
+	}
+
+	/**
+	 * Create the placeholder image.
+	 *
+	 * @return The placeholder image.
+	 */
+	private static Image createPlaceholder() {
+		WritableImage placeholder = new WritableImage(PLACEHOLDER_WIDTH, PLACEHOLDER_HEIGHT);
+		PixelWriter pixelWriter = placeholder.getPixelWriter();
+		for (int x = 0; x < PLACEHOLDER_WIDTH; x++) {
+			for (int y = 0; y < PLACEHOLDER_HEIGHT; y++) {
+				pixelWriter.setColor(x, y, Color.LIGHTGRAY);
+			}
+		}
+		return placeholder;
+	}
+
+	/**
+	 * Holder of a future, allowing the task to access its own future.
+	 */
+	private static final class FutureHolder {
+		/**
+		 * The future.
+		 */
+		private volatile Future<?> mFuture;
+	}
+}
@@ -6,32 +6,34 @@ import java.util.GregorianCalendar;
 
 import com.adobe.xmp.XMPDateTime;
 import com.adobe.xmp.XMPDateTimeFactory;
+import com.adobe.xmp.XMPError;
 import com.adobe.xmp.XMPException;
 import com.adobe.xmp.XMPMeta;
 import com.adobe.xmp.XMPMetaFactory;
 import com.adobe.xmp.XMPPathFactory;
 import com.adobe.xmp.XMPSchemaRegistry;
 import com.adobe.xmp.options.PropertyOptions;
+import com.adobe.xmp.options.SerializeOptions;
 
 import de.eisfeldj.augendiagnosefx.util.Logger;
 
 /**
  * Helper class to handle XML data in a JPEG file.
  */
-public class XmpHandler {
+public class XmpHandler implements XmpReader {
 	// JAVADOC:OFF
-	private static final String USER_COMMENT = "UserComment";
+	protected static final String USER_COMMENT = "UserComment";
 
 	// Standard namespaces
-	private static final String NS_DC = "http://purl.org/dc/elements/1.1/";
+	protected static final String NS_DC = "http://purl.org/dc/elements/1.1/";
 	private static final String NS_MP1 = "http://ns.microsoft.com/photo/1.0/";
 	private static final String NS_MP2 = "http://ns.microsoft.com/photo/1.2/";
 	private static final String NS_MPRI = "http://ns.microsoft.com/photo/1.2/t/RegionInfo#";
-	private static final String NS_MPREG = "http://ns.microsoft.com/photo/1.2/t/Region#";
-	private static final String NS_EXIF = "http://ns.adobe.com/exif/1.0/";
+	protected static final String NS_MPREG = "http://ns.microsoft.com/photo/1.2/t/Region#";
+	protected static final String NS_EXIF = "http://ns.adobe.com/exif/1.0/";
 
 	// The custom namespace
-	private static final String NS_JE = "http://ns.jeisfeld.de/augenfotos/1.0/";
+	protected static final String NS_JE = "http://ns.jeisfeld.de/augenfotos/1.0/";
 
 	// Items from the custom namespace
 	public static final String ITEM_TITLE = "title";
@@ -59,6 +61,11 @@ public class XmpHandler {
 
 	// JAVADOC:ON
 
+	/**
+	 * The padding reserved at the end of an XMP packet (in bytes), allowing later changes of the packet in place.
+	 */
+	private static final int XMP_PADDING = 2048;
+
 	/**
 	 * Store if the registry is prepared via prepareRegistry.
 	 */
@@ -426,7 +433,28 @@ public class XmpHandler {
 	 *             thrown in case of issues with XML handling.
 	 */
 	public final String getXmpString() throws XMPException {
-		return XMPMetaFactory.serializeToString(mXmpMeta, null);
+		return XMPMetaFactory.serializeToString(mXmpMeta, new SerializeOptions().setPadding(XMP_PADDING));
+	}
+
+	/**
+	 * Get the XMP data as UTF-8 encoded packet of a given length. The packet is filled up with padding to this length.
+	 *
+	 * @param packetLength
+	 *            the length of the packet (in bytes).
+	 * @return the XMP packet, or null if the XMP data does not fit into this length.
+	 * @throws XMPException
+	 *             thrown in case of issues with XML handling.
+	 */
+	public final byte[] getXmpPacket(final int packetLength) throws XMPException {
+		try {
+			return XMPMetaFactory.serializeToBuffer(mXmpMeta, new SerializeOptions().setExactPacketLength(true).setPadding(packetLength));
+		}
+		catch (XMPException e) {
+			if (e.getErrorCode() == XMPError.BADSERIALIZE) {
+				return null;
+			}
+			throw e;
+		}
 	}
 
 }
@@ -0,0 +1,71 @@
+package de.eisfeldj.augendiagnosefx.util.imagefile;
+
+import java.util.Date;
+
+/**
+ * Read access to the XMP data of a JPEG file.
+ */
+public interface XmpReader {
+	/**
+	 * Get an item from the custom namespace.
+	 *
+	 * @param item
+	 *            the name of the item.
+	 * @return the value of the item.
+	 */
+	String getJeItem(String item);
+
+	/**
+	 * Get an int item from the custom namespace.
+	 *
+	 * @param item
+	 *            the name of the item.
+	 * @return the value of the item.
+	 */
+	int getJeInt(String item);
+
+	/**
+	 * Get a date item from the custom namespace.
+	 *
+	 * @param item
+	 *            the name of the item.
+	 * @return the value of the item.
+	 */
+	Date getJeDate(String item);
+
+	/**
+	 * Retrieve the image title.
+	 *
+	 * @return the image title.
+	 */
+	String getDcTitle();
+
+	/**
+	 * Retrieve the image description.
+	 *
+	 * @return the image description.
+	 */
+	String getDcDescription();
+
+	/**
+	 * Retrieve the image subject.
+	 *
+	 * @return the image subject.
+	 */
+	String getDcSubject();
+
+	/**
+	 * Retrieve the user comment.
+	 *
+	 * @return the user comment.
+	 */
+	String getUserComment();
+
+	/**
+	 * Retrieve the image person name, from Microsoft namespace.
+	 *
+	 * @return the image person name.
+	 */
+	String getMicrosoftPerson();
+
+}
@@ -0,0 +1,312 @@
+package de.eisfeldj.augendiagnosefx.util.imagefile;
+
+import java.io.StringReader;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+import com.adobe.xmp.XMPUtils;
+
+import de.eisfeldj.augendiagnosefx.util.Logger;
+
+/**
+ * Reader of XMP data in a JPEG file, which extracts the needed properties in one pass over the XML, without building
+ * the XMP object model.
+ *
+ * <p>This is intended for read-only access to many files, e.g. for indexing the photo library. The full XmpHandler is
+ * required for changing XMP data.
+ *
+ * <p>Simple properties are read both in element form and in attribute form. For array properties, the first item is
+ * read.
+ */
+public class XmpStreamReader implements XmpReader {
+	/**
+	 * The RDF namespace.
+	 */
+	private static final String NS_RDF = "http://www.w3.org/1999/02/22-rdf-syntax-ns#";
+
+	// JAVADOC:OFF
+	// Keys of the standard fields. They do not conflict with custom item names as they contain a colon.
+	private static final String KEY_DC_TITLE = "dc:title";
+	private static final String KEY_DC_DESCRIPTION = "dc:description";
+	private static final String KEY_DC_SUBJECT = "dc:subject";
+	private static final String KEY_USER_COMMENT = "exif:UserComment";
+	private static final String KEY_MICROSOFT_PERSON = "MPReg:PersonDisplayName";
+
+	// JAVADOC:ON
+
+	/**
+	 * The keys of the standard fields, by namespace and local name of the property.
+	 */
+	private static final Map<String, String> STANDARD_FIELD_KEYS = new HashMap<>();
+
+	static {
+		STANDARD_FIELD_KEYS.put(XmpHandler.NS_DC + "title", KEY_DC_TITLE);
+		STANDARD_FIELD_KEYS.put(XmpHandler.NS_DC + "description", KEY_DC_DESCRIPTION);
+		STANDARD_FIELD_KEYS.put(XmpHandler.NS_DC + "subject", KEY_DC_SUBJECT);
+		STANDARD_FIELD_KEYS.put(XmpHandler.NS_EXIF + XmpHandler.USER_COMMENT, KEY_USER_COMMENT);
+		STANDARD_FIELD_KEYS.put(XmpHandler.NS_MPREG + "PersonDisplayName", KEY_MICROSOFT_PERSON);
+	}
+
+	/**
+	 * The factory for XML readers.
+	 */
+	private static final XMLInputFactory INPUT_FACTORY;
+
+	static {
+		INPUT_FACTORY = XMLInputFactory.newInstance();
+		INPUT_FACTORY.setProperty(XMLInputFactory.IS_NAMESPACE_AWARE, Boolean.TRUE);
+		INPUT_FACTORY.setProperty(XMLInputFactory.SUPPORT_DTD, Boolean.FALSE);
+		INPUT_FACTORY.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, Boolean.FALSE);
+	}
+
+	/**
+	 * The names of the requested custom items, or null if all properties are requested.
+	 */
+	private final Set<String> mRequestedItems;
+
+	/**
+	 * The extracted values, by custom item name or by key of the standard field.
+	 */
+	private final Map<String, String> mValues = new HashMap<>();
+
+	/**
+	 * Create an XmpStreamReader from an XMP String, extracting all custom items and the standard fields.
+	 *
+	 * @param xmpString
+	 *            the XMP String.
+	 */
+	public XmpStreamReader(final String xmpString) {
+		this(xmpString, (String[]) null);
+	}
+
+	/**
+	 * Create an XmpStreamReader from an XMP String, extracting only the given custom items. Reading stops as soon as
+	 * all of them are found. The standard fields are not extracted.
+	 *
+	 * @param xmpString
+	 *            the XMP String.
+	 * @param items
+	 *            the names of the custom items to be extracted.
+	 */
+	public XmpStreamReader(final String xmpString, final String... items) {
+		mRequestedItems = items == null ? null : new HashSet<>(Arrays.asList(items));
+
+		if (xmpString == null) {
+			Logger.warning("xmpString is null");
+			return;
+		}
+
+		try {
+			parse(xmpString.trim());
+		}
+		catch (XMLStreamException e) {
+			Logger.warning("Error when parsing XMP Data: " + e.toString());
+			mValues.clear();
+		}
+	}
+
+	/**
+	 * Extract the properties from the XMP String.
+	 *
+	 * @param xmpString
+	 *            the XMP String.
+	 * @throws XMLStreamException
+	 *             thrown in case of invalid XML.
+	 */
+	private void parse(final String xmpString) throws XMLStreamException {
+		XMLStreamReader reader;
+		synchronized (INPUT_FACTORY) {
+			reader = INPUT_FACTORY.createXMLStreamReader(new StringReader(xmpString));
+		}
+
+		try {
+			StringBuilder text = new StringBuilder();
+			int depth = 0;
+			// The key of the property whose value is currently read, and the depth of its element.
+			String propertyKey = null;
+			int propertyDepth = 0;
+			boolean isArray = false;
+			// The depth of the first array item, if currently read.
+			int itemDepth = 0;
+			// Flag indicating if the text read so far is the complete value.
+			boolean isSimpleValue = false;
+
+			while (reader.hasNext() && !isComplete()) {
+				switch (reader.next()) {
+				case XMLStreamConstants.START_ELEMENT:
+					depth++;
+					if (propertyKey == null) {
+						readAttributes(reader);
+						propertyKey = getKey(reader.getNamespaceURI(), reader.getLocalName());
+						if (propertyKey != null) {
+							propertyDepth = depth;
+							isArray = isArray(propertyKey);
+							itemDepth = 0;
+							isSimpleValue = !isArray;
+							text.setLength(0);
+						}
+					}
+					else if (isArray && itemDepth == 0 && NS_RDF.equals(reader.getNamespaceURI()) && "li".equals(reader.getLocalName())) {
+						itemDepth = depth;
+						isSimpleValue = true;
+						text.setLength(0);
+					}
+					else {
+						// Structured value, which is not extracted.
+						isSimpleValue = false;
+					}
+					break;
+				case XMLStreamConstants.CHARACTERS:
+				case XMLStreamConstants.CDATA:
+				case XMLStreamConstants.SPACE:
+					if (propertyKey != null) {
+						text.append(reader.getText());
+					}
+					break;
+				case XMLStreamConstants.END_ELEMENT:
+					if (propertyKey != null && (depth == propertyDepth || depth == itemDepth)) {
+						if (isSimpleValue) {
+							putValue(propertyKey, text.toString());
+						}
+						propertyKey = null;
+					}
+					depth--;
+					break;
+				default:
+					break;
+				}
+			}
+		}
+		finally {
+			reader.close();
+		}
+	}
+
+	/**
+	 * Extract the properties in attribute form from the current element.
+	 *
+	 * @param reader
+	 *            the XML reader positioned on a start element.
+	 */
+	private void readAttributes(final XMLStreamReader reader) {
+		for (int i = 0; i < reader.getAttributeCount(); i++) {
+			String key = getKey(reader.getAttributeNamespace(i), reader.getAttributeLocalName(i));
+			if (key != null && !isArray(key)) {
+				putValue(key, reader.getAttributeValue(i));
+			}
+		}
+	}
+
+	/**
+	 * Get the key of a requested property.
+	 *
+	 * @param namespace
+	 *            the namespace of the property.
+	 * @param name
+	 *            the local name of the property.
+	 * @return the key of the property, or null if the property is not requested.
+	 */
+	private String getKey(final String namespace, final String name) {
+		if (XmpHandler.NS_JE.equals(namespace)) {
+			return mRequestedItems == null || mRequestedItems.contains(name) ? name : null;
+		}
+		if (mRequestedItems != null) {
+			return null;
+		}
+		return STANDARD_FIELD_KEYS.get(namespace + name);
+	}
+
+	/**
+	 * Check if a property is an array.
+	 *
+	 * @param key
+	 *            the key of the property.
+	 * @return true if the property is an array.
+	 */
+	private static boolean isArray(final String key) {
+		return KEY_DC_TITLE.equals(key) || KEY_DC_DESCRIPTION.equals(key) || KEY_DC_SUBJECT.equals(key)
+				|| KEY_USER_COMMENT.equals(key);
+	}
+
+	/**
+	 * Store the value of a property, if no value was found before.
+	 *
+	 * @param key
+	 *            the key of the property.
+	 * @param value
+	 *            the value.
+	 */
+	private void putValue(final String key, final String value) {
+		if (!mValues.containsKey(key)) {
+			mValues.put(key, value);
+		}
+	}
+
+	/**
+	 * Check if all requested properties are found.
+	 *
+	 * @return true if all requested properties are found.
+	 */
+	private boolean isComplete() {
+		return mRequestedItems != null && mValues.size() == mRequestedItems.size();
+	}
+
+	@Override
+	public final String getJeItem(final String item) {
+		return mValues.get(item);
+	}
+
+	@Override
+	public final int getJeInt(final String item) {
+		try {
+			return XMPUtils.convertToInteger(mValues.get(item));
+		}
+		catch (Exception e) {
+			return 0;
+		}
+	}
+
+	@Override
+	public final Date getJeDate(final String item) {
+		try {
+			return XMPUtils.convertToDate(mValues.get(item)).getCalendar().getTime();
+		}
+		catch (Exception e) {
+			return null;
+		}
+	}
+
+	@Override
+	public final String getDcTitle() {
+		return mValues.get(KEY_DC_TITLE);
+	}
+
+	@Override
+	public final String getDcDescription() {
+		return mValues.get(KEY_DC_DESCRIPTION);
+	}
+
+	@Override
+	public final String getDcSubject() {
+		return mValues.get(KEY_DC_SUBJECT);
+	}
+
+	@Override
+	public final String getUserComment() {
+		return mValues.get(KEY_USER_COMMENT);
+	}
+
+	@Override
+	public final String getMicrosoftPerson() {
+		return mValues.get(KEY_MICROSOFT_PERSON);
+	}
+}
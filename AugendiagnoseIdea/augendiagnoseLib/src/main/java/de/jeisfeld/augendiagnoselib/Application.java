@@ -18,6 +18,7 @@ import java.util.Locale;
 import androidx.annotation.Nullable;
 import de.jeisfeld.augendiagnoselib.activities.SettingsActivity;
 import de.jeisfeld.augendiagnoselib.util.PreferenceUtil;
+import de.jeisfeld.augendiagnoselib.util.imagefile.JpegSynchronizationUtil;
 import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
 
 /**
@@ -86,6 +87,9 @@ public class Application extends android.app.Application {
 
 		PreferenceUtil.incrementCounter(R.string.key_statistics_countstarts);
 		PreferenceUtil.sendStatistics();
+
+		// Save metadata changes which were not yet stored when the app was terminated.
+		JpegSynchronizationUtil.recoverSaveRequests();
 	}
 
 	/**
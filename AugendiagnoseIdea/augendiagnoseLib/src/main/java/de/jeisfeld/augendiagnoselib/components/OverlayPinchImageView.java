@@ -7,6 +7,7 @@ import android.content.res.TypedArray;
 import android.graphics.Bitmap;
 import android.graphics.Canvas;
 import android.graphics.Color;
+import android.graphics.Rect;
 import android.graphics.drawable.BitmapDrawable;
 import android.graphics.drawable.Drawable;
 import android.graphics.drawable.LayerDrawable;
@@ -31,6 +32,7 @@ import de.jeisfeld.augendiagnoselib.util.TrackingUtil;
 import de.jeisfeld.augendiagnoselib.util.TrackingUtil.Category;
 import de.jeisfeld.augendiagnoselib.util.imagefile.EyePhoto;
 import de.jeisfeld.augendiagnoselib.util.imagefile.EyePhoto.RightLeft;
+import de.jeisfeld.augendiagnoselib.util.imagefile.ImageTileDecoder;
 import de.jeisfeld.augendiagnoselib.util.imagefile.ImageUtil;
 import de.jeisfeld.augendiagnoselib.util.imagefile.JpegMetadata;
 import de.jeisfeld.augendiagnoselib.util.imagefile.MediaStoreUtil;
@@ -204,9 +206,10 @@ public class OverlayPinchImageView extends PinchImageView {
 	private boolean mShowingFullResolution = false;
 
 	/**
-	 * The full bitmap (full resolution).
+	 * The decoder of parts of the image in full resolution.
 	 */
-	private Bitmap mBitmapFull = null;
+	@Nullable
+	private ImageTileDecoder mTileDecoder = null;
 
 	/**
 	 * The metadata of the image.
@@ -317,7 +320,6 @@ public class OverlayPinchImageView extends PinchImageView {
 		mRetainFragment = retainFragment;
 		mBitmap = retainFragment.getBitmap();
 		mBitmapSmall = retainFragment.getBitmapSmall();
-		mBitmapFull = retainFragment.getBitmapFullResolution();
 		cleanFullResolutionBitmaps(false);
 
 		if (mBitmap == null || !pathName.equals(mPathName)) {
@@ -793,9 +795,7 @@ public class OverlayPinchImageView extends PinchImageView {
 		mEyePhoto.cleanCache();
 		mBitmap = ImageUtil.rotateBitmap(mBitmap, rotationAngle);
 		mBitmapSmall = ImageUtil.rotateBitmap(mBitmapSmall, rotationAngle);
-		if (mBitmapFull != null) {
-			mBitmapFull = ImageUtil.rotateBitmap(mBitmapFull, rotationAngle);
-		}
+		cleanFullBitmap();
 		mRetainFragment.setBitmap(mBitmap);
 		mRetainFragment.setBitmapSmall(mBitmapSmall);
 		mCanvasBitmap = Bitmap.createBitmap(mBitmap.getWidth(), mBitmap.getHeight(), Bitmap.Config.ARGB_8888);
@@ -1328,26 +1328,36 @@ public class OverlayPinchImageView extends PinchImageView {
 		int offsetMaxY = Math.round(Math.max(lowerY - mBitmap.getHeight(), 0) * mScaleFactor);
 
 		try {
-			Bitmap bitmapFull = mBitmapFull;
-			if (bitmapFull == null) {
-				bitmapFull = mEyePhoto.getFullBitmap();
-				if (mFullResolutionFlag) {
-					mBitmapFull = bitmapFull;
-					if (mRetainFragment != null) {
-						mRetainFragment.setBitmapFullResolution(bitmapFull);
-					}
+			Bitmap bitmapFullResolution = Bitmap.createBitmap(getWidth(), getHeight(), Bitmap.Config.ARGB_8888);
+			Canvas canvas = new Canvas(bitmapFullResolution);
+			Rect target = new Rect(offsetX, offsetY, getWidth() - offsetMaxX, getHeight() - offsetMaxY);
+
+			// Use the orientation from the metadata, as changes of orientation may not yet be stored in the file.
+			JpegMetadata metadata = mMetadata;
+			Short orientation = metadata == null ? null : metadata.getOrientation();
+			ImageTileDecoder tileDecoder = mTileDecoder;
+			if (tileDecoder == null || !tileDecoder.isFor(mEyePhoto.getAbsolutePath(), orientation)) {
+				if (tileDecoder != null) {
+					tileDecoder.recycle();
 				}
+				tileDecoder = ImageTileDecoder.create(mEyePhoto.getAbsolutePath(), orientation);
+				mTileDecoder = tileDecoder;
 			}
-			Bitmap partialBitmap =
-					ImageUtil.getPartialBitmap(bitmapFull, minX, maxX, minY, maxY);
-			Bitmap scaledPartialBitmap =
-					Bitmap.createScaledBitmap(partialBitmap, getWidth() - offsetMaxX - offsetX, getHeight()
-							- offsetMaxY
-							- offsetY, false);
 
-			Bitmap bitmapFullResolution = Bitmap.createBitmap(getWidth(), getHeight(), Bitmap.Config.ARGB_8888);
-			Canvas canvas = new Canvas(bitmapFullResolution);
-			canvas.drawBitmap(scaledPartialBitmap, offsetX, offsetY, null);
+			if (tileDecoder != null) {
+				// Decode only the visible part of the image.
+				if (!tileDecoder.drawRegion(canvas, minX, maxX, minY, maxY, target)) {
+					return null;
+				}
+			}
+			else {
+				// Image format which cannot be decoded in parts.
+				Bitmap partialBitmap =
+						ImageUtil.getPartialBitmap(mEyePhoto.getFullBitmap(), minX, maxX, minY, maxY);
+				Bitmap scaledPartialBitmap =
+						Bitmap.createScaledBitmap(partialBitmap, target.width(), target.height(), false);
+				canvas.drawBitmap(scaledPartialBitmap, offsetX, offsetY, null);
+			}
 
 			return bitmapFullResolution;
 		}
@@ -1647,12 +1657,13 @@ public class OverlayPinchImageView extends PinchImageView {
 	}
 
 	/**
-	 * Remove cached full bitmap from memory.
+	 * Release the decoder of the image in full resolution.
 	 */
 	public final void cleanFullBitmap() {
-		mBitmapFull = null;
-		if (mRetainFragment != null) {
-			mRetainFragment.setBitmapFullResolution(null);
+		ImageTileDecoder tileDecoder = mTileDecoder;
+		mTileDecoder = null;
+		if (tileDecoder != null) {
+			tileDecoder.recycle();
 		}
 	}
 
@@ -1829,19 +1840,6 @@ public class OverlayPinchImageView extends PinchImageView {
 			this.mRetainbitmapSmall = bitmapSmall;
 		}
 
-		/**
-		 * The full resolution bitmap.
-		 */
-		private Bitmap mRetainBitmapFullResolution;
-
-		private Bitmap getBitmapFullResolution() {
-			return mRetainBitmapFullResolution;
-		}
-
-		private void setBitmapFullResolution(final Bitmap bitmapFullResolution) {
-			this.mRetainBitmapFullResolution = bitmapFullResolution;
-		}
-
 		/**
 		 * Get the retainFragment - search it by the index. If not found, create a new one.
 		 *
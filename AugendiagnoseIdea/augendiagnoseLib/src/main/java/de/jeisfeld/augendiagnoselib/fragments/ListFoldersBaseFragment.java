@@ -38,6 +38,8 @@ import de.jeisfeld.augendiagnoselib.util.PreferenceUtil;
 import de.jeisfeld.augendiagnoselib.util.SystemUtil;
 import de.jeisfeld.augendiagnoselib.util.imagefile.EyePhoto;
 import de.jeisfeld.augendiagnoselib.util.imagefile.FileUtil;
+import de.jeisfeld.augendiagnoselib.util.imagefile.FolderChangeObserver;
+import de.jeisfeld.augendiagnoselib.util.imagefile.FolderChangeObserver.FolderChangeListener;
 
 /**
  * Base listFoldersFragment to display the list of subfolders of a folder Abstract class - child classes determine the
@@ -75,6 +77,12 @@ public abstract class ListFoldersBaseFragment extends Fragment {
 	@Nullable
 	private ArrayAdapter<String> mDirectoryListAdapter = null;
 
+	/**
+	 * The observer refreshing the list on changes of the subfolders.
+	 */
+	@Nullable
+	private FolderChangeObserver mFolderChangeObserver = null;
+
 	/**
 	 * Initialize the listFoldersFragment with parentFolder.
 	 *
@@ -137,6 +145,31 @@ public abstract class ListFoldersBaseFragment extends Fragment {
 		setOnItemClickListener();
 	}
 
+	@Override
+	public final void onStart() {
+		super.onStart();
+		if (mParentFolder != null) {
+			mFolderChangeObserver = new FolderChangeObserver(mParentFolder.getAbsolutePath(), new FolderChangeListener() {
+				@Override
+				public void onFolderChanged() {
+					if (mListView != null && getActivity() != null) {
+						createList();
+					}
+				}
+			});
+			mFolderChangeObserver.startWatching();
+		}
+	}
+
+	@Override
+	public final void onStop() {
+		if (mFolderChangeObserver != null) {
+			mFolderChangeObserver.stopWatching();
+			mFolderChangeObserver = null;
+		}
+		super.onStop();
+	}
+
 	/**
 	 * Listener for a short click on a list item.
 	 */
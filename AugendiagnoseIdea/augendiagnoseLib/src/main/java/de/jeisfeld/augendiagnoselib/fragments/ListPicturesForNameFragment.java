@@ -17,6 +17,7 @@ import android.view.ViewGroup;
 import android.widget.Button;
 import android.widget.TextView;
 
+import java.io.File;
 import java.util.Calendar;
 import java.util.Date;
 import java.util.GregorianCalendar;
@@ -32,6 +33,8 @@ import de.jeisfeld.augendiagnoselib.util.DialogUtil;
 import de.jeisfeld.augendiagnoselib.util.DialogUtil.ConfirmDialogFragment.ConfirmDialogListener;
 import de.jeisfeld.augendiagnoselib.util.PreferenceUtil;
 import de.jeisfeld.augendiagnoselib.util.imagefile.EyePhotoPair;
+import de.jeisfeld.augendiagnoselib.util.imagefile.FolderChangeObserver;
+import de.jeisfeld.augendiagnoselib.util.imagefile.FolderChangeObserver.FolderChangeListener;
 
 /**
  * Fragment to display the pictures in an eye photo folder (in pairs) Either pictures from this folder can be displayed
@@ -57,6 +60,12 @@ public class ListPicturesForNameFragment extends ListPicturesForNameBaseFragment
 	 */
 	private ListPicturesForNameArrayAdapter mAdapter;
 
+	/**
+	 * The observer refreshing the list on changes of the photos.
+	 */
+	@Nullable
+	private FolderChangeObserver mFolderChangeObserver = null;
+
 	/**
 	 * The date of the pictures - used in case of date change.
 	 */
@@ -82,6 +91,29 @@ public class ListPicturesForNameFragment extends ListPicturesForNameBaseFragment
 		getListView().setAdapter(mAdapter);
 	}
 
+	@Override
+	public final void onStart() {
+		super.onStart();
+		mFolderChangeObserver = new FolderChangeObserver(new File(getParentFolder(), getName()).getAbsolutePath(), new FolderChangeListener() {
+			@Override
+			public void onFolderChanged() {
+				if (mAdapter != null && getActivity() != null) {
+					updateEyePhotoPairs();
+				}
+			}
+		});
+		mFolderChangeObserver.startWatching();
+	}
+
+	@Override
+	public final void onStop() {
+		if (mFolderChangeObserver != null) {
+			mFolderChangeObserver.stopWatching();
+			mFolderChangeObserver = null;
+		}
+		super.onStop();
+	}
+
 	/**
 	 * Update the list of eye photo pairs.
 	 */
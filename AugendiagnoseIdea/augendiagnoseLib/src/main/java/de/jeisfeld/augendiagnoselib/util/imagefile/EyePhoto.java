@@ -5,6 +5,7 @@ import android.graphics.Bitmap;
 import android.util.Log;
 
 import org.apache.commons.imaging.ImageReadException;
+import org.apache.commons.imaging.Imaging;
 
 import java.io.File;
 import java.io.IOException;
@@ -170,9 +171,12 @@ public class EyePhoto {
 
 		if (!mFormattedName) {
 			try {
-				JpegMetadata metadata = JpegMetadataUtil.getMetadata(getAbsolutePath());
-				setDate(metadata.getOrganizeDate());
-				setRightLeft(metadata.getRightLeft());
+				// Only two items are needed, so the XMP data is streamed instead of reading the full metadata.
+				XmpStreamReader parser = new XmpStreamReader(Imaging.getXmpXml(new File(getAbsolutePath())),
+						XmpHandler.ITEM_ORGANIZE_DATE, XmpHandler.ITEM_RIGHT_LEFT);
+				setDate(parser.getJeDate(XmpHandler.ITEM_ORGANIZE_DATE));
+				String rightLeft = parser.getJeItem(XmpHandler.ITEM_RIGHT_LEFT);
+				setRightLeft(rightLeft == null ? null : RightLeft.fromString(rightLeft));
 			}
 			catch (ImageReadException | IOException e) {
 				// ignore
@@ -332,7 +336,11 @@ public class EyePhoto {
 	 * @return true if the deletion was successful.
 	 */
 	public final boolean delete() {
-		return FileUtil.deleteFile(getFile());
+		boolean success = FileUtil.deleteFile(getFile());
+		if (success) {
+			ThumbnailCache.invalidate(getFile());
+		}
+		return success;
 	}
 
 	/**
@@ -347,7 +355,11 @@ public class EyePhoto {
 			return false;
 		}
 
-		return FileUtil.moveFile(getFile(), target.getFile());
+		boolean success = FileUtil.moveFile(getFile(), target.getFile());
+		if (success) {
+			ThumbnailCache.invalidate(getFile());
+		}
+		return success;
 	}
 
 	/**
@@ -369,7 +381,11 @@ public class EyePhoto {
 			return false;
 		}
 
-		return FileUtil.moveFile(getFile(), newPhoto.getNonExistingEyePhoto().getFile());
+		boolean success = FileUtil.moveFile(getFile(), newPhoto.getNonExistingEyePhoto().getFile());
+		if (success) {
+			ThumbnailCache.invalidate(getFile());
+		}
+		return success;
 	}
 
 	/**
@@ -0,0 +1,79 @@
+package de.jeisfeld.augendiagnoselib.util.imagefile;
+
+import android.os.FileObserver;
+import android.os.Handler;
+import android.os.Looper;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+/**
+ * Observer of a folder, notifying additions, deletions and renames of files or subfolders.
+ *
+ * <p>Events are collected until no further event arrives for some time, and then notified once in the main thread. In
+ * particular, many photos added at once (e.g. by Eye-Fi) result in one notification only.
+ */
+public final class FolderChangeObserver extends FileObserver {
+	/**
+	 * The time without further events after which the change is notified (in milliseconds).
+	 */
+	private static final long DEBOUNCE_TIME = 500;
+
+	/**
+	 * The observed events.
+	 */
+	private static final int EVENTS = CREATE | DELETE | MOVED_FROM | MOVED_TO | DELETE_SELF | MOVE_SELF;
+
+	/**
+	 * The handler used for notification in the main thread.
+	 */
+	@NonNull
+	private final Handler mHandler = new Handler(Looper.getMainLooper());
+
+	/**
+	 * The runnable notifying the listener.
+	 */
+	@NonNull
+	private final Runnable mNotification;
+
+	/**
+	 * Create an observer of a folder. Call startWatching() to start observation.
+	 *
+	 * @param folderPath The path of the folder.
+	 * @param listener   The listener to be notified about changes.
+	 */
+	public FolderChangeObserver(@NonNull final String folderPath, @NonNull final FolderChangeListener listener) {
+		super(folderPath, EVENTS);
+		mNotification = new Runnable() {
+			@Override
+			public void run() {
+				listener.onFolderChanged();
+			}
+		};
+	}
+
+	@Override
+	public void onEvent(final int event, @Nullable final String path) {
+		if ((event & EVENTS) == 0) {
+			return;
+		}
+		mHandler.removeCallbacks(mNotification);
+		mHandler.postDelayed(mNotification, DEBOUNCE_TIME);
+	}
+
+	@Override
+	public void stopWatching() {
+		super.stopWatching();
+		mHandler.removeCallbacks(mNotification);
+	}
+
+	/**
+	 * Listener for changes in the folder.
+	 */
+	public interface FolderChangeListener {
+		/**
+		 * Callback method for changes in the folder. Called in the main thread.
+		 */
+		void onFolderChanged();
+	}
+}
@@ -0,0 +1,245 @@
+package de.jeisfeld.augendiagnoselib.util.imagefile;
+
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.graphics.BitmapRegionDecoder;
+import android.graphics.Canvas;
+import android.graphics.Matrix;
+import android.graphics.Rect;
+import android.graphics.RectF;
+import android.util.Log;
+import android.util.LruCache;
+
+import java.io.File;
+import java.io.IOException;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import de.jeisfeld.augendiagnoselib.Application;
+
+/**
+ * Decoder of parts of an image in full resolution, based on BitmapRegionDecoder.
+ *
+ * <p>The image is decoded in square tiles of TILE_SIZE pixels in the orientation of the file, using a power of two
+ * sample size, so that only the visible part of the image is decoded, and not in higher resolution than displayed.
+ * The EXIF orientation is applied only when drawing the tiles. Decoded tiles are kept in an LRU cache bounded by a
+ * memory budget, which is shared by all decoders, so that small moves of the view only decode the newly visible tiles.
+ */
+public final class ImageTileDecoder {
+	/**
+	 * The width and height of a tile.
+	 */
+	private static final int TILE_SIZE = 512;
+
+	/**
+	 * The maximum total size of the cached tiles (in bytes).
+	 */
+	private static final int MAX_TILE_CACHE_SIZE = (int) Math.min(Runtime.getRuntime().maxMemory() / 8, 64 * 1024 * 1024); // MAGIC_NUMBER
+
+	/**
+	 * The cached tiles.
+	 */
+	private static final LruCache<String, Bitmap> TILE_CACHE = new LruCache<String, Bitmap>(MAX_TILE_CACHE_SIZE) {
+		@Override
+		protected int sizeOf(final String key, @NonNull final Bitmap tile) {
+			return tile.getByteCount();
+		}
+	};
+
+	/**
+	 * The file path of the image.
+	 */
+	@NonNull
+	private final String mPath;
+
+	/**
+	 * The modification time of the image file when the decoder was created.
+	 */
+	private final long mLastModified;
+
+	/**
+	 * The region decoder.
+	 */
+	@NonNull
+	private final BitmapRegionDecoder mDecoder;
+
+	/**
+	 * The rotation (in degrees) to be applied to the image as stored in the file.
+	 */
+	private final int mRotation;
+
+	/**
+	 * Create a decoder for an image file.
+	 *
+	 * @param path         The file path of the image.
+	 * @param lastModified The modification time of the image file.
+	 * @param decoder      The region decoder.
+	 * @param rotation     The rotation to be applied.
+	 */
+	private ImageTileDecoder(@NonNull final String path, final long lastModified, @NonNull final BitmapRegionDecoder decoder,
+							 final int rotation) {
+		mPath = path;
+		mLastModified = lastModified;
+		mDecoder = decoder;
+		mRotation = rotation;
+	}
+
+	/**
+	 * Create a decoder for an image file.
+	 *
+	 * @param path            The file path of the image.
+	 * @param exifOrientation The EXIF orientation of the image. If null, the orientation is read from the file.
+	 * @return The decoder, or null if the image cannot be decoded in parts.
+	 */
+	@Nullable
+	public static ImageTileDecoder create(@NonNull final String path, @Nullable final Short exifOrientation) {
+		long lastModified = new File(path).lastModified();
+		try {
+			BitmapRegionDecoder decoder = BitmapRegionDecoder.newInstance(path, false);
+			if (decoder == null) {
+				return null;
+			}
+			int rotation = ImageUtil.convertExifOrientationToRotation(
+					exifOrientation == null ? ImageUtil.getExifOrientation(path) : exifOrientation);
+			return new ImageTileDecoder(path, lastModified, decoder, rotation);
+		}
+		catch (IOException e) {
+			Log.w(Application.TAG, "Cannot decode parts of " + path + ": " + e.getMessage());
+			return null;
+		}
+	}
+
+	/**
+	 * Check if this decoder decodes the current version of an image file in the given orientation.
+	 *
+	 * @param path            The file path of the image.
+	 * @param exifOrientation The EXIF orientation of the image. If null, the orientation is not checked.
+	 * @return true if this decoder can be used for the file.
+	 */
+	public boolean isFor(@NonNull final String path, @Nullable final Short exifOrientation) {
+		return mPath.equals(path) && mLastModified == new File(path).lastModified() && !mDecoder.isRecycled()
+				&& (exifOrientation == null || mRotation == ImageUtil.convertExifOrientationToRotation(exifOrientation));
+	}
+
+	/**
+	 * Release the decoder. It must not be used afterwards.
+	 */
+	public void recycle() {
+		mDecoder.recycle();
+	}
+
+	/**
+	 * Draw a part of the image in full resolution into a canvas.
+	 *
+	 * @param canvas The canvas.
+	 * @param minX   The minimum X position of the part, relative to the image width (in displayed orientation).
+	 * @param maxX   The maximum X position of the part.
+	 * @param minY   The minimum Y position of the part, relative to the image height.
+	 * @param maxY   The maximum Y position of the part.
+	 * @param target The rectangle of the canvas into which the part is drawn.
+	 * @return true if successful, false if the part could not be decoded or the thread was interrupted.
+	 */
+	public boolean drawRegion(@NonNull final Canvas canvas, final float minX, final float maxX, final float minY, final float maxY,
+							  @NonNull final Rect target) {
+		int sourceWidth = mDecoder.getWidth();
+		int sourceHeight = mDecoder.getHeight();
+		boolean isSwapped = mRotation == 90 || mRotation == 270; // MAGIC_NUMBER
+		int width = isSwapped ? sourceHeight : sourceWidth;
+		int sampleSize = ImageUtil.getBitmapFactor(Math.round((maxX - minX) * width), target.width());
+
+		// Map pixels of the file to pixels of the canvas: normalize, rotate, and move the part into the target.
+		Matrix matrix = new Matrix();
+		matrix.setScale(1f / sourceWidth, 1f / sourceHeight);
+		matrix.postRotate(mRotation);
+		switch (mRotation) {
+		case 90: // MAGIC_NUMBER
+			matrix.postTranslate(1, 0);
+			break;
+		case 180: // MAGIC_NUMBER
+			matrix.postTranslate(1, 1);
+			break;
+		case 270: // MAGIC_NUMBER
+			matrix.postTranslate(0, 1);
+			break;
+		default:
+			break;
+		}
+		matrix.postTranslate(-minX, -minY);
+		matrix.postScale(target.width() / (maxX - minX), target.height() / (maxY - minY));
+		matrix.postTranslate(target.left, target.top);
+
+		// The part of the file to be drawn.
+		Matrix inverse = new Matrix();
+		if (!matrix.invert(inverse)) {
+			return false;
+		}
+		RectF sourceRect = new RectF(target);
+		inverse.mapRect(sourceRect);
+
+		int tileSourceSize = TILE_SIZE * sampleSize;
+		int firstColumn = Math.max(0, (int) (sourceRect.left / tileSourceSize));
+		int lastColumn = Math.min((sourceWidth - 1) / tileSourceSize, (int) (sourceRect.right / tileSourceSize));
+		int firstRow = Math.max(0, (int) (sourceRect.top / tileSourceSize));
+		int lastRow = Math.min((sourceHeight - 1) / tileSourceSize, (int) (sourceRect.bottom / tileSourceSize));
+
+		canvas.save();
+		canvas.clipRect(target);
+		try {
+			for (int row = firstRow; row <= lastRow; row++) {
+				for (int column = firstColumn; column <= lastColumn; column++) {
+					if (Thread.currentThread().isInterrupted()) {
+						return false;
+					}
+					Rect tileRect = new Rect(column * tileSourceSize, row * tileSourceSize,
+							Math.min(sourceWidth, (column + 1) * tileSourceSize), Math.min(sourceHeight, (row + 1) * tileSourceSize));
+					Bitmap tile = getTile(tileRect, sampleSize);
+					if (tile == null) {
+						return false;
+					}
+
+					Matrix tileMatrix = new Matrix(matrix);
+					tileMatrix.preTranslate(tileRect.left, tileRect.top);
+					tileMatrix.preScale((float) tileRect.width() / tile.getWidth(), (float) tileRect.height() / tile.getHeight());
+					canvas.drawBitmap(tile, tileMatrix, null);
+				}
+			}
+		}
+		finally {
+			canvas.restore();
+		}
+		return true;
+	}
+
+	/**
+	 * Get a tile, either from the cache or from the file.
+	 *
+	 * @param tileRect   The rectangle of the tile in the file.
+	 * @param sampleSize The sample size.
+	 * @return The tile, or null if it cannot be decoded.
+	 */
+	@Nullable
+	private Bitmap getTile(@NonNull final Rect tileRect, final int sampleSize) {
+		String key = mPath + "|" + mLastModified + "|" + sampleSize + "|" + tileRect.left + "|" + tileRect.top;
+		Bitmap tile = TILE_CACHE.get(key);
+		if (tile != null) {
+			return tile;
+		}
+
+		BitmapFactory.Options options = new BitmapFactory.Options();
+		options.inSampleSize = sampleSize;
+		try {
+			tile = mDecoder.decodeRegion(tileRect, options);
+		}
+		catch (IllegalArgumentException | IllegalStateException e) {
+			// Decoder recycled in the meantime.
+			Log.w(Application.TAG, "Failed to decode tile of " + mPath + ": " + e.getMessage());
+			return null;
+		}
+		if (tile == null || tile.getWidth() == 0 || tile.getHeight() == 0) {
+			Log.w(Application.TAG, "Failed to decode tile of " + mPath);
+			return null;
+		}
+		TILE_CACHE.put(key, tile);
+		return tile;
+	}
+}
@@ -48,14 +48,14 @@ public final class ImageUtil {
 	// JAVADOC:ON
 
 	/**
-	 * The size of the mesh used to deform the overlays.
+	 * Number of milliseconds for retry of getting bitmap.
 	 */
-	private static final int OVERLAY_MESH_SIZE = 128;
+	private static final long BITMAP_RETRY = 50;
 
 	/**
-	 * Number of milliseconds for retry of getting bitmap.
+	 * The maximum difference of the aspect ratios of EXIF thumbnail and image for using the thumbnail.
 	 */
-	private static final long BITMAP_RETRY = 50;
+	private static final float THUMBNAIL_ASPECT_RATIO_TOLERANCE = 0.02f;
 
 	/**
 	 * The file endings considered as image files.
@@ -113,9 +113,25 @@ public final class ImageUtil {
 	 * @param path The file path of the image
 	 * @return the orientation stored in the exif data.
 	 */
-	private static int getExifOrientation(@NonNull final String path) {
+	protected static int getExifOrientation(@NonNull final String path) {
+		try {
+			return getExifOrientation(new ExifInterface(path), path);
+		}
+		catch (Exception e) {
+			Log.w(Application.TAG, "Exception when getting EXIF rotation");
+			return ExifInterface.ORIENTATION_NORMAL;
+		}
+	}
+
+	/**
+	 * Retrieve the image orientation from the Exif data of an image.
+	 *
+	 * @param exif The Exif data of the image.
+	 * @param path The file path of the image
+	 * @return the orientation stored in the exif data.
+	 */
+	private static int getExifOrientation(@NonNull final ExifInterface exif, @NonNull final String path) {
 		try {
-			ExifInterface exif = new ExifInterface(path);
 			int orientation = exif.getAttributeInt(ExifInterface.TAG_ORIENTATION, ExifInterface.ORIENTATION_UNDEFINED);
 
 			if (orientation == ExifInterface.ORIENTATION_UNDEFINED) {
@@ -137,7 +153,7 @@ public final class ImageUtil {
 	 * @param exifOrientation The orientation as stored in the exif data.
 	 * @return the rotation in degrees.
 	 */
-	private static int convertExifOrientationToRotation(final int exifOrientation) {
+	protected static int convertExifOrientationToRotation(final int exifOrientation) {
 		switch (exifOrientation) {
 		case ExifInterface.ORIENTATION_ROTATE_270:
 			return ROTATION_270;
@@ -206,21 +222,77 @@ public final class ImageUtil {
 	/**
 	 * Return a bitmap of this photo.
 	 *
+	 * <p>Small bitmaps are taken from the thumbnail cache, from the media store or from the EXIF thumbnail if possible.
+	 * Otherwise, the JPEG is decoded with a power of two sample size, so that the decoder skips the unneeded
+	 * resolution. Final scaling and EXIF rotation are then applied in a single step.
+	 *
 	 * @param path        The file path of the image.
 	 * @param maxSize     The maximum size of this bitmap. If bigger, it will be resized.
 	 * @return the bitmap.
 	 */
 	@Nullable
 	public static Bitmap getImageBitmap(@NonNull final String path, final int maxSize) {
+		Bitmap bitmap;
+		if (maxSize > 0 && maxSize <= MediaStoreUtil.MINI_THUMB_SIZE) {
+			File file = new File(path);
+			long lastModified = file.lastModified();
+			long length = file.length();
+			bitmap = ThumbnailCache.get(file, lastModified, length, maxSize);
+			if (bitmap == null) {
+				bitmap = decodeImageBitmap(path, maxSize);
+				if (bitmap != null) {
+					ThumbnailCache.put(file, lastModified, length, maxSize, bitmap);
+				}
+			}
+		}
+		else {
+			bitmap = decodeImageBitmap(path, maxSize);
+		}
+
+		if (bitmap == null) {
+			// cannot create bitmap - return dummy
+			Log.w(Application.TAG, "Cannot create bitmap from path " + path + " - return dummy bitmap");
+			return getDummyBitmap();
+		}
+		return bitmap;
+	}
+
+	/**
+	 * Decode a bitmap of this photo from the file.
+	 *
+	 * @param path    The file path of the image.
+	 * @param maxSize The maximum size of this bitmap. If bigger, it will be resized.
+	 * @return the bitmap, or null if it cannot be created.
+	 */
+	@Nullable
+	private static Bitmap decodeImageBitmap(@NonNull final String path, final int maxSize) {
 		Bitmap bitmap = null;
+		ExifInterface exif = null;
+		try {
+			exif = new ExifInterface(path);
+		}
+		catch (IOException e) {
+			Log.w(Application.TAG, "Cannot read EXIF data of " + path);
+		}
+		int orientation = exif == null ? ExifInterface.ORIENTATION_NORMAL : getExifOrientation(exif, path);
 
 		if (maxSize <= 0) {
 			bitmap = BitmapFactory.decodeFile(path);
+			if (bitmap == null) {
+				return null;
+			}
 		}
 		else {
+			boolean isTrustedSize = true;
 
 			if (maxSize <= MediaStoreUtil.MINI_THUMB_SIZE) {
 				bitmap = MediaStoreUtil.getThumbnailFromPath(path, maxSize);
+				// don't trust the size of thumbs from media store.
+				isTrustedSize = bitmap == null;
+			}
+
+			if (bitmap == null && exif != null) {
+				bitmap = getExifThumbnail(exif, path, maxSize);
 			}
 
 			if (bitmap == null) {
@@ -240,9 +312,7 @@ public final class ImageUtil {
 					bitmap = BitmapFactory.decodeFile(path, options);
 
 					if (bitmap == null) {
-						// cannot create bitmap - return dummy
-						Log.w(Application.TAG, "Cannot create bitmap from path " + path + " - return dummy bitmap");
-						return getDummyBitmap();
+						return null;
 					}
 				}
 			}
@@ -250,26 +320,56 @@ public final class ImageUtil {
 				return bitmap;
 			}
 
-			if (bitmap.getWidth() > maxSize || bitmap.getHeight() > maxSize
-					|| maxSize <= MediaStoreUtil.MINI_THUMB_SIZE) {
-				// Only if bitmap is bigger than maxSize, then resize it - but don't trust the thumbs from media store.
-				if (bitmap.getWidth() > bitmap.getHeight()) {
-					int targetWidth = maxSize;
-					int targetHeight = bitmap.getHeight() * maxSize / bitmap.getWidth();
-					bitmap = Bitmap.createScaledBitmap(bitmap, targetWidth, targetHeight, false);
-				}
-				else {
-					int targetWidth = bitmap.getWidth() * maxSize / bitmap.getHeight();
-					int targetHeight = maxSize;
-					bitmap = Bitmap.createScaledBitmap(bitmap, targetWidth, targetHeight, false);
-				}
+			if (bitmap.getWidth() > maxSize || bitmap.getHeight() > maxSize || !isTrustedSize) {
+				// Only if bitmap is bigger than maxSize, then resize it, together with the rotation.
+				float scale = (float) maxSize / Math.max(bitmap.getWidth(), bitmap.getHeight());
+				return scaleAndRotateBitmap(bitmap, scale, orientation);
 			}
+		}
 
+		return rotateBitmap(bitmap, orientation);
+	}
+
+	/**
+	 * Get a bitmap from the EXIF thumbnail of a JPEG file.
+	 *
+	 * @param exif    The EXIF data of the file.
+	 * @param path    The file path of the image.
+	 * @param maxSize The maximum size of the bitmap.
+	 * @return the bitmap, or null if there is no thumbnail of at least this size and of the same aspect ratio as the
+	 * image.
+	 */
+	@Nullable
+	private static Bitmap getExifThumbnail(@NonNull final ExifInterface exif, @NonNull final String path, final int maxSize) {
+		if (!exif.hasThumbnail()) {
+			return null;
+		}
+		byte[] thumbnail = exif.getThumbnail();
+		if (thumbnail == null) {
+			return null;
 		}
 
-		bitmap = rotateBitmap(bitmap, (short) getExifOrientation(path));
+		BitmapFactory.Options thumbnailBounds = new BitmapFactory.Options();
+		thumbnailBounds.inJustDecodeBounds = true;
+		BitmapFactory.decodeByteArray(thumbnail, 0, thumbnail.length, thumbnailBounds);
+		if (thumbnailBounds.outWidth <= 0 || thumbnailBounds.outHeight <= 0
+				|| Math.max(thumbnailBounds.outWidth, thumbnailBounds.outHeight) < maxSize) {
+			return null;
+		}
 
-		return bitmap;
+		// Thumbnails of a different aspect ratio contain black bars.
+		BitmapFactory.Options imageBounds = new BitmapFactory.Options();
+		imageBounds.inJustDecodeBounds = true;
+		BitmapFactory.decodeFile(path, imageBounds);
+		if (imageBounds.outWidth <= 0 || imageBounds.outHeight <= 0
+				|| Math.abs((float) thumbnailBounds.outWidth / thumbnailBounds.outHeight
+						- (float) imageBounds.outWidth / imageBounds.outHeight) > THUMBNAIL_ASPECT_RATIO_TOLERANCE) {
+			return null;
+		}
+
+		BitmapFactory.Options options = new BitmapFactory.Options();
+		options.inSampleSize = getBitmapFactor(Math.max(thumbnailBounds.outWidth, thumbnailBounds.outHeight), maxSize);
+		return BitmapFactory.decodeByteArray(thumbnail, 0, thumbnail.length, options);
 	}
 
 	/**
@@ -355,8 +455,7 @@ public final class ImageUtil {
 		BitmapFactory.Options options = new BitmapFactory.Options();
 		options.inJustDecodeBounds = true;
 		BitmapFactory.decodeFile(filepath, options);
-		int size = Math.max(options.outWidth, options.outHeight);
-		return size / targetSize;
+		return getBitmapFactor(Math.max(options.outWidth, options.outHeight), targetSize);
 	}
 
 	/**
@@ -370,8 +469,24 @@ public final class ImageUtil {
 		BitmapFactory.Options options = new BitmapFactory.Options();
 		options.inJustDecodeBounds = true;
 		BitmapFactory.decodeByteArray(data, 0, data.length, options);
-		int size = Math.max(options.outWidth, options.outHeight);
-		return size / targetSize;
+		return getBitmapFactor(Math.max(options.outWidth, options.outHeight), targetSize);
+	}
+
+	/**
+	 * Utility to retrieve the sample size for BitmapFactory, given the size of the bitmap. This is the biggest power of
+	 * two which does not make the bitmap smaller than the target size. For JPEG, such sample sizes are applied while
+	 * decoding, so that the full resolution image is never created.
+	 *
+	 * @param size       the size (maximum of width and height) of the bitmap.
+	 * @param targetSize the target size of the bitmap
+	 * @return the sample size to be used.
+	 */
+	protected static int getBitmapFactor(final int size, final int targetSize) {
+		int sampleSize = 1;
+		while (size / (sampleSize * 2) >= targetSize) {
+			sampleSize *= 2;
+		}
+		return sampleSize;
 	}
 
 	/**
@@ -392,6 +507,21 @@ public final class ImageUtil {
 		return Bitmap.createBitmap(source, 0, 0, source.getWidth(), source.getHeight(), matrix, true);
 	}
 
+	/**
+	 * Scale and rotate a bitmap in a single step.
+	 *
+	 * @param source      The original bitmap
+	 * @param scale       The scale factor
+	 * @param orientation The EXIF orientation
+	 * @return the scaled and rotated bitmap.
+	 */
+	private static Bitmap scaleAndRotateBitmap(@NonNull final Bitmap source, final float scale, final int orientation) {
+		Matrix matrix = new Matrix();
+		matrix.postScale(scale, scale);
+		matrix.postRotate(convertExifOrientationToRotation(orientation));
+		return Bitmap.createBitmap(source, 0, 0, source.getWidth(), source.getHeight(), matrix, true);
+	}
+
 	/**
 	 * Update contrast and brightness of a bitmap.
 	 *
@@ -570,68 +700,16 @@ public final class ImageUtil {
 		}
 
 		int overlaySize = sourceBitmap.getWidth();
-		int overlayHalfSize = overlaySize / 2;
-		float irisRadius = overlayHalfSize * OverlayPinchImageView.OVERLAY_CIRCLE_RATIO;
-
-		// the center of enlargement
-		float targetCenterX = overlayHalfSize;
-		float targetCenterY = overlayHalfSize;
-		if (pupilOffsetX != null) {
-			targetCenterX += 2 * irisRadius * pupilOffsetX / (1 - destPupilSize);
-		}
-		if (pupilOffsetY != null) {
-			targetCenterY += 2 * irisRadius * pupilOffsetY / (1 - destPupilSize);
-		}
-
-		// Constants used for linear transformation of the iris part of the overlay.
-		float linTransB = (destPupilSize - origPupilSize) / (1 - origPupilSize);
-		float linTransM = (1 - destPupilSize) / (irisRadius * (1 - origPupilSize));
-		float absOrigPupilSize = origPupilSize * irisRadius;
+		OverlayDisplacement displacement = new OverlayDisplacement(overlaySize, OverlayPinchImageView.OVERLAY_CIRCLE_RATIO,
+				origPupilSize, destPupilSize, pupilOffsetX, pupilOffsetY);
 
 		Bitmap ret = Bitmap.createBitmap(overlaySize, overlaySize, sourceBitmap.getConfig());
 		Canvas canvas = new Canvas(ret);
 
-		float[] verts = new float[2 * (OVERLAY_MESH_SIZE + 1) * (OVERLAY_MESH_SIZE + 1)];
-		int vertsIndex = 0;
-		for (int y = 0; y <= OVERLAY_MESH_SIZE; y++) {
-			for (int x = 0; x <= OVERLAY_MESH_SIZE; x++) {
-				// The positions of the original mesh vertices in pixels relative to the center
-				float xPos = (float) x * overlaySize / OVERLAY_MESH_SIZE - overlayHalfSize;
-				float yPos = (float) y * overlaySize / OVERLAY_MESH_SIZE - overlayHalfSize;
-				float centerDist = (float) Math.sqrt(xPos * xPos + yPos * yPos);
-
-				if (centerDist >= irisRadius) {
-					// outside the iris, take original position
-					verts[vertsIndex++] = overlayHalfSize + xPos;
-					verts[vertsIndex++] = overlayHalfSize + yPos;
-				}
-				else if (centerDist == 0) {
-					verts[vertsIndex++] = targetCenterX;
-					verts[vertsIndex++] = targetCenterY;
-				}
-				else {
-					// original direction
-					float xDirection = xPos / centerDist;
-					float yDirection = yPos / centerDist;
-
-					// corresponding iris boundary point
-					float xBound = overlayHalfSize + xDirection * irisRadius;
-					float yBound = overlayHalfSize + yDirection * irisRadius;
-
-					float radialPosition = linTransM * centerDist + linTransB;
-					if (centerDist < absOrigPupilSize) {
-						radialPosition -= linTransB * Math.pow(1 - centerDist / absOrigPupilSize, 1.5f); // MAGIC_NUMBER
-					}
-
-					verts[vertsIndex++] = targetCenterX + (xBound - targetCenterX) * radialPosition;
-					verts[vertsIndex++] = targetCenterY + (yBound - targetCenterY) * radialPosition;
-				}
-			}
-		}
-
 		Paint paint = new Paint();
 		paint.setFilterBitmap(true);
-		canvas.drawBitmapMesh(sourceBitmap, OVERLAY_MESH_SIZE, OVERLAY_MESH_SIZE, verts, 0, null, 0, paint);
+		canvas.drawBitmapMesh(sourceBitmap, OverlayDisplacement.MESH_SIZE, OverlayDisplacement.MESH_SIZE, displacement.getMeshVertices(), 0,
+				null, 0, paint);
 
 		return ret;
 	}
@@ -0,0 +1,185 @@
+package de.jeisfeld.augendiagnoselib.util.imagefile;
+
+import java.io.File;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+/**
+ * A cache of the metadata of JPEG files, by absolute path.
+ *
+ * <p>For each file, the cache stores modification time and size of the file together with an immutable snapshot of the
+ * parsed metadata. A cached snapshot is used as long as modification time and size of the file are unchanged, so that
+ * lookups need only the file attributes instead of parsing the JPEG. Callers get copies of the snapshots, so that
+ * modifications by the caller never affect the cache.
+ */
+public final class JpegMetadataCache {
+	/**
+	 * The maximum number of cached files. If exceeded, the least recently used files are removed.
+	 */
+	private static final int MAX_ENTRIES = 500;
+
+	/**
+	 * The resolution of file modification times (in milliseconds). Entries are trusted only if the file was read at least
+	 * this time after its last modification, so that changes within the same time unit are not missed.
+	 */
+	private static final long MODIFICATION_TIME_RESOLUTION = 2000;
+
+	/**
+	 * The cached entries, by absolute path, in order of access.
+	 */
+	private static final Map<String, Entry> ENTRIES = new LinkedHashMap<String, Entry>(16, 0.75f, true) { // MAGIC_NUMBER
+		/**
+		 * The default serial version id.
+		 */
+		private static final long serialVersionUID = 1L;
+
+		@Override
+		protected boolean removeEldestEntry(final Map.Entry<String, Entry> eldest) {
+			return size() > MAX_ENTRIES;
+		}
+	};
+
+	/**
+	 * The number of lookups answered from the cache.
+	 */
+	private static long mHitCount = 0;
+
+	/**
+	 * The number of lookups which required reading the file.
+	 */
+	private static long mMissCount = 0;
+
+	/**
+	 * Hide default constructor.
+	 */
+	private JpegMetadataCache() {
+		throw new UnsupportedOperationException();
+	}
+
+	/**
+	 * Get the cached metadata of a file, if it is up to date.
+	 *
+	 * @param file The JPEG file.
+	 * @return A copy of the cached metadata, or null if there is no up to date cache entry.
+	 */
+	@Nullable
+	protected static JpegMetadata get(@NonNull final File file) {
+		long lastModified = file.lastModified();
+		long length = file.length();
+
+		synchronized (JpegMetadataCache.class) {
+			Entry entry = ENTRIES.get(file.getAbsolutePath());
+			if (entry != null && entry.isUpToDate(lastModified, length)) {
+				mHitCount++;
+				return entry.mMetadata.copy();
+			}
+			mMissCount++;
+			return null;
+		}
+	}
+
+	/**
+	 * Store the metadata of a file in the cache.
+	 *
+	 * @param file         The JPEG file.
+	 * @param lastModified The modification time of the file before it was read.
+	 * @param length       The size of the file before it was read.
+	 * @param readTime     The time when the file was read.
+	 * @param metadata     The metadata read from the file. A snapshot is stored, so the passed metadata may be modified
+	 *                     afterwards.
+	 */
+	protected static void put(@NonNull final File file, final long lastModified, final long length, final long readTime,
+							  @NonNull final JpegMetadata metadata) {
+		Entry entry = new Entry(lastModified, length, readTime, metadata.copy());
+		synchronized (JpegMetadataCache.class) {
+			ENTRIES.put(file.getAbsolutePath(), entry);
+		}
+	}
+
+	/**
+	 * Remove the cached metadata of a file, so that the file is read again on next access.
+	 *
+	 * @param file The file.
+	 */
+	protected static synchronized void invalidate(@NonNull final File file) {
+		ENTRIES.remove(file.getAbsolutePath());
+	}
+
+	/**
+	 * Remove all cached metadata.
+	 */
+	public static synchronized void clear() {
+		ENTRIES.clear();
+	}
+
+	public static synchronized long getHitCount() {
+		return mHitCount;
+	}
+
+	public static synchronized long getMissCount() {
+		return mMissCount;
+	}
+
+	/**
+	 * Get the ratio of lookups which were answered from the cache without reading the file.
+	 *
+	 * @return The hit rate (between 0 and 1).
+	 */
+	public static synchronized double getHitRate() {
+		long lookupCount = mHitCount + mMissCount;
+		return lookupCount == 0 ? 0 : (double) mHitCount / lookupCount;
+	}
+
+	/**
+	 * A cache entry of a JPEG file.
+	 */
+	private static final class Entry {
+		/**
+		 * The modification time of the file.
+		 */
+		private final long mLastModified;
+		/**
+		 * The size of the file.
+		 */
+		private final long mLength;
+		/**
+		 * The time when the file was read.
+		 */
+		private final long mReadTime;
+		/**
+		 * The metadata of the file. Must not be modified.
+		 */
+		@NonNull
+		private final JpegMetadata mMetadata;
+
+		/**
+		 * Create a cache entry.
+		 *
+		 * @param lastModified The modification time of the file.
+		 * @param length       The size of the file.
+		 * @param readTime     The time when the file was read.
+		 * @param metadata     The metadata of the file.
+		 */
+		private Entry(final long lastModified, final long length, final long readTime, @NonNull final JpegMetadata metadata) {
+			mLastModified = lastModified;
+			mLength = length;
+			mReadTime = readTime;
+			mMetadata = metadata;
+		}
+
+		/**
+		 * Check if the entry is up to date.
+		 *
+		 * @param lastModified The current modification time of the file.
+		 * @param length       The current size of the file.
+		 * @return true if the entry is up to date.
+		 */
+		private boolean isUpToDate(final long lastModified, final long length) {
+			return lastModified != 0 && lastModified == mLastModified && length == mLength
+					&& mReadTime - mLastModified > MODIFICATION_TIME_RESOLUTION;
+		}
+	}
+}
@@ -10,8 +10,6 @@ import org.apache.commons.imaging.ImageWriteException;
 import org.apache.commons.imaging.Imaging;
 import org.apache.commons.imaging.common.IImageMetadata;
 import org.apache.commons.imaging.formats.jpeg.JpegImageMetadata;
-import org.apache.commons.imaging.formats.jpeg.exif.ExifRewriter;
-import org.apache.commons.imaging.formats.jpeg.xmp.JpegXmpRewriter;
 import org.apache.commons.imaging.formats.tiff.TiffField;
 import org.apache.commons.imaging.formats.tiff.TiffImageMetadata;
 import org.apache.commons.imaging.formats.tiff.constants.ExifTagConstants;
@@ -20,15 +18,14 @@ import org.apache.commons.imaging.formats.tiff.constants.TiffDirectoryType;
 import org.apache.commons.imaging.formats.tiff.constants.TiffTagConstants;
 import org.apache.commons.imaging.formats.tiff.taginfos.TagInfo;
 import org.apache.commons.imaging.formats.tiff.taginfos.TagInfoShort;
+import org.apache.commons.imaging.formats.tiff.write.TiffImageWriterLossless;
+import org.apache.commons.imaging.formats.tiff.write.TiffImageWriterLossy;
 import org.apache.commons.imaging.formats.tiff.write.TiffOutputDirectory;
 import org.apache.commons.imaging.formats.tiff.write.TiffOutputSet;
-import org.apache.commons.imaging.util.IoUtils;
 
-import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
-import java.io.FileOutputStream;
 import java.io.IOException;
-import java.io.OutputStream;
 import java.util.List;
 
 import androidx.annotation.NonNull;
@@ -187,7 +184,7 @@ public final class JpegMetadataUtil {
 	}
 
 	/**
-	 * Retrieve the relevant metadata of an image file.
+	 * Retrieve the relevant metadata of an image file, parsing the XMP data into the full XMP object model.
 	 *
 	 * @param jpegImageFileName the file for which metadata should be retrieved.
 	 * @return the metadata of the file.
@@ -196,13 +193,29 @@ public final class JpegMetadataUtil {
 	 */
 	@NonNull
 	public static JpegMetadata getMetadata(@NonNull final String jpegImageFileName) throws ImageReadException, IOException {
+		return getMetadata(jpegImageFileName, false);
+	}
+
+	/**
+	 * Retrieve the relevant metadata of an image file.
+	 *
+	 * @param jpegImageFileName the file for which metadata should be retrieved.
+	 * @param streamXmp         if true, the XMP data is read by streaming over the XML, which is faster than building the
+	 *                          full XMP object model.
+	 * @return the metadata of the file.
+	 * @throws ImageReadException thrown if the metadata cannot be read.
+	 * @throws IOException        thrown in case of other errors while reading metadata.
+	 */
+	@NonNull
+	public static JpegMetadata getMetadata(@NonNull final String jpegImageFileName, final boolean streamXmp)
+			throws ImageReadException, IOException {
 		checkJpeg(jpegImageFileName);
 		JpegMetadata result = new JpegMetadata();
 		final File imageFile = new File(jpegImageFileName);
 
 		// Retrieve XMP data
 		String xmpString = Imaging.getXmpXml(imageFile);
-		XmpHandler parser = new XmpHandler(xmpString);
+		XmpReader parser = streamXmp ? new XmpStreamReader(xmpString) : new XmpHandler(xmpString);
 
 		// Standard fields are pre-filled with custom data
 		result.setTitle(parser.getJeItem(XmpHandler.ITEM_TITLE));
@@ -312,6 +325,11 @@ public final class JpegMetadataUtil {
 	/**
 	 * Change metadata of the image (EXIF and XMP as far as applicable).
 	 *
+	 * <p>If none of the EXIF fields changes, the new XMP packet fits into the padding of the existing one, and the file is directly
+	 * writable, then the packet is overwritten in place. Otherwise, the EXIF and XMP segments are replaced in a single pass
+	 * over the file, so that only one temporary copy of the image is written. If the EXIF data cannot be created, then the
+	 * XMP data is stored nevertheless.
+	 *
 	 * @param jpegImageFileName the file for which metadata should be changed.
 	 * @param metadata          the new metadata.
 	 * @throws ImageReadException  thrown if the metadata cannot be read.
@@ -323,191 +341,237 @@ public final class JpegMetadataUtil {
 			ImageReadException, ImageWriteException, XMPException {
 		if (changeJpegAllowed()) {
 			checkJpeg(jpegImageFileName);
-			changeXmpMetadata(jpegImageFileName, metadata);
 
-			if (changeExifAllowed()) {
-				try {
-					changeExifMetadata(jpegImageFileName, metadata);
+			File jpegImageFile = new File(jpegImageFileName);
+			File tempFile = FileUtil.getTempFile(jpegImageFile);
+
+			verifyTempFile(tempFile);
+
+			Exception exifException = null;
+			boolean isWrittenInPlace = false;
+			JpegSegmentRewriter rewriter = new JpegSegmentRewriter(jpegImageFile);
+			try {
+				XmpHandler parser = createXmpHandler(rewriter.getXmpString(), metadata);
+
+				byte[] exifTiff = null;
+				if (changeExifAllowed() && isExifChanged(rewriter.getExifTiff(), metadata)) {
+					try {
+						exifTiff = createExifTiff(rewriter.getExifTiff(), metadata);
+					}
+					catch (Exception e) {
+						exifException = e;
+					}
 				}
-				catch (Exception e) {
-					throw new ExifStorageException(e);
-				}
-			}
-		}
-	}
-
-	/**
-	 * Change the EXIF metadata.
-	 *
-	 * @param jpegImageFileName the file for which metadata should be changed.
-	 * @param metadata          the new metadata
-	 * @throws ImageReadException  thrown if the metadata cannot be read.
-	 * @throws ImageWriteException thrown if the metadata cannot be written.
-	 * @throws IOException         thrown in case of other errors while reading metadata.
-	 */
-	@SuppressWarnings("resource")
-	private static void changeExifMetadata(@NonNull final String jpegImageFileName, @NonNull final JpegMetadata metadata)
-			throws IOException, ImageReadException, ImageWriteException {
-		File jpegImageFile = new File(jpegImageFileName);
-		File tempFile = FileUtil.getTempFile(jpegImageFile);
-
-		verifyTempFile(tempFile);
 
-		OutputStream os = null;
-		try {
-			TiffOutputSet outputSet = null;
-
-			// note that metadata might be null if no metadata is found.
-			final IImageMetadata imageMetadata = Imaging.getMetadata(jpegImageFile);
-			final JpegImageMetadata jpegMetadata = (JpegImageMetadata) imageMetadata;
-			if (jpegMetadata != null) {
-				// note that exif might be null if no Exif metadata is found.
-				final TiffImageMetadata exif = jpegMetadata.getExif();
+				// Files on external SD card may not be directly writable - then they have to be replaced via SAF.
+				if (exifTiff == null && rewriter.getXmpPacketLength() > 0 && FileUtil.isWritable(jpegImageFile)) {
+					byte[] xmpPacket = parser.getXmpPacket(rewriter.getXmpPacketLength());
+					if (xmpPacket != null) {
+						try {
+							rewriter.writeXmpPacketInPlace(xmpPacket);
+							isWrittenInPlace = true;
+						}
+						catch (IOException e) {
+							Log.w(Application.TAG, "Failed to write XMP data in place - rewriting file " + jpegImageFileName, e);
+						}
+					}
+				}
 
-				if (exif != null) {
-					outputSet = exif.getOutputSet();
+				if (!isWrittenInPlace) {
+					String xmpString = parser.getXmpString();
+					int retryCount = 0;
+					do {
+						rewriter.write(tempFile, exifTiff, xmpString);
+						retryCount++;
+					}
+					while (tempFile.length() == 0 && retryCount < 2);
 				}
 			}
-
-			if (outputSet == null) {
-				outputSet = new TiffOutputSet();
+			finally {
+				rewriter.close();
 			}
 
-			final TiffOutputDirectory rootDirectory = outputSet.getOrCreateRootDirectory();
-			final TiffOutputDirectory exifDirectory = outputSet.getOrCreateExifDirectory();
-
-			if (metadata.getTitle() != null) {
-				rootDirectory.removeField(MicrosoftTagConstants.EXIF_TAG_XPTITLE);
-				rootDirectory.add(MicrosoftTagConstants.EXIF_TAG_XPTITLE, metadata.getTitle());
-
-				rootDirectory.removeField(TiffTagConstants.TIFF_TAG_IMAGE_DESCRIPTION);
-				rootDirectory.add(TiffTagConstants.TIFF_TAG_IMAGE_DESCRIPTION, metadata.getTitle());
+			if (!isWrittenInPlace && !FileUtil.moveFile(tempFile, jpegImageFile)) {
+				throw new IOException("Failed to rename file " + tempFile.getAbsolutePath() + " to "
+						+ jpegImageFileName);
 			}
 
-			if (metadata.getComment() != null) {
-				rootDirectory.removeField(MicrosoftTagConstants.EXIF_TAG_XPCOMMENT);
-				rootDirectory.add(MicrosoftTagConstants.EXIF_TAG_XPCOMMENT, metadata.getComment());
-				exifDirectory.removeField(ExifTagConstants.EXIF_TAG_USER_COMMENT);
-				exifDirectory.add(ExifTagConstants.EXIF_TAG_USER_COMMENT, metadata.getComment());
+			if (exifException != null) {
+				throw new ExifStorageException(exifException);
 			}
+		}
+	}
 
-			if (metadata.getSubject() != null) {
-				rootDirectory.removeField(MicrosoftTagConstants.EXIF_TAG_XPSUBJECT);
-				rootDirectory.add(MicrosoftTagConstants.EXIF_TAG_XPSUBJECT, metadata.getSubject());
+	/**
+	 * Check if the EXIF fields written by {@link #createExifTiff(byte[], JpegMetadata)} would change. The field values are
+	 * compared, as the EXIF data written for unchanged fields is not identical byte by byte.
+	 *
+	 * @param exifTiff the existing EXIF data in TIFF format, or null if there is no EXIF data.
+	 * @param metadata the new metadata.
+	 * @return true if any of the EXIF fields changes, or if the existing EXIF data cannot be interpreted.
+	 */
+	private static boolean isExifChanged(@Nullable final byte[] exifTiff, @NonNull final JpegMetadata metadata) {
+		try {
+			TiffImageMetadata exif = exifTiff == null ? null : (TiffImageMetadata) Imaging.getMetadata(exifTiff);
+
+			if (isExifFieldChanged(exif, TiffTagConstants.TIFF_TAG_IMAGE_DESCRIPTION, metadata.getTitle())
+					|| isExifFieldChanged(exif, MicrosoftTagConstants.EXIF_TAG_XPTITLE, metadata.getTitle())
+					|| isExifFieldChanged(exif, MicrosoftTagConstants.EXIF_TAG_XPCOMMENT, metadata.getComment())
+					|| isExifFieldChanged(exif, ExifTagConstants.EXIF_TAG_USER_COMMENT, metadata.getComment())
+					|| isExifFieldChanged(exif, MicrosoftTagConstants.EXIF_TAG_XPSUBJECT, metadata.getSubject())) {
+				return true;
 			}
 
-			if (metadata.getOrientation() != null) {
-				rootDirectory.removeField(TiffTagConstants.TIFF_TAG_ORIENTATION);
-				rootDirectory.add(TiffTagConstants.TIFF_TAG_ORIENTATION, metadata.getOrientation());
+			Short orientation = metadata.getOrientation();
+			if (orientation == null) {
+				return false;
 			}
-
-			int retryCount = 0;
-			do {
-				try {
-					os = new FileOutputStream(tempFile);
-					os = new BufferedOutputStream(os);
-					new ExifRewriter().updateExifMetadataLossless(jpegImageFile, os, outputSet);
-				}
-				catch (Exception e) {
-					Log.w(Application.TAG, "Error storing EXIF data lossless - try lossy approach");
-					os = new FileOutputStream(tempFile);
-					os = new BufferedOutputStream(os);
-					new ExifRewriter().updateExifMetadataLossy(jpegImageFile, os, outputSet);
-				}
-				IoUtils.closeQuietly(true, os);
-				retryCount++;
-			}
-			while (tempFile.length() == 0 && retryCount < 2);
-
-			if (!FileUtil.moveFile(tempFile, jpegImageFile)) {
-				throw new IOException("Failed to rename file " + tempFile.getAbsolutePath() + " to "
-						+ jpegImageFileName);
+			TiffField orientationField = exif == null ? null : exif.findField(TiffTagConstants.TIFF_TAG_ORIENTATION);
+			if (orientationField == null) {
+				return orientation != ExifInterface.ORIENTATION_UNDEFINED;
 			}
+			return orientationField.getIntValue() != orientation;
 		}
-		finally {
-			IoUtils.closeQuietly(false, os);
+		catch (Exception e) {
+			return true;
 		}
+	}
 
+	/**
+	 * Check if an EXIF String field would change.
+	 *
+	 * @param exif    the existing EXIF data, or null if there is no EXIF data.
+	 * @param tagInfo the tag of the field.
+	 * @param value   the new value of the field. If null, the field is not changed.
+	 * @return true if the field changes.
+	 * @throws ImageReadException thrown if the field cannot be read.
+	 */
+	private static boolean isExifFieldChanged(@Nullable final TiffImageMetadata exif, @NonNull final TagInfo tagInfo,
+											  @Nullable final String value) throws ImageReadException {
+		if (value == null) {
+			return false;
+		}
+		TiffField field = exif == null ? null : exif.findField(tagInfo);
+		return field == null || !value.equals(field.getStringValue());
 	}
 
 	/**
-	 * Change the XMP metadata.
+	 * Create the new EXIF data.
 	 *
-	 * @param jpegImageFileName the file for which metadata should be changed.
-	 * @param metadata          the new metadata.
+	 * @param exifTiff the existing EXIF data in TIFF format, or null if there is no EXIF data.
+	 * @param metadata the new metadata
+	 * @return the new EXIF data in TIFF format.
 	 * @throws ImageReadException  thrown if the metadata cannot be read.
 	 * @throws ImageWriteException thrown if the metadata cannot be written.
 	 * @throws IOException         thrown in case of other errors while reading metadata.
-	 * @throws XMPException        thrown in case of issues with XML handling.
 	 */
-	@SuppressWarnings("resource")
-	private static void changeXmpMetadata(@NonNull final String jpegImageFileName, @NonNull final JpegMetadata metadata)
-			throws IOException,
-			ImageReadException, ImageWriteException, XMPException {
-		File jpegImageFile = new File(jpegImageFileName);
-		File tempFile = FileUtil.getTempFile(jpegImageFile);
+	@NonNull
+	private static byte[] createExifTiff(@Nullable final byte[] exifTiff, @NonNull final JpegMetadata metadata)
+			throws IOException, ImageReadException, ImageWriteException {
+		TiffOutputSet outputSet = null;
 
-		verifyTempFile(tempFile);
+		if (exifTiff != null) {
+			// note that exif might be null if the EXIF data cannot be interpreted.
+			final TiffImageMetadata exif = (TiffImageMetadata) Imaging.getMetadata(exifTiff);
 
-		OutputStream os = null;
-		try {
-			final String xmpString = Imaging.getXmpXml(jpegImageFile);
+			if (exif != null) {
+				outputSet = exif.getOutputSet();
+			}
+		}
 
-			XmpHandler parser = new XmpHandler(xmpString);
+		if (outputSet == null) {
+			outputSet = new TiffOutputSet();
+		}
 
-			if (changeExifAllowed()) {
-				// Change standard fields only if EXIF allowed
-				parser.setDcTitle(metadata.getTitle());
-				parser.setDcDescription(metadata.getDescription());
-				parser.setDcSubject(metadata.getSubject());
-				parser.setUserComment(metadata.getComment());
-				parser.setMicrosoftPerson(metadata.getPerson());
-			}
+		final TiffOutputDirectory rootDirectory = outputSet.getOrCreateRootDirectory();
+		final TiffOutputDirectory exifDirectory = outputSet.getOrCreateExifDirectory();
 
-			parser.setJeItem(XmpHandler.ITEM_TITLE, metadata.getTitle());
-			parser.setJeItem(XmpHandler.ITEM_DESCRIPTION, metadata.getDescription());
-			parser.setJeItem(XmpHandler.ITEM_SUBJECT, metadata.getSubject());
-			parser.setJeItem(XmpHandler.ITEM_COMMENT, metadata.getComment());
-			parser.setJeItem(XmpHandler.ITEM_PERSON, metadata.getPerson());
-
-			parser.setJeItem(XmpHandler.ITEM_X_CENTER, metadata.getXCenterString());
-			parser.setJeItem(XmpHandler.ITEM_Y_CENTER, metadata.getYCenterString());
-			parser.setJeItem(XmpHandler.ITEM_OVERLAY_SCALE_FACTOR, metadata.getOverlayScaleFactorString());
-			parser.setJeItem(XmpHandler.ITEM_X_POSITION, metadata.getXPositionString());
-			parser.setJeItem(XmpHandler.ITEM_Y_POSITION, metadata.getYPositionString());
-			parser.setJeItem(XmpHandler.ITEM_ZOOM_FACTOR, metadata.getZoomFactorString());
-			parser.setJeDate(XmpHandler.ITEM_ORGANIZE_DATE, metadata.getOrganizeDate());
-			parser.setJeItem(XmpHandler.ITEM_RIGHT_LEFT, metadata.getRightLeftString());
-			parser.setJeItem(XmpHandler.ITEM_BRIGHTNESS, metadata.getBrightnessString());
-			parser.setJeItem(XmpHandler.ITEM_CONTRAST, metadata.getContrastString());
-			parser.setJeItem(XmpHandler.ITEM_SATURATION, metadata.getSaturationString());
-			parser.setJeItem(XmpHandler.ITEM_COLOR_TEMPERATURE, metadata.getColorTemperatureString());
-			parser.setJeItem(XmpHandler.ITEM_OVERLAY_COLOR, metadata.getOverlayColorString());
-			parser.setJeItem(XmpHandler.ITEM_PUPIL_SIZE, metadata.getPupilSizeString());
-			parser.setJeItem(XmpHandler.ITEM_PUPIL_X_OFFSET, metadata.getPupilXOffsetString());
-			parser.setJeItem(XmpHandler.ITEM_PUPIL_Y_OFFSET, metadata.getPupilYOffsetString());
-			parser.setJeInt(XmpHandler.ITEM_FLAGS, metadata.getFlags());
-
-			int retryCount = 0;
-			do {
-				os = new FileOutputStream(tempFile);
-				os = new BufferedOutputStream(os);
-
-				new JpegXmpRewriter().updateXmpXml(jpegImageFile, os, parser.getXmpString());
-
-				IoUtils.closeQuietly(true, os);
-				retryCount++;
-			}
-			while (tempFile.length() == 0 && retryCount < 2);
+		if (metadata.getTitle() != null) {
+			rootDirectory.removeField(MicrosoftTagConstants.EXIF_TAG_XPTITLE);
+			rootDirectory.add(MicrosoftTagConstants.EXIF_TAG_XPTITLE, metadata.getTitle());
 
-			if (!FileUtil.moveFile(tempFile, jpegImageFile)) {
-				throw new IOException("Failed to rename file " + tempFile.getAbsolutePath() + " to "
-						+ jpegImageFileName);
-			}
+			rootDirectory.removeField(TiffTagConstants.TIFF_TAG_IMAGE_DESCRIPTION);
+			rootDirectory.add(TiffTagConstants.TIFF_TAG_IMAGE_DESCRIPTION, metadata.getTitle());
 		}
-		finally {
-			IoUtils.closeQuietly(false, os);
+
+		if (metadata.getComment() != null) {
+			rootDirectory.removeField(MicrosoftTagConstants.EXIF_TAG_XPCOMMENT);
+			rootDirectory.add(MicrosoftTagConstants.EXIF_TAG_XPCOMMENT, metadata.getComment());
+			exifDirectory.removeField(ExifTagConstants.EXIF_TAG_USER_COMMENT);
+			exifDirectory.add(ExifTagConstants.EXIF_TAG_USER_COMMENT, metadata.getComment());
 		}
+
+		if (metadata.getSubject() != null) {
+			rootDirectory.removeField(MicrosoftTagConstants.EXIF_TAG_XPSUBJECT);
+			rootDirectory.add(MicrosoftTagConstants.EXIF_TAG_XPSUBJECT, metadata.getSubject());
+		}
+
+		if (metadata.getOrientation() != null) {
+			rootDirectory.removeField(TiffTagConstants.TIFF_TAG_ORIENTATION);
+			rootDirectory.add(TiffTagConstants.TIFF_TAG_ORIENTATION, metadata.getOrientation());
+		}
+
+		ByteArrayOutputStream os = new ByteArrayOutputStream();
+		if (exifTiff != null) {
+			try {
+				new TiffImageWriterLossless(outputSet.byteOrder, exifTiff).write(os, outputSet);
+				return os.toByteArray();
+			}
+			catch (Exception e) {
+				Log.w(Application.TAG, "Error storing EXIF data lossless - try lossy approach");
+				os.reset();
+			}
+		}
+		new TiffImageWriterLossy(outputSet.byteOrder).write(os, outputSet);
+		return os.toByteArray();
+	}
+
+	/**
+	 * Create a handler for the new XMP data.
+	 *
+	 * @param xmpString the existing XMP data, or null if there is no XMP data.
+	 * @param metadata  the new metadata.
+	 * @return the handler containing the new XMP data.
+	 * @throws XMPException thrown in case of issues with XML handling.
+	 */
+	@NonNull
+	private static XmpHandler createXmpHandler(@Nullable final String xmpString, @NonNull final JpegMetadata metadata) throws XMPException {
+		XmpHandler parser = new XmpHandler(xmpString);
+
+		if (changeExifAllowed()) {
+			// Change standard fields only if EXIF allowed
+			parser.setDcTitle(metadata.getTitle());
+			parser.setDcDescription(metadata.getDescription());
+			parser.setDcSubject(metadata.getSubject());
+			parser.setUserComment(metadata.getComment());
+			parser.setMicrosoftPerson(metadata.getPerson());
+		}
+
+		parser.setJeItem(XmpHandler.ITEM_TITLE, metadata.getTitle());
+		parser.setJeItem(XmpHandler.ITEM_DESCRIPTION, metadata.getDescription());
+		parser.setJeItem(XmpHandler.ITEM_SUBJECT, metadata.getSubject());
+		parser.setJeItem(XmpHandler.ITEM_COMMENT, metadata.getComment());
+		parser.setJeItem(XmpHandler.ITEM_PERSON, metadata.getPerson());
+
+		parser.setJeItem(XmpHandler.ITEM_X_CENTER, metadata.getXCenterString());
+		parser.setJeItem(XmpHandler.ITEM_Y_CENTER, metadata.getYCenterString());
+		parser.setJeItem(XmpHandler.ITEM_OVERLAY_SCALE_FACTOR, metadata.getOverlayScaleFactorString());
+		parser.setJeItem(XmpHandler.ITEM_X_POSITION, metadata.getXPositionString());
+		parser.setJeItem(XmpHandler.ITEM_Y_POSITION, metadata.getYPositionString());
+		parser.setJeItem(XmpHandler.ITEM_ZOOM_FACTOR, metadata.getZoomFactorString());
+		parser.setJeDate(XmpHandler.ITEM_ORGANIZE_DATE, metadata.getOrganizeDate());
+		parser.setJeItem(XmpHandler.ITEM_RIGHT_LEFT, metadata.getRightLeftString());
+		parser.setJeItem(XmpHandler.ITEM_BRIGHTNESS, metadata.getBrightnessString());
+		parser.setJeItem(XmpHandler.ITEM_CONTRAST, metadata.getContrastString());
+		parser.setJeItem(XmpHandler.ITEM_SATURATION, metadata.getSaturationString());
+		parser.setJeItem(XmpHandler.ITEM_COLOR_TEMPERATURE, metadata.getColorTemperatureString());
+		parser.setJeItem(XmpHandler.ITEM_OVERLAY_COLOR, metadata.getOverlayColorString());
+		parser.setJeItem(XmpHandler.ITEM_PUPIL_SIZE, metadata.getPupilSizeString());
+		parser.setJeItem(XmpHandler.ITEM_PUPIL_X_OFFSET, metadata.getPupilXOffsetString());
+		parser.setJeItem(XmpHandler.ITEM_PUPIL_Y_OFFSET, metadata.getPupilYOffsetString());
+		parser.setJeInt(XmpHandler.ITEM_FLAGS, metadata.getFlags());
+
+		return parser;
 	}
 
 	/**
@@ -0,0 +1,449 @@
+package de.jeisfeld.augendiagnoselib.util.imagefile;
+
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+/**
+ * Rewriter of the APP1 segments (EXIF and XMP) of a JPEG file in a single pass.
+ *
+ * <p>The header segments up to the first SOS marker are scanned once. When writing, the header segments are copied,
+ * with the EXIF and XMP segments replaced by the new data, and the entropy-coded image data is transferred directly
+ * between the file channels without passing through the Java heap. If only the XMP data changes, the XMP packet may also
+ * be overwritten in place, using the padding reserved in the packet.
+ */
+final class JpegSegmentRewriter {
+	// JAVADOC:OFF
+	// JPEG markers
+	private static final int MARKER_PREFIX = 0xFF;
+	private static final int MARKER_SOI = 0xD8;
+	private static final int MARKER_EOI = 0xD9;
+	private static final int MARKER_SOS = 0xDA;
+	private static final int MARKER_APP0 = 0xE0;
+	private static final int MARKER_APP1 = 0xE1;
+	private static final int MARKER_TEM = 0x01;
+	private static final int MARKER_RST0 = 0xD0;
+	private static final int MARKER_RST7 = 0xD7;
+
+	// JAVADOC:ON
+
+	/**
+	 * The charset used for XMP data.
+	 */
+	private static final String XMP_CHARSET = "UTF-8";
+
+	/**
+	 * The identifier of an EXIF APP1 segment.
+	 */
+	private static final byte[] EXIF_IDENTIFIER = getAsciiBytes("Exif\0\0");
+
+	/**
+	 * The identifier of an XMP APP1 segment.
+	 */
+	private static final byte[] XMP_IDENTIFIER = getAsciiBytes("http://ns.adobe.com/xap/1.0/\0");
+
+	/**
+	 * The maximum length of a segment, including the two length bytes.
+	 */
+	private static final int MAX_SEGMENT_LENGTH = 0xFFFF;
+
+	/**
+	 * The source file.
+	 */
+	@NonNull
+	private final File mFile;
+
+	/**
+	 * The stream of the source file.
+	 */
+	@NonNull
+	private final FileInputStream mInputStream;
+
+	/**
+	 * The channel of the source file.
+	 */
+	@NonNull
+	private final FileChannel mChannel;
+
+	/**
+	 * The header segments of the source file (between SOI and SOS).
+	 */
+	@NonNull
+	private final List<Segment> mSegments = new ArrayList<>();
+
+	/**
+	 * The position of the marker terminating the header (normally SOS).
+	 */
+	private long mImageDataPosition;
+
+	/**
+	 * The TIFF data of the first EXIF segment (without identifier).
+	 */
+	@Nullable
+	private byte[] mExifTiff = null;
+
+	@Nullable
+	public byte[] getExifTiff() {
+		return mExifTiff;
+	}
+
+	/**
+	 * The XMP data of the first XMP segment as String.
+	 */
+	@Nullable
+	private String mXmpString = null;
+
+	@Nullable
+	public String getXmpString() {
+		return mXmpString;
+	}
+
+	/**
+	 * The position of the XMP packet of the first XMP segment in the file.
+	 */
+	private long mXmpPacketPosition = 0;
+
+	/**
+	 * The length of the XMP packet of the first XMP segment (in bytes).
+	 */
+	private int mXmpPacketLength = 0;
+
+	public int getXmpPacketLength() {
+		return mXmpPacketLength;
+	}
+
+	/**
+	 * Open a JPEG file and scan its header segments. The rewriter has to be closed after usage.
+	 *
+	 * @param file The JPEG file.
+	 * @throws IOException thrown if the file is no JPEG file or cannot be read.
+	 */
+	JpegSegmentRewriter(@NonNull final File file) throws IOException {
+		mFile = file;
+		mInputStream = new FileInputStream(file);
+		mChannel = mInputStream.getChannel();
+		boolean success = false;
+		try {
+			scanHeader();
+			success = true;
+		}
+		finally {
+			if (!success) {
+				close();
+			}
+		}
+	}
+
+	/**
+	 * Scan the header segments of the file.
+	 *
+	 * @throws IOException thrown if the file is no JPEG file or cannot be read.
+	 */
+	private void scanHeader() throws IOException {
+		byte[] soi = readBytes(0, 2);
+		if ((soi[0] & MARKER_PREFIX) != MARKER_PREFIX || (soi[1] & MARKER_PREFIX) != MARKER_SOI) {
+			throw new IOException("File " + mFile.getName() + " is no JPEG file.");
+		}
+
+		long position = 2;
+		while (true) {
+			// skip fill bytes before the marker.
+			long markerPosition = position;
+			int marker = readBytes(position++, 1)[0] & MARKER_PREFIX;
+			while (marker != MARKER_PREFIX) {
+				markerPosition = position;
+				marker = readBytes(position++, 1)[0] & MARKER_PREFIX;
+			}
+			while (marker == MARKER_PREFIX) {
+				marker = readBytes(position++, 1)[0] & MARKER_PREFIX;
+			}
+
+			if (marker == MARKER_SOS || marker == MARKER_EOI) {
+				mImageDataPosition = position - 2;
+				return;
+			}
+			if (marker == MARKER_TEM || (marker >= MARKER_RST0 && marker <= MARKER_RST7)) {
+				// Markers without segment.
+				mSegments.add(new Segment(marker, markerPosition, position - markerPosition, null));
+				continue;
+			}
+
+			byte[] lengthBytes = readBytes(position, 2);
+			int segmentLength = (lengthBytes[0] & MARKER_PREFIX) << 8 | lengthBytes[1] & MARKER_PREFIX; // MAGIC_NUMBER
+			if (segmentLength < 2) {
+				throw new IOException("Invalid segment length in file " + mFile.getName());
+			}
+
+			byte[] data = null;
+			if (marker == MARKER_APP1) {
+				data = readBytes(position + 2, segmentLength - 2);
+				if (mExifTiff == null && startsWith(data, EXIF_IDENTIFIER)) {
+					mExifTiff = new byte[data.length - EXIF_IDENTIFIER.length];
+					System.arraycopy(data, EXIF_IDENTIFIER.length, mExifTiff, 0, mExifTiff.length);
+				}
+				else if (mXmpString == null && startsWith(data, XMP_IDENTIFIER)) {
+					mXmpString = new String(data, XMP_IDENTIFIER.length, data.length - XMP_IDENTIFIER.length, XMP_CHARSET);
+					mXmpPacketPosition = position + 2 + XMP_IDENTIFIER.length;
+					mXmpPacketLength = data.length - XMP_IDENTIFIER.length;
+				}
+			}
+
+			position += segmentLength;
+			mSegments.add(new Segment(marker, markerPosition, position - markerPosition, data));
+		}
+	}
+
+	/**
+	 * Write a copy of the file with new EXIF and XMP data.
+	 *
+	 * <p>The first EXIF segment is replaced by the new EXIF data, and all XMP segments are replaced by a single XMP segment
+	 * directly after it. If the file has no EXIF segment, the new segments are placed after the leading APP0 segments.
+	 * All other segments and the image data are copied unchanged.
+	 *
+	 * @param targetFile The target file.
+	 * @param exifTiff   The new EXIF data in TIFF format. If null, the existing EXIF data is retained.
+	 * @param xmpString  The new XMP data. If null, the existing XMP data is retained.
+	 * @throws IOException thrown if the data does not fit into a segment or if the file cannot be written.
+	 */
+	public void write(@NonNull final File targetFile, @Nullable final byte[] exifTiff, @Nullable final String xmpString)
+			throws IOException {
+		String newXmpString = xmpString == null ? mXmpString : xmpString;
+		byte[] exifSegment = createApp1Segment(EXIF_IDENTIFIER, exifTiff == null ? mExifTiff : exifTiff);
+		byte[] xmpSegment = createApp1Segment(XMP_IDENTIFIER, newXmpString == null ? null : newXmpString.getBytes(XMP_CHARSET));
+
+		FileOutputStream os = new FileOutputStream(targetFile);
+		try {
+			FileChannel target = os.getChannel();
+			writeFully(target, new byte[] {(byte) MARKER_PREFIX, (byte) MARKER_SOI});
+
+			boolean isApp1Written = false;
+			for (Segment segment : mSegments) {
+				boolean isExif = segment.isApp1Segment(EXIF_IDENTIFIER);
+				if (!isApp1Written && (isExif || segment.mMarker != MARKER_APP0)) {
+					writeFully(target, exifSegment);
+					writeFully(target, xmpSegment);
+					isApp1Written = true;
+				}
+				if (!isExif && !segment.isApp1Segment(XMP_IDENTIFIER)) {
+					transferFully(segment.mPosition, segment.mLength, target);
+				}
+			}
+			if (!isApp1Written) {
+				writeFully(target, exifSegment);
+				writeFully(target, xmpSegment);
+			}
+
+			transferFully(mImageDataPosition, mChannel.size() - mImageDataPosition, target);
+		}
+		finally {
+			os.close();
+		}
+	}
+
+	/**
+	 * Overwrite the XMP packet of the first XMP segment in place, without copying the file.
+	 *
+	 * @param xmpPacket The new XMP packet. It must have exactly the length of the existing packet.
+	 * @throws IOException thrown if the packet does not fit or if the file cannot be written.
+	 */
+	public void writeXmpPacketInPlace(@NonNull final byte[] xmpPacket) throws IOException {
+		if (mXmpString == null || xmpPacket.length != mXmpPacketLength) {
+			throw new IOException("XMP packet does not fit into the XMP segment of file " + mFile.getName());
+		}
+
+		RandomAccessFile file = new RandomAccessFile(mFile, "rw");
+		try {
+			FileChannel target = file.getChannel();
+			ByteBuffer buffer = ByteBuffer.wrap(xmpPacket);
+			while (buffer.hasRemaining()) {
+				target.write(buffer, mXmpPacketPosition + buffer.position());
+			}
+		}
+		finally {
+			file.close();
+		}
+	}
+
+	/**
+	 * Close the source file.
+	 */
+	public void close() {
+		try {
+			mInputStream.close();
+		}
+		catch (IOException e) {
+			// ignore
+		}
+	}
+
+	/**
+	 * Create an APP1 segment, including marker and length.
+	 *
+	 * @param identifier The identifier of the segment.
+	 * @param data       The data of the segment.
+	 * @return The segment. Empty if the data is null.
+	 * @throws IOException thrown if the data does not fit into a segment.
+	 */
+	@NonNull
+	private static byte[] createApp1Segment(@NonNull final byte[] identifier, @Nullable final byte[] data) throws IOException {
+		if (data == null) {
+			return new byte[0];
+		}
+		int segmentLength = 2 + identifier.length + data.length;
+		if (segmentLength > MAX_SEGMENT_LENGTH) {
+			throw new IOException("APP1 segment too large: " + segmentLength + " bytes");
+		}
+
+		ByteBuffer buffer = ByteBuffer.allocate(2 + segmentLength);
+		buffer.put((byte) MARKER_PREFIX).put((byte) MARKER_APP1).putShort((short) segmentLength);
+		buffer.put(identifier).put(data);
+		return buffer.array();
+	}
+
+	/**
+	 * Read bytes from the source file at a given position.
+	 *
+	 * @param position The position.
+	 * @param length   The number of bytes.
+	 * @return The bytes.
+	 * @throws IOException thrown if the end of the file is reached or if the file cannot be read.
+	 */
+	@NonNull
+	private byte[] readBytes(final long position, final int length) throws IOException {
+		ByteBuffer buffer = ByteBuffer.allocate(length);
+		while (buffer.hasRemaining()) {
+			if (mChannel.read(buffer, position + buffer.position()) < 0) {
+				throw new EOFException("Unexpected end of JPEG file " + mFile.getName());
+			}
+		}
+		return buffer.array();
+	}
+
+	/**
+	 * Write bytes completely to a channel.
+	 *
+	 * @param target The target channel.
+	 * @param bytes  The bytes.
+	 * @throws IOException thrown if the bytes cannot be written.
+	 */
+	private static void writeFully(@NonNull final FileChannel target, @NonNull final byte[] bytes) throws IOException {
+		ByteBuffer buffer = ByteBuffer.wrap(bytes);
+		while (buffer.hasRemaining()) {
+			target.write(buffer);
+		}
+	}
+
+	/**
+	 * Transfer a part of the source file completely to a channel.
+	 *
+	 * @param position The start position in the source file.
+	 * @param length   The number of bytes.
+	 * @param target   The target channel.
+	 * @throws IOException thrown if the transfer fails.
+	 */
+	private void transferFully(final long position, final long length, @NonNull final FileChannel target) throws IOException {
+		long transferred = 0;
+		while (transferred < length) {
+			long count = mChannel.transferTo(position + transferred, length - transferred, target);
+			if (count <= 0) {
+				throw new EOFException("Unexpected end of JPEG file " + mFile.getName());
+			}
+			transferred += count;
+		}
+	}
+
+	/**
+	 * Check if a byte array starts with a given prefix.
+	 *
+	 * @param bytes  The byte array.
+	 * @param prefix The prefix.
+	 * @return true if the array starts with the prefix.
+	 */
+	private static boolean startsWith(@Nullable final byte[] bytes, @NonNull final byte[] prefix) {
+		if (bytes == null || bytes.length < prefix.length) {
+			return false;
+		}
+		for (int i = 0; i < prefix.length; i++) {
+			if (bytes[i] != prefix[i]) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Get the bytes of an ASCII String.
+	 *
+	 * @param string The String.
+	 * @return The bytes.
+	 */
+	@NonNull
+	private static byte[] getAsciiBytes(@NonNull final String string) {
+		byte[] result = new byte[string.length()];
+		for (int i = 0; i < result.length; i++) {
+			result[i] = (byte) string.charAt(i);
+		}
+		return result;
+	}
+
+	/**
+	 * A header segment of the JPEG file.
+	 */
+	private static final class Segment {
+		/**
+		 * The marker of the segment.
+		 */
+		private final int mMarker;
+
+		/**
+		 * The position of the segment in the file (including marker and fill bytes).
+		 */
+		private final long mPosition;
+
+		/**
+		 * The length of the segment (including marker and fill bytes).
+		 */
+		private final long mLength;
+
+		/**
+		 * The segment data (without marker and length). Only stored for APP1 segments.
+		 */
+		@Nullable
+		private final byte[] mData;
+
+		/**
+		 * Create a segment.
+		 *
+		 * @param marker   The marker of the segment.
+		 * @param position The position of the segment in the file.
+		 * @param length   The length of the segment.
+		 * @param data     The segment data.
+		 */
+		private Segment(final int marker, final long position, final long length, @Nullable final byte[] data) {
+			mMarker = marker;
+			mPosition = position;
+			mLength = length;
+			mData = data;
+		}
+
+		/**
+		 * Check if this is an APP1 segment with a given identifier.
+		 *
+		 * @param identifier The identifier.
+		 * @return true if this is an APP1 segment with this identifier.
+		 */
+		private boolean isApp1Segment(@NonNull final byte[] identifier) {
+			return mMarker == MARKER_APP1 && startsWith(mData, identifier);
+		}
+	}
+}
@@ -1,12 +1,20 @@
 package de.jeisfeld.augendiagnoselib.util.imagefile;
 
-import android.os.AsyncTask;
+import android.os.Handler;
+import android.os.Looper;
 import android.util.Log;
 
+import java.io.File;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import androidx.annotation.NonNull;
-import androidx.annotation.Nullable;
 import de.jeisfeld.augendiagnoselib.Application;
 import de.jeisfeld.augendiagnoselib.R;
 import de.jeisfeld.augendiagnoselib.util.DialogUtil;
@@ -18,8 +26,51 @@ import de.jeisfeld.augendiagnoselib.util.imagefile.JpegMetadataUtil.ExifStorageE
 /**
  * Utility class to help storing metadata in jpg files in a synchronized way, preventing to store the same file twice in
  * parallel.
+ *
+ * <p>Save requests are executed by a fixed number of worker threads. Requests for a file which is already waiting to be
+ * saved replace the waiting request, so that only the latest metadata is written. If too many files are waiting, new
+ * requests from background threads block until some files have been saved.
+ *
+ * <p>Save requests are recorded in the metadata journal before they are executed, so that requests which are not yet
+ * applied when the app is terminated are recovered on the next startup.
  */
 public final class JpegSynchronizationUtil {
+	/**
+	 * The number of worker threads saving files.
+	 */
+	private static final int WORKER_COUNT = 2;
+
+	/**
+	 * The maximum number of files waiting to be saved. Requests for further files from background threads block.
+	 */
+	private static final int MAX_QUEUED_SAVE_REQUESTS = 100;
+
+	/**
+	 * The time after which idle worker threads are stopped (in seconds).
+	 */
+	private static final long WORKER_KEEP_ALIVE_TIME = 10;
+
+	/**
+	 * The executor saving the files.
+	 */
+	private static final ThreadPoolExecutor SAVE_EXECUTOR;
+
+	static {
+		SAVE_EXECUTOR = new ThreadPoolExecutor(WORKER_COUNT, WORKER_COUNT, WORKER_KEEP_ALIVE_TIME, TimeUnit.SECONDS,
+				new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+					/**
+					 * The number of created threads.
+					 */
+					private final AtomicInteger mThreadCounter = new AtomicInteger();
+
+					@NonNull
+					@Override
+					public Thread newThread(@NonNull final Runnable runnable) {
+						return new Thread(runnable, "JpegSaver-" + mThreadCounter.incrementAndGet());
+					}
+				});
+		SAVE_EXECUTOR.allowCoreThreadTimeOut(true);
+	}
 
 	/**
 	 * Hide default constructor.
@@ -33,18 +84,45 @@ public final class JpegSynchronizationUtil {
 	 */
 	private static final HashMap<String, JpegMetadata> RUNNING_SAVE_REQUESTS = new HashMap<>();
 	/**
-	 * Storage for queued save tasks.
+	 * Storage for queued save tasks, in order of arrival.
 	 */
-	private static final HashMap<String, JpegMetadata> QUEUED_SAVE_REQUESTS = new HashMap<>();
+	private static final LinkedHashMap<String, JpegMetadata> QUEUED_SAVE_REQUESTS = new LinkedHashMap<>();
 	/**
 	 * The tag for logging.
 	 */
 	private static final String TAG = Application.TAG + ".JSU";
 
+	/**
+	 * Lock for the recovery of save requests from the metadata journal.
+	 */
+	private static final Object RECOVERY_LOCK = new Object();
+
+	/**
+	 * Flag indicating if the save requests have been recovered from the metadata journal.
+	 */
+	private static boolean mIsRecovered = false;
+
+	/**
+	 * The number of files saved (successfully or not).
+	 */
+	private static long mSaveCount = 0;
+
+	/**
+	 * The total time used for saving files (in nanoseconds).
+	 */
+	private static long mTotalSaveTime = 0;
+
+	/**
+	 * The maximum time used for saving a file (in nanoseconds).
+	 */
+	private static long mMaxSaveTime = 0;
+
 	/**
 	 * This method handles a request to retrieve metadata for a file. If there is no running async task to update
-	 * metadata for this file, then the data is taken directly from the file. Otherwise, it is taken from the last
-	 * metadata to be stored for this file.
+	 * metadata for this file, then the data is taken from the metadata cache, which reads the file only if it has
+	 * changed. Otherwise, it is taken from the last metadata to be stored for this file.
+	 *
+	 * <p>The returned metadata is a copy which may be modified by the caller without affecting the cached data.
 	 *
 	 * @param pathname the path of the jpg file.
 	 * @return null for non-JPEG files. The metadata from the file if readable. Otherwise empty metadata.
@@ -52,14 +130,6 @@ public final class JpegSynchronizationUtil {
 	public static JpegMetadata getJpegMetadata(@NonNull final String pathname) {
 		JpegMetadata cachedMetadata = null;
 
-		try {
-			JpegMetadataUtil.checkJpeg(pathname);
-		}
-		catch (Exception e) {
-			Log.w(TAG, e.getMessage());
-			return null;
-		}
-
 		synchronized (JpegSynchronizationUtil.class) {
 			if (QUEUED_SAVE_REQUESTS.containsKey(pathname)) {
 				cachedMetadata = QUEUED_SAVE_REQUESTS.get(pathname);
@@ -71,22 +141,44 @@ public final class JpegSynchronizationUtil {
 
 		if (cachedMetadata != null) {
 			Log.i(TAG, "Retrieve cached metadata for file " + pathname);
+			return cachedMetadata.copy();
+		}
+
+		File file = new File(pathname);
+		cachedMetadata = JpegMetadataCache.get(file);
+		if (cachedMetadata != null) {
 			return cachedMetadata;
 		}
-		else {
-			try {
-				return JpegMetadataUtil.getMetadata(pathname);
-			}
-			catch (Exception e) {
-				Log.e(TAG, "Failed to retrieve metadata for file " + pathname, e);
-				return new JpegMetadata();
-			}
+
+		long readTime = System.currentTimeMillis();
+		long lastModified = file.lastModified();
+		long length = file.length();
+
+		try {
+			JpegMetadataUtil.checkJpeg(pathname);
+		}
+		catch (Exception e) {
+			Log.w(TAG, e.getMessage());
+			return null;
+		}
+
+		try {
+			JpegMetadata metadata = JpegMetadataUtil.getMetadata(pathname, true);
+			JpegMetadataCache.put(file, lastModified, length, readTime, metadata);
+			return metadata;
+		}
+		catch (Exception e) {
+			Log.e(TAG, "Failed to retrieve metadata for file " + pathname, e);
+			return new JpegMetadata();
 		}
 	}
 
 	/**
-	 * This method handles a request to update metadata on a file. If no such request on the file is in process, then an
-	 * async task is started to update the metadata. Otherwise, it is put on the queue.
+	 * This method handles a request to update metadata on a file. If the file is already waiting to be saved, the
+	 * waiting request is replaced. Otherwise, the file is queued for saving. If too many files are waiting, this
+	 * method blocks until some files have been saved, unless called from the main thread.
+	 *
+	 * <p>A snapshot of the metadata is queued, so that later changes of the passed metadata do not affect the save.
 	 *
 	 * @param pathname the path of the jpg file.
 	 * @param metadata the metadata.
@@ -100,18 +192,133 @@ public final class JpegSynchronizationUtil {
 			return;
 		}
 
+		// Recovered requests have to be queued before newer requests for the same file.
+		ensureSaveRequestsRecovered();
+
+		final JpegMetadata snapshot = metadata.copy();
+		boolean isMainThread = Looper.myLooper() == Looper.getMainLooper();
+
 		synchronized (JpegSynchronizationUtil.class) {
-			if (RUNNING_SAVE_REQUESTS.containsKey(pathname)) {
-				QUEUED_SAVE_REQUESTS.put(pathname, metadata);
+			while (!isMainThread && QUEUED_SAVE_REQUESTS.size() >= MAX_QUEUED_SAVE_REQUESTS && !QUEUED_SAVE_REQUESTS.containsKey(pathname)) {
+				try {
+					JpegSynchronizationUtil.class.wait();
+				}
+				catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					Log.w(TAG, "Interrupted while waiting to save file " + pathname);
+					return;
+				}
+			}
+
+			boolean isPending = QUEUED_SAVE_REQUESTS.containsKey(pathname) || RUNNING_SAVE_REQUESTS.containsKey(pathname);
+			QUEUED_SAVE_REQUESTS.put(pathname, snapshot);
+			if (isPending) {
+				// If the file is already pending, then the request is taken from the queue after the current save.
+				MetadataJournal.getInstance().journalSave(pathname, snapshot, null);
 			}
 			else {
-				triggerJpegSaverTask(pathname, metadata);
+				MetadataJournal.getInstance().journalSave(pathname, snapshot, new Runnable() {
+					@Override
+					public void run() {
+						triggerJpegSaverTask(pathname);
+					}
+				});
 			}
 		}
 	}
 
 	/**
-	 * Do cleanup from the last JpegSaverTask and trigger the next task on the same file, if existing.
+	 * Queue the save requests recovered from the metadata journal, which were not yet applied to the files when the app
+	 * was terminated. The journal is read in the background, so that this may be called from the main thread. Save
+	 * requests arriving in the meantime wait until the recovery is done.
+	 */
+	public static void recoverSaveRequests() {
+		new Thread(new Runnable() {
+			@Override
+			public void run() {
+				ensureSaveRequestsRecovered();
+			}
+		}, "MetadataRecovery").start();
+	}
+
+	/**
+	 * Recover the save requests from the metadata journal, if not yet done.
+	 */
+	private static void ensureSaveRequestsRecovered() {
+		synchronized (RECOVERY_LOCK) {
+			if (mIsRecovered) {
+				return;
+			}
+			Map<String, JpegMetadata> recoveredSaveRequests = MetadataJournal.getInstance().getOpenSaveRequests();
+
+			synchronized (JpegSynchronizationUtil.class) {
+				for (Map.Entry<String, JpegMetadata> entry : recoveredSaveRequests.entrySet()) {
+					String pathname = entry.getKey();
+					if (!QUEUED_SAVE_REQUESTS.containsKey(pathname) && !RUNNING_SAVE_REQUESTS.containsKey(pathname)) {
+						Log.i(TAG, "Executing recovered store request for file " + pathname);
+						QUEUED_SAVE_REQUESTS.put(pathname, entry.getValue());
+						triggerJpegSaverTask(pathname);
+					}
+				}
+			}
+			mIsRecovered = true;
+		}
+	}
+
+	/**
+	 * Save the queued metadata of a file. Executed by the worker threads.
+	 *
+	 * @param pathname The path of the jpg file.
+	 */
+	private static void saveFromQueue(final String pathname) {
+		JpegMetadata metadata;
+		synchronized (JpegSynchronizationUtil.class) {
+			metadata = QUEUED_SAVE_REQUESTS.remove(pathname);
+			if (metadata == null) {
+				return;
+			}
+			RUNNING_SAVE_REQUESTS.put(pathname, metadata);
+			// Space in the queue for blocked requests
+			JpegSynchronizationUtil.class.notifyAll();
+		}
+
+		Log.d(TAG, "Starting to save file " + pathname);
+		long startTime = System.nanoTime();
+		try {
+			JpegMetadataUtil.changeMetadata(pathname, metadata);
+			Log.d(TAG, "Successfully saved file " + pathname);
+		}
+		catch (final Exception e) {
+			new Handler(Looper.getMainLooper()).post(new Runnable() {
+				@Override
+				public void run() {
+					if (e instanceof ExifStorageException) {
+						Log.e(TAG, "Failed to save file " + pathname, e);
+						DialogUtil.displayToast(Application.getAppContext(),
+								R.string.message_dialog_failed_to_store_exif, pathname);
+					}
+					else {
+						Log.e(TAG, "Failed to store EXIF data for file " + pathname, e);
+						DialogUtil.displayToast(Application.getAppContext(),
+								R.string.message_dialog_failed_to_store_metadata, pathname);
+					}
+				}
+			});
+		}
+		long saveTime = System.nanoTime() - startTime;
+		JpegMetadataCache.invalidate(new File(pathname));
+		MetadataJournal.getInstance().journalDone(pathname, metadata);
+
+		synchronized (JpegSynchronizationUtil.class) {
+			mSaveCount++;
+			mTotalSaveTime += saveTime;
+			mMaxSaveTime = Math.max(mMaxSaveTime, saveTime);
+		}
+		triggerNextFromQueue(pathname);
+	}
+
+	/**
+	 * Do cleanup from the last save and trigger the next save of the same file, if existing.
 	 *
 	 * @param pathname The path of the jpg file.
 	 */
@@ -120,23 +327,24 @@ public final class JpegSynchronizationUtil {
 			RUNNING_SAVE_REQUESTS.remove(pathname);
 			if (QUEUED_SAVE_REQUESTS.containsKey(pathname)) {
 				Log.i(TAG, "Executing queued store request for file " + pathname);
-				JpegMetadata newMetadata = QUEUED_SAVE_REQUESTS.get(pathname);
-				QUEUED_SAVE_REQUESTS.remove(pathname);
-				triggerJpegSaverTask(pathname, newMetadata);
+				triggerJpegSaverTask(pathname);
 			}
+			JpegSynchronizationUtil.class.notifyAll();
 		}
 	}
 
 	/**
-	 * Utility method to start the JpegSaverTask so save a jpg file with metadata.
+	 * Utility method to schedule saving the queued metadata of a jpg file.
 	 *
 	 * @param pathname the path of the jpg file.
-	 * @param metadata the metadata.
 	 */
-	private static void triggerJpegSaverTask(final String pathname, final JpegMetadata metadata) {
-		RUNNING_SAVE_REQUESTS.put(pathname, metadata);
-		JpegSaverTask task = new JpegSaverTask(pathname, metadata);
-		task.execute();
+	private static void triggerJpegSaverTask(final String pathname) {
+		SAVE_EXECUTOR.execute(new Runnable() {
+			@Override
+			public void run() {
+				saveFromQueue(pathname);
+			}
+		});
 
 		PreferenceUtil.incrementCounter(R.string.key_statistics_countsave);
 		TrackingUtil.sendEvent(Category.EVENT_USER, "Save image", null);
@@ -147,68 +355,65 @@ public final class JpegSynchronizationUtil {
 	 *
 	 * @return true if an image is currently saved.
 	 */
-	public static boolean isSaving() {
+	public static synchronized boolean isSaving() {
 		return RUNNING_SAVE_REQUESTS.size() > 0;
 	}
 
 	/**
-	 * Task to save a JPEG file asynchronously with changed metadata.
+	 * Get information if there is a running or pending save request.
+	 *
+	 * @return true if there is a running or pending save request.
 	 */
-	private static final class JpegSaverTask extends AsyncTask<Void, Void, Exception> {
-		/**
-		 * The path of the jpg file.
-		 */
-		private final String mPathname;
-		/**
-		 * The changed metadata.
-		 */
-		private final JpegMetadata mMetadata;
+	public static synchronized boolean hasRunningSaveRequests() {
+		return RUNNING_SAVE_REQUESTS.size() > 0 || QUEUED_SAVE_REQUESTS.size() > 0;
+	}
 
-		/**
-		 * Constructor for the task.
-		 *
-		 * @param pathname the path of the jpg file.
-		 * @param metadata the metadata.
-		 */
-		private JpegSaverTask(final String pathname, final JpegMetadata metadata) {
-			this.mPathname = pathname;
-			this.mMetadata = metadata;
+	/**
+	 * Wait until all running and pending save requests are done. Must not be called from the main thread.
+	 *
+	 * @param timeout The maximum waiting time (in milliseconds).
+	 * @return true if all save requests are done, false in case of timeout.
+	 * @throws InterruptedException thrown if interrupted while waiting.
+	 */
+	public static synchronized boolean awaitSaveRequests(final long timeout) throws InterruptedException {
+		long endTime = System.currentTimeMillis() + timeout;
+		while (hasRunningSaveRequests()) {
+			long remainingTime = endTime - System.currentTimeMillis();
+			if (remainingTime <= 0) {
+				return false;
+			}
+			JpegSynchronizationUtil.class.wait(remainingTime);
 		}
+		return true;
+	}
 
-		@Override
-		protected void onPreExecute() {
-			Log.d(TAG, "Starting thread to save file " + mPathname);
-		}
+	public static synchronized int getQueuedSaveRequestCount() {
+		return QUEUED_SAVE_REQUESTS.size();
+	}
 
-		@Override
-		protected Exception doInBackground(final Void... nothing) {
-			try {
-				JpegMetadataUtil.changeMetadata(mPathname, mMetadata);
-				return null;
-			}
-			catch (Exception e) {
-				return e;
-			}
-		}
+	public static synchronized int getRunningSaveRequestCount() {
+		return RUNNING_SAVE_REQUESTS.size();
+	}
 
-		@Override
-		protected void onPostExecute(@Nullable final Exception e) {
-			if (e != null) {
-				if (e instanceof ExifStorageException) {
-					Log.e(TAG, "Failed to save file " + mPathname, e);
-					DialogUtil.displayToast(Application.getAppContext(),
-							R.string.message_dialog_failed_to_store_exif, mPathname);
-				}
-				else {
-					Log.e(TAG, "Failed to store EXIF data for file " + mPathname, e);
-					DialogUtil.displayToast(Application.getAppContext(),
-							R.string.message_dialog_failed_to_store_metadata, mPathname);
-				}
-			}
-			else {
-				Log.d(TAG, "Successfully saved file " + mPathname);
-			}
-			triggerNextFromQueue(mPathname);
-		}
+	public static synchronized long getSaveCount() {
+		return mSaveCount;
+	}
+
+	/**
+	 * Get the average time used for saving a file.
+	 *
+	 * @return The average time (in milliseconds).
+	 */
+	public static synchronized double getAverageSaveTime() {
+		return mSaveCount == 0 ? 0 : mTotalSaveTime / 1000000.0 / mSaveCount; // MAGIC_NUMBER
+	}
+
+	/**
+	 * Get the maximum time used for saving a file.
+	 *
+	 * @return The maximum time (in milliseconds).
+	 */
+	public static synchronized double getMaxSaveTime() {
+		return mMaxSaveTime / 1000000.0; // MAGIC_NUMBER
 	}
 }
@@ -0,0 +1,571 @@
+package de.jeisfeld.augendiagnoselib.util.imagefile;
+
+import android.util.Log;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import de.jeisfeld.augendiagnoselib.Application;
+
+/**
+ * An append-only journal of metadata save requests, allowing to recover save requests which were not yet applied to the
+ * JPEG files when the app was terminated.
+ *
+ * <p>Each save request is journaled before it is executed, and a completion record is appended after it has been
+ * applied to the file. The records are written by a single journal thread, which syncs all records of one batch to disk
+ * together. On startup, save requests without completion record are recovered. The journal is truncated whenever no
+ * save request is outstanding.
+ */
+public final class MetadataJournal {
+	/**
+	 * The tag for logging.
+	 */
+	private static final String TAG = Application.TAG + ".MJ";
+
+	/**
+	 * The name of the journal file.
+	 */
+	private static final String JOURNAL_FILE_NAME = "metadatajournal.dat";
+
+	/**
+	 * The record type of a save request.
+	 */
+	private static final byte RECORD_SAVE = 1;
+
+	/**
+	 * The record type of the completion of a save request.
+	 */
+	private static final byte RECORD_DONE = 2;
+
+	/**
+	 * The size of the record length and the checksum surrounding each record (in bytes).
+	 */
+	private static final int RECORD_OVERHEAD = 12;
+
+	/**
+	 * The charset used for Strings in the journal.
+	 */
+	private static final String CHARSET = "UTF-8";
+
+	/**
+	 * The instance of the journal.
+	 */
+	@Nullable
+	private static MetadataJournal mInstance = null;
+
+	/**
+	 * The journal file.
+	 */
+	@NonNull
+	private final File mJournalFile;
+
+	/**
+	 * The file for writing the journal. Opened when needed.
+	 */
+	@Nullable
+	private RandomAccessFile mFile = null;
+
+	/**
+	 * The thread writing the journal. Started when needed.
+	 */
+	@Nullable
+	private Thread mJournalThread = null;
+
+	/**
+	 * The last sequence number assigned to a save request.
+	 */
+	private long mSequenceNumber = 0;
+
+	/**
+	 * The records waiting to be written by the journal thread.
+	 */
+	@NonNull
+	private final List<PendingRecord> mPendingRecords = new ArrayList<>();
+
+	/**
+	 * The sequence numbers of the latest save request for each file, for all files with outstanding save requests.
+	 */
+	@NonNull
+	private final Map<String, Long> mOpenSequenceNumbers = new HashMap<>();
+
+	/**
+	 * The metadata of the latest save request for each file, for all files with outstanding save requests.
+	 */
+	@NonNull
+	private final Map<String, JpegMetadata> mOpenMetadata = new LinkedHashMap<>();
+
+	/**
+	 * Create a journal.
+	 *
+	 * @param journalFile The journal file.
+	 */
+	private MetadataJournal(@NonNull final File journalFile) {
+		mJournalFile = journalFile;
+	}
+
+	/**
+	 * Get the journal. When called the first time, the outstanding save requests are recovered from the journal file.
+	 *
+	 * @return The journal.
+	 */
+	@NonNull
+	public static synchronized MetadataJournal getInstance() {
+		if (mInstance == null) {
+			mInstance = new MetadataJournal(new File(Application.getAppContext().getFilesDir(), JOURNAL_FILE_NAME));
+			mInstance.recover();
+		}
+		return mInstance;
+	}
+
+	/**
+	 * Get the outstanding save requests. Directly after startup, these are the save requests recovered from the journal
+	 * file.
+	 *
+	 * @return The metadata of the outstanding save requests, by path.
+	 */
+	@NonNull
+	public synchronized Map<String, JpegMetadata> getOpenSaveRequests() {
+		return new LinkedHashMap<>(mOpenMetadata);
+	}
+
+	/**
+	 * Journal a save request.
+	 *
+	 * @param pathname    The path of the jpg file.
+	 * @param metadata    The metadata to be saved. It is journaled in its current state.
+	 * @param onJournaled A callback executed after the request has been synced to disk. May be null.
+	 */
+	public synchronized void journalSave(@NonNull final String pathname, @NonNull final JpegMetadata metadata,
+										 @Nullable final Runnable onJournaled) {
+		mSequenceNumber++;
+		mOpenSequenceNumbers.put(pathname, mSequenceNumber);
+		mOpenMetadata.put(pathname, metadata);
+		addRecord(RECORD_SAVE, mSequenceNumber, pathname, metadata, onJournaled);
+	}
+
+	/**
+	 * Journal the completion of a save request. Requests for the same file which were journaled later remain
+	 * outstanding.
+	 *
+	 * @param pathname The path of the jpg file.
+	 * @param metadata The metadata which has been saved.
+	 */
+	public synchronized void journalDone(@NonNull final String pathname, @NonNull final JpegMetadata metadata) {
+		if (mOpenMetadata.get(pathname) != metadata) {
+			return;
+		}
+		mOpenMetadata.remove(pathname);
+		addRecord(RECORD_DONE, mOpenSequenceNumbers.remove(pathname), pathname, null, null);
+	}
+
+	/**
+	 * Add a record to be written by the journal thread.
+	 *
+	 * @param type           The record type.
+	 * @param sequenceNumber The sequence number of the save request.
+	 * @param pathname       The path of the jpg file.
+	 * @param metadata       The metadata (only for save requests).
+	 * @param onJournaled    A callback executed after the record has been synced to disk. May be null.
+	 */
+	private void addRecord(final byte type, final long sequenceNumber, @NonNull final String pathname,
+						   @Nullable final JpegMetadata metadata, @Nullable final Runnable onJournaled) {
+		byte[] record;
+		try {
+			record = createRecord(type, sequenceNumber, pathname, metadata);
+		}
+		catch (IOException e) {
+			// cannot happen when writing into memory
+			throw new IllegalStateException(e);
+		}
+		mPendingRecords.add(new PendingRecord(record, onJournaled));
+
+		if (mJournalThread == null) {
+			mJournalThread = new Thread(new Runnable() {
+				@Override
+				public void run() {
+					writeRecords();
+				}
+			}, "MetadataJournal");
+			mJournalThread.setDaemon(true);
+			mJournalThread.start();
+		}
+		notifyAll();
+	}
+
+	/**
+	 * Write the pending records, as long as the app is running. Executed by the journal thread.
+	 */
+	private void writeRecords() {
+		while (true) {
+			List<PendingRecord> batch;
+			synchronized (this) {
+				while (mPendingRecords.isEmpty()) {
+					try {
+						wait();
+					}
+					catch (InterruptedException e) {
+						return;
+					}
+				}
+				batch = new ArrayList<>(mPendingRecords);
+			}
+
+			try {
+				FileChannel channel = getChannel();
+				for (PendingRecord record : batch) {
+					ByteBuffer buffer = ByteBuffer.wrap(record.mRecord);
+					while (buffer.hasRemaining()) {
+						channel.write(buffer);
+					}
+				}
+				channel.force(false);
+			}
+			catch (IOException e) {
+				Log.e(TAG, "Failed to write metadata journal " + mJournalFile.getAbsolutePath(), e);
+			}
+
+			synchronized (this) {
+				mPendingRecords.subList(0, batch.size()).clear();
+				if (mPendingRecords.isEmpty() && mOpenSequenceNumbers.isEmpty() && mFile != null) {
+					try {
+						mFile.setLength(0);
+					}
+					catch (IOException e) {
+						Log.e(TAG, "Failed to truncate metadata journal " + mJournalFile.getAbsolutePath(), e);
+					}
+				}
+				notifyAll();
+			}
+
+			for (PendingRecord record : batch) {
+				if (record.mOnJournaled != null) {
+					record.mOnJournaled.run();
+				}
+			}
+		}
+	}
+
+	/**
+	 * Get the channel for writing the journal file, opening the file if required.
+	 *
+	 * @return The channel, positioned at the end of the file.
+	 * @throws IOException thrown if the file cannot be opened.
+	 */
+	@NonNull
+	private synchronized FileChannel getChannel() throws IOException {
+		if (mFile == null) {
+			mFile = new RandomAccessFile(mJournalFile, "rw");
+		}
+		FileChannel channel = mFile.getChannel();
+		channel.position(channel.size());
+		return channel;
+	}
+
+	/**
+	 * Read the journal file and determine the outstanding save requests. The journal file is then replaced by a
+	 * compacted journal containing only the outstanding save requests. A record which is incomplete due to a crash while
+	 * writing ends the journal.
+	 */
+	private synchronized void recover() {
+		if (!mJournalFile.exists()) {
+			return;
+		}
+
+		Map<String, Long> savedSequenceNumbers = new HashMap<>();
+		Map<String, JpegMetadata> savedMetadata = new LinkedHashMap<>();
+		Map<String, Long> doneSequenceNumbers = new HashMap<>();
+
+		DataInputStream in = null;
+		try {
+			in = new DataInputStream(new BufferedInputStream(new FileInputStream(mJournalFile)));
+			while (true) {
+				byte[] payload = readRecord(in);
+				if (payload == null) {
+					break;
+				}
+				DataInputStream recordIn = new DataInputStream(new ByteArrayInputStream(payload));
+				byte type = recordIn.readByte();
+				long sequenceNumber = recordIn.readLong();
+				String pathname = readString(recordIn);
+				if (type == RECORD_SAVE) {
+					savedSequenceNumbers.put(pathname, sequenceNumber);
+					savedMetadata.remove(pathname);
+					savedMetadata.put(pathname, readMetadata(recordIn));
+				}
+				else if (type == RECORD_DONE) {
+					doneSequenceNumbers.put(pathname, sequenceNumber);
+				}
+			}
+		}
+		catch (IOException e) {
+			Log.e(TAG, "Failed to read metadata journal " + mJournalFile.getAbsolutePath(), e);
+		}
+		finally {
+			closeQuietly(in);
+		}
+
+		File tempFile = new File(mJournalFile.getParentFile(), mJournalFile.getName() + ".tmp");
+		RandomAccessFile out = null;
+		try {
+			out = new RandomAccessFile(tempFile, "rw");
+			out.setLength(0);
+			for (Map.Entry<String, JpegMetadata> entry : savedMetadata.entrySet()) {
+				String pathname = entry.getKey();
+				Long doneSequenceNumber = doneSequenceNumbers.get(pathname);
+				if (doneSequenceNumber == null || doneSequenceNumber < savedSequenceNumbers.get(pathname)) {
+					Log.i(TAG, "Recovered save request for file " + pathname);
+					mSequenceNumber++;
+					mOpenSequenceNumbers.put(pathname, mSequenceNumber);
+					mOpenMetadata.put(pathname, entry.getValue());
+					out.write(createRecord(RECORD_SAVE, mSequenceNumber, pathname, entry.getValue()));
+				}
+			}
+			out.getFD().sync();
+		}
+		catch (IOException e) {
+			Log.e(TAG, "Failed to compact metadata journal " + mJournalFile.getAbsolutePath(), e);
+			return;
+		}
+		finally {
+			closeQuietly(out);
+		}
+
+		if (!tempFile.renameTo(mJournalFile)) {
+			Log.e(TAG, "Failed to compact metadata journal " + mJournalFile.getAbsolutePath());
+		}
+	}
+
+	/**
+	 * Create a journal record, consisting of length, payload and checksum.
+	 *
+	 * @param type           The record type.
+	 * @param sequenceNumber The sequence number of the save request.
+	 * @param pathname       The path of the jpg file.
+	 * @param metadata       The metadata (only for save requests).
+	 * @return The record.
+	 * @throws IOException thrown if the record cannot be created.
+	 */
+	@NonNull
+	private static byte[] createRecord(final byte type, final long sequenceNumber, @NonNull final String pathname,
+									   @Nullable final JpegMetadata metadata) throws IOException {
+		ByteArrayOutputStream payloadStream = new ByteArrayOutputStream();
+		DataOutputStream out = new DataOutputStream(payloadStream);
+		out.writeByte(type);
+		out.writeLong(sequenceNumber);
+		writeString(out, pathname);
+		if (metadata != null) {
+			writeMetadata(out, metadata);
+		}
+		out.flush();
+		byte[] payload = payloadStream.toByteArray();
+
+		CRC32 checksum = new CRC32();
+		checksum.update(payload);
+
+		ByteBuffer record = ByteBuffer.allocate(payload.length + RECORD_OVERHEAD);
+		record.putInt(payload.length).put(payload).putLong(checksum.getValue());
+		return record.array();
+	}
+
+	/**
+	 * Read the payload of a journal record.
+	 *
+	 * @param in The input stream.
+	 * @return The payload, or null if the end of the journal is reached or the record is incomplete.
+	 * @throws IOException thrown if the journal cannot be read.
+	 */
+	@Nullable
+	private byte[] readRecord(@NonNull final DataInputStream in) throws IOException {
+		try {
+			int length = in.readInt();
+			if (length <= 0 || length > mJournalFile.length()) {
+				Log.w(TAG, "Ignoring incomplete record in metadata journal");
+				return null;
+			}
+			byte[] payload = new byte[length];
+			in.readFully(payload);
+
+			CRC32 checksum = new CRC32();
+			checksum.update(payload);
+			if (in.readLong() != checksum.getValue()) {
+				Log.w(TAG, "Ignoring incomplete record in metadata journal");
+				return null;
+			}
+			return payload;
+		}
+		catch (EOFException e) {
+			return null;
+		}
+	}
+
+	/**
+	 * Write metadata to a data stream.
+	 *
+	 * @param out      The output stream.
+	 * @param metadata The metadata.
+	 * @throws IOException thrown if writing fails.
+	 */
+	private static void writeMetadata(@NonNull final DataOutputStream out, @NonNull final JpegMetadata metadata) throws IOException {
+		writeString(out, metadata.getTitle());
+		writeString(out, metadata.getDescription());
+		writeString(out, metadata.getSubject());
+		writeString(out, metadata.getComment());
+		writeString(out, metadata.getPerson());
+		writeString(out, metadata.getXCenterString());
+		writeString(out, metadata.getYCenterString());
+		writeString(out, metadata.getOverlayScaleFactorString());
+		writeString(out, metadata.getXPositionString());
+		writeString(out, metadata.getYPositionString());
+		writeString(out, metadata.getZoomFactorString());
+		out.writeLong(metadata.getOrganizeDate() == null ? Long.MIN_VALUE : metadata.getOrganizeDate().getTime());
+		writeString(out, metadata.getRightLeftString());
+		writeString(out, metadata.getBrightnessString());
+		writeString(out, metadata.getContrastString());
+		writeString(out, metadata.getSaturationString());
+		writeString(out, metadata.getColorTemperatureString());
+		writeString(out, metadata.getOverlayColorString());
+		writeString(out, metadata.getPupilSizeString());
+		writeString(out, metadata.getPupilXOffsetString());
+		writeString(out, metadata.getPupilYOffsetString());
+		out.writeInt(metadata.getFlags());
+		out.writeShort(metadata.getOrientation() == null ? -1 : metadata.getOrientation());
+	}
+
+	/**
+	 * Read metadata from a data stream.
+	 *
+	 * @param in The input stream.
+	 * @return The metadata.
+	 * @throws IOException thrown if reading fails.
+	 */
+	@NonNull
+	private static JpegMetadata readMetadata(@NonNull final DataInputStream in) throws IOException {
+		JpegMetadata metadata = new JpegMetadata();
+		metadata.setTitle(readString(in));
+		metadata.setDescription(readString(in));
+		metadata.setSubject(readString(in));
+		metadata.setComment(readString(in));
+		metadata.setPerson(readString(in));
+		metadata.setXCenter(readString(in));
+		metadata.setYCenter(readString(in));
+		metadata.setOverlayScaleFactor(readString(in));
+		metadata.setXPosition(readString(in));
+		metadata.setYPosition(readString(in));
+		metadata.setZoomFactor(readString(in));
+		long organizeDate = in.readLong();
+		metadata.setOrganizeDate(organizeDate == Long.MIN_VALUE ? null : new Date(organizeDate));
+		metadata.setRightLeft(readString(in));
+		metadata.setBrightness(readString(in));
+		metadata.setContrast(readString(in));
+		metadata.setSaturation(readString(in));
+		metadata.setColorTemperature(readString(in));
+		metadata.setOverlayColor(readString(in));
+		metadata.setPupilSize(readString(in));
+		metadata.setPupilXOffset(readString(in));
+		metadata.setPupilYOffset(readString(in));
+		metadata.setFlags(in.readInt());
+		short orientation = in.readShort();
+		metadata.setOrientation(orientation < 0 ? null : orientation);
+		return metadata;
+	}
+
+	/**
+	 * Write a String (which may be null) to a data stream.
+	 *
+	 * @param out   The output stream.
+	 * @param value The String.
+	 * @throws IOException thrown if writing fails.
+	 */
+	private static void writeString(@NonNull final DataOutputStream out, @Nullable final String value) throws IOException {
+		if (value == null) {
+			out.writeInt(-1);
+		}
+		else {
+			byte[] bytes = value.getBytes(CHARSET);
+			out.writeInt(bytes.length);
+			out.write(bytes);
+		}
+	}
+
+	/**
+	 * Read a String (which may be null) from a data stream.
+	 *
+	 * @param in The input stream.
+	 * @return The String.
+	 * @throws IOException thrown if reading fails.
+	 */
+	@Nullable
+	private static String readString(@NonNull final DataInputStream in) throws IOException {
+		int length = in.readInt();
+		if (length < 0) {
+			return null;
+		}
+		byte[] bytes = new byte[length];
+		in.readFully(bytes);
+		return new String(bytes, CHARSET);
+	}
+
+	/**
+	 * Close a stream or file, ignoring errors.
+	 *
+	 * @param closeable The stream or file. May be null.
+	 */
+	private static void closeQuietly(@Nullable final Closeable closeable) {
+		if (closeable != null) {
+			try {
+				closeable.close();
+			}
+			catch (IOException e) {
+				// ignore
+			}
+		}
+	}
+
+	/**
+	 * A record waiting to be written.
+	 */
+	private static final class PendingRecord {
+		/**
+		 * The record.
+		 */
+		@NonNull
+		private final byte[] mRecord;
+
+		/**
+		 * The callback executed after the record has been synced to disk.
+		 */
+		@Nullable
+		private final Runnable mOnJournaled;
+
+		/**
+		 * Create a pending record.
+		 *
+		 * @param record      The record.
+		 * @param onJournaled The callback executed after the record has been synced to disk. May be null.
+		 */
+		private PendingRecord(@NonNull final byte[] record, @Nullable final Runnable onJournaled) {
+			mRecord = record;
+			mOnJournaled = onJournaled;
+		}
+	}
+}
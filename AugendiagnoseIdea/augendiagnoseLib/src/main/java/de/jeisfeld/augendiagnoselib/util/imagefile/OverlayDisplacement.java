@@ -0,0 +1,101 @@
+package de.jeisfeld.augendiagnoselib.util.imagefile;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+/**
+ * The displacement of an overlay due to pupil size and position.
+ *
+ * <p>The displacement is calculated exactly only on the vertices of a coarse mesh, which can be used directly for
+ * Canvas.drawBitmapMesh. The displacement of the pixels in between is interpolated when drawing.
+ */
+public final class OverlayDisplacement {
+	/**
+	 * The number of mesh cells in each direction.
+	 */
+	public static final int MESH_SIZE = 128;
+
+	/**
+	 * The exponent used for the compression of the pupil area.
+	 */
+	private static final double PUPIL_COMPRESSION_EXPONENT = 1.5;
+
+	/**
+	 * The target positions of the mesh vertices, as x/y pairs row by row.
+	 */
+	@NonNull
+	private final float[] mMeshVertices = new float[2 * (MESH_SIZE + 1) * (MESH_SIZE + 1)];
+
+	@NonNull
+	public float[] getMeshVertices() {
+		return mMeshVertices;
+	}
+
+	/**
+	 * Calculate the displacement of an overlay.
+	 *
+	 * @param overlaySize   The size of the overlay (in pixels).
+	 * @param circleRatio   The ratio of overlay circle diameter to overlay size.
+	 * @param origPupilSize The pupil size (relative to iris) in the original overlay.
+	 * @param destPupilSize The pupil size (relative to iris) in the target overlay.
+	 * @param pupilOffsetX  The x offset of the pupil center, relative to the iris size
+	 * @param pupilOffsetY  The y offset of the pupil center, relative to the iris size
+	 */
+	public OverlayDisplacement(final int overlaySize, final float circleRatio, final float origPupilSize, final float destPupilSize,
+							   @Nullable final Float pupilOffsetX, @Nullable final Float pupilOffsetY) {
+		int overlayHalfSize = overlaySize / 2;
+		float irisRadius = overlayHalfSize * circleRatio;
+
+		// the center of enlargement
+		float targetCenterX = overlayHalfSize;
+		float targetCenterY = overlayHalfSize;
+		if (pupilOffsetX != null) {
+			targetCenterX += 2 * irisRadius * pupilOffsetX / (1 - destPupilSize);
+		}
+		if (pupilOffsetY != null) {
+			targetCenterY += 2 * irisRadius * pupilOffsetY / (1 - destPupilSize);
+		}
+
+		// Constants used for linear transformation of the iris part of the overlay.
+		float linTransB = (destPupilSize - origPupilSize) / (1 - origPupilSize);
+		float linTransM = (1 - destPupilSize) / (irisRadius * (1 - origPupilSize));
+		float absOrigPupilSize = origPupilSize * irisRadius;
+
+		int vertsIndex = 0;
+		for (int y = 0; y <= MESH_SIZE; y++) {
+			for (int x = 0; x <= MESH_SIZE; x++) {
+				// The positions of the original mesh vertices in pixels relative to the center
+				float xPos = (float) x * overlaySize / MESH_SIZE - overlayHalfSize;
+				float yPos = (float) y * overlaySize / MESH_SIZE - overlayHalfSize;
+				float centerDist = (float) Math.sqrt(xPos * xPos + yPos * yPos);
+
+				if (centerDist >= irisRadius) {
+					// outside the iris, take original position
+					mMeshVertices[vertsIndex++] = overlayHalfSize + xPos;
+					mMeshVertices[vertsIndex++] = overlayHalfSize + yPos;
+				}
+				else if (centerDist == 0) {
+					mMeshVertices[vertsIndex++] = targetCenterX;
+					mMeshVertices[vertsIndex++] = targetCenterY;
+				}
+				else {
+					// original direction
+					float xDirection = xPos / centerDist;
+					float yDirection = yPos / centerDist;
+
+					// corresponding iris boundary point
+					float xBound = overlayHalfSize + xDirection * irisRadius;
+					float yBound = overlayHalfSize + yDirection * irisRadius;
+
+					float radialPosition = linTransM * centerDist + linTransB;
+					if (centerDist < absOrigPupilSize) {
+						radialPosition -= linTransB * Math.pow(1 - centerDist / absOrigPupilSize, PUPIL_COMPRESSION_EXPONENT);
+					}
+
+					mMeshVertices[vertsIndex++] = targetCenterX + (xBound - targetCenterX) * radialPosition;
+					mMeshVertices[vertsIndex++] = targetCenterY + (yBound - targetCenterY) * radialPosition;
+				}
+			}
+		}
+	}
+}
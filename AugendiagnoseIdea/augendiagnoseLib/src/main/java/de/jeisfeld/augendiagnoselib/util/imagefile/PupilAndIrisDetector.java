@@ -8,6 +8,9 @@ import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 
 import android.graphics.Bitmap;
 import android.graphics.Color;
@@ -106,9 +109,24 @@ public final class PupilAndIrisDetector {
 	 */
 	private static final Map<String, String> FILES_IN_PROCESS2 = new HashMap<>();
 	/**
-	 * The queue of iris detection threads.
+	 * The default number of photos for which iris detection runs in parallel. Limited, as each detection holds a full
+	 * resolution bitmap.
 	 */
-	private static final List<Thread> THREAD_QUEUE = new ArrayList<>();
+	private static final int DEFAULT_DETECTION_PARALLELISM = Math.max(1, Math.min(2, Runtime.getRuntime().availableProcessors() / 2));
+	/**
+	 * The time after which idle iris detection threads are stopped (in seconds).
+	 */
+	private static final long DETECTION_KEEP_ALIVE_TIME = 10;
+	/**
+	 * The executor running the iris detection threads.
+	 */
+	private static final ThreadPoolExecutor DETECTION_EXECUTOR;
+
+	static {
+		DETECTION_EXECUTOR = new ThreadPoolExecutor(DEFAULT_DETECTION_PARALLELISM, DEFAULT_DETECTION_PARALLELISM,
+				DETECTION_KEEP_ALIVE_TIME, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>());
+		DETECTION_EXECUTOR.allowCoreThreadTimeOut(true);
+	}
 
 	/**
 	 * The number of points on the boundaries of circles of sizes 0 - 2000.
@@ -321,12 +339,12 @@ public final class PupilAndIrisDetector {
 			return;
 		}
 
-		Thread workingThread = new Thread() {
+		Runnable detectionRunnable = new Runnable() {
 			@Override
 			public void run() {
 				try {
 					// Retrieve image path - in case the file has moved.
-					String newImagePath = FILES_IN_PROCESS2.get(imagePath);
+					String newImagePath = getCurrentPath(imagePath);
 					JpegMetadata origMetadata2 = JpegSynchronizationUtil.getJpegMetadata(newImagePath);
 					if (origMetadata2 != null
 							&& (!origMetadata2.hasOverlayPosition() || origMetadata2.hasFlag(JpegMetadata.FLAG_OVERLAY_SET_BY_CAMERA_ACTIVITY))) {
@@ -337,7 +355,7 @@ public final class PupilAndIrisDetector {
 								+ ((System.currentTimeMillis() - timestamp) / 1000.0)); // MAGIC_NUMBER
 						TrackingUtil.sendTiming(Category.TIME_BACKGROUND, "Iris detection", null, System.currentTimeMillis() - timestamp);
 						// Retrieve image path - in case the file has moved.
-						newImagePath = FILES_IN_PROCESS2.get(imagePath);
+						newImagePath = getCurrentPath(imagePath);
 						JpegMetadata metadata = JpegSynchronizationUtil.getJpegMetadata(newImagePath);
 						// re-check if position has been set manually.
 						if (metadata != null
@@ -372,14 +390,6 @@ public final class PupilAndIrisDetector {
 						FILES_IN_PROCESS.remove(newImagePath);
 						FILES_IN_PROCESS2.remove(newImagePath);
 					}
-
-					synchronized (THREAD_QUEUE) {
-						THREAD_QUEUE.remove(Thread.currentThread());
-
-						if (THREAD_QUEUE.size() > 0) {
-							THREAD_QUEUE.get(0).start();
-						}
-					}
 				}
 			}
 		};
@@ -394,11 +404,37 @@ public final class PupilAndIrisDetector {
 			}
 		}
 
-		synchronized (THREAD_QUEUE) {
-			THREAD_QUEUE.add(workingThread);
+		DETECTION_EXECUTOR.execute(detectionRunnable);
+	}
+
+	/**
+	 * Get the current path of a file in process, considering renaming during the iris detection.
+	 *
+	 * @param imagePath The original path of the file.
+	 * @return The current path of the file.
+	 */
+	private static String getCurrentPath(final String imagePath) {
+		synchronized (FILES_IN_PROCESS) {
+			return FILES_IN_PROCESS2.get(imagePath);
+		}
+	}
 
-			if (THREAD_QUEUE.size() == 1) {
-				workingThread.start();
+	/**
+	 * Set the number of photos for which iris detection may run in parallel.
+	 *
+	 * @param parallelism The number of parallel detection threads.
+	 */
+	public static void setDetectionParallelism(final int parallelism) {
+		int newParallelism = Math.max(1, parallelism);
+		synchronized (DETECTION_EXECUTOR) {
+			// The core pool size must never exceed the maximum pool size.
+			if (newParallelism > DETECTION_EXECUTOR.getMaximumPoolSize()) {
+				DETECTION_EXECUTOR.setMaximumPoolSize(newParallelism);
+				DETECTION_EXECUTOR.setCorePoolSize(newParallelism);
+			}
+			else {
+				DETECTION_EXECUTOR.setCorePoolSize(newParallelism);
+				DETECTION_EXECUTOR.setMaximumPoolSize(newParallelism);
 			}
 		}
 	}
@@ -410,10 +446,6 @@ public final class PupilAndIrisDetector {
 	 * @param newFileName the new file name.
 	 */
 	public static void notifyFileRename(final String oldFileName, final String newFileName) {
-		if (!FILES_IN_PROCESS.containsKey(oldFileName)) {
-			return;
-		}
-
 		synchronized (FILES_IN_PROCESS) {
 			Set<String> oldPaths = FILES_IN_PROCESS.get(oldFileName);
 			if (oldPaths != null) {
@@ -0,0 +1,362 @@
+package de.jeisfeld.augendiagnoselib.util.imagefile;
+
+import android.graphics.Bitmap;
+import android.graphics.Bitmap.CompressFormat;
+import android.graphics.BitmapFactory;
+import android.util.Log;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.FilenameFilter;
+import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Comparator;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import de.jeisfeld.augendiagnoselib.Application;
+
+/**
+ * A persistent cache of thumbnails on disk.
+ *
+ * <p>Thumbnails are stored as small JPEG files, already rotated according to the EXIF orientation. The name of a cache
+ * file is derived from path, modification time and size of the image file and from the thumbnail size, so that a
+ * cached thumbnail is used only as long as the image file is unchanged. Cache files of previous versions of an image
+ * file are removed when a new thumbnail of it is stored, and all cache files of an image file are removed when the
+ * image file is moved or deleted. If the total size of the cache exceeds its budget, the least recently used cache
+ * files are removed.
+ */
+public final class ThumbnailCache {
+	/**
+	 * The name of the cache folder.
+	 */
+	private static final String CACHE_FOLDER_NAME = "thumbnails";
+
+	/**
+	 * The suffix of cache files.
+	 */
+	private static final String CACHE_FILE_SUFFIX = ".jpg";
+
+	/**
+	 * The maximum total size of the cache files (in bytes).
+	 */
+	private static final long MAX_CACHE_SIZE = 50L * 1024 * 1024; // MAGIC_NUMBER
+
+	/**
+	 * The fraction of the maximum size to which the cache is reduced when the maximum size is exceeded.
+	 */
+	private static final double EVICTION_TARGET_RATIO = 0.8;
+
+	/**
+	 * The JPEG quality of the cache files.
+	 */
+	private static final int JPEG_QUALITY = 90;
+
+	/**
+	 * The number of hex digits of the path hash in the cache file name.
+	 */
+	private static final int PATH_HASH_LENGTH = 16;
+
+	/**
+	 * The resolution of file modification times (in milliseconds). Thumbnails of files modified within this time are
+	 * not cached, as further modifications may not change the modification time.
+	 */
+	private static final long MODIFICATION_TIME_RESOLUTION = 2000;
+
+	/**
+	 * The total size of the cache files, or -1 if not yet determined.
+	 */
+	private static long mTotalSize = -1;
+
+	/**
+	 * The number of thumbnails found in the cache.
+	 */
+	private static long mHitCount = 0;
+
+	/**
+	 * The number of thumbnails not found in the cache.
+	 */
+	private static long mMissCount = 0;
+
+	/**
+	 * Hide default constructor.
+	 */
+	private ThumbnailCache() {
+		throw new UnsupportedOperationException();
+	}
+
+	/**
+	 * Get a thumbnail from the cache.
+	 *
+	 * @param file         The image file.
+	 * @param lastModified The modification time of the image file.
+	 * @param length       The size of the image file.
+	 * @param size         The thumbnail size.
+	 * @return The thumbnail, or null if it is not cached.
+	 */
+	@Nullable
+	protected static Bitmap get(@NonNull final File file, final long lastModified, final long length, final int size) {
+		File cacheFile = getCacheFile(file, lastModified, length, size);
+		if (!cacheFile.isFile()) {
+			countLookup(false);
+			return null;
+		}
+
+		Bitmap thumbnail = BitmapFactory.decodeFile(cacheFile.getAbsolutePath());
+		if (thumbnail == null) {
+			Log.w(Application.TAG, "Failed to load cached thumbnail " + cacheFile.getName());
+			deleteCacheFile(cacheFile);
+			countLookup(false);
+			return null;
+		}
+		// The modification time of the cache file marks its last use.
+		if (!cacheFile.setLastModified(System.currentTimeMillis())) {
+			Log.w(Application.TAG, "Failed to mark usage of cached thumbnail " + cacheFile.getName());
+		}
+		countLookup(true);
+		return thumbnail;
+	}
+
+	/**
+	 * Store a thumbnail in the cache.
+	 *
+	 * @param file         The image file.
+	 * @param lastModified The modification time of the image file before it was read.
+	 * @param length       The size of the image file before it was read.
+	 * @param size         The thumbnail size.
+	 * @param thumbnail    The thumbnail.
+	 */
+	protected static void put(@NonNull final File file, final long lastModified, final long length, final int size,
+							  @NonNull final Bitmap thumbnail) {
+		if (lastModified == 0 || System.currentTimeMillis() - lastModified < MODIFICATION_TIME_RESOLUTION) {
+			return;
+		}
+		File cacheFolder = getCacheFolder();
+		if (!cacheFolder.isDirectory() && !cacheFolder.mkdirs()) {
+			Log.w(Application.TAG, "Failed to create thumbnail cache folder");
+			return;
+		}
+
+		// Remove thumbnails of previous versions of the file.
+		final String pathPrefix = getPathHash(file) + "-";
+		final String versionPrefix = getVersionPrefix(file, lastModified, length);
+		deleteCacheFiles(new FilenameFilter() {
+			@Override
+			public boolean accept(final File dir, @NonNull final String name) {
+				return name.startsWith(pathPrefix) && !name.startsWith(versionPrefix);
+			}
+		});
+
+		File cacheFile = getCacheFile(file, lastModified, length, size);
+		File tempFile = new File(cacheFolder, cacheFile.getName() + ".tmp");
+		FileOutputStream out = null;
+		try {
+			out = new FileOutputStream(tempFile);
+			if (!thumbnail.compress(CompressFormat.JPEG, JPEG_QUALITY, out)) {
+				throw new IOException("Failed to compress thumbnail");
+			}
+			out.close();
+			out = null;
+			if (!tempFile.renameTo(cacheFile)) {
+				throw new IOException("Failed to rename " + tempFile.getName());
+			}
+		}
+		catch (IOException e) {
+			Log.w(Application.TAG, "Failed to store cached thumbnail of " + file.getName() + ": " + e.getMessage());
+			if (tempFile.exists() && !tempFile.delete()) {
+				Log.w(Application.TAG, "Failed to delete " + tempFile.getName());
+			}
+			return;
+		}
+		finally {
+			if (out != null) {
+				try {
+					out.close();
+				}
+				catch (IOException e) {
+					// ignore
+				}
+			}
+		}
+
+		synchronized (ThumbnailCache.class) {
+			if (mTotalSize >= 0) {
+				mTotalSize += cacheFile.length();
+			}
+		}
+		evictIfRequired();
+	}
+
+	/**
+	 * Remove all cached thumbnails of an image file. This frees the cache space of files which are moved or deleted.
+	 *
+	 * @param file The image file.
+	 */
+	protected static void invalidate(@NonNull final File file) {
+		final String pathPrefix = getPathHash(file) + "-";
+		deleteCacheFiles(new FilenameFilter() {
+			@Override
+			public boolean accept(final File dir, @NonNull final String name) {
+				return name.startsWith(pathPrefix);
+			}
+		});
+	}
+
+	public static synchronized long getHitCount() {
+		return mHitCount;
+	}
+
+	public static synchronized long getMissCount() {
+		return mMissCount;
+	}
+
+	/**
+	 * Count a lookup in the cache.
+	 *
+	 * @param isHit Flag indicating if the thumbnail was found in the cache.
+	 */
+	private static synchronized void countLookup(final boolean isHit) {
+		if (isHit) {
+			mHitCount++;
+		}
+		else {
+			mMissCount++;
+		}
+	}
+
+	/**
+	 * Delete the cache files matching a filter.
+	 *
+	 * @param filter The filter.
+	 */
+	private static void deleteCacheFiles(@NonNull final FilenameFilter filter) {
+		File[] cacheFiles = getCacheFolder().listFiles(filter);
+		if (cacheFiles != null) {
+			for (File cacheFile : cacheFiles) {
+				deleteCacheFile(cacheFile);
+			}
+		}
+	}
+
+	/**
+	 * Delete a cache file and update the total size.
+	 *
+	 * @param cacheFile The cache file.
+	 */
+	private static void deleteCacheFile(@NonNull final File cacheFile) {
+		long length = cacheFile.length();
+		if (cacheFile.delete()) {
+			synchronized (ThumbnailCache.class) {
+				if (mTotalSize >= 0) {
+					mTotalSize -= length;
+				}
+			}
+		}
+	}
+
+	/**
+	 * Remove the least recently used cache files if the total size of the cache exceeds the maximum size.
+	 */
+	private static synchronized void evictIfRequired() {
+		File[] cacheFiles = null;
+		if (mTotalSize < 0) {
+			cacheFiles = getCacheFolder().listFiles();
+			if (cacheFiles == null) {
+				return;
+			}
+			mTotalSize = 0;
+			for (File cacheFile : cacheFiles) {
+				mTotalSize += cacheFile.length();
+			}
+		}
+		if (mTotalSize <= MAX_CACHE_SIZE) {
+			return;
+		}
+
+		if (cacheFiles == null) {
+			cacheFiles = getCacheFolder().listFiles();
+			if (cacheFiles == null) {
+				return;
+			}
+		}
+		final long[] lastUsed = new long[cacheFiles.length];
+		Integer[] indices = new Integer[cacheFiles.length];
+		for (int i = 0; i < cacheFiles.length; i++) {
+			lastUsed[i] = cacheFiles[i].lastModified();
+			indices[i] = i;
+		}
+		Arrays.sort(indices, new Comparator<Integer>() {
+			@Override
+			public int compare(final Integer lhs, final Integer rhs) {
+				return Long.valueOf(lastUsed[lhs]).compareTo(lastUsed[rhs]);
+			}
+		});
+
+		long targetSize = (long) (MAX_CACHE_SIZE * EVICTION_TARGET_RATIO);
+		for (int i = 0; i < indices.length && mTotalSize > targetSize; i++) {
+			deleteCacheFile(cacheFiles[indices[i]]);
+		}
+	}
+
+	/**
+	 * Get the cache folder.
+	 *
+	 * @return The cache folder.
+	 */
+	@NonNull
+	private static File getCacheFolder() {
+		return new File(Application.getAppContext().getCacheDir(), CACHE_FOLDER_NAME);
+	}
+
+	/**
+	 * Get the cache file of a thumbnail.
+	 *
+	 * @param file         The image file.
+	 * @param lastModified The modification time of the image file.
+	 * @param length       The size of the image file.
+	 * @param size         The thumbnail size.
+	 * @return The cache file.
+	 */
+	@NonNull
+	private static File getCacheFile(@NonNull final File file, final long lastModified, final long length, final int size) {
+		return new File(getCacheFolder(), getVersionPrefix(file, lastModified, length) + size + CACHE_FILE_SUFFIX);
+	}
+
+	/**
+	 * Get the common prefix of the names of all cache files of a version of an image file.
+	 *
+	 * @param file         The image file.
+	 * @param lastModified The modification time of the image file.
+	 * @param length       The size of the image file.
+	 * @return The prefix.
+	 */
+	@NonNull
+	private static String getVersionPrefix(@NonNull final File file, final long lastModified, final long length) {
+		return getPathHash(file) + "-" + Long.toHexString(lastModified) + "-" + Long.toHexString(length) + "-";
+	}
+
+	/**
+	 * Get a hash of the absolute path of a file.
+	 *
+	 * @param file The file.
+	 * @return The hash, as hex String.
+	 */
+	@NonNull
+	private static String getPathHash(@NonNull final File file) {
+		try {
+			byte[] digest = MessageDigest.getInstance("SHA-1").digest(file.getAbsolutePath().getBytes("UTF-8"));
+			StringBuilder hash = new StringBuilder();
+			for (int i = 0; hash.length() < PATH_HASH_LENGTH; i++) {
+				hash.append(String.format("%02x", digest[i]));
+			}
+			return hash.toString();
+		}
+		catch (NoSuchAlgorithmException | UnsupportedEncodingException e) {
+			// SHA-1 and UTF-8 are available on all Android platforms.
+			throw new RuntimeException(e);
+		}
+	}
+}
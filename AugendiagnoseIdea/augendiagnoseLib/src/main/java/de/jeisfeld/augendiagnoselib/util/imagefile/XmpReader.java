@@ -0,0 +1,77 @@
+package de.jeisfeld.augendiagnoselib.util.imagefile;
+
+import java.util.Date;
+
+import androidx.annotation.Nullable;
+
+/**
+ * Read access to the XMP data of a JPEG file.
+ */
+public interface XmpReader {
+	/**
+	 * Get an item from the custom namespace.
+	 *
+	 * @param item the name of the item.
+	 * @return the value of the item.
+	 */
+	@Nullable
+	String getJeItem(String item);
+
+	/**
+	 * Get an int item from the custom namespace.
+	 *
+	 * @param item the name of the item.
+	 * @return the value of the item.
+	 */
+	int getJeInt(String item);
+
+	/**
+	 * Get a date item from the custom namespace.
+	 *
+	 * @param item the name of the item.
+	 * @return the value of the item.
+	 */
+	@Nullable
+	Date getJeDate(String item);
+
+	/**
+	 * Retrieve the image title.
+	 *
+	 * @return the image title.
+	 */
+	@Nullable
+	String getDcTitle();
+
+	/**
+	 * Retrieve the image description.
+	 *
+	 * @return the image description.
+	 */
+	@Nullable
+	String getDcDescription();
+
+	/**
+	 * Retrieve the image subject.
+	 *
+	 * @return the image subject.
+	 */
+	@Nullable
+	String getDcSubject();
+
+	/**
+	 * Retrieve the user comment.
+	 *
+	 * @return the user comment.
+	 */
+	@Nullable
+	String getUserComment();
+
+	/**
+	 * Retrieve the image person name, from Microsoft namespace.
+	 *
+	 * @return the image person name.
+	 */
+	@Nullable
+	String getMicrosoftPerson();
+
+}